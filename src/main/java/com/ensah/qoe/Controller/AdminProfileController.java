@@ -373,8 +373,7 @@ public class AdminProfileController implements Initializable {
             return;
         }
 
-        try {
-            Connection conn = com.ensah.qoe.Models.DBConnection.getConnection();
+        try (Connection conn = com.ensah.qoe.Models.DBConnection.getConnection()) {
             String query = "SELECT COUNT(*) FROM UTILISATEURS WHERE username = ? AND id_user != ?";
             PreparedStatement pstmt = conn.prepareStatement(query);
             pstmt.setString(1, newUsername);
@@ -437,8 +436,7 @@ public class AdminProfileController implements Initializable {
 
     // Vérifier le mot de passe actuel dans la base
     private boolean verifyCurrentPassword(String password) {
-        try {
-            Connection conn = com.ensah.qoe.Models.DBConnection.getConnection();
+        try (Connection conn = com.ensah.qoe.Models.DBConnection.getConnection()) {
 
             String query = "SELECT password FROM UTILISATEURS WHERE id_user = ?";
             PreparedStatement pstmt = conn.prepareStatement(query);
@@ -496,6 +494,7 @@ public class AdminProfileController implements Initializable {
         } finally {
             try {
                 if (pstmt != null) pstmt.close();
+                if (conn != null) conn.close();
             } catch (Exception e) {
                 e.printStackTrace();
             }
@@ -237,27 +237,9 @@ public class ClientDashboardController implements Initializable {
         String commentaire = commentField.getText();
         int clientId = ClientService.getClientIdByUserId(currentUser.getId());
 
-        try (Connection conn = DBConnection.getConnection()) {
-
-            PreparedStatement ps1 = conn.prepareStatement(
-                    "UPDATE QOE SET FEEDBACK_SCORE = ? WHERE ID_CLIENT = ?"
-            );
-            ps1.setInt(1, score);
-            ps1.setInt(2, clientId);
-            ps1.executeUpdate();
-
-            String sql = """
-                INSERT INTO FEEDBACKS (ID, CLIENT_NAME, SERVICE, SCORE, COMMENTAIRE, FEEDBACK_DATE)
-                SELECT FEEDBACKS_SEQ.NEXTVAL, NOM, ?, ?, ?, SYSDATE
-                FROM CLIENT WHERE ID_CLIENT = ?
-            """;
-
-            PreparedStatement ps2 = conn.prepareStatement(sql);
-            ps2.setString(1, service);
-            ps2.setInt(2, score);
-            ps2.setString(3, commentaire);
-            ps2.setInt(4, clientId);
-            ps2.executeUpdate();
+        try {
+            // FEEDBACKS + QoE global du client recalculé, agrégats mis à jour
+            QoeAnalyzer.enregistrerFeedback(clientId, service, score, commentaire);
 
         } catch (Exception e) {
             e.printStackTrace();
@@ -109,6 +109,13 @@ public class MOSDashboardController {
             showAccueilMOS();
             System.out.println("✅ Page d'accueil affichée");
         });
+
+        // Modèle sauvegardé encore en lecture : tableau de bord mis à jour dès qu'il est prêt
+        if (!PredictionServiceMOS.isModelTrained()) {
+            PredictionServiceMOS.chargerModeleSauvegarde().thenAccept(pret -> {
+                if (pret) Platform.runLater(this::updateMOSDashboard);
+            });
+        }
     }
 
     private void initializeCharts() {
@@ -1,6 +1,7 @@
 package com.ensah.qoe.Controller;
 
 import com.ensah.qoe.Models.Qos;
+import com.ensah.qoe.Services.QosColonnes;
 import com.ensah.qoe.Services.QosZoneService;
 import javafx.animation.Animation;
 import javafx.animation.KeyFrame;
@@ -44,7 +45,6 @@ public class NetworkMonitorController implements Initializable {
     @FXML private TextField searchField;
     @FXML private PieChart qosPieChart;
     private Timeline updateTimeline;
-    private final QosZoneService zoneService = new QosZoneService();
     private List<String> zones = new ArrayList<>();
 
     @Override
@@ -57,7 +57,7 @@ public class NetworkMonitorController implements Initializable {
 
     private void setupZoneCombo() {
         try {
-            zones = zoneService.getZones();
+            zones = QosColonnes.get().getZones();
             zoneCombo.getItems().clear();
             zoneCombo.getItems().addAll(zones);
 
@@ -77,22 +77,28 @@ public class NetworkMonitorController implements Initializable {
 
     private void updateZoneInfo(String zone) {
         try {
-            List<Qos> qosList = QosZoneService.getQosByZone(zone);
-            if (!qosList.isEmpty()) {
-                Qos latest = qosList.get(qosList.size() - 1);
+            // Groupes 12 h déjà en mémoire (QosColonnes) : dernier groupe de la zone
+            QosColonnes donnees = QosColonnes.get();
+            int code = donnees.code(zone);
+            if (donnees.taille(code) > 0) {
+                Qos latest = donnees.qos(donnees.fin(code) - 1);
 
                 // 🔁 graphique circulaire
                 updateQoSPieChart(latest);
 
-                updateQoSChart(qosList); // chart existant
+                updateQoSChart(zone); // chart existant
             }
         } catch (Exception e) {
             System.err.println("Error updating zone info: " + e.getMessage());
         }
     }
 
-    private void updateQoSChart(List<Qos> qosList) {
-        if (qosLineChart == null || qosList.isEmpty()) return;
+    private void updateQoSChart(String zone) {
+        if (qosLineChart == null) return;
+
+        // Résolution la plus fine qui tient dans la largeur du graphique
+        List<Qos> qosList = QosZoneService.getQosPourAffichage(zone, qosLineChart.getWidth());
+        if (qosList.isEmpty()) return;
 
         qosLineChart.getData().clear();
 
@@ -100,7 +106,7 @@ public class NetworkMonitorController implements Initializable {
         mosSeries.setName("MOS");
 
         for (Qos qos : qosList) {
-            mosSeries.getData().add(new XYChart.Data<>(qos.getTranche12h(), qos.getMos()));
+            mosSeries.getData().add(new XYChart.Data<>(qos.getTranche(), qos.getMos()));
         }
 
         qosLineChart.getData().add(mosSeries);
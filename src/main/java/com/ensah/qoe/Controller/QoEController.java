@@ -3,10 +3,13 @@ package com.ensah.qoe.Controller;
 import com.ensah.qoe.Models.DBConnection;
 import com.ensah.qoe.Models.QoE;
 import com.ensah.qoe.Services.QoeAnalyzer;
+import com.ensah.qoe.Services.QoeCube;
+import com.ensah.qoe.Services.QoeSimulation;
 import javafx.animation.*;
 import javafx.beans.property.*;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
+import javafx.concurrent.Task;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
 import javafx.fxml.Initializable;
@@ -88,6 +91,13 @@ public class QoEController implements Initializable {
 
     private String currentZoneFilter = null;
 
+    // Vue affichée, son filtre {genre, zone, fichier} (null = tous) et la
+    // version du cube QoE qu'elle montre : redessinée si un changement la touche
+    private Runnable vueCourante;
+    private String[] filtreVue;
+    private long versionAffichee;
+    private Timeline suiviTimeline;
+
     @Override
     public void initialize(URL location, ResourceBundle resources) {
         // Setup toggle group
@@ -151,9 +161,63 @@ public class QoEController implements Initializable {
 
         // Afficher le mode par défaut (métriques pleine page)
         showMetricsFullScreen();
-        if (QoeAnalyzer.isCsvCharge()) {
-            afficherQoeGlobal();
+
+        setupSuiviCube();
+    }
+
+    /**
+     * Cube QoE chargé hors du thread JavaFX (GROUP BY sur toute la table
+     * au premier appel), puis vue globale affichée. Feedbacks et imports
+     * enregistrés ailleurs : toutes les 2 s, la vue affichée est
+     * redessinée si le cube QoE a changé pour elle.
+     */
+    private void setupSuiviCube() {
+        Task<QoeCube> chargement = new Task<>() {
+            @Override
+            protected QoeCube call() {
+                return QoeCube.get();
+            }
+        };
+        chargement.setOnSucceeded(e -> {
+            if (QoeAnalyzer.isCsvCharge() && vueCourante == null) afficherQoeGlobal();
+        });
+        Thread t = new Thread(chargement, "chargement-cube-qoe");
+        t.setDaemon(true);
+        t.start();
+
+        suiviTimeline = new Timeline(new KeyFrame(Duration.seconds(2), e -> rafraichirSiModifie()));
+        suiviTimeline.setCycleCount(Animation.INDEFINITE);
+        suiviTimeline.play();
+
+        // Écran quitté : plus de suivi
+        overallQoeLabel.sceneProperty().addListener((obs, ancienne, nouvelle) -> {
+            if (nouvelle == null) suiviTimeline.stop();
+        });
+    }
+
+    private void suivreVue(Runnable vue, String genre, String zone, String fichier) {
+        vueCourante = vue;
+        filtreVue = new String[]{genre, zone, fichier};
+        versionAffichee = QoeCube.versionChargee();
+    }
+
+    // Ne lit que la version du cube déjà chargé : jamais de chargement sur le thread JavaFX
+    private void rafraichirSiModifie() {
+        if (vueCourante == null) return;
+        long version = QoeCube.versionChargee();
+        if (version < 0 || version == versionAffichee) return;
+        if (versionAffichee < 0) {
+            // Vue dessinée pendant le chargement du cube : elle l'a déjà lu
+            versionAffichee = version;
+            return;
         }
+
+        List<QoeCube.Changement> changements = QoeCube.changementsDepuis(versionAffichee);
+        versionAffichee = version;
+
+        boolean touchee = changements == null || changements.stream()
+                .anyMatch(c -> c.concerne(filtreVue[0], filtreVue[1], filtreVue[2]));
+        if (touchee) vueCourante.run();
     }
 
     private void setupToggleButtonStyles() {
@@ -335,20 +399,22 @@ public class QoEController implements Initializable {
         FileChooser chooser = new FileChooser();
         chooser.setTitle("Choisir un CSV Telco");
         chooser.getExtensionFilters().add(
-                new FileChooser.ExtensionFilter("Fichiers CSV", "*.csv")
+                new FileChooser.ExtensionFilter("Fichiers CSV", "*.csv", "*.gz", "*.zip")
         );
 
         File f = chooser.showOpenDialog(importCsvButton.getScene().getWindow());
         if (f == null) return;
-        QoeAnalyzer.reset();
 
-        boolean ok = QoeAnalyzer.analyserFichierCsv(f.getAbsolutePath());
+        // Nouvelle session, affichée une fois le CSV chargé
+        QoeAnalyzer.Session session = new QoeAnalyzer.Session();
+        boolean ok = session.analyserFichierCsv(f.getAbsolutePath());
 
         if (!ok) {
             overallQoeLabel.setText("Erreur");
             showAlert("Erreur", "Impossible de charger le fichier CSV", Alert.AlertType.ERROR);
             return;
         }
+        QoeAnalyzer.utiliser(session);
 
 
         loadFilters();
@@ -371,6 +437,176 @@ public class QoEController implements Initializable {
         showAlert("Succès", "Fichier CSV importé avec succès!", Alert.AlertType.INFORMATION);
     }
 
+    // =====================================================================
+    // SIMULATION « ET SI »
+    // =====================================================================
+    @FXML
+    private void ouvrirSimulation() {
+        Stage simStage = new Stage();
+        simStage.setTitle("Simulation QoE");
+
+        VBox root = new VBox(20);
+        root.setAlignment(Pos.TOP_CENTER);
+        root.setStyle("-fx-padding: 30; -fx-background-color: #f8fafc;");
+
+        VBox header = new VBox(8);
+        header.setAlignment(Pos.CENTER);
+        header.setStyle(
+                "-fx-background-color: linear-gradient(135deg, #f59e0b 0%, #ea580c 100%); " +
+                        "-fx-background-radius: 12; " +
+                        "-fx-padding: 24;"
+        );
+        Label titleLabel = new Label("🧪 Et si… ?");
+        titleLabel.setStyle("-fx-text-fill: white; -fx-font-size: 24; -fx-font-weight: 700;");
+        Label subtitleLabel = new Label("Latence, jitter et perte agissent via le MOS");
+        subtitleLabel.setStyle("-fx-text-fill: rgba(255,255,255,0.9); -fx-font-size: 14;");
+        header.getChildren().addAll(titleLabel, subtitleLabel);
+
+        ComboBox<String> levierBox = new ComboBox<>(FXCollections.observableArrayList(QoeSimulation.LEVIERS));
+        levierBox.setValue("latence");
+
+        TextField variationField = new TextField("-20");
+        variationField.setPrefWidth(80);
+
+        ComboBox<String> zoneBox = new ComboBox<>();
+        zoneBox.getItems().add("Toutes les zones");
+        zoneBox.getItems().addAll(zoneCombo.getItems());
+        zoneBox.setValue("Toutes les zones");
+
+        TextField formuleField = new TextField();
+        formuleField.setPromptText("Formule après (vide : formule configurée)");
+
+        GridPane form = new GridPane();
+        form.setHgap(12);
+        form.setVgap(12);
+        form.setStyle(
+                "-fx-background-color: white; " +
+                        "-fx-background-radius: 12; " +
+                        "-fx-padding: 24; " +
+                        "-fx-effect: dropshadow(gaussian, rgba(0,0,0,0.08), 12, 0, 0, 4);"
+        );
+        form.addRow(0, new Label("Levier"), levierBox);
+        form.addRow(1, new Label("Variation (%)"), variationField);
+        form.addRow(2, new Label("Zone"), zoneBox);
+        form.addRow(3, new Label("Formule"), formuleField);
+        GridPane.setHgrow(formuleField, Priority.ALWAYS);
+
+        VBox resultBox = new VBox(12);
+
+        Button simulerBtn = new Button("▶ Simuler");
+        simulerBtn.setStyle(
+                "-fx-background-color: #f59e0b; " +
+                        "-fx-text-fill: white; " +
+                        "-fx-font-size: 14; " +
+                        "-fx-font-weight: 600; " +
+                        "-fx-background-radius: 8; " +
+                        "-fx-padding: 12 32; " +
+                        "-fx-cursor: hand;"
+        );
+        simulerBtn.setOnAction(e -> {
+            double variation;
+            try {
+                variation = Double.parseDouble(variationField.getText().trim().replace(',', '.'));
+            } catch (NumberFormatException ex) {
+                showAlert("Erreur", "Variation invalide : " + variationField.getText(), Alert.AlertType.ERROR);
+                return;
+            }
+            String zone = zoneBox.getValue() == null || zoneBox.getValue().equals("Toutes les zones")
+                    ? null : zoneBox.getValue();
+            String formule = formuleField.getText().isBlank() ? null : formuleField.getText().trim();
+            QoeSimulation.Scenario scenario = new QoeSimulation.Scenario()
+                    .multiplier(levierBox.getValue(), 1 + variation / 100)
+                    .zone(zone)
+                    .formule(formule);
+
+            // Lecture des lignes QoE et calcul hors du thread JavaFX
+            Task<QoeSimulation.Resultat> simulation = new Task<>() {
+                @Override
+                protected QoeSimulation.Resultat call() {
+                    return QoeSimulation.simuler(scenario);
+                }
+            };
+            simulation.setOnSucceeded(ev -> {
+                simulerBtn.setDisable(false);
+                afficherResultatSimulation(resultBox, simulation.getValue());
+            });
+            simulation.setOnFailed(ev -> {
+                simulerBtn.setDisable(false);
+                showAlert("Erreur", simulation.getException().getMessage(), Alert.AlertType.ERROR);
+            });
+            simulerBtn.setDisable(true);
+            Thread t = new Thread(simulation, "simulation-qoe");
+            t.setDaemon(true);
+            t.start();
+        });
+
+        Button closeBtn = new Button("Fermer");
+        closeBtn.setStyle(
+                "-fx-background-color: #64748b; " +
+                        "-fx-text-fill: white; " +
+                        "-fx-font-size: 14; " +
+                        "-fx-font-weight: 600; " +
+                        "-fx-background-radius: 8; " +
+                        "-fx-padding: 12 32; " +
+                        "-fx-cursor: hand;"
+        );
+        closeBtn.setOnAction(e -> simStage.close());
+
+        HBox boutons = new HBox(12, simulerBtn, closeBtn);
+        boutons.setAlignment(Pos.CENTER);
+
+        root.getChildren().addAll(header, form, boutons, resultBox);
+
+        ScrollPane scroll = new ScrollPane(root);
+        scroll.setFitToWidth(true);
+        simStage.setScene(new Scene(scroll, 640, 760));
+        simStage.show();
+    }
+
+    private void afficherResultatSimulation(VBox resultBox, QoeSimulation.Resultat r) {
+        VBox infoBox = new VBox(16);
+        infoBox.setStyle(
+                "-fx-background-color: white; " +
+                        "-fx-background-radius: 12; " +
+                        "-fx-padding: 24; " +
+                        "-fx-effect: dropshadow(gaussian, rgba(0,0,0,0.08), 12, 0, 0, 4);"
+        );
+        infoBox.getChildren().addAll(
+                createInfoRow("👥 Clients", String.valueOf(r.getNbClients())),
+                createInfoRow("⭐ QoE moyen", String.format("%.2f → %.2f", r.getMoyenneAvant(), r.getMoyenneApres())),
+                createInfoRow("📶 MOS moyen", String.format("%.2f → %.2f", r.getMosMoyenAvant(), r.getMosMoyenApres())),
+                new Separator()
+        );
+        for (Map.Entry<String, double[]> z : r.getMoyennesParZone().entrySet()) {
+            infoBox.getChildren().add(createInfoRow("📍 " + z.getKey(),
+                    String.format("%.2f → %.2f", z.getValue()[0], z.getValue()[1])));
+        }
+
+        CategoryAxis xAxis = new CategoryAxis();
+        xAxis.setLabel("QoE");
+        NumberAxis yAxis = new NumberAxis();
+        yAxis.setLabel("Clients");
+        BarChart<String, Number> chart = new BarChart<>(xAxis, yAxis);
+        chart.setTitle("Répartition des clients");
+        chart.setPrefHeight(320);
+
+        XYChart.Series<String, Number> avant = new XYChart.Series<>();
+        avant.setName("Avant");
+        XYChart.Series<String, Number> apres = new XYChart.Series<>();
+        apres.setName("Après");
+        int[] hAvant = r.getHistogrammeAvant();
+        int[] hApres = r.getHistogrammeApres();
+        for (int c = 0; c < QoeSimulation.NB_CLASSES; c++) {
+            String classe = String.format("%.1f-%.1f", 1 + c * 0.5, 1.5 + c * 0.5);
+            avant.getData().add(new XYChart.Data<>(classe, hAvant[c]));
+            apres.getData().add(new XYChart.Data<>(classe, hApres[c]));
+        }
+        chart.getData().add(avant);
+        chart.getData().add(apres);
+
+        resultBox.getChildren().setAll(infoBox, chart);
+    }
+
     // =====================================================================
     // MODES (CLIENT / GENRE / ZONE)
     // =====================================================================
@@ -578,6 +814,7 @@ public class QoEController implements Initializable {
     // AFFICHAGE CLIENT / GENRE / ZONE
     // =====================================================================
     private void afficherQoeParClient(int id) {
+        suivreVue(() -> afficherQoeParClient(id), null, null, null);
         QoE q = QoeAnalyzer.analyserParClient(id);
         if (q != null) {
             afficherQoeDansInterface(q);
@@ -593,6 +830,7 @@ public class QoEController implements Initializable {
             return;
         }
 
+        suivreVue(() -> afficherQoeParGenre(g), g, null, QoeAnalyzer.getSession().getNomFichier());
         QoE q = QoeAnalyzer.analyserParGenre(g);
 
         if (q != null) {
@@ -611,6 +849,7 @@ public class QoEController implements Initializable {
         }
 
         // Analyser directement par le sexe (Male/Female)
+        suivreVue(() -> afficherQoeParSexe(sexe), sexe, null, QoeAnalyzer.getSession().getNomFichier());
         QoE q = QoeAnalyzer.analyserParGenre(sexe);
 
         if (q != null) {
@@ -628,6 +867,7 @@ public class QoEController implements Initializable {
         }
 
         // Analyser les données par genre et sexe
+        suivreVue(() -> afficherQoeParGenreEtSexe(genre, sexe), sexe, null, null);
         QoE q = analyserParGenreEtSexe(genre, sexe);
 
         if (q != null) {
@@ -641,50 +881,26 @@ public class QoEController implements Initializable {
     }
 
     /**
-     * Analyser les données QoE par genre et sexe
+     * Analyser les données QoE par genre et sexe (cube QoE, tous fichiers)
      * Note: Dans la base de données, le sexe est stocké dans la colonne GENRE
      */
     private QoE analyserParGenreEtSexe(String genre, String sexe) {
-        String sql = """
-            SELECT 
-                AVG(q.SATISFACTION_QOE) as sat,
-                AVG(q.SERVICE_QOE) as srv,
-                AVG(q.PRIX_QOE) as prix,
-                AVG(q.CONTRAT_QOE) as ctr,
-                AVG(q.LIFETIME_QOE) as life,
-                AVG(q.QOE_GLOBAL) as global,
-                AVG(q.LATENCE_MOY) as lat,
-                AVG(q.JITTER_MOY) as jit,
-                AVG(q.PERTE_MOY) as perte,
-                AVG(q.BANDE_PASSANTE_MOY) as bp
-            FROM QOE q
-            JOIN CLIENT c ON q.ID_CLIENT = c.ID_CLIENT
-            WHERE c.GENRE = ?
-        """;
-
-        try (Connection conn = DBConnection.getConnection();
-             PreparedStatement ps = conn.prepareStatement(sql)) {
-
-            ps.setString(1, sexe);  // Utiliser sexe directement car GENRE contient Male/Female
-            ResultSet rs = ps.executeQuery();
-
-            if (rs.next() && rs.getDouble("global") > 0) {
-                QoE qoe = new QoE();
-                qoe.setSatisfactionQoe(rs.getDouble("sat"));
-                qoe.setServiceQoe(rs.getDouble("srv"));
-                qoe.setPrixQoe(rs.getDouble("prix"));
-                qoe.setContratQoe(rs.getDouble("ctr"));
-                qoe.setLifetimeQoe(rs.getDouble("life"));
-                qoe.setQoeGlobal(rs.getDouble("global"));
-                qoe.setLatenceMoy((int) rs.getDouble("lat"));
-                qoe.setJitterMoy((int) rs.getDouble("jit"));
-                qoe.setPerteMoy(rs.getDouble("perte"));
-                qoe.setBandePassanteMoy((int) rs.getDouble("bp"));
-                return qoe;
-            }
-
-        } catch (Exception e) {
-            e.printStackTrace();
+        // Utiliser sexe directement car GENRE contient Male/Female
+        QoeCube.Agregat a = QoeCube.get().agreger(sexe, null, null);
+
+        if (a.moyenne(QoeCube.Composante.GLOBAL) > 0) {
+            QoE qoe = new QoE();
+            qoe.setSatisfactionQoe(a.moyenne(QoeCube.Composante.SATISFACTION));
+            qoe.setServiceQoe(a.moyenne(QoeCube.Composante.SERVICE));
+            qoe.setPrixQoe(a.moyenne(QoeCube.Composante.PRIX));
+            qoe.setContratQoe(a.moyenne(QoeCube.Composante.CONTRAT));
+            qoe.setLifetimeQoe(a.moyenne(QoeCube.Composante.LIFETIME));
+            qoe.setQoeGlobal(a.moyenne(QoeCube.Composante.GLOBAL));
+            qoe.setLatenceMoy((int) a.moyenne(QoeCube.Composante.LATENCE));
+            qoe.setJitterMoy((int) a.moyenne(QoeCube.Composante.JITTER));
+            qoe.setPerteMoy(a.moyenne(QoeCube.Composante.PERTE));
+            qoe.setBandePassanteMoy((int) a.moyenne(QoeCube.Composante.BANDE_PASSANTE));
+            return qoe;
         }
 
         return null;
@@ -699,6 +915,7 @@ public class QoEController implements Initializable {
         currentZoneFilter = z;
         mapTitleLabel.setText("CARTE GÉOGRAPHIQUE - " + z.toUpperCase());
 
+        suivreVue(() -> afficherQoeParZone(z), null, null, QoeAnalyzer.getSession().getNomFichier());
         QoE q = QoeAnalyzer.analyserParZone(z);
         if (q != null) {
             afficherQoeDansInterface(q);
@@ -718,18 +935,16 @@ public class QoEController implements Initializable {
 
         ObservableList<String> genres = genreCombo.getItems();
 
-        boolean hasData = false;
+        // Une analyse par genre (cube QoE), pour le test et le graphique
+        Map<String, QoE> qoeParGenre = new LinkedHashMap<>();
         for (String genre : genres) {
             if (genre != null && !genre.trim().isEmpty()) {
                 QoE qoe = QoeAnalyzer.analyserParGenre(genre);
-                if (qoe != null && qoe.getQoeGlobal() > 0) {
-                    hasData = true;
-                    break;
-                }
+                if (qoe != null && qoe.getQoeGlobal() > 0) qoeParGenre.put(genre, qoe);
             }
         }
 
-        if (!hasData) {
+        if (qoeParGenre.isEmpty()) {
             VBox noDataBox = new VBox(16);
             noDataBox.setAlignment(Pos.CENTER);
             noDataBox.setStyle("-fx-padding: 80;");
@@ -774,14 +989,9 @@ public class QoEController implements Initializable {
         XYChart.Series<String, Number> serie = new XYChart.Series<>();
         serie.setName("QoE Global");
 
-        for (String genre : genres) {
-            if (genre != null && !genre.trim().isEmpty()) {
-                QoE qoe = QoeAnalyzer.analyserParGenre(genre);
-                if (qoe != null && qoe.getQoeGlobal() > 0) {
-                    XYChart.Data<String, Number> data = new XYChart.Data<>(genre, qoe.getQoeGlobal());
-                    serie.getData().add(data);
-                }
-            }
+        for (Map.Entry<String, QoE> e : qoeParGenre.entrySet()) {
+            XYChart.Data<String, Number> data = new XYChart.Data<>(e.getKey(), e.getValue().getQoeGlobal());
+            serie.getData().add(data);
         }
 
         chart.getData().add(serie);
@@ -1079,6 +1289,7 @@ public class QoEController implements Initializable {
     }
 
     private void resetMetrics() {
+        vueCourante = null;
         satisfactionLabel.setText("—");
         videoQualityLabel.setText("—");
         audioQualityLabel.setText("—");
@@ -1179,6 +1390,7 @@ public class QoEController implements Initializable {
         public double getQoeGlobal() { return qoeGlobal.get(); }
     }
     private void afficherQoeGlobal() {
+        suivreVue(this::afficherQoeGlobal, null, null, null);
         QoE q = QoeAnalyzer.analyserQoEGlobal();
         if (q != null) {
             afficherQoeDansInterface(q);
@@ -2,10 +2,8 @@ package com.ensah.qoe.Controller;
 
 import com.ensah.qoe.Models.Qos;
 import com.ensah.qoe.Services.QosAnalyzer;
-import com.ensah.qoe.Services.QosInsertService;
+import com.ensah.qoe.Services.QosImportPipeline;
 import com.ensah.qoe.Services.QosZoneService;
-import com.ensah.qoe.Services.FichierService;
-import javafx.application.Platform;
 import javafx.concurrent.Task;
 import javafx.fxml.FXML;
 import javafx.scene.chart.LineChart;
@@ -13,12 +11,14 @@ import javafx.scene.chart.XYChart;
 import javafx.scene.control.*;
 import javafx.stage.FileChooser;
 
-import java.io.*;
+import java.io.File;
 import java.util.List;
 
 public class QoSController {
 
     @FXML private Button importButton;
+    @FXML private ProgressBar importProgress;
+    @FXML private Label importStatusLabel;
     @FXML private ComboBox<String> zoneCombo;
     @FXML private Label latenceLabel;
     @FXML private Label jitterLabel;
@@ -46,90 +46,65 @@ public class QoSController {
 
         FileChooser fc = new FileChooser();
         fc.setTitle("Importer fichier QoS CSV");
-        fc.getExtensionFilters().add(new FileChooser.ExtensionFilter("CSV Files", "*.csv"));
+        fc.getExtensionFilters().add(new FileChooser.ExtensionFilter("CSV Files", "*.csv", "*.gz", "*.zip"));
 
         File file = fc.showOpenDialog(importButton.getScene().getWindow());
         if (file == null) return;
 
         String filename = file.getName();
 
-        if (FichierService.fichierExiste(filename)) {
-            Alert a = new Alert(Alert.AlertType.INFORMATION,
-                    "Ce fichier a déjà été importé. Les données ne seront pas réinsérées.");
-            a.show();
-            rafraichirZones();
-            return;
-        }
-
-        Task<Void> task = new Task<>() {
+        // Fichier déjà importé : seules les lignes ajoutées depuis sont lues
+        Task<QosAnalyzer.Bilan> task = new Task<>() {
             @Override
-            protected Void call() {
+            protected QosAnalyzer.Bilan call() throws Exception {
 
                 System.out.println(">>> IMPORT CSV commencé");
 
-                try {
-                    // 1) Lancer Python
-                    System.out.println(">>> Lancement script Python...");
-                    ProcessBuilder pb = new ProcessBuilder(
-                            "python",
-                            "src/main/resources/python/geocode_dynamic.py",
-                            file.getAbsolutePath()
-                    );
-                    pb.redirectErrorStream(true);
-                    Process process = pb.start();
-
-                    BufferedReader reader = new BufferedReader(
-                            new InputStreamReader(process.getInputStream())
-                    );
-
-                    String line;
-                    while ((line = reader.readLine()) != null) {
-                        System.out.println("[PY] " + line);
-                    }
-
-                    int exitCode = process.waitFor();
-                    System.out.println(">>> Script Python terminé avec code: " + exitCode);
-
-                } catch (Exception e) {
-                    System.out.println(">>> ERREUR pendant Python:");
-                    e.printStackTrace();
-                }
-
-                // 2) Analyse QoS
-                System.out.println(">>> Analyse QoS en cours...");
-                List<Qos> liste = QosAnalyzer.analyserQoSFichier(
-                        file.getAbsolutePath(),
-                        filename
-                );
-                System.out.println(">>> Analyse QoS terminée, nb groupes: " + liste.size());
-
-                // 3) Insertion DB
-                try {
-                    System.out.println(">>> Insertion DB...");
-                    QosInsertService.insertListe(liste);
-                    System.out.println(">>> Insertion DB terminée !");
-                } catch (Exception e) {
-                    System.out.println(">>> ERREUR insertion DB:");
-                    e.printStackTrace();
-                }
-
-                // 4) Retour UI
-                Platform.runLater(() -> {
-                    System.out.println(">>> Rafraîchissement UI...");
-                    rafraichirZones();
-                    Alert a = new Alert(Alert.AlertType.INFORMATION, "Fichier importé avec succès !");
-                    a.show();
-                    System.out.println(">>> UI OK !");
+                // Lecture → analyse/géocodage → agrégation → insertion DB, en parallèle
+                return QosImportPipeline.importer(file.getAbsolutePath(), filename, (progression, message) -> {
+                    updateProgress(progression, 1);
+                    updateMessage(message);
                 });
-
-                return null;
             }
         };
 
+        importProgress.setVisible(true);
+        importProgress.progressProperty().bind(task.progressProperty());
+        importStatusLabel.textProperty().bind(task.messageProperty());
+        importButton.setDisable(true);
+
+        task.setOnSucceeded(e -> {
+            finImport();
+            QosAnalyzer.Bilan bilan = task.getValue();
+            Alert a = (bilan == null || bilan.getNbGroupes() == 0)
+                    ? new Alert(Alert.AlertType.INFORMATION,
+                            "Aucune nouvelle donnée : contenu déjà importé ou fichier illisible.")
+                    : bilan.estAjout()
+                    ? new Alert(Alert.AlertType.INFORMATION, bilan.getNbLignes()
+                            + " lignes ajoutées, fusionnées dans " + bilan.getNbInseres() + " groupes.")
+                    : new Alert(Alert.AlertType.INFORMATION, "Fichier importé avec succès !");
+            a.show();
+            System.out.println(">>> UI OK !");
+        });
+
+        task.setOnFailed(e -> {
+            System.out.println(">>> ERREUR import:");
+            task.getException().printStackTrace();
+            finImport();
+            new Alert(Alert.AlertType.ERROR, "Échec de l'import : " + task.getException().getMessage()).show();
+        });
 
         new Thread(task).start();
     }
 
+    private void finImport() {
+        importProgress.progressProperty().unbind();
+        importStatusLabel.textProperty().unbind();
+        importProgress.setVisible(false);
+        importButton.setDisable(false);
+        rafraichirZones();
+    }
+
     @FXML
     private void afficherInfosZone() {
 
@@ -156,15 +131,16 @@ public class QoSController {
 
         countLabel.setText(historique.size() + " mesures regroupées");
 
-        tracerGraphique(historique);
+        tracerGraphique(zone);
     }
 
-    private void tracerGraphique(List<Qos> historique) {
+    // Résolution la plus fine qui tient dans la largeur du graphique
+    private void tracerGraphique(String zone) {
         qosLineChart.getData().clear();
         XYChart.Series<String, Number> serie = new XYChart.Series<>();
         serie.setName("MOS");
-        for (Qos q : historique) {
-            serie.getData().add(new XYChart.Data<>(q.getTranche12h(), q.getMos()));
+        for (Qos q : QosZoneService.getQosPourAffichage(zone, qosLineChart.getWidth())) {
+            serie.getData().add(new XYChart.Data<>(q.getTranche(), q.getMos()));
         }
         qosLineChart.getData().add(serie);
     }
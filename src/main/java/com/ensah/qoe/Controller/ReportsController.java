@@ -1,6 +1,7 @@
 package com.ensah.qoe.Controller;
 
-import com.ensah.qoe.Models.Qos;
+import com.ensah.qoe.Services.QosColonnes;
+import com.ensah.qoe.Services.QosColonnes.Mesure;
 import com.ensah.qoe.Services.QosZoneService;
 import com.ensah.qoe.Services.QosAnalyzer;
 import javafx.collections.FXCollections;
@@ -45,9 +46,8 @@ public class ReportsController implements Initializable {
     @FXML private TableColumn<QosData, String> timeColumn;
 
     private ObservableList<QosData> qosDataList;
-    private final QosZoneService zoneService = new QosZoneService();
-    private List<Qos> allQosData = new ArrayList<>();
-    private Map<String, List<Qos>> zoneQosMap = new HashMap<>();
+    // Groupes 12 h de toutes les zones, en colonnes (partagés entre écrans)
+    private QosColonnes donnees = QosColonnes.get();
     private List<GeneratedReport> generatedReports = new ArrayList<>();
 
     @Override
@@ -61,17 +61,9 @@ public class ReportsController implements Initializable {
 
     private void loadQoSData() {
         try {
-            List<String> zones = zoneService.getZones();
-            allQosData.clear();
-            zoneQosMap.clear();
-
-            for (String zone : zones) {
-                List<Qos> zoneData = QosZoneService.getQosByZone(zone);
-                zoneQosMap.put(zone, zoneData);
-                allQosData.addAll(zoneData);
-            }
+            donnees = QosColonnes.get();
 
-            System.out.println("✅ Chargé " + allQosData.size() + " enregistrements QoS pour reporting");
+            System.out.println("✅ Chargé " + donnees.taille() + " enregistrements QoS pour reporting");
 
             // Convertir pour le tableau
             convertToTableData();
@@ -85,15 +77,15 @@ public class ReportsController implements Initializable {
     private void convertToTableData() {
         qosDataList = FXCollections.observableArrayList();
 
-        for (Qos qos : allQosData) {
+        for (int i = 0; i < donnees.taille(); i++) {
             QosData data = new QosData(
-                    qos.getZone(),
-                    qos.getLatence(),
-                    qos.getJitter(),
-                    qos.getPerte(),
-                    qos.getBandePassante(),
-                    qos.getMos(),
-                    qos.getTranche12h()
+                    donnees.getZone(i),
+                    donnees.get(Mesure.LATENCE, i),
+                    donnees.get(Mesure.JITTER, i),
+                    donnees.get(Mesure.PERTE, i),
+                    donnees.get(Mesure.BANDE_PASSANTE, i),
+                    donnees.get(Mesure.MOS, i),
+                    donnees.getTranche(i)
             );
             qosDataList.add(data);
         }
@@ -115,8 +107,7 @@ public class ReportsController implements Initializable {
         );
 
         // Zones disponibles
-        List<String> zones = zoneService.getZones();
-        zoneCombo.getItems().addAll(zones);
+        zoneCombo.getItems().addAll(donnees.getZones());
         zoneCombo.getItems().add(0, "Toutes les zones");
 
         // Formats d'export
@@ -171,21 +162,14 @@ public class ReportsController implements Initializable {
     private void setupMOSTrendChart() {
         mosTrendChart.getData().clear();
 
-        if (allQosData.isEmpty()) return;
-
-        // Grouper par intervalle de temps
-        Map<String, List<Double>> timeGroups = new TreeMap<>();
-        for (Qos qos : allQosData) {
-            String time = qos.getTranche12h();
-            timeGroups.computeIfAbsent(time, k -> new ArrayList<>()).add(qos.getMos());
-        }
+        if (donnees.estVide()) return;
 
+        // MOS moyen par intervalle de temps, à la résolution qui tient dans le graphique
         XYChart.Series<String, Number> mosSeries = new XYChart.Series<>();
         mosSeries.setName("MOS Moyen");
 
-        for (Map.Entry<String, List<Double>> entry : timeGroups.entrySet()) {
-            double avg = entry.getValue().stream().mapToDouble(Double::doubleValue).average().orElse(0);
-            mosSeries.getData().add(new XYChart.Data<>(entry.getKey(), avg));
+        for (Map.Entry<String, Double> entry : QosZoneService.getTendanceMos(mosTrendChart.getWidth()).entrySet()) {
+            mosSeries.getData().add(new XYChart.Data<>(entry.getKey(), entry.getValue()));
         }
 
         mosTrendChart.getData().add(mosSeries);
@@ -194,24 +178,17 @@ public class ReportsController implements Initializable {
     private void setupQualityDistributionChart() {
         qualityDistributionChart.getData().clear();
 
-        if (allQosData.isEmpty()) return;
+        if (donnees.estVide()) return;
 
         XYChart.Series<String, Number> series = new XYChart.Series<>();
         series.setName("Distribution");
 
-        int excellent = 0, good = 0, fair = 0, poor = 0;
-        for (Qos qos : allQosData) {
-            double mos = qos.getMos();
-            if (mos >= 4.0) excellent++;
-            else if (mos >= 3.0) good++;
-            else if (mos >= 2.0) fair++;
-            else poor++;
-        }
+        int[] repartition = donnees.repartitionMos(QosColonnes.TOUTES);
 
-        series.getData().add(new XYChart.Data<>("Excellent\n(MOS ≥ 4)", excellent));
-        series.getData().add(new XYChart.Data<>("Bon\n(MOS 3-4)", good));
-        series.getData().add(new XYChart.Data<>("Moyen\n(MOS 2-3)", fair));
-        series.getData().add(new XYChart.Data<>("Mauvais\n(MOS < 2)", poor));
+        series.getData().add(new XYChart.Data<>("Excellent\n(MOS ≥ 4)", repartition[0]));
+        series.getData().add(new XYChart.Data<>("Bon\n(MOS 3-4)", repartition[1]));
+        series.getData().add(new XYChart.Data<>("Moyen\n(MOS 2-3)", repartition[2]));
+        series.getData().add(new XYChart.Data<>("Mauvais\n(MOS < 2)", repartition[3]));
 
         qualityDistributionChart.getData().add(series);
     }
@@ -219,7 +196,7 @@ public class ReportsController implements Initializable {
     private void setupZoneComparisonChart() {
         zoneComparisonChart.getData().clear();
 
-        if (zoneQosMap.isEmpty()) return;
+        if (donnees.estVide()) return;
 
         XYChart.Series<String, Number> latencySeries = new XYChart.Series<>();
         latencySeries.setName("Latence Moyenne (ms)");
@@ -227,27 +204,25 @@ public class ReportsController implements Initializable {
         XYChart.Series<String, Number> mosSeries = new XYChart.Series<>();
         mosSeries.setName("MOS Moyen");
 
-        for (Map.Entry<String, List<Qos>> entry : zoneQosMap.entrySet()) {
-            String zone = entry.getKey();
-            List<Qos> zoneData = entry.getValue();
+        List<String> zones = donnees.getZones();
+        double[] avgLatency = donnees.moyennesParZone(Mesure.LATENCE);
+        double[] avgMOS = donnees.moyennesParZone(Mesure.MOS);
 
-            if (!zoneData.isEmpty()) {
-                double avgLatency = zoneData.stream().mapToDouble(Qos::getLatence).average().orElse(0);
-                double avgMOS = zoneData.stream().mapToDouble(Qos::getMos).average().orElse(0);
+        for (int z = 0; z < zones.size(); z++) {
+            String zone = zones.get(z);
 
-                // Tronquer le nom de zone si trop long
-                String displayZone = zone.length() > 15 ? zone.substring(0, 15) + "..." : zone;
+            // Tronquer le nom de zone si trop long
+            String displayZone = zone.length() > 15 ? zone.substring(0, 15) + "..." : zone;
 
-                latencySeries.getData().add(new XYChart.Data<>(displayZone, avgLatency));
-                mosSeries.getData().add(new XYChart.Data<>(displayZone, avgMOS));
-            }
+            latencySeries.getData().add(new XYChart.Data<>(displayZone, avgLatency[z]));
+            mosSeries.getData().add(new XYChart.Data<>(displayZone, avgMOS[z]));
         }
 
         zoneComparisonChart.getData().addAll(latencySeries, mosSeries);
     }
 
     private void updateStatistics() {
-        if (allQosData.isEmpty()) {
+        if (donnees.estVide()) {
             totalReportsLabel.setText("0");
             dataProcessedLabel.setText("0 données");
             avgMOSLabel.setText("0.00");
@@ -259,11 +234,11 @@ public class ReportsController implements Initializable {
         totalReportsLabel.setText(String.valueOf(generatedReports.size()));
 
         // Données traitées
-        dataProcessedLabel.setText(allQosData.size() + " mesures");
+        dataProcessedLabel.setText(donnees.taille() + " mesures");
 
         // Calcul des moyennes
-        double avgMOS = allQosData.stream().mapToDouble(Qos::getMos).average().orElse(0);
-        double avgLatency = allQosData.stream().mapToDouble(Qos::getLatence).average().orElse(0);
+        double avgMOS = donnees.moyenne(Mesure.MOS, QosColonnes.TOUTES);
+        double avgLatency = donnees.moyenne(Mesure.LATENCE, QosColonnes.TOUTES);
 
         avgMOSLabel.setText(String.format("%.2f", avgMOS));
         avgLatencyLabel.setText(String.format("%.1f ms", avgLatency));
@@ -275,11 +250,15 @@ public class ReportsController implements Initializable {
         String zone = zoneCombo.getValue();
         String format = formatCombo.getValue();
 
-        if (allQosData.isEmpty()) {
+        if (donnees.estVide()) {
             showAlert("Données manquantes", "Aucune donnée QoS disponible pour générer un rapport.", Alert.AlertType.WARNING);
             return;
         }
 
+        // Filtrer les données par zone si nécessaire
+        QosColonnes reportData = donnees;
+        int codeZone = "Toutes les zones".equals(zone) ? QosColonnes.TOUTES : reportData.code(zone);
+
         ProgressDialog progress = new ProgressDialog();
         progress.show();
 
@@ -289,16 +268,10 @@ public class ReportsController implements Initializable {
                 updateProgress(0.1, 1.0);
 
                 try {
-                    // Filtrer les données par zone si nécessaire
-                    List<Qos> reportData = allQosData;
-                    if (!"Toutes les zones".equals(zone) && zone != null) {
-                        reportData = zoneQosMap.getOrDefault(zone, new ArrayList<>());
-                    }
-
                     updateProgress(0.3, 1.0);
 
                     // Générer le rapport selon le format
-                    String fileName = generateReportFile(reportType, zone, format, reportData);
+                    String fileName = generateReportFile(reportType, zone, format, reportData, codeZone);
 
                     updateProgress(0.9, 1.0);
 
@@ -338,24 +311,29 @@ public class ReportsController implements Initializable {
         new Thread(reportTask).start();
     }
 
-    private String generateReportFile(String reportType, String zone, String format, List<Qos> data) throws Exception {
+    private String generateReportFile(String reportType, String zone, String format,
+                                      QosColonnes data, int codeZone) throws Exception {
         String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss"));
         String fileName = "Rapport_QoS_" + reportType.replaceAll("[^a-zA-Z0-9]", "_") + "_" + timestamp;
         String downloadsDir = System.getProperty("user.home") + "/Downloads/";
 
         switch (format.toUpperCase()) {
             case "CSV":
-                return generateCSVReport(downloadsDir + fileName + ".csv", data);
+                return generateCSVReport(downloadsDir + fileName + ".csv", data, codeZone);
             case "HTML":
-                return generateHTMLReport(downloadsDir + fileName + ".html", reportType, zone, data);
+                return generateHTMLReport(downloadsDir + fileName + ".html", reportType, zone, data, codeZone);
             case "TXT":
-                return generateTextReport(downloadsDir + fileName + ".txt", reportType, zone, data);
+                return generateTextReport(downloadsDir + fileName + ".txt", reportType, zone, data, codeZone);
             default:
-                return generateTextReport(downloadsDir + fileName + ".txt", reportType, zone, data);
+                return generateTextReport(downloadsDir + fileName + ".txt", reportType, zone, data, codeZone);
         }
     }
 
-    private String generateTextReport(String filePath, String reportType, String zone, List<Qos> data) throws IOException {
+    private String generateTextReport(String filePath, String reportType, String zone,
+                                      QosColonnes data, int codeZone) throws IOException {
+        int debut = data.debut(codeZone);
+        int taille = data.taille(codeZone);
+
         try (PrintWriter writer = new PrintWriter(new FileWriter(filePath))) {
             writer.println("=".repeat(80));
             writer.println("RAPPORT QOS/QOE - " + reportType.toUpperCase());
@@ -363,42 +341,38 @@ public class ReportsController implements Initializable {
             writer.println();
             writer.println("Date de génération: " + LocalDateTime.now().format(DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss")));
             writer.println("Zone: " + (zone == null ? "Toutes" : zone));
-            writer.println("Nombre d'enregistrements: " + data.size());
+            writer.println("Nombre d'enregistrements: " + taille);
             writer.println();
 
             writer.println("-".repeat(80));
             writer.println("STATISTIQUES GLOBALES");
             writer.println("-".repeat(80));
 
-            if (!data.isEmpty()) {
-                double avgMOS = data.stream().mapToDouble(Qos::getMos).average().orElse(0);
-                double avgLatency = data.stream().mapToDouble(Qos::getLatence).average().orElse(0);
-                double avgJitter = data.stream().mapToDouble(Qos::getJitter).average().orElse(0);
-                double avgPacketLoss = data.stream().mapToDouble(Qos::getPerte).average().orElse(0);
-                double avgBandwidth = data.stream().mapToDouble(Qos::getBandePassante).average().orElse(0);
-
-                writer.printf("MOS moyen: %.2f / 5.0\n", avgMOS);
-                writer.printf("Latence moyenne: %.2f ms\n", avgLatency);
+            if (taille > 0) {
+                double avgMOS = data.moyenne(Mesure.MOS, codeZone);
+                double avgLatency = data.moyenne(Mesure.LATENCE, codeZone);
+                double avgJitter = data.moyenne(Mesure.JITTER, codeZone);
+                double avgPacketLoss = data.moyenne(Mesure.PERTE, codeZone);
+                double avgBandwidth = data.moyenne(Mesure.BANDE_PASSANTE, codeZone);
+
+                writer.printf("MOS moyen: %.2f / 5.0 (min %.2f, max %.2f)\n", avgMOS,
+                        data.min(Mesure.MOS, codeZone), data.max(Mesure.MOS, codeZone));
+                writer.printf("Latence moyenne: %.2f ms (médiane %.2f ms, P95 %.2f ms)\n", avgLatency,
+                        data.percentile(Mesure.LATENCE, codeZone, 50), data.percentile(Mesure.LATENCE, codeZone, 95));
                 writer.printf("Jitter moyen: %.2f ms\n", avgJitter);
                 writer.printf("Perte moyenne: %.2f %%\n", avgPacketLoss);
                 writer.printf("Bande passante moyenne: %.2f Mbps\n", avgBandwidth);
                 writer.println();
 
                 // Distribution qualité
-                int excellent = 0, good = 0, fair = 0, poor = 0;
-                for (Qos qos : data) {
-                    double mos = qos.getMos();
-                    if (mos >= 4.0) excellent++;
-                    else if (mos >= 3.0) good++;
-                    else if (mos >= 2.0) fair++;
-                    else poor++;
-                }
+                int[] repartition = data.repartitionMos(codeZone);
+                int excellent = repartition[0], good = repartition[1], fair = repartition[2], poor = repartition[3];
 
                 writer.println("DISTRIBUTION DE QUALITÉ:");
-                writer.printf("  Excellent (MOS ≥ 4.0): %d (%.1f%%)\n", excellent, (excellent * 100.0 / data.size()));
-                writer.printf("  Bon (3.0 ≤ MOS < 4.0): %d (%.1f%%)\n", good, (good * 100.0 / data.size()));
-                writer.printf("  Moyen (2.0 ≤ MOS < 3.0): %d (%.1f%%)\n", fair, (fair * 100.0 / data.size()));
-                writer.printf("  Mauvais (MOS < 2.0): %d (%.1f%%)\n", poor, (poor * 100.0 / data.size()));
+                writer.printf("  Excellent (MOS ≥ 4.0): %d (%.1f%%)\n", excellent, (excellent * 100.0 / taille));
+                writer.printf("  Bon (3.0 ≤ MOS < 4.0): %d (%.1f%%)\n", good, (good * 100.0 / taille));
+                writer.printf("  Moyen (2.0 ≤ MOS < 3.0): %d (%.1f%%)\n", fair, (fair * 100.0 / taille));
+                writer.printf("  Mauvais (MOS < 2.0): %d (%.1f%%)\n", poor, (poor * 100.0 / taille));
             }
 
             writer.println();
@@ -406,35 +380,35 @@ public class ReportsController implements Initializable {
             writer.println("DONNÉES DÉTAILLÉES (10 premiers enregistrements)");
             writer.println("-".repeat(80));
 
-            int limit = Math.min(data.size(), 10);
-            for (int i = 0; i < limit; i++) {
-                Qos qos = data.get(i);
+            int limit = Math.min(taille, 10);
+            for (int i = debut; i < debut + limit; i++) {
                 writer.printf("Zone: %s | MOS: %.2f | Latence: %.2f ms | Bande passante: %.2f Mbps\n",
-                        qos.getZone(), qos.getMos(), qos.getLatence(), qos.getBandePassante());
+                        data.getZone(i), data.get(Mesure.MOS, i), data.get(Mesure.LATENCE, i),
+                        data.get(Mesure.BANDE_PASSANTE, i));
             }
 
-            if (data.size() > 10) {
-                writer.println("... (" + (data.size() - 10) + " enregistrements supplémentaires)");
+            if (taille > 10) {
+                writer.println("... (" + (taille - 10) + " enregistrements supplémentaires)");
             }
         }
 
         return filePath;
     }
 
-    private String generateCSVReport(String filePath, List<Qos> data) throws IOException {
+    private String generateCSVReport(String filePath, QosColonnes data, int codeZone) throws IOException {
         try (PrintWriter writer = new PrintWriter(new FileWriter(filePath))) {
             writer.println("Zone,Latence (ms),Jitter (ms),Perte (%),BandePassante (Mbps),MOS,Score Signal,DateHeure");
 
-            for (Qos qos : data) {
+            for (int i = data.debut(codeZone); i < data.fin(codeZone); i++) {
                 writer.printf("%s,%.2f,%.2f,%.2f,%.2f,%.2f,%.2f,%s\n",
-                        qos.getZone(),
-                        qos.getLatence(),
-                        qos.getJitter(),
-                        qos.getPerte(),
-                        qos.getBandePassante(),
-                        qos.getMos(),
-                        qos.getSignalScore(),
-                        qos.getTranche12h()
+                        data.getZone(i),
+                        data.get(Mesure.LATENCE, i),
+                        data.get(Mesure.JITTER, i),
+                        data.get(Mesure.PERTE, i),
+                        data.get(Mesure.BANDE_PASSANTE, i),
+                        data.get(Mesure.MOS, i),
+                        data.get(Mesure.SIGNAL, i),
+                        data.getTranche(i)
                 );
             }
         }
@@ -442,7 +416,8 @@ public class ReportsController implements Initializable {
         return filePath;
     }
 
-    private String generateHTMLReport(String filePath, String reportType, String zone, List<Qos> data) throws IOException {
+    private String generateHTMLReport(String filePath, String reportType, String zone,
+                                      QosColonnes data, int codeZone) throws IOException {
         try (PrintWriter writer = new PrintWriter(new FileWriter(filePath))) {
             writer.println("<!DOCTYPE html>");
             writer.println("<html lang='fr'>");
@@ -476,11 +451,11 @@ public class ReportsController implements Initializable {
                     LocalDateTime.now().format(DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss")) + "</p>");
             writer.println("    </div>");
 
-            if (!data.isEmpty()) {
-                double avgMOS = data.stream().mapToDouble(Qos::getMos).average().orElse(0);
-                double avgLatency = data.stream().mapToDouble(Qos::getLatence).average().orElse(0);
-                double avgJitter = data.stream().mapToDouble(Qos::getJitter).average().orElse(0);
-                double avgBandwidth = data.stream().mapToDouble(Qos::getBandePassante).average().orElse(0);
+            if (data.taille(codeZone) > 0) {
+                double avgMOS = data.moyenne(Mesure.MOS, codeZone);
+                double avgLatency = data.moyenne(Mesure.LATENCE, codeZone);
+                double avgJitter = data.moyenne(Mesure.JITTER, codeZone);
+                double avgBandwidth = data.moyenne(Mesure.BANDE_PASSANTE, codeZone);
 
                 writer.println("    <div class='stats-grid'>");
                 writer.println("        <div class='stat-card'>");
@@ -517,22 +492,23 @@ public class ReportsController implements Initializable {
                 writer.println("        </thead>");
                 writer.println("        <tbody>");
 
-                for (Qos qos : data) {
+                for (int i = data.debut(codeZone); i < data.fin(codeZone); i++) {
+                    double mos = data.get(Mesure.MOS, i);
                     String qualityClass = "";
-                    if (qos.getMos() >= 4.0) qualityClass = "excellent";
-                    else if (qos.getMos() >= 3.0) qualityClass = "good";
-                    else if (qos.getMos() >= 2.0) qualityClass = "fair";
+                    if (mos >= 4.0) qualityClass = "excellent";
+                    else if (mos >= 3.0) qualityClass = "good";
+                    else if (mos >= 2.0) qualityClass = "fair";
                     else qualityClass = "poor";
 
                     writer.println("            <tr class='" + qualityClass + "'>");
-                    writer.printf("                <td>%s</td>\n", qos.getZone());
-                    writer.printf("                <td>%.2f</td>\n", qos.getLatence());
-                    writer.printf("                <td>%.2f</td>\n", qos.getJitter());
-                    writer.printf("                <td>%.2f</td>\n", qos.getPerte());
-                    writer.printf("                <td>%.2f</td>\n", qos.getBandePassante());
-                    writer.printf("                <td>%.2f</td>\n", qos.getMos());
-                    writer.printf("                <td>%.2f</td>\n", qos.getSignalScore());
-                    writer.printf("                <td>%s</td>\n", qos.getTranche12h());
+                    writer.printf("                <td>%s</td>\n", data.getZone(i));
+                    writer.printf("                <td>%.2f</td>\n", data.get(Mesure.LATENCE, i));
+                    writer.printf("                <td>%.2f</td>\n", data.get(Mesure.JITTER, i));
+                    writer.printf("                <td>%.2f</td>\n", data.get(Mesure.PERTE, i));
+                    writer.printf("                <td>%.2f</td>\n", data.get(Mesure.BANDE_PASSANTE, i));
+                    writer.printf("                <td>%.2f</td>\n", mos);
+                    writer.printf("                <td>%.2f</td>\n", data.get(Mesure.SIGNAL, i));
+                    writer.printf("                <td>%s</td>\n", data.getTranche(i));
                     writer.println("            </tr>");
                 }
 
@@ -554,6 +530,7 @@ public class ReportsController implements Initializable {
 
     @FXML
     private void refreshData() {
+        QosColonnes.actualiser();
         loadQoSData();
         setupCharts();
         updateStatistics();
@@ -562,7 +539,7 @@ public class ReportsController implements Initializable {
 
     @FXML
     private void exportData() {
-        if (allQosData.isEmpty()) {
+        if (donnees.estVide()) {
             showAlert("Données manquantes", "Aucune donnée à exporter.", Alert.AlertType.WARNING);
             return;
         }
@@ -576,7 +553,7 @@ public class ReportsController implements Initializable {
         File file = fileChooser.showSaveDialog(qosDataTable.getScene().getWindow());
         if (file != null) {
             try {
-                generateCSVReport(file.getAbsolutePath(), allQosData);
+                generateCSVReport(file.getAbsolutePath(), donnees, QosColonnes.TOUTES);
                 showAlert("Export réussi", "Données exportées vers: " + file.getAbsolutePath(), Alert.AlertType.INFORMATION);
             } catch (IOException e) {
                 showAlert("Erreur export", "Échec export: " + e.getMessage(), Alert.AlertType.ERROR);
@@ -61,7 +61,6 @@ public class UserManagementController implements Initializable {
     private int totalPages = 1;
 
     // Base de données
-    private Connection connection;
     private UserDAO userDAO;
 
     @Override
@@ -91,8 +90,10 @@ public class UserManagementController implements Initializable {
 
     private void initializeDatabaseConnection() throws SQLException {
         // Utiliser votre classe de connexion existante
-        connection = DBConnection.getConnection();
-        userDAO = new UserDAO(connection);
+        try (Connection connection = DBConnection.getConnection()) {
+            if (connection == null) throw new SQLException("Database connection not available");
+        }
+        userDAO = new UserDAO();
         System.out.println("Database connection established successfully");
     }
 
@@ -12,7 +12,7 @@ import java.util.Random;
 public class DataPreparationMOS {
 
     // 🔒 Filtre partagé (TRAIN → TEST → PREDICTION)
-    private static Normalize sharedNormalizeFilter;
+    private static volatile Normalize sharedNormalizeFilter;
 
     // ======================================================
     // 1️⃣ Chargement du CSV - CORRIGÉ
@@ -321,4 +321,9 @@ public class DataPreparationMOS {
     public static Normalize getNormalizeFilter() {
         return sharedNormalizeFilter;
     }
+
+    // Filtre d'un modèle sauvegardé (ModeleMOS), à la place d'un entraînement
+    public static void setNormalizeFilter(Normalize filter) {
+        sharedNormalizeFilter = filter;
+    }
 }
\ No newline at end of file
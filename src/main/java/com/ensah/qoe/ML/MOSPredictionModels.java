@@ -185,6 +185,12 @@ public class MOSPredictionModels {
         return currentModel;
     }
 
+    // Modèle déjà entraîné (relu depuis models/)
+    public void setModel(Classifier model, String modelType) {
+        this.currentModel = model;
+        this.modelType = modelType;
+    }
+
     public String getModelType() {
         return modelType;
     }
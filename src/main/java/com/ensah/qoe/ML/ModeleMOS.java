@@ -0,0 +1,124 @@
+package com.ensah.qoe.ML;
+
+import weka.classifiers.Classifier;
+import weka.core.Instances;
+import weka.core.SerializationHelper;
+import weka.filters.unsupervised.attribute.Normalize;
+
+import java.io.File;
+import java.io.Serializable;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+
+/**
+ * Modèle MOS entraîné, tel que sauvegardé dans models/ : classifieur,
+ * filtre de normalisation du TRAIN, header des features, métriques et
+ * statistiques MOS du dataset. Relu au démarrage, il rend la prédiction
+ * disponible sans réentraînement.
+ *
+ * Un fichier par entraînement (mos_yyyyMMdd_HHmmss.model), les
+ * MODELES_GARDES plus récents conservés. FORMAT change quand le contenu
+ * sauvegardé change : les fichiers d'un autre format sont ignorés.
+ */
+public class ModeleMOS implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final int FORMAT = 1;
+
+    private static final String MODEL_DIR = "models/";
+    private static final String PREFIXE = "mos_";
+    private static final int MODELES_GARDES = 5;
+
+    public final int format;
+    public final Date dateEntrainement = new Date();
+    public final String modelType;
+    public final Classifier model;
+    public final Normalize normalizeFilter;
+    public final Instances trainingHeader;
+
+    public final double rmse;
+    public final double mae;
+    public final double r2;
+    public final double mape;
+
+    public final int nbEchantillons;
+    public final double avgMOS;
+    public final double minMOS;
+    public final double maxMOS;
+    public final double stdMOS;
+
+    public ModeleMOS(String modelType, Classifier model, Normalize normalizeFilter, Instances trainingHeader,
+                     MOSPredictionModels.EvaluationResult metriques,
+                     int nbEchantillons, double avgMOS, double minMOS, double maxMOS, double stdMOS) {
+        this.format = FORMAT;
+        this.modelType = modelType;
+        this.model = model;
+        this.normalizeFilter = normalizeFilter;
+        this.trainingHeader = new Instances(trainingHeader, 0);
+        this.rmse = metriques.rmse;
+        this.mae = metriques.mae;
+        this.r2 = metriques.r2;
+        this.mape = metriques.mape;
+        this.nbEchantillons = nbEchantillons;
+        this.avgMOS = avgMOS;
+        this.minMOS = minMOS;
+        this.maxMOS = maxMOS;
+        this.stdMOS = stdMOS;
+    }
+
+    /** Type et date d'entraînement (RandomForest_20250101_120000), repris dans le nom du fichier. */
+    public String getVersion() {
+        return modelType + "_" + new SimpleDateFormat("yyyyMMdd_HHmmss").format(dateEntrainement);
+    }
+
+    /** Écrit le modèle dans un nouveau fichier et supprime les plus anciens. */
+    public String sauvegarder() throws Exception {
+        File dossier = new File(MODEL_DIR);
+        if (!dossier.exists()) dossier.mkdirs();
+
+        String nom = MODEL_DIR + PREFIXE + new SimpleDateFormat("yyyyMMdd_HHmmss").format(dateEntrainement) + ".model";
+        // Écrit à côté puis renommé : un démarrage ne lit jamais un fichier à moitié écrit
+        File temp = new File(nom + ".tmp");
+        SerializationHelper.write(temp.getPath(), this);
+        File cible = new File(nom);
+        if (cible.exists()) cible.delete();
+        if (!temp.renameTo(cible)) throw new Exception("Renommage impossible : " + temp);
+
+        File[] fichiers = fichiers();
+        for (int i = MODELES_GARDES; i < fichiers.length; i++) {
+            fichiers[i].delete();
+        }
+        return nom;
+    }
+
+    /** Modèle sauvegardé le plus récent lisible, ou null. */
+    public static ModeleMOS chargerDernier() {
+        for (File f : fichiers()) {
+            try {
+                Object o = SerializationHelper.read(f.getPath());
+                if (!(o instanceof ModeleMOS)) continue;
+                ModeleMOS m = (ModeleMOS) o;
+                if (m.format != FORMAT || m.model == null || m.normalizeFilter == null || m.trainingHeader == null) {
+                    System.out.println("⚠ Modèle MOS ignoré (format " + m.format + ") : " + f);
+                    continue;
+                }
+                System.out.println("📥 Modèle MOS chargé : " + m.modelType + " du " + m.dateEntrainement + " (" + f + ")");
+                return m;
+            } catch (Exception e) {
+                System.out.println("⚠ Modèle MOS illisible " + f + " : " + e.getMessage());
+            }
+        }
+        return null;
+    }
+
+    // Fichiers mos_*.model, du plus récent au plus ancien (date dans le nom)
+    private static File[] fichiers() {
+        File[] fichiers = new File(MODEL_DIR).listFiles((d, n) -> n.startsWith(PREFIXE) && n.endsWith(".model"));
+        if (fichiers == null) return new File[0];
+        Arrays.sort(fichiers, Comparator.comparing(File::getName).reversed());
+        return fichiers;
+    }
+}
@@ -0,0 +1,221 @@
+package com.ensah.qoe.ML;
+
+import weka.classifiers.AbstractClassifier;
+import weka.classifiers.Classifier;
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.Utils;
+import weka.filters.Filter;
+import weka.filters.unsupervised.attribute.Normalize;
+
+import java.util.Arrays;
+
+/**
+ * Prédiction d'une ligne sans Instances ni Filter.useFilter : les
+ * indices des features et les bornes du filtre Normalize sont extraits
+ * une fois, après l'entraînement.
+ *
+ * Chaque thread a son tampon (entrées brutes, valeurs normalisées et une
+ * instance qui partage ce tableau) : une prédiction n'alloue rien avant
+ * l'appel au classifieur.
+ *
+ * Normalize avec setIgnoreClass(true) normalise aussi la classe : une
+ * classe numérique est alors prédite dans [0 ; 1], classer() la ramène
+ * à l'échelle du TRAIN (MOS de 1 à 5).
+ *
+ * Utilisation : double[] e = p.entrees(); e[0] = …; p.classer();
+ */
+public class PredicteurCompile {
+
+    private final Classifier model;
+    private final Instances header;
+    // Indice dans le header de chaque entrée, -1 si la feature n'y est pas
+    private final int[] indices;
+    // Par attribut du header : normalisé, minimum et étendue du TRAIN
+    private final boolean[] normalise;
+    private final double[] min;
+    private final double[] etendue;
+    private final double scale;
+    private final double translation;
+    // Classe numérique normalisée par le filtre (sinon NaN) : minimum et étendue du TRAIN
+    private final double classeMin;
+    private final double classeEtendue;
+
+    private final ThreadLocal<Tampon> tampons = ThreadLocal.withInitial(this::nouveauTampon);
+
+    private PredicteurCompile(Classifier model, Instances header, int[] indices, boolean[] normalise,
+                              double[] min, double[] etendue, double scale, double translation,
+                              double classeMin, double classeEtendue) {
+        this.model = model;
+        this.header = header;
+        this.indices = indices;
+        this.normalise = normalise;
+        this.min = min;
+        this.etendue = etendue;
+        this.scale = scale;
+        this.translation = translation;
+        this.classeMin = classeMin;
+        this.classeEtendue = classeEtendue;
+    }
+
+    /**
+     * Compile le chemin de prédiction de model (entraîné sur header
+     * normalisé par filtre) pour les entrées nommées, dans cet ordre.
+     * Vérifie sur une ligne que la normalisation donne exactement celle
+     * de Filter.useFilter.
+     * @throws Exception filtre non initialisé ou normalisation différente
+     */
+    public static PredicteurCompile compiler(Classifier model, Instances header, Normalize filtre,
+                                             String... entrees) throws Exception {
+        int n = header.numAttributes();
+        double[] mins = filtre.getMinArray();
+        double[] maxs = filtre.getMaxArray();
+        if (mins == null || maxs == null) throw new IllegalStateException("Filtre de normalisation non initialisé");
+
+        int[] indices = new int[entrees.length];
+        for (int k = 0; k < entrees.length; k++) {
+            Attribute a = header.attribute(entrees[k]);
+            indices[k] = a == null ? -1 : a.index();
+        }
+
+        boolean[] normalise = new boolean[n];
+        double[] min = new double[n];
+        double[] etendue = new double[n];
+        for (int j = 0; j < n; j++) {
+            normalise[j] = header.attribute(j).isNumeric() && j != header.classIndex();
+            min[j] = mins[j];
+            // Attribut constant ou sans valeur au TRAIN : 0, comme Normalize
+            etendue[j] = Double.isNaN(mins[j]) || maxs[j] == mins[j] ? 0 : maxs[j] - mins[j];
+        }
+
+        double classeMin = Double.NaN;
+        double classeEtendue = Double.NaN;
+        if (classeNormalisee(filtre, header)) {
+            int c = header.classIndex();
+            classeMin = mins[c];
+            classeEtendue = etendue[c];
+        }
+
+        PredicteurCompile p = new PredicteurCompile(model, new Instances(header, 0), indices, normalise,
+                min, etendue, filtre.getScale(), filtre.getTranslation(), classeMin, classeEtendue);
+        p.verifier(filtre);
+        return p;
+    }
+
+    /**
+     * Même prédicteur sur une copie du classifieur, pour un thread de
+     * scoring en lot (certains classifieurs Weka ne supportent pas des
+     * appels concurrents).
+     */
+    public PredicteurCompile copie() throws Exception {
+        return new PredicteurCompile(AbstractClassifier.makeCopy(model), header, indices, normalise,
+                min, etendue, scale, translation, classeMin, classeEtendue);
+    }
+
+    /** Entrées brutes du thread appelant, à remplir avant classer(). */
+    public double[] entrees() {
+        return tampons.get().entrees;
+    }
+
+    /**
+     * Valeur prédite (classe numérique, à l'échelle du TRAIN) ou indice de
+     * classe pour les entrées du thread.
+     */
+    public double classer() throws Exception {
+        double v = model.classifyInstance(preparer(tampons.get()));
+        if (Double.isNaN(classeMin) || Double.isNaN(v)) return v;
+        return (v - translation) / scale * classeEtendue + classeMin;
+    }
+
+    /**
+     * Classe prédite par model sur une instance passée par filtre
+     * (Filter.useFilter), ramenée à l'échelle du TRAIN si le filtre a
+     * normalisé la classe.
+     */
+    public static double classeBrute(Normalize filtre, Instances header, double v) {
+        if (!classeNormalisee(filtre, header) || Double.isNaN(v)) return v;
+        int c = header.classIndex();
+        double min = filtre.getMinArray()[c];
+        double max = filtre.getMaxArray()[c];
+        return (v - filtre.getTranslation()) / filtre.getScale() * (max - min) + min;
+    }
+
+    // Classe ignorée par le filtre : traitée comme un attribut, donc bornée et normalisée
+    private static boolean classeNormalisee(Normalize filtre, Instances header) {
+        int c = header.classIndex();
+        return c >= 0 && header.classAttribute().isNumeric() && filtre.getIgnoreClass()
+                && filtre.getMinArray() != null && !Double.isNaN(filtre.getMinArray()[c]);
+    }
+
+    /** Distribution des classes pour les entrées du thread (tableau du classifieur). */
+    public double[] distribution() throws Exception {
+        return model.distributionForInstance(preparer(tampons.get()));
+    }
+
+    public Instances getHeader() { return header; }
+
+    private Instance preparer(Tampon t) {
+        for (int k = 0; k < indices.length; k++) {
+            int j = indices[k];
+            if (j >= 0) t.valeurs[j] = normaliser(j, t.entrees[k]);
+        }
+        return t.instance;
+    }
+
+    // Même expression que Normalize : (v - min) / (max - min) * scale + translation
+    private double normaliser(int j, double v) {
+        if (!normalise[j] || Double.isNaN(v)) return v;
+        if (etendue[j] == 0) return 0;
+        return (v - min[j]) / etendue[j] * scale + translation;
+    }
+
+    // Attributs non fournis et classe : manquants, comme dans une DenseInstance neuve
+    private Tampon nouveauTampon() {
+        double[] valeurs = new double[header.numAttributes()];
+        Arrays.fill(valeurs, Utils.missingValue());
+        // DenseInstance(poids, valeurs) garde le tableau : il est mis à jour en place
+        Instance instance = new DenseInstance(1.0, valeurs);
+        instance.setDataset(header);
+        return new Tampon(new double[indices.length], valeurs, instance);
+    }
+
+    // Une ligne au milieu des bornes du TRAIN, normalisée des deux façons
+    private void verifier(Normalize filtre) throws Exception {
+        Tampon t = nouveauTampon();
+        DenseInstance brute = new DenseInstance(header.numAttributes());
+        brute.setDataset(header);
+        for (int k = 0; k < indices.length; k++) {
+            int j = indices[k];
+            if (j < 0) continue;
+            t.entrees[k] = normalise[j] && etendue[j] != 0 ? min[j] + etendue[j] * 0.37 : 1;
+            brute.setValue(j, t.entrees[k]);
+        }
+        preparer(t);
+
+        Instances temp = new Instances(header, 0);
+        temp.add(brute);
+        Instance reference = Filter.useFilter(temp, filtre).firstInstance();
+
+        for (int k = 0; k < indices.length; k++) {
+            int j = indices[k];
+            if (j >= 0 && Double.compare(reference.value(j), t.valeurs[j]) != 0) {
+                throw new IllegalStateException("Normalisation compilée différente du filtre pour "
+                        + header.attribute(j).name() + " : " + t.valeurs[j] + " au lieu de " + reference.value(j));
+            }
+        }
+    }
+
+    private static class Tampon {
+        final double[] entrees;
+        final double[] valeurs;
+        final Instance instance;
+
+        Tampon(double[] entrees, double[] valeurs, Instance instance) {
+            this.entrees = entrees;
+            this.valeurs = valeurs;
+            this.instance = instance;
+        }
+    }
+}
@@ -1,5 +1,10 @@
 package com.ensah.qoe;
 import com.ensah.qoe.Services.ClientCsvImporter;
+import com.ensah.qoe.Services.FichierService;
+import com.ensah.qoe.Services.IngestionService;
+import com.ensah.qoe.Services.PredictionLotService;
+import com.ensah.qoe.Services.PredictionServiceMOS;
+import com.ensah.qoe.Services.QosInsertService;
 import javafx.application.Application;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Parent;
@@ -7,6 +12,7 @@ import javafx.scene.Scene;
 import javafx.stage.Stage;
 import javafx.scene.image.Image;
 
+import java.util.Arrays;
 import java.util.Objects;
 
 public class Main extends Application {
@@ -15,6 +21,9 @@ public class Main extends Application {
     public void start(Stage primaryStage) {
         try {
             //ClientCsvImporter.importClients();
+            // Modèle MOS sauvegardé relu pendant la connexion, sans réentraînement
+            PredictionServiceMOS.chargerModeleSauvegarde();
+
             Parent root = FXMLLoader.load(getClass().getResource("/fxml/Login.fxml"));
 
             Scene scene = new Scene(root, 1366, 700);
@@ -43,6 +52,18 @@ public class Main extends Application {
         System.setProperty("com.github.fommil.netlib.BLAS", "com.github.fommil.netlib.F2jBLAS");
         System.setProperty("com.github.fommil.netlib.LAPACK", "com.github.fommil.netlib.F2jLAPACK");
         System.setProperty("com.github.fommil.netlib.ARPACK", "com.github.fommil.netlib.F2jARPACK");
+
+        // Colonnes et tables ajoutées depuis la création de la base, avant tout import :
+        // un DDL en pleine transaction validerait le paquet en cours
+        FichierService.verifierSchema();
+        QosInsertService.verifierSchema();
+        PredictionLotService.verifierSchema();
+
+        // Mode sans interface : ingestion des CSV déposés dans ingest.dirs
+        if (Arrays.asList(args).contains("--ingest")) {
+            IngestionService.lancer();
+            return;
+        }
         launch(args);
     }
 }
\ No newline at end of file
@@ -0,0 +1,276 @@
+package com.ensah.qoe.Models;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool JDBC borné.
+ * - au plus maxSize connexions physiques ouvertes en même temps
+ * - un thread qui redemande une connexion récupère celle qu'il détient déjà
+ * - les connexions inactives depuis trop longtemps sont revalidées avant usage
+ * - close() sur la connexion rendue la remet dans le pool au lieu de la fermer
+ */
+public class ConnectionPool {
+
+    private final Callable<Connection> factory;
+    private final int maxSize;
+    private final long timeoutMs;
+    private final long validationIdleMs;
+
+    private final Semaphore permits;
+    private final Deque<PooledEntry> idle = new ArrayDeque<>();
+    private final ThreadLocal<Lease> leaseParThread = new ThreadLocal<>();
+
+    // Compteurs
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong waitCount = new AtomicLong();
+    private final AtomicLong waitNanos = new AtomicLong();
+
+    private volatile boolean ferme = false;
+
+    public ConnectionPool(Callable<Connection> factory, int maxSize,
+                          long timeoutMs, long validationIdleMs) {
+        this.factory = factory;
+        this.maxSize = Math.max(1, maxSize);
+        this.timeoutMs = timeoutMs;
+        this.validationIdleMs = validationIdleMs;
+        this.permits = new Semaphore(this.maxSize, true);
+    }
+
+    /**
+     * Emprunte une connexion.
+     * @throws SQLException pool fermé, saturé au-delà du timeout ou base injoignable
+     */
+    public Connection borrow() throws SQLException {
+        if (ferme) throw new SQLException("Pool de connexions fermé");
+
+        Lease lease = leaseParThread.get();
+        if (lease != null && lease.acquerir()) {
+            return lease.nouveauHandle();
+        }
+
+        boolean ok;
+        try {
+            // tryAcquire(0, …) respecte l'ordre d'arrivée : seuls les emprunts bloqués comptent comme attentes
+            ok = permits.tryAcquire(0, TimeUnit.MILLISECONDS);
+            if (!ok) {
+                long t0 = System.nanoTime();
+                try {
+                    ok = permits.tryAcquire(timeoutMs, TimeUnit.MILLISECONDS);
+                } finally {
+                    waitCount.incrementAndGet();
+                    waitNanos.addAndGet(System.nanoTime() - t0);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Attente de connexion interrompue", e);
+        }
+        if (!ok) {
+            throw new SQLException("Aucune connexion disponible après " + timeoutMs + " ms"
+                    + " (actives=" + getActiveCount() + ", max=" + maxSize + ")");
+        }
+
+        Connection physique;
+        try {
+            physique = prendreIdleValide();
+            if (physique == null) {
+                physique = factory.call();
+                if (physique == null) throw new SQLException("Création de connexion impossible");
+                created.incrementAndGet();
+            }
+        } catch (Exception e) {
+            permits.release();
+            if (e instanceof SQLException) throw (SQLException) e;
+            throw new SQLException(e.getMessage(), e);
+        }
+
+        active.incrementAndGet();
+        lease = new Lease(physique);
+        leaseParThread.set(lease);
+        return lease.nouveauHandle();
+    }
+
+    private Connection prendreIdleValide() {
+        while (true) {
+            PooledEntry e;
+            synchronized (idle) {
+                e = idle.pollFirst();
+            }
+            if (e == null) return null;
+
+            long inactif = System.currentTimeMillis() - e.dernierUsage;
+            try {
+                if (e.connection.isClosed()) continue;
+                if (inactif >= validationIdleMs && !e.connection.isValid(2)) {
+                    fermerSilencieusement(e.connection);
+                    continue;
+                }
+                return e.connection;
+            } catch (SQLException ex) {
+                fermerSilencieusement(e.connection);
+            }
+        }
+    }
+
+    private void rendre(Lease lease) {
+        if (leaseParThread.get() == lease) leaseParThread.remove();
+        active.decrementAndGet();
+
+        Connection c = lease.physique;
+        try {
+            if (ferme || c.isClosed()) {
+                fermerSilencieusement(c);
+            } else {
+                if (!c.getAutoCommit()) {
+                    c.rollback();
+                    c.setAutoCommit(true);
+                }
+                synchronized (idle) {
+                    idle.addFirst(new PooledEntry(c, System.currentTimeMillis()));
+                }
+            }
+        } catch (SQLException e) {
+            fermerSilencieusement(c);
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Ferme les connexions inactives (les connexions empruntées
+     * sont fermées à leur retour).
+     */
+    public void viderIdle() {
+        synchronized (idle) {
+            for (PooledEntry e : idle) fermerSilencieusement(e.connection);
+            idle.clear();
+        }
+    }
+
+    public void fermer() {
+        ferme = true;
+        viderIdle();
+    }
+
+    private static void fermerSilencieusement(Connection c) {
+        try { c.close(); } catch (SQLException ignored) {}
+    }
+
+    // =========================================================================
+    // COMPTEURS
+    // =========================================================================
+    public int getMaxSize() { return maxSize; }
+    public int getActiveCount() { return active.get(); }
+    public int getIdleCount() { synchronized (idle) { return idle.size(); } }
+    public long getCreatedCount() { return created.get(); }
+    public long getWaitCount() { return waitCount.get(); }
+    public long getTotalWaitMillis() { return TimeUnit.NANOSECONDS.toMillis(waitNanos.get()); }
+
+    @Override
+    public String toString() {
+        return "ConnectionPool [actives=" + getActiveCount() +
+                ", idle=" + getIdleCount() +
+                ", max=" + maxSize +
+                ", créées=" + getCreatedCount() +
+                ", attentes=" + getWaitCount() +
+                ", attenteTotale=" + getTotalWaitMillis() + " ms]";
+    }
+
+    // =========================================================================
+    // STRUCTURES
+    // =========================================================================
+    private static class PooledEntry {
+        final Connection connection;
+        final long dernierUsage;
+
+        PooledEntry(Connection connection, long dernierUsage) {
+            this.connection = connection;
+            this.dernierUsage = dernierUsage;
+        }
+    }
+
+    /**
+     * Emprunt d'une connexion physique par un thread. Chaque appel
+     * à borrow() du même thread ajoute une référence ; la connexion
+     * retourne au pool quand la dernière référence est fermée.
+     */
+    private class Lease {
+        final Connection physique;
+        private int references = 1;
+
+        Lease(Connection physique) {
+            this.physique = physique;
+        }
+
+        synchronized boolean acquerir() {
+            if (references == 0) return false;
+            references++;
+            return true;
+        }
+
+        void liberer() {
+            boolean dernier;
+            synchronized (this) {
+                dernier = --references == 0;
+            }
+            if (dernier) rendre(this);
+        }
+
+        Connection nouveauHandle() {
+            return (Connection) Proxy.newProxyInstance(
+                    Connection.class.getClassLoader(),
+                    new Class<?>[]{Connection.class},
+                    new Handle(this));
+        }
+    }
+
+    private static class Handle implements InvocationHandler {
+        private final Lease lease;
+        private boolean rendu = false;
+
+        Handle(Lease lease) {
+            this.lease = lease;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!rendu) {
+                        rendu = true;
+                        lease.liberer();
+                    }
+                    return null;
+                case "isClosed":
+                    return rendu || lease.physique.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "PooledConnection[" + lease.physique + "]";
+                default:
+                    break;
+            }
+            if (rendu) throw new SQLException("Connexion déjà rendue au pool");
+            try {
+                return method.invoke(lease.physique, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
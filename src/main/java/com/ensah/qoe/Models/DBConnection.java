@@ -8,12 +8,18 @@ import java.sql.SQLException;
 import java.util.Properties;
 
 public class DBConnection {
-    private static Connection connection = null;
     private static Properties props = new Properties();
+    private static final ConnectionPool pool;
 
     static {
         // Charger la configuration une seule fois au démarrage
         loadConfig();
+        pool = new ConnectionPool(
+                DBConnection::createNewConnection,
+                getIntProperty("db.pool.maxSize", 8),
+                getIntProperty("db.pool.timeoutMs", 10000),
+                getIntProperty("db.pool.validationIdleMs", 30000)
+        );
     }
 
     private static void loadConfig() {
@@ -29,71 +35,81 @@ public class DBConnection {
         }
     }
 
+    public static String getProperty(String key, String defaut) {
+        return props.getProperty(key, defaut);
+    }
+
+    public static int getIntProperty(String key, int defaut) {
+        try {
+            return Integer.parseInt(props.getProperty(key, String.valueOf(defaut)).trim());
+        } catch (NumberFormatException e) {
+            System.err.println("❌ Valeur invalide pour " + key + ", défaut = " + defaut);
+            return defaut;
+        }
+    }
+
+    /**
+     * Emprunte une connexion au pool. close() la rend au pool.
+     * Un même thread récupère la connexion qu'il détient déjà.
+     */
     public static Connection getConnection() {
         try {
-            // Vérifier si la connexion existe et est valide
-            if (connection == null || connection.isClosed() || !connection.isValid(2)) {
-                System.out.println("🔄 Création d'une nouvelle connexion...");
-                createNewConnection();
-            }
+            return pool.borrow();
         } catch (SQLException e) {
-            System.err.println("❌ Erreur validation connexion: " + e.getMessage());
-            createNewConnection(); // Tenter une reconnexion
+            System.err.println("❌ Erreur obtention connexion: " + e.getMessage());
+            return null;
         }
-        return connection;
     }
 
-    private static void createNewConnection() {
-        try {
-            String url = props.getProperty("db.url");
-            String user = props.getProperty("db.user");
-            String password = props.getProperty("db.password");
+    public static ConnectionPool getPool() {
+        return pool;
+    }
 
-            if (url == null || user == null || password == null) {
-                System.err.println("❌ Paramètres de connexion manquants dans config.properties");
-                return;
-            }
+    private static Connection createNewConnection() throws SQLException, ClassNotFoundException {
+        String url = props.getProperty("db.url");
+        String user = props.getProperty("db.user");
+        String password = props.getProperty("db.password");
 
-            // Charger le driver
-            Class.forName("oracle.jdbc.OracleDriver");
+        if (url == null || user == null || password == null) {
+            throw new SQLException("Paramètres de connexion manquants dans config.properties");
+        }
 
-            // Établir la connexion
-            connection = DriverManager.getConnection(url, user, password);
-            System.out.println("✅ Connexion réussie à la base Oracle !");
+        // Charger le driver
+        Class.forName("oracle.jdbc.OracleDriver");
 
-        } catch (ClassNotFoundException e) {
-            System.err.println("❌ Driver Oracle non trouvé: " + e.getMessage());
-        } catch (SQLException e) {
-            System.err.println("❌ Erreur connexion Oracle: " + e.getMessage());
-            System.err.println("Code erreur: " + e.getErrorCode());
-            connection = null;
-        }
+        // Établir la connexion
+        System.out.println("🔄 Création d'une nouvelle connexion...");
+        Connection connection = DriverManager.getConnection(url, user, password);
+        System.out.println("✅ Connexion réussie à la base Oracle !");
+        return connection;
     }
 
     public static void closeConnection() {
-        try {
-            if (connection != null && !connection.isClosed()) {
-                connection.close();
-                System.out.println("🔒 Connexion fermée.");
-            }
-            connection = null; // Important: réinitialiser à null
-        } catch (SQLException e) {
-            System.err.println("❌ Erreur fermeture connexion: " + e.getMessage());
-        }
+        pool.viderIdle();
+        System.out.println("🔒 Connexions inactives fermées.");
     }
 
     // Méthode pour forcer une reconnexion (utile après erreur)
     public static void reconnect() {
         closeConnection();
-        getConnection();
+        // la connexion revient aussitôt dans le pool
+        try (Connection conn = getConnection()) {
+            if (conn == null) throw new SQLException("Connexion indisponible");
+        } catch (SQLException e) {
+            System.err.println("❌ Erreur reconnexion: " + e.getMessage());
+        }
     }
 
     public static void main(String[] args) {
-        Connection conn = DBConnection.getConnection();
-        if (conn != null) {
-            System.out.println("✅ Connexion Oracle établie avec succès !");
-        } else {
-            System.out.println("❌ Échec de la connexion à la base Oracle.");
+        try (Connection conn = DBConnection.getConnection()) {
+            if (conn != null) {
+                System.out.println("✅ Connexion Oracle établie avec succès !");
+            } else {
+                System.out.println("❌ Échec de la connexion à la base Oracle.");
+            }
+        } catch (SQLException e) {
+            System.err.println("❌ " + e.getMessage());
         }
+        System.out.println(pool);
     }
 }
\ No newline at end of file
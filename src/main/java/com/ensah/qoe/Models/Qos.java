@@ -1,4 +1,5 @@
 package com.ensah.qoe.Models;
+import com.ensah.qoe.Utils.Resolution;
 import java.time.LocalDateTime;
 public class Qos {
 
@@ -12,11 +13,17 @@ public class Qos {
     private double mos;
 
     // Nouvelle architecture
-    private String tranche12h;   // ex : "2024-11-12_00-12"
+    private String tranche12h;   // ex : "2024-11-12_00-12" ; libellé à la résolution de la ligne
+    private Resolution resolution = Resolution.DOUZE_HEURES;
     private String zone;         // ex : "Muonio, Finland"
     private String nomFichier;
     private LocalDateTime dateReelle;
 
+    // État du groupe, pour y fusionner les lignes ajoutées au fichier
+    private long nbMesures;
+    private double premiereLatence;
+    private double derniereLatence;
+
     public Qos() {}
 
     public Qos(double latence, double jitter, double perte,
@@ -39,10 +46,16 @@ public class Qos {
     public double getMos() { return mos; }
 
     public String getTranche12h() { return tranche12h; }
+    /** Libellé de la tranche, à la résolution de la ligne (12 h dans MESURES_QOS). */
+    public String getTranche() { return tranche12h; }
+    public Resolution getResolution() { return resolution; }
     public String getZone() { return zone; }
     public String getNomFichier() { return nomFichier; }
     public LocalDateTime getDateReelle() { return dateReelle; }
     public void setDateReelle(LocalDateTime d) { this.dateReelle = d; }
+    public long getNbMesures() { return nbMesures; }
+    public double getPremiereLatence() { return premiereLatence; }
+    public double getDerniereLatence() { return derniereLatence; }
     // --- SETTERS ---
     public void setId_mesure(int id_mesure) { this.id_mesure = id_mesure; }
     public void setLatence(double latence) { this.latence = latence; }
@@ -53,8 +66,15 @@ public class Qos {
     public void setMos(double mos) { this.mos = mos; }
 
     public void setTranche12h(String tranche12h) { this.tranche12h = tranche12h; }
+    public void setTranche(Resolution resolution, String tranche) {
+        this.resolution = resolution;
+        this.tranche12h = tranche;
+    }
     public void setZone(String zone) { this.zone = zone; }
     public void setNomFichier(String nomFichier) { this.nomFichier = nomFichier; }
+    public void setNbMesures(long nbMesures) { this.nbMesures = nbMesures; }
+    public void setPremiereLatence(double premiereLatence) { this.premiereLatence = premiereLatence; }
+    public void setDerniereLatence(double derniereLatence) { this.derniereLatence = derniereLatence; }
 
     @Override
     public String toString() {
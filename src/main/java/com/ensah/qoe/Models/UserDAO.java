@@ -5,10 +5,8 @@ import java.util.ArrayList;
 import java.util.List;
 
 public class UserDAO {
-    private Connection connection;
-
-    public UserDAO(Connection connection) {
-        this.connection = connection;
+    // Chaque opération emprunte sa propre connexion au pool
+    public UserDAO() {
     }
 
     // Récupérer tous les utilisateurs
@@ -16,7 +14,8 @@ public class UserDAO {
         List<User> users = new ArrayList<>();
         String query = "SELECT * FROM utilisateurs ORDER BY ID_USER";
 
-        try (Statement stmt = connection.createStatement();
+        try (Connection connection = DBConnection.getConnection();
+             Statement stmt = connection.createStatement();
              ResultSet rs = stmt.executeQuery(query)) {
 
             while (rs.next()) {
@@ -39,7 +38,8 @@ public class UserDAO {
     public boolean addUser(User user) throws SQLException {
         String query = "INSERT INTO utilisateurs (USERNAME, PASSWORD, EMAIL, ROLE, DATE_CREATION) VALUES (?, ?, ?, ?, NOW())";
 
-        try (PreparedStatement pstmt = connection.prepareStatement(query)) {
+        try (Connection connection = DBConnection.getConnection();
+             PreparedStatement pstmt = connection.prepareStatement(query)) {
             pstmt.setString(1, user.getUsername());
             pstmt.setString(2, user.getPassword());
             pstmt.setString(3, user.getEmail());
@@ -54,7 +54,8 @@ public class UserDAO {
     public boolean updateUser(User user) throws SQLException {
         String query = "UPDATE utilisateurs SET USERNAME = ?, EMAIL = ?, ROLE = ? WHERE ID_USER = ?";
 
-        try (PreparedStatement pstmt = connection.prepareStatement(query)) {
+        try (Connection connection = DBConnection.getConnection();
+             PreparedStatement pstmt = connection.prepareStatement(query)) {
             pstmt.setString(1, user.getUsername());
             pstmt.setString(2, user.getEmail());
             pstmt.setString(3, user.getRole());
@@ -69,7 +70,8 @@ public class UserDAO {
     public boolean deleteUser(int userId) throws SQLException {
         String query = "DELETE FROM utilisateurs WHERE ID_USER = ?";
 
-        try (PreparedStatement pstmt = connection.prepareStatement(query)) {
+        try (Connection connection = DBConnection.getConnection();
+             PreparedStatement pstmt = connection.prepareStatement(query)) {
             pstmt.setInt(1, userId);
 
             int rowsAffected = pstmt.executeUpdate();
@@ -82,7 +84,8 @@ public class UserDAO {
         List<User> users = new ArrayList<>();
         String query = "SELECT * FROM utilisateurs WHERE USERNAME LIKE ? OR EMAIL LIKE ? OR ROLE LIKE ?";
 
-        try (PreparedStatement pstmt = connection.prepareStatement(query)) {
+        try (Connection connection = DBConnection.getConnection();
+             PreparedStatement pstmt = connection.prepareStatement(query)) {
             String searchPattern = "%" + keyword + "%";
             pstmt.setString(1, searchPattern);
             pstmt.setString(2, searchPattern);
@@ -110,7 +113,8 @@ public class UserDAO {
     public boolean usernameExists(String username) throws SQLException {
         String query = "SELECT COUNT(*) FROM utilisateurs WHERE USERNAME = ?";
 
-        try (PreparedStatement pstmt = connection.prepareStatement(query)) {
+        try (Connection connection = DBConnection.getConnection();
+             PreparedStatement pstmt = connection.prepareStatement(query)) {
             pstmt.setString(1, username);
 
             try (ResultSet rs = pstmt.executeQuery()) {
@@ -126,7 +130,8 @@ public class UserDAO {
     public boolean emailExists(String email) throws SQLException {
         String query = "SELECT COUNT(*) FROM utilisateurs WHERE EMAIL = ?";
 
-        try (PreparedStatement pstmt = connection.prepareStatement(query)) {
+        try (Connection connection = DBConnection.getConnection();
+             PreparedStatement pstmt = connection.prepareStatement(query)) {
             pstmt.setString(1, email);
 
             try (ResultSet rs = pstmt.executeQuery()) {
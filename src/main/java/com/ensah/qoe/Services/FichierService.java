@@ -1,13 +1,53 @@
 package com.ensah.qoe.Services;
 
 import com.ensah.qoe.Models.DBConnection;
+import com.ensah.qoe.Utils.SourceCsv;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.sql.*;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Registre des fichiers importés (FICHIERS_IMPORTES).
+ * Chaque fichier y est identifié par son nom, son empreinte SHA-256 et
+ * sa taille ; la progression de l'insertion (dernière ligne validée,
+ * nombre de lignes) et le statut de chaque étape permettent de
+ * reprendre un import interrompu. La position de la dernière ligne lue
+ * (POSITION_OCTETS) permet de n'importer ensuite que les lignes ajoutées
+ * au fichier.
+ */
 public class FichierService {
 
+    public static final String ETAPE_ANALYSE = "STATUT_ANALYSE";
+    public static final String ETAPE_INSERTION = "STATUT_INSERTION";
+
+    public static final String STATUT_EN_ATTENTE = "EN_ATTENTE";
+    public static final String STATUT_EN_COURS = "EN_COURS";
+    public static final String STATUT_OK = "OK";
+    public static final String STATUT_ECHEC = "ECHEC";
+
+    // Octets relus avant la position d'ajout pour vérifier que le début du fichier n'a pas changé
+    private static final int TAILLE_EMPREINTE_FIN = 4096;
+
+    private static volatile boolean schemaVerifie = false;
+
+    // Empreintes déjà calculées : chemin|taille|date de modification → empreinte
+    private static final Map<String, Empreinte> cacheEmpreintes = new ConcurrentHashMap<>();
+
     public static boolean fichierExiste(String nomFichier) {
-        String sql = "SELECT 1 FROM FICHIERS_IMPORTES WHERE NOM_FICHIER = ?";
+        // Les lignes antérieures au suivi des étapes (statut NULL) sont complètes
+        String sql = "SELECT 1 FROM FICHIERS_IMPORTES WHERE NOM_FICHIER = ? " +
+                "AND NVL(STATUT_INSERTION, 'OK') = 'OK'";
 
         try (Connection conn = DBConnection.getConnection();
              PreparedStatement ps = conn.prepareStatement(sql)) {
@@ -20,14 +60,416 @@ public class FichierService {
     }
 
     public static void enregistrerFichier(String nomFichier) {
-        String sql = "INSERT INTO FICHIERS_IMPORTES (NOM_FICHIER) VALUES (?)";
+        try (Connection conn = DBConnection.getConnection()) {
+            enregistrerFichier(conn, nomFichier);
+        } catch (Exception ignored) {}
+    }
+
+    /**
+     * Marque le fichier comme entièrement importé sur la connexion de
+     * l'appelant, sans commit : il suit la transaction en cours.
+     */
+    public static void enregistrerFichier(Connection conn, String nomFichier) throws SQLException {
+        String update = "UPDATE FICHIERS_IMPORTES SET STATUT_ANALYSE = 'OK', STATUT_INSERTION = 'OK', " +
+                "DATE_MAJ = SYSTIMESTAMP WHERE NOM_FICHIER = ?";
+
+        try (PreparedStatement ps = conn.prepareStatement(update)) {
+            ps.setString(1, nomFichier);
+            if (ps.executeUpdate() > 0) return;
+        }
+
+        String sql = "INSERT INTO FICHIERS_IMPORTES (NOM_FICHIER, STATUT_ANALYSE, STATUT_INSERTION, DATE_MAJ) " +
+                "VALUES (?, 'OK', 'OK', SYSTIMESTAMP)";
+
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, nomFichier);
+            ps.executeUpdate();
+        }
+    }
+
+    // =========================================================================
+    // EMPREINTE DU CONTENU
+    // =========================================================================
+    public static Empreinte calculerEmpreinte(String chemin) throws IOException {
+        File f = new File(chemin);
+        String cle = f.getAbsolutePath() + "|" + f.length() + "|" + f.lastModified();
+
+        Empreinte cache = cacheEmpreintes.get(cle);
+        if (cache != null) return cache;
+
+        Empreinte e;
+        try (InputStream in = Files.newInputStream(f.toPath())) {
+            e = empreinte(in);
+        }
+        cacheEmpreintes.put(cle, e);
+        return e;
+    }
+
+    /**
+     * Empreinte du CSV d'une source : celle du contenu décompressé pour
+     * une archive (un même export en .csv et en .csv.gz est reconnu).
+     */
+    public static Empreinte calculerEmpreinte(SourceCsv source) throws IOException {
+        if (!source.estCompresse()) return calculerEmpreinte(source.getChemin().toString());
+
+        File f = source.getChemin().toFile();
+        String cle = f.getAbsolutePath() + "|" + f.length() + "|" + f.lastModified() + "|" + source.getEntree();
+
+        Empreinte cache = cacheEmpreintes.get(cle);
+        if (cache != null) return cache;
+
+        Empreinte e;
+        try (InputStream in = source.ouvrir()) {
+            e = empreinte(in);
+        }
+        cacheEmpreintes.put(cle, e);
+        return e;
+    }
+
+    private static Empreinte empreinte(InputStream in) throws IOException {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+
+        byte[] buffer = new byte[1 << 20];
+        long taille = 0;
+        int n;
+        while ((n = in.read(buffer)) > 0) {
+            md.update(buffer, 0, n);
+            taille += n;
+        }
+        return new Empreinte(hex(md.digest()), taille);
+    }
+
+    /**
+     * Empreinte des octets qui précèdent position : le fichier n'a été
+     * que complété si elle n'a pas changé.
+     */
+    public static String empreinteFin(String chemin, long position) throws IOException {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+
+        long debut = Math.max(0, position - TAILLE_EMPREINTE_FIN);
+        ByteBuffer buf = ByteBuffer.allocate((int) (position - debut));
+        try (FileChannel ch = FileChannel.open(Path.of(chemin), StandardOpenOption.READ)) {
+            while (buf.hasRemaining()) {
+                if (ch.read(buf, debut + buf.position()) <= 0) throw new IOException("fichier tronqué");
+            }
+        }
+        return hex(md.digest(buf.array()));
+    }
+
+    /**
+     * Cherche un import du même contenu, quel que soit le nom du fichier.
+     * Un import terminé est préféré à un import interrompu.
+     */
+    public static ImportInfo trouverParContenu(Empreinte empreinte) {
+        if (empreinte == null) return null;
+
+        String sql = "SELECT * FROM FICHIERS_IMPORTES WHERE HASH_CONTENU = ? AND TAILLE_OCTETS = ? " +
+                "ORDER BY CASE WHEN STATUT_INSERTION = 'OK' THEN 0 ELSE 1 END, DATE_MAJ DESC";
+
+        try (Connection conn = DBConnection.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+
+            ps.setString(1, empreinte.getHash());
+            ps.setLong(2, empreinte.getTaille());
+            ResultSet rs = ps.executeQuery();
+            if (rs.next()) return lireImport(rs);
+
+        } catch (Exception e) {
+            System.err.println("❌ Recherche par empreinte impossible: " + e.getMessage());
+        }
+        return null;
+    }
+
+    public static ImportInfo trouverParNom(Connection conn, String nomFichier) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(
+                "SELECT * FROM FICHIERS_IMPORTES WHERE NOM_FICHIER = ?")) {
+            ps.setString(1, nomFichier);
+            ResultSet rs = ps.executeQuery();
+            return rs.next() ? lireImport(rs) : null;
+        }
+    }
+
+    /**
+     * Position à partir de laquelle importer les lignes ajoutées à un
+     * fichier déjà importé.
+     *
+     * @return -1 si rien n'a été ajouté, si le fichier a été réécrit
+     *         ou s'il a été importé sans position (avant le suivi)
+     */
+    public static long positionAjout(String nomFichier, String chemin) {
+        long position;
+        String empreinte;
+        try (Connection conn = DBConnection.getConnection();
+             PreparedStatement ps = conn.prepareStatement(
+                     "SELECT POSITION_OCTETS, EMPREINTE_FIN FROM FICHIERS_IMPORTES WHERE NOM_FICHIER = ?")) {
+
+            ps.setString(1, nomFichier);
+            ResultSet rs = ps.executeQuery();
+            if (!rs.next()) return -1;
+            position = rs.getLong(1);
+            if (rs.wasNull()) return -1;
+            empreinte = rs.getString(2);
+
+        } catch (Exception e) {
+            System.err.println("❌ Position d'ajout illisible: " + e.getMessage());
+            return -1;
+        }
+
+        try {
+            long taille = Files.size(Path.of(chemin));
+            if (taille <= position) return -1;
+            if (!empreinteFin(chemin, position).equals(empreinte)) {
+                System.out.println("⚠ " + nomFichier + " a été réécrit depuis son import : ajout ignoré");
+                return -1;
+            }
+        } catch (IOException e) {
+            System.out.println("⚠ " + nomFichier + " illisible : " + e.getMessage());
+            return -1;
+        }
+        return position;
+    }
+
+    public static void enregistrerPosition(String nomFichier, String chemin, long position) {
+        try (Connection conn = DBConnection.getConnection()) {
+            enregistrerPosition(conn, nomFichier, chemin, position);
+        } catch (Exception e) {
+            System.err.println("❌ Position d'import non enregistrée: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Enregistre la fin des lignes importées, sans commit : pour un
+     * ajout, dans la transaction qui fusionne ces lignes.
+     */
+    public static void enregistrerPosition(Connection conn, String nomFichier, String chemin,
+                                           long position) throws SQLException {
+        String empreinte;
+        try {
+            empreinte = empreinteFin(chemin, position);
+        } catch (IOException e) {
+            throw new SQLException("Empreinte de fin impossible : " + e.getMessage(), e);
+        }
+
+        try (PreparedStatement ps = conn.prepareStatement(
+                "UPDATE FICHIERS_IMPORTES SET POSITION_OCTETS = ?, EMPREINTE_FIN = ?, " +
+                "DATE_MAJ = SYSTIMESTAMP WHERE NOM_FICHIER = ?")) {
+            ps.setLong(1, position);
+            ps.setString(2, empreinte);
+            ps.setString(3, nomFichier);
+            ps.executeUpdate();
+        }
+    }
+
+    // =========================================================================
+    // SUIVI DES ÉTAPES
+    // =========================================================================
+
+    /**
+     * Ouvre (ou rouvre) l'entrée du registre avant l'analyse.
+     * La progression est conservée si le contenu est le même,
+     * remise à zéro sinon.
+     */
+    public static void demarrerImport(String nomFichier, Empreinte empreinte) {
+        String hash = empreinte != null ? empreinte.getHash() : null;
+        Long taille = empreinte != null ? empreinte.getTaille() : null;
+
+        String sql =
+                "MERGE INTO FICHIERS_IMPORTES f USING (SELECT ? NOM FROM DUAL) s " +
+                "ON (f.NOM_FICHIER = s.NOM) " +
+                "WHEN MATCHED THEN UPDATE SET " +
+                "  DERNIERE_LIGNE = CASE WHEN f.HASH_CONTENU = ? THEN f.DERNIERE_LIGNE ELSE 0 END, " +
+                "  NB_LIGNES = CASE WHEN f.HASH_CONTENU = ? THEN f.NB_LIGNES ELSE 0 END, " +
+                "  HASH_CONTENU = ?, TAILLE_OCTETS = ?, POSITION_OCTETS = NULL, EMPREINTE_FIN = NULL, " +
+                "  STATUT_ANALYSE = 'EN_COURS', STATUT_INSERTION = 'EN_ATTENTE', DATE_MAJ = SYSTIMESTAMP " +
+                "WHEN NOT MATCHED THEN INSERT " +
+                "  (NOM_FICHIER, HASH_CONTENU, TAILLE_OCTETS, DERNIERE_LIGNE, NB_LIGNES, " +
+                "   STATUT_ANALYSE, STATUT_INSERTION, DATE_MAJ) " +
+                "  VALUES (s.NOM, ?, ?, 0, 0, 'EN_COURS', 'EN_ATTENTE', SYSTIMESTAMP)";
 
         try (Connection conn = DBConnection.getConnection();
              PreparedStatement ps = conn.prepareStatement(sql)) {
 
             ps.setString(1, nomFichier);
+            ps.setString(2, hash);
+            ps.setString(3, hash);
+            ps.setString(4, hash);
+            setLongOuNull(ps, 5, taille);
+            ps.setString(6, hash);
+            setLongOuNull(ps, 7, taille);
             ps.executeUpdate();
 
-        } catch (Exception ignored) {}
+        } catch (Exception e) {
+            System.err.println("❌ Registre d'import non mis à jour: " + e.getMessage());
+        }
+    }
+
+    public static void majEtape(String nomFichier, String etape, String statut) {
+        if (!ETAPE_ANALYSE.equals(etape) && !ETAPE_INSERTION.equals(etape)) {
+            throw new IllegalArgumentException("Étape inconnue : " + etape);
+        }
+
+        String sql = "UPDATE FICHIERS_IMPORTES SET " + etape + " = ?, DATE_MAJ = SYSTIMESTAMP " +
+                "WHERE NOM_FICHIER = ?";
+
+        try (Connection conn = DBConnection.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+
+            ps.setString(1, statut);
+            ps.setString(2, nomFichier);
+            ps.executeUpdate();
+
+        } catch (Exception e) {
+            System.err.println("❌ Statut d'étape non mis à jour: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Enregistre la progression de l'insertion, sans commit : à appeler
+     * juste avant le commit du paquet qu'elle décrit.
+     */
+    public static void enregistrerProgression(Connection conn, String nomFichier,
+                                              long derniereLigne, long nbLignes) throws SQLException {
+
+        String sql = "UPDATE FICHIERS_IMPORTES SET DERNIERE_LIGNE = ?, NB_LIGNES = ?, " +
+                "STATUT_INSERTION = 'EN_COURS', DATE_MAJ = SYSTIMESTAMP WHERE NOM_FICHIER = ?";
+
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setLong(1, derniereLigne);
+            ps.setLong(2, nbLignes);
+            ps.setString(3, nomFichier);
+            ps.executeUpdate();
+        }
+    }
+
+    // =========================================================================
+    // SCHÉMA
+    // =========================================================================
+
+    /**
+     * Ajoute les colonnes de suivi si la table date d'avant leur introduction.
+     * Appelé une fois au démarrage (Main), hors de toute transaction : un
+     * DDL valide implicitement la transaction en cours de la session.
+     */
+    public static void verifierSchema() {
+        if (schemaVerifie) return;
+
+        synchronized (FichierService.class) {
+            if (schemaVerifie) return;
+
+            String[] ddl = {
+                    "ALTER TABLE FICHIERS_IMPORTES ADD (HASH_CONTENU VARCHAR2(64))",
+                    "ALTER TABLE FICHIERS_IMPORTES ADD (TAILLE_OCTETS NUMBER(19))",
+                    "ALTER TABLE FICHIERS_IMPORTES ADD (DERNIERE_LIGNE NUMBER(19) DEFAULT 0)",
+                    "ALTER TABLE FICHIERS_IMPORTES ADD (NB_LIGNES NUMBER(19) DEFAULT 0)",
+                    "ALTER TABLE FICHIERS_IMPORTES ADD (STATUT_ANALYSE VARCHAR2(12))",
+                    "ALTER TABLE FICHIERS_IMPORTES ADD (STATUT_INSERTION VARCHAR2(12))",
+                    "ALTER TABLE FICHIERS_IMPORTES ADD (DATE_MAJ TIMESTAMP)",
+                    "ALTER TABLE FICHIERS_IMPORTES ADD (POSITION_OCTETS NUMBER(19))",
+                    "ALTER TABLE FICHIERS_IMPORTES ADD (EMPREINTE_FIN VARCHAR2(64))",
+                    "CREATE INDEX IDX_FICHIERS_HASH ON FICHIERS_IMPORTES (HASH_CONTENU)"
+            };
+
+            try (Connection conn = DBConnection.getConnection();
+                 Statement st = conn.createStatement()) {
+
+                for (String s : ddl) {
+                    try {
+                        st.execute(s);
+                    } catch (SQLException e) {
+                        // ORA-01430 : colonne déjà présente, ORA-00955 : index déjà présent
+                        if (e.getErrorCode() != 1430 && e.getErrorCode() != 955) throw e;
+                    }
+                }
+                schemaVerifie = true;
+
+            } catch (Exception e) {
+                System.err.println("❌ Mise à jour du schéma FICHIERS_IMPORTES impossible: " + e.getMessage());
+            }
+        }
+    }
+
+    // =========================================================================
+    // HELPERS
+    // =========================================================================
+    private static ImportInfo lireImport(ResultSet rs) throws SQLException {
+        return new ImportInfo(
+                rs.getString("NOM_FICHIER"),
+                rs.getString("HASH_CONTENU"),
+                rs.getLong("TAILLE_OCTETS"),
+                rs.getLong("DERNIERE_LIGNE"),
+                rs.getLong("NB_LIGNES"),
+                rs.getString("STATUT_ANALYSE"),
+                rs.getString("STATUT_INSERTION")
+        );
+    }
+
+    private static String hex(byte[] octets) {
+        StringBuilder hex = new StringBuilder(2 * octets.length);
+        for (byte b : octets) hex.append(String.format("%02x", b));
+        return hex.toString();
+    }
+
+    private static void setLongOuNull(PreparedStatement ps, int idx, Long v) throws SQLException {
+        if (v == null) ps.setNull(idx, Types.NUMERIC);
+        else ps.setLong(idx, v);
+    }
+
+    // =========================================================================
+    // STRUCTURES
+    // =========================================================================
+    public static class Empreinte {
+        private final String hash;
+        private final long taille;
+
+        public Empreinte(String hash, long taille) {
+            this.hash = hash;
+            this.taille = taille;
+        }
+
+        public String getHash() { return hash; }
+        public long getTaille() { return taille; }
+    }
+
+    public static class ImportInfo {
+        private final String nomFichier;
+        private final String hash;
+        private final long taille;
+        private final long derniereLigne;
+        private final long nbLignes;
+        private final String statutAnalyse;
+        private final String statutInsertion;
+
+        public ImportInfo(String nomFichier, String hash, long taille, long derniereLigne,
+                          long nbLignes, String statutAnalyse, String statutInsertion) {
+            this.nomFichier = nomFichier;
+            this.hash = hash;
+            this.taille = taille;
+            this.derniereLigne = derniereLigne;
+            this.nbLignes = nbLignes;
+            this.statutAnalyse = statutAnalyse;
+            this.statutInsertion = statutInsertion;
+        }
+
+        public String getNomFichier() { return nomFichier; }
+        public String getHash() { return hash; }
+        public long getTaille() { return taille; }
+        public long getDerniereLigne() { return derniereLigne; }
+        public long getNbLignes() { return nbLignes; }
+        public String getStatutAnalyse() { return statutAnalyse; }
+        public String getStatutInsertion() { return statutInsertion; }
+
+        public boolean estTermine() {
+            return statutInsertion == null || STATUT_OK.equals(statutInsertion);
+        }
     }
 }
@@ -0,0 +1,286 @@
+package com.ensah.qoe.Services;
+
+import com.ensah.qoe.Models.DBConnection;
+import com.ensah.qoe.Utils.SourceCsv;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Ingestion sans interface : surveille les dossiers ingest.dirs et importe
+ * les CSV QoS (QosImportPipeline) et churn (QoeAnalyzer) qui y arrivent,
+ * y compris compressés (.csv.gz, .zip : lus sans décompression sur disque).
+ *
+ * Un fichier n'est pris qu'une fois stable (taille et date inchangées
+ * pendant ingest.debounceMs), puis déplacé dans traites/ ou erreurs/.
+ * Avec ingest.append=true, un CSV QoS importé reste en place : ce que
+ * le collecteur y ajoute ensuite est importé à la stabilisation suivante.
+ * Lancement : java -jar ProjetQoE.jar --ingest
+ */
+public class IngestionService {
+
+    public enum TypeFichier { QOS, CHURN, INCONNU }
+
+    private static final String DOSSIER_TRAITES = "traites";
+    private static final String DOSSIER_ERREURS = "erreurs";
+    private static final long INTERVALLE_ETAT_MS = 60_000;
+
+    private final List<Path> dossiers;
+    private final long debounceMs;
+    private final boolean ajout;
+    private final ExecutorService workers;
+
+    // Fichiers vus mais pas encore stables
+    private final Map<Path, Candidat> candidats = new ConcurrentHashMap<>();
+    // Fichiers confiés aux workers (en file ou en cours)
+    private final Map<Path, Boolean> soumis = new ConcurrentHashMap<>();
+    private final AtomicInteger enCours = new AtomicInteger();
+    private final AtomicInteger nbTraites = new AtomicInteger();
+    private final AtomicInteger nbErreurs = new AtomicInteger();
+
+    private volatile boolean actif = true;
+
+    private static class Candidat {
+        long taille = -1;
+        long dateModif = -1;
+        long stableDepuis;
+    }
+
+    public IngestionService(List<Path> dossiers, int nbWorkers, long debounceMs, boolean ajout) {
+        this.dossiers = dossiers;
+        this.debounceMs = debounceMs;
+        this.ajout = ajout;
+        this.workers = Executors.newFixedThreadPool(Math.max(1, nbWorkers), r -> {
+            Thread t = new Thread(r, "ingestion");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /** Point d'entrée du mode --ingest : configuration ingest.*, bloque jusqu'à l'arrêt. */
+    public static void lancer() {
+        List<Path> dossiers = new ArrayList<>();
+        for (String d : DBConnection.getProperty("ingest.dirs", "ingest").split(",")) {
+            if (!d.isBlank()) dossiers.add(Path.of(d.trim()));
+        }
+
+        IngestionService service = new IngestionService(dossiers,
+                DBConnection.getIntProperty("ingest.workers", 2),
+                DBConnection.getIntProperty("ingest.debounceMs", 5000),
+                Boolean.parseBoolean(DBConnection.getProperty("ingest.append", "false")));
+
+        Runtime.getRuntime().addShutdownHook(new Thread(service::arreter));
+
+        try {
+            service.surveiller();
+        } catch (IOException e) {
+            System.err.println("❌ Ingestion arrêtée : " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            service.arreter();
+        }
+    }
+
+    // =========================================================================
+    // SURVEILLANCE
+    // =========================================================================
+    public void surveiller() throws IOException, InterruptedException {
+
+        try (WatchService ws = FileSystems.getDefault().newWatchService()) {
+
+            for (Path d : dossiers) {
+                Files.createDirectories(d);
+                d.register(ws, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+                // Fichiers déposés pendant l'arrêt du service
+                try (Stream<Path> s = Files.list(d)) {
+                    s.forEach(this::signaler);
+                }
+                System.out.println(">>> Ingestion : surveillance de " + d.toAbsolutePath());
+            }
+
+            long dernierEtat = 0;
+            long attente = Math.max(100, debounceMs / 4);
+
+            while (actif) {
+                WatchKey key = ws.poll(attente, TimeUnit.MILLISECONDS);
+                if (key != null) {
+                    Path dossier = (Path) key.watchable();
+                    for (WatchEvent<?> ev : key.pollEvents()) {
+                        if (ev.kind() == StandardWatchEventKinds.OVERFLOW) {
+                            // Événements perdus : on relit le dossier
+                            try (Stream<Path> s = Files.list(dossier)) {
+                                s.forEach(this::signaler);
+                            }
+                        } else {
+                            signaler(dossier.resolve((Path) ev.context()));
+                        }
+                    }
+                    key.reset();
+                }
+
+                soumettreFichiersStables();
+
+                long maintenant = System.currentTimeMillis();
+                if (maintenant - dernierEtat >= INTERVALLE_ETAT_MS) {
+                    System.out.println(">>> " + this);
+                    dernierEtat = maintenant;
+                }
+            }
+        }
+    }
+
+    public void arreter() {
+        if (!actif) return;
+        actif = false;
+        workers.shutdown();
+        try {
+            if (!workers.awaitTermination(30, TimeUnit.SECONDS)) workers.shutdownNow();
+        } catch (InterruptedException e) {
+            workers.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        System.out.println(">>> Ingestion arrêtée : " + this);
+    }
+
+    private void signaler(Path p) {
+        String nom = p.getFileName().toString();
+        boolean csv = nom.toLowerCase().endsWith(".csv") || SourceCsv.estArchive(nom);
+        if (!csv || nom.startsWith(".") || soumis.containsKey(p)) return;
+        if (!Files.isRegularFile(p)) return;
+        candidats.putIfAbsent(p, new Candidat());
+    }
+
+    /** Fichiers dont la taille et la date n'ont pas bougé depuis debounceMs. */
+    private void soumettreFichiersStables() {
+        long maintenant = System.currentTimeMillis();
+
+        for (Map.Entry<Path, Candidat> e : candidats.entrySet()) {
+            Path p = e.getKey();
+            Candidat c = e.getValue();
+
+            BasicFileAttributes attr;
+            try {
+                attr = Files.readAttributes(p, BasicFileAttributes.class);
+            } catch (IOException ex) {
+                candidats.remove(p);   // supprimé ou déplacé entre-temps
+                continue;
+            }
+
+            long taille = attr.size();
+            long date = attr.lastModifiedTime().toMillis();
+            if (taille != c.taille || date != c.dateModif) {
+                c.taille = taille;
+                c.dateModif = date;
+                c.stableDepuis = maintenant;
+                continue;
+            }
+
+            if (taille > 0 && maintenant - c.stableDepuis >= debounceMs) {
+                candidats.remove(p);
+                soumis.put(p, Boolean.TRUE);
+                workers.submit(() -> traiter(p));
+            }
+        }
+    }
+
+    // =========================================================================
+    // TRAITEMENT (worker)
+    // =========================================================================
+    private void traiter(Path p) {
+        enCours.incrementAndGet();
+        boolean ok = false;
+        boolean garder = false;
+        try {
+            TypeFichier type = detecterType(p);
+            System.out.println(">>> Ingestion de " + p.getFileName() + " (" + type + ")");
+
+            switch (type) {
+                case QOS -> {
+                    QosAnalyzer.Bilan bilan = QosImportPipeline.importer(
+                            p.toAbsolutePath().toString(), p.getFileName().toString(), null);
+                    if (bilan == null) System.out.println(">>> " + p.getFileName() + " : rien de nouveau");
+                    ok = true;
+                    // Une archive n'est pas complétée : pas d'ajout à attendre
+                    garder = ajout && !SourceCsv.estArchive(p.getFileName().toString());
+                }
+                case CHURN -> {
+                    // Session propre à ce fichier : ni l'interface ni les autres imports ne sont touchés
+                    ok = new QoeAnalyzer.Session().analyserFichierCsv(p.toAbsolutePath().toString());
+                }
+                default -> System.out.println("⚠ Type de CSV non reconnu : " + p.getFileName());
+            }
+
+        } catch (Exception e) {
+            System.out.println("❌ Ingestion de " + p.getFileName() + " en échec : " + e.getMessage());
+            e.printStackTrace();
+        } finally {
+            (ok ? nbTraites : nbErreurs).incrementAndGet();
+            if (!garder) deplacer(p, ok ? DOSSIER_TRAITES : DOSSIER_ERREURS);
+            soumis.remove(p);
+            enCours.decrementAndGet();
+            System.out.println(">>> " + this);
+        }
+    }
+
+    /**
+     * Type d'après l'en-tête : colonnes drive-test (QoS) ou colonne Churn.
+     * Archive : en-tête de son premier CSV.
+     */
+    public static TypeFichier detecterType(Path p) throws IOException {
+        List<SourceCsv> sources = SourceCsv.lister(p);
+        if (sources.isEmpty()) return TypeFichier.INCONNU;
+
+        try (BufferedReader br = new BufferedReader(
+                new InputStreamReader(sources.get(0).ouvrir(), Charset.defaultCharset()))) {
+            String header = br.readLine();
+            if (header == null) return TypeFichier.INCONNU;
+
+            String h = header.toLowerCase();
+            if (h.contains("throughput_downlink") && h.contains("timestamp")) return TypeFichier.QOS;
+            if (h.contains("churn")) return TypeFichier.CHURN;
+            return TypeFichier.INCONNU;
+        }
+    }
+
+    private static void deplacer(Path p, String sousDossier) {
+        try {
+            Path cible = p.resolveSibling(sousDossier);
+            Files.createDirectories(cible);
+            Files.move(p, cible.resolve(p.getFileName()), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            System.out.println("⚠ Déplacement de " + p.getFileName() + " impossible : " + e.getMessage());
+        }
+    }
+
+    // =========================================================================
+    // ÉTAT
+    // =========================================================================
+
+    /** Fichiers en attente : pas encore stables, en file ou en cours d'import. */
+    public int getBacklog() {
+        return candidats.size() + soumis.size();
+    }
+
+    public int getEnAttenteStabilite() { return candidats.size(); }
+    public int getEnCours() { return enCours.get(); }
+    public int getNbTraites() { return nbTraites.get(); }
+    public int getNbErreurs() { return nbErreurs.get(); }
+
+    @Override
+    public String toString() {
+        return String.format("Ingestion[backlog=%d (instables=%d, en file=%d, en cours=%d), traités=%d, erreurs=%d]",
+                getBacklog(), candidats.size(), soumis.size() - enCours.get(), enCours.get(),
+                nbTraites.get(), nbErreurs.get());
+    }
+}
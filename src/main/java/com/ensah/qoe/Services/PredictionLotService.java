@@ -0,0 +1,527 @@
+package com.ensah.qoe.Services;
+
+import com.ensah.qoe.ML.PredicteurCompile;
+import com.ensah.qoe.Models.DBConnection;
+import com.ensah.qoe.Utils.SourceCsv;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.*;
+
+/**
+ * Prédictions en lot (MOS prédit et probabilité d'anomalie) sur toutes
+ * les mesures de MESURES_QOS, celles d'une zone, ou un CSV, écrites dans
+ * PREDICTIONS_QOS avec la version des modèles.
+ *
+ * Les lignes sont lues par paquets de LIGNES_PAR_PAQUET en colonnes,
+ * notées sur un ForkJoinPool de prediction.threads threads, chacun avec
+ * sa copie des modèles (PredicteurCompile.copie), puis insérées par un
+ * thread d'écriture pendant la lecture et la notation du paquet suivant,
+ * sur sa propre connexion. Un commit par paquet : un lot interrompu garde
+ * ses premiers paquets (ID_LOT, tiré de SEQ_PREDICTIONS_LOT, permet de
+ * les retrouver).
+ */
+public class PredictionLotService {
+
+    public static final String TABLE = "PREDICTIONS_QOS";
+    private static final String SEQUENCE = "SEQ_PREDICTIONS_LOT";
+
+    private static final int LIGNES_PAR_PAQUET = 65_536;
+    // En dessous, une tâche du pool note ses lignes sans se diviser
+    private static final int LIGNES_PAR_TACHE = 4_096;
+
+    // Entrées des prédicteurs, dans l'ordre de getPredicteurQos() / getPredicteur()
+    private static final int NB_ENTREES = 5;
+
+    private static final String INSERTION = "INSERT INTO " + TABLE +
+            " (ID_LOT, SOURCE, REF, ZONE, DATE_MESURE, LATENCE, JITTER, PERTE, BANDE_PASSANTE, SIGNAL_SCORE," +
+            " MOS_PREDIT, PROBA_ANOMALIE, VERSION_MOS, VERSION_ANOMALIES, DATE_PREDICTION)" +
+            " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, SYSTIMESTAMP)";
+
+    private static volatile boolean schemaVerifie = false;
+
+    /** Mesures de MESURES_QOS (zone null : toutes), REF = ROWID de la mesure. */
+    public static Bilan scorerMesures(String zone) throws Exception {
+        String sql = "SELECT ROWIDTOCHAR(ROWID), ZONE, DATE_REELLE, LATENCE, JITTER, PERTE, BANDE_PASSANTE, SIGNAL_SCORE " +
+                "FROM MESURES_QOS" + (zone != null ? " WHERE ZONE = ?" : "");
+
+        try (Connection conn = DBConnection.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setFetchSize(10_000);
+            if (zone != null) ps.setString(1, zone);
+            try (ResultSet rs = ps.executeQuery()) {
+                return scorer("MESURES_QOS" + (zone != null ? " zone " + zone : ""), p -> lireMesures(rs, p));
+            }
+        }
+    }
+
+    /**
+     * CSV avec en-tête (ou .csv.gz, .zip) : colonnes latence, jitter,
+     * loss_rate (ou perte), bande_passante, signal_score, zone
+     * facultative ; REF = numéro de ligne. Valeur illisible : manquante.
+     */
+    public static Bilan scorerCsv(Path chemin) throws Exception {
+        List<Bilan> bilans = new ArrayList<>();
+        for (SourceCsv source : SourceCsv.lister(chemin)) {
+            try (BufferedReader br = new BufferedReader(
+                    new InputStreamReader(source.ouvrir(), StandardCharsets.UTF_8), 1 << 16)) {
+                LecteurCsv lecteur = new LecteurCsv(br, source.getNom());
+                bilans.add(scorer(source.getNom(), lecteur::lire));
+            }
+        }
+        return bilans.size() == 1 ? bilans.get(0) : Bilan.cumul(bilans);
+    }
+
+    // =========================================================================
+    // LOT
+    // =========================================================================
+
+    private interface Lecture {
+        /** Remplit le paquet (vidé), false en fin de source. */
+        boolean lire(Paquet p) throws Exception;
+    }
+
+    private static Bilan scorer(String source, Lecture lecture) throws Exception {
+
+        PredicteurCompile mos = PredictionServiceMOS.getPredicteurQos();
+        PredicteurCompile anomalies = PredictionServiceAnomalies.getPredicteur();
+        if (mos == null && anomalies == null) {
+            throw new IllegalStateException("Aucun modèle MOS ni anomalies entraîné");
+        }
+
+        Modeles modeles = new Modeles(mos, anomalies,
+                PredictionServiceMOS.getVersionModele(), PredictionServiceAnomalies.getVersionModele());
+        long idLot = prochainLot();
+        int nbThreads = Math.max(1, DBConnection.getIntProperty("prediction.threads",
+                Runtime.getRuntime().availableProcessors()));
+
+        System.out.println(">>> Lot " + idLot + " : prédictions sur " + source + " (" + nbThreads + " threads, MOS "
+                + modeles.versionMos + ", anomalies " + modeles.versionAnomalies + ")");
+
+        long t0 = System.nanoTime();
+        long total = 0;
+        ForkJoinPool pool = new ForkJoinPool(nbThreads);
+        Ecriture ecriture = new Ecriture(idLot, source, modeles);
+
+        // Deux paquets : l'un est inséré pendant que l'autre est lu et noté.
+        // L'insertion d'un paquet est attendue avant celle du suivant,
+        // donc avant que son tableau soit réutilisé.
+        Paquet[] paquets = {new Paquet(), new Paquet()};
+        Future<?> enCours = null;
+        try {
+            for (int k = 0; ; k++) {
+                Paquet p = paquets[k % 2];
+                p.vider();
+                if (!lecture.lire(p)) break;
+
+                pool.invoke(new Tache(p, 0, p.n, modeles));
+
+                if (enCours != null) {
+                    Future<?> precedent = enCours;
+                    enCours = null;
+                    attendre(precedent);
+                }
+                enCours = ecriture.inserer(p);
+                total += p.n;
+                afficherDebit(total, t0);
+            }
+            if (enCours != null) {
+                Future<?> dernier = enCours;
+                enCours = null;
+                attendre(dernier);
+            }
+
+        } finally {
+            // Lecture ou notation en échec : l'insertion en cours se termine
+            // (ou échoue) avant la fermeture de sa connexion, l'erreur
+            // principale est celle qui remonte
+            if (enCours != null) {
+                try {
+                    enCours.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException e) {
+                    System.out.println("⚠ Lot " + idLot + " : insertion en échec : " + e.getCause().getMessage());
+                }
+            }
+            ecriture.fermer();
+            pool.shutdownNow();
+        }
+
+        Bilan b = new Bilan(idLot, source, total, (System.nanoTime() - t0) / 1e9);
+        System.out.printf("✔ Lot %d : %d prédictions en %.1f s (%.0f lignes/s)%n",
+                idLot, total, b.secondes, b.getDebit());
+        return b;
+    }
+
+    private static void attendre(Future<?> f) throws Exception {
+        try {
+            f.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) throw (Exception) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw e;
+        }
+    }
+
+    private static long prochainLot() throws SQLException {
+        try (Connection conn = DBConnection.getConnection();
+             Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("SELECT " + SEQUENCE + ".NEXTVAL FROM DUAL")) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+
+    /**
+     * Insertions d'un lot, sur un thread dédié qui emprunte et rend sa
+     * propre connexion : le pool prête une connexion par thread, celle du
+     * thread appelant porte le curseur de lecture.
+     */
+    private static class Ecriture {
+        private final ExecutorService executeur = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "predictions-ecriture");
+            t.setDaemon(true);
+            return t;
+        });
+        private final long idLot;
+        private final String source;
+        private final Modeles modeles;
+        // Lus et écrits sur le seul thread d'écriture
+        private Connection conn;
+        private PreparedStatement ps;
+
+        Ecriture(long idLot, String source, Modeles modeles) {
+            this.idLot = idLot;
+            this.source = source;
+            this.modeles = modeles;
+        }
+
+        Future<?> inserer(Paquet p) {
+            return executeur.submit(() -> {
+                if (conn == null) {
+                    conn = DBConnection.getConnection();
+                    conn.setAutoCommit(false);
+                    ps = conn.prepareStatement(INSERTION);
+                }
+                PredictionLotService.inserer(conn, ps, p, idLot, source, modeles);
+                return null;
+            });
+        }
+
+        /** Rend la connexion depuis le thread d'écriture, après la dernière insertion. */
+        void fermer() {
+            Future<?> f = executeur.submit(() -> {
+                try {
+                    if (ps != null) ps.close();
+                } finally {
+                    if (conn != null) conn.close();
+                }
+                return null;
+            });
+            try {
+                f.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                System.out.println("⚠ Connexion d'écriture du lot " + idLot + " : " + e.getCause().getMessage());
+            } finally {
+                executeur.shutdownNow();
+            }
+        }
+    }
+
+    private static void inserer(Connection conn, PreparedStatement ps, Paquet p, long idLot, String source,
+                                Modeles modeles) throws SQLException {
+        try {
+            for (int i = 0; i < p.n; i++) {
+                ps.setLong(1, idLot);
+                ps.setString(2, source);
+                ps.setString(3, p.refs[i]);
+                ps.setString(4, p.zones[i]);
+                ps.setTimestamp(5, p.dates[i]);
+                for (int k = 0; k < NB_ENTREES; k++) reel(ps, 6 + k, p.entrees[k][i]);
+                reel(ps, 11, p.mos[i]);
+                reel(ps, 12, p.anomalie[i]);
+                ps.setString(13, modeles.versionMos);
+                ps.setString(14, modeles.versionAnomalies);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+            conn.commit();
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        }
+    }
+
+    // NaN (valeur manquante, pas de modèle) : NULL
+    private static void reel(PreparedStatement ps, int i, double v) throws SQLException {
+        if (Double.isNaN(v)) ps.setNull(i, Types.DOUBLE);
+        else ps.setDouble(i, v);
+    }
+
+    private static void afficherDebit(long lignes, long t0) {
+        double secondes = Math.max(1e-9, (System.nanoTime() - t0) / 1e9);
+        System.out.printf(">>> %d lignes prédites (%.0f lignes/s)%n", lignes, lignes / secondes);
+    }
+
+    /** Crée PREDICTIONS_QOS si besoin. Appelé une fois au démarrage (Main), hors transaction. */
+    public static void verifierSchema() {
+        if (schemaVerifie) return;
+
+        synchronized (PredictionLotService.class) {
+            if (schemaVerifie) return;
+
+            List<String> ddl = List.of(
+                    "CREATE TABLE " + TABLE + " (ID_LOT NUMBER(19), SOURCE VARCHAR2(255), REF VARCHAR2(64), " +
+                            "ZONE VARCHAR2(255), DATE_MESURE TIMESTAMP, LATENCE NUMBER, JITTER NUMBER, PERTE NUMBER, " +
+                            "BANDE_PASSANTE NUMBER, SIGNAL_SCORE NUMBER, MOS_PREDIT NUMBER, PROBA_ANOMALIE NUMBER, " +
+                            "VERSION_MOS VARCHAR2(64), VERSION_ANOMALIES VARCHAR2(64), DATE_PREDICTION TIMESTAMP)",
+                    "CREATE INDEX IDX_" + TABLE + "_LOT ON " + TABLE + " (ID_LOT)",
+                    "CREATE INDEX IDX_" + TABLE + "_ZONE ON " + TABLE + " (ZONE, DATE_MESURE)",
+                    "CREATE SEQUENCE " + SEQUENCE + " CACHE 20"
+            );
+
+            try (Connection conn = DBConnection.getConnection();
+                 Statement st = conn.createStatement()) {
+
+                for (String s : ddl) {
+                    try {
+                        st.execute(s);
+                    } catch (SQLException e) {
+                        // ORA-00955 / ORA-01408 : table, séquence ou index déjà présent
+                        if (e.getErrorCode() != 955 && e.getErrorCode() != 1408) throw e;
+                    }
+                }
+                schemaVerifie = true;
+
+            } catch (Exception e) {
+                System.err.println("❌ Création de " + TABLE + " impossible: " + e.getMessage());
+            }
+        }
+    }
+
+    // =========================================================================
+    // NOTATION (fork/join)
+    // =========================================================================
+
+    /** Prédicteurs partagés et, par thread, leurs copies. */
+    private static class Modeles {
+        final PredicteurCompile mos;
+        final PredicteurCompile anomalies;
+        final String versionMos;
+        final String versionAnomalies;
+        final ThreadLocal<PredicteurCompile[]> copies = ThreadLocal.withInitial(this::copier);
+
+        Modeles(PredicteurCompile mos, PredicteurCompile anomalies, String versionMos, String versionAnomalies) {
+            this.mos = mos;
+            this.anomalies = anomalies;
+            this.versionMos = versionMos;
+            this.versionAnomalies = versionAnomalies;
+        }
+
+        private PredicteurCompile[] copier() {
+            try {
+                return new PredicteurCompile[]{
+                        mos == null ? null : mos.copie(),
+                        anomalies == null ? null : anomalies.copie()
+                };
+            } catch (Exception e) {
+                throw new IllegalStateException("Copie des modèles impossible : " + e.getMessage(), e);
+            }
+        }
+    }
+
+    private static class Tache extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Paquet p;
+        private final int debut;
+        private final int fin;
+        private final Modeles modeles;
+
+        Tache(Paquet p, int debut, int fin, Modeles modeles) {
+            this.p = p;
+            this.debut = debut;
+            this.fin = fin;
+            this.modeles = modeles;
+        }
+
+        @Override
+        protected void compute() {
+            if (fin - debut > LIGNES_PAR_TACHE) {
+                int milieu = (debut + fin) >>> 1;
+                invokeAll(new Tache(p, debut, milieu, modeles), new Tache(p, milieu, fin, modeles));
+                return;
+            }
+
+            PredicteurCompile[] copies = modeles.copies.get();
+            PredicteurCompile mos = copies[0];
+            PredicteurCompile anomalies = copies[1];
+            try {
+                for (int i = debut; i < fin; i++) {
+                    if (mos != null) {
+                        remplir(mos.entrees(), i);
+                        p.mos[i] = Math.max(1.0, Math.min(5.0, mos.classer()));
+                    }
+                    if (anomalies != null) {
+                        remplir(anomalies.entrees(), i);
+                        p.anomalie[i] = PredictionServiceAnomalies.probabiliteAnomalie(anomalies);
+                    }
+                }
+            } catch (Exception e) {
+                throw new IllegalStateException("Prédiction impossible : " + e.getMessage(), e);
+            }
+        }
+
+        private void remplir(double[] e, int i) {
+            for (int k = 0; k < NB_ENTREES; k++) e[k] = p.entrees[k][i];
+        }
+    }
+
+    // =========================================================================
+    // SOURCES
+    // =========================================================================
+
+    /** Lignes d'un paquet, en colonnes. */
+    private static class Paquet {
+        int n;
+        final String[] refs = new String[LIGNES_PAR_PAQUET];
+        final String[] zones = new String[LIGNES_PAR_PAQUET];
+        final Timestamp[] dates = new Timestamp[LIGNES_PAR_PAQUET];
+        // latence, jitter, perte, bande passante, signal
+        final double[][] entrees = new double[NB_ENTREES][LIGNES_PAR_PAQUET];
+        final double[] mos = new double[LIGNES_PAR_PAQUET];
+        final double[] anomalie = new double[LIGNES_PAR_PAQUET];
+
+        void vider() {
+            n = 0;
+            Arrays.fill(mos, Double.NaN);
+            Arrays.fill(anomalie, Double.NaN);
+        }
+
+        boolean plein() {
+            return n == LIGNES_PAR_PAQUET;
+        }
+    }
+
+    private static boolean lireMesures(ResultSet rs, Paquet p) throws SQLException {
+        while (!p.plein() && rs.next()) {
+            int i = p.n++;
+            p.refs[i] = rs.getString(1);
+            p.zones[i] = rs.getString(2);
+            p.dates[i] = rs.getTimestamp(3);
+            for (int k = 0; k < NB_ENTREES; k++) {
+                double v = rs.getDouble(4 + k);
+                p.entrees[k][i] = rs.wasNull() ? Double.NaN : v;
+            }
+        }
+        return p.n > 0;
+    }
+
+    private static class LecteurCsv {
+        private final BufferedReader br;
+        private final String nom;
+        // Colonne de chaque entrée (-1 : absente) et de la zone
+        private final int[] colonnes = new int[NB_ENTREES];
+        private int colonneZone = -1;
+        private long ligne = 1;
+
+        LecteurCsv(BufferedReader br, String nom) throws IOException {
+            this.br = br;
+            this.nom = nom;
+            Arrays.fill(colonnes, -1);
+
+            String entete = br.readLine();
+            if (entete == null) return;
+            String[] noms = entete.split(",", -1);
+            for (int c = 0; c < noms.length; c++) {
+                switch (noms[c].trim().toLowerCase(Locale.ROOT)) {
+                    case "latence": case "latency": colonnes[0] = c; break;
+                    case "jitter": colonnes[1] = c; break;
+                    case "loss_rate": case "perte": case "loss": colonnes[2] = c; break;
+                    case "bande_passante": case "bandwidth": colonnes[3] = c; break;
+                    case "signal_score": case "signal": colonnes[4] = c; break;
+                    case "zone": colonneZone = c; break;
+                    default:
+                }
+            }
+            if (Arrays.stream(colonnes).allMatch(c -> c < 0)) {
+                System.out.println("⚠ " + nom + " : aucune colonne latence, jitter, loss_rate, bande_passante, signal_score");
+            }
+        }
+
+        boolean lire(Paquet p) throws IOException {
+            String line;
+            while (!p.plein() && (line = br.readLine()) != null) {
+                ligne++;
+                if (line.isBlank()) continue;
+                String[] c = line.split(",", -1);
+                int i = p.n++;
+                p.refs[i] = Long.toString(ligne);
+                p.zones[i] = colonneZone >= 0 && colonneZone < c.length ? c[colonneZone].trim() : null;
+                p.dates[i] = null;
+                for (int k = 0; k < NB_ENTREES; k++) {
+                    int col = colonnes[k];
+                    p.entrees[k][i] = col >= 0 && col < c.length ? reel(c[col]) : Double.NaN;
+                }
+            }
+            return p.n > 0;
+        }
+
+        private static double reel(String s) {
+            try { return Double.parseDouble(s.trim()); }
+            catch (NumberFormatException e) { return Double.NaN; }
+        }
+    }
+
+    // =========================================================================
+    // BILAN
+    // =========================================================================
+
+    public static class Bilan {
+        private final long idLot;
+        private final String source;
+        private final long nbLignes;
+        private final double secondes;
+
+        Bilan(long idLot, String source, long nbLignes, double secondes) {
+            this.idLot = idLot;
+            this.source = source;
+            this.nbLignes = nbLignes;
+            this.secondes = secondes;
+        }
+
+        // Entrées d'une archive : lots successifs, cumulés
+        static Bilan cumul(List<Bilan> bilans) {
+            long n = 0;
+            double s = 0;
+            for (Bilan b : bilans) {
+                n += b.nbLignes;
+                s += b.secondes;
+            }
+            return new Bilan(bilans.isEmpty() ? 0 : bilans.get(0).idLot, bilans.size() + " fichiers", n, s);
+        }
+
+        /** Identifiant du lot dans PREDICTIONS_QOS (premier lot pour une archive). */
+        public long getIdLot() { return idLot; }
+
+        public String getSource() { return source; }
+
+        public long getNbLignes() { return nbLignes; }
+
+        public double getSecondes() { return secondes; }
+
+        public double getDebit() { return secondes > 0 ? nbLignes / secondes : 0; }
+    }
+}
@@ -2,12 +2,14 @@ package com.ensah.qoe.Services;
 
 import com.ensah.qoe.ML.AnomalyDetectionModels;
 import com.ensah.qoe.ML.DataPreparationAnomalie;
+import com.ensah.qoe.ML.PredicteurCompile;
 import weka.core.*;
 import weka.core.converters.CSVLoader;
 import weka.filters.Filter;
 import weka.filters.unsupervised.attribute.Normalize;
 
 import java.io.InputStream;
+import java.text.SimpleDateFormat;
 import java.util.*;
 
 public class PredictionServiceAnomalies {
@@ -19,8 +21,16 @@ public class PredictionServiceAnomalies {
     private static Instances trainingHeader;
     private static Instances originalDataset; // ✅ NOUVEAU : Dataset ORIGINAL avec zone
 
-    private static boolean modelTrained = false;
+    private static volatile boolean modelTrained = false;
     private static boolean modelReady = false;
+
+    // Features de predict, dans l'ordre de ses paramètres
+    private static final String[] ENTREES = {"latence", "jitter", "loss_rate", "bande_passante", "signal_score"};
+    // Chemin de prédiction compilé (null : Filter.useFilter) et indice de la classe "1"
+    private static volatile PredicteurCompile predicteur;
+    private static int indiceAnomalie = -1;
+    // Algorithme et date d'entraînement, reportés avec les prédictions en lot
+    private static volatile String versionModele;
     // Métriques
     private static double lastAccuracy = 0.0;
     private static double lastPrecision = 0.0;
@@ -88,6 +98,8 @@ public class PredictionServiceAnomalies {
             lastRecall = result.recall;
             lastConfusionMatrix = result.confusionMatrix;
             lastF1 = (2 * lastPrecision * lastRecall) / (lastPrecision + lastRecall + 1e-9);
+            versionModele = "RandomForest_" + new SimpleDateFormat("yyyyMMdd_HHmmss").format(new Date());
+            compilerPredicteur();
             modelTrained = true;
             modelReady = true;
             report.append("=== ENTRAÎNEMENT TERMINÉ ===\n");
@@ -103,6 +115,38 @@ public class PredictionServiceAnomalies {
         return report.toString();
     }
 
+    // Avant de publier le modèle ; en cas d'échec la prédiction passe par Filter.useFilter
+    private static void compilerPredicteur() {
+        if (trainingHeader.classAttribute().isNominal()) {
+            indiceAnomalie = trainingHeader.classAttribute().indexOfValue("1");
+        }
+        try {
+            predicteur = PredicteurCompile.compiler(modelHandler.getModel(), trainingHeader,
+                    DataPreparationAnomalie.getNormalizeFilter(), ENTREES);
+        } catch (Exception e) {
+            predicteur = null;
+            System.out.println("⚠ Prédiction anomalies non compilée, Filter.useFilter conservé : " + e.getMessage());
+        }
+    }
+
+    /**
+     * Prédicteur compilé (latence, jitter, loss_rate, bande_passante,
+     * signal_score, dans cet ordre), ou null si aucun modèle n'est prêt.
+     */
+    public static PredicteurCompile getPredicteur() {
+        return modelTrained ? predicteur : null;
+    }
+
+    /** Probabilité d'anomalie des entrées du thread dans p (getPredicteur() ou une copie). */
+    public static double probabiliteAnomalie(PredicteurCompile p) throws Exception {
+        if (trainingHeader.classAttribute().isNumeric()) return p.classer();
+        return p.distribution()[indiceAnomalie];
+    }
+
+    public static String getVersionModele() {
+        return versionModele;
+    }
+
     // =========================
     // ✅ NOUVELLES FONCTIONS POUR STATISTIQUES
     // =========================
@@ -255,46 +299,26 @@ public class PredictionServiceAnomalies {
         }
 
         try {
-            // ==================================================
-            // 1️⃣ Création de l'instance brute (SANS mos)
-            // ==================================================
-            DenseInstance instance = new DenseInstance(trainingHeader.numAttributes());
-            instance.setDataset(trainingHeader);
-
-            instance.setValue(trainingHeader.attribute("latence"), latency);
-            instance.setValue(trainingHeader.attribute("jitter"), jitter);
-            instance.setValue(trainingHeader.attribute("loss_rate"), loss);
-            instance.setValue(trainingHeader.attribute("bande_passante"), bandwidth);
-            instance.setValue(trainingHeader.attribute("signal_score"), signal);
-
-            instance.setClassMissing();
-
-            // ==================================================
-            // 2️⃣ Normalisation avec le filtre du TRAIN
-            // ==================================================
-            Normalize normalize = DataPreparationAnomalie.getNormalizeFilter();
-            if (normalize == null) {
-                throw new IllegalStateException("Filtre de normalisation non initialisé");
+            PredicteurCompile p = predicteur;
+            Instance normalizedInstance = null;
+            if (p != null) {
+                double[] e = p.entrees();
+                e[0] = latency;
+                e[1] = jitter;
+                e[2] = loss;
+                e[3] = bandwidth;
+                e[4] = signal;
+            } else {
+                normalizedInstance = normaliserParFiltre(latency, jitter, loss, bandwidth, signal);
             }
 
-            Instances temp = new Instances(trainingHeader, 0);
-            temp.add(instance);
-            temp.setClassIndex(trainingHeader.classIndex());
-
-            Instances normalizedTemp = Filter.useFilter(temp, normalize);
-            normalizedTemp.setClassIndex(trainingHeader.classIndex());
-
-            Instance normalizedInstance = normalizedTemp.firstInstance();
-
-            // ==================================================
-            // 3️⃣ Prédiction
-            // ==================================================
-            double predictionValue =
-                    modelHandler.getModel().classifyInstance(normalizedInstance);
-
             // Cas 1️⃣ : classe NUMÉRIQUE (0 / 1)
             if (trainingHeader.classAttribute().isNumeric()) {
 
+                double predictionValue = p != null
+                        ? p.classer()
+                        : modelHandler.getModel().classifyInstance(normalizedInstance);
+
                 boolean isAnomaly = predictionValue >= 0.5;
 
                 String prediction = isAnomaly ? "ANOMALIE" : "NORMAL";
@@ -314,13 +338,11 @@ public class PredictionServiceAnomalies {
             // Cas 2️⃣ : classe NOMINALE
             else {
 
-                double[] dist =
-                        modelHandler.getModel().distributionForInstance(normalizedInstance);
+                double[] dist = p != null
+                        ? p.distribution()
+                        : modelHandler.getModel().distributionForInstance(normalizedInstance);
 
-                int anomalyIndex =
-                        trainingHeader.classAttribute().indexOfValue("1");
-
-                double anomalyProb = dist[anomalyIndex];
+                double anomalyProb = dist[indiceAnomalie];
                 double normalProb  = 1.0 - anomalyProb;
 
                 String prediction =
@@ -340,6 +362,38 @@ public class PredictionServiceAnomalies {
         }
     }
 
+    // Chemin d'origine (instance + Filter.useFilter), si la compilation a échoué
+    private static Instance normaliserParFiltre(
+            double latency, double jitter, double loss,
+            double bandwidth, double signal) throws Exception {
+
+        DenseInstance instance = new DenseInstance(trainingHeader.numAttributes());
+        instance.setDataset(trainingHeader);
+
+        instance.setValue(trainingHeader.attribute("latence"), latency);
+        instance.setValue(trainingHeader.attribute("jitter"), jitter);
+        instance.setValue(trainingHeader.attribute("loss_rate"), loss);
+        instance.setValue(trainingHeader.attribute("bande_passante"), bandwidth);
+        instance.setValue(trainingHeader.attribute("signal_score"), signal);
+
+        instance.setClassMissing();
+
+        // Normalisation avec le filtre du TRAIN
+        Normalize normalize = DataPreparationAnomalie.getNormalizeFilter();
+        if (normalize == null) {
+            throw new IllegalStateException("Filtre de normalisation non initialisé");
+        }
+
+        Instances temp = new Instances(trainingHeader, 0);
+        temp.add(instance);
+        temp.setClassIndex(trainingHeader.classIndex());
+
+        Instances normalizedTemp = Filter.useFilter(temp, normalize);
+        normalizedTemp.setClassIndex(trainingHeader.classIndex());
+
+        return normalizedTemp.firstInstance();
+    }
+
     // Alias pour le Dashboard
     public static PredictionResult predictAnomaly(
             double lat, double jit, double loss,
@@ -2,6 +2,8 @@ package com.ensah.qoe.Services;
 
 import com.ensah.qoe.ML.DataPreparationMOS;
 import com.ensah.qoe.ML.MOSPredictionModels;
+import com.ensah.qoe.ML.ModeleMOS;
+import com.ensah.qoe.ML.PredicteurCompile;
 import weka.core.*;
 import weka.core.converters.CSVLoader;
 import weka.filters.Filter;
@@ -9,6 +11,7 @@ import weka.filters.unsupervised.attribute.Normalize;
 
 import java.io.InputStream;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 
 public class PredictionServiceMOS {
 
@@ -16,10 +19,29 @@ public class PredictionServiceMOS {
     // ÉTAT GLOBAL
     // =========================
     private static Instances trainingHeader;
-    private static Instances originalDataset; // Dataset ORIGINAL avec toutes les informations
+    private static volatile Instances originalDataset; // Dataset ORIGINAL avec toutes les informations
     private static final MOSPredictionModels modelHandler = new MOSPredictionModels();
-    private static boolean modelTrained = false;
-    private static boolean modelReady = false;
+    // Écrits en dernier : le modèle, le header et le filtre sont alors visibles des autres threads
+    private static volatile boolean modelTrained = false;
+    private static volatile boolean modelReady = false;
+
+    // Features de predictMOS, dans l'ordre de ses paramètres puis les optionnelles
+    private static final String[] ENTREES = {
+            "spectral_centroid", "spectral_bandwidth", "rms", "zcr", "snr", "distortion", "noise_level",
+            "harmonicity", "roughness", "loudness"
+    };
+    // Mesures réseau du dataset (MESURES_QOS, CSV), pour le scoring en lot
+    private static final String[] ENTREES_QOS = {"latence", "jitter", "loss_rate", "bande_passante", "signal_score"};
+    // Écart moyen (points de MOS) toléré entre prédit et mesuré sur les premières lignes du dataset
+    private static final double ECART_CONTROLE_MAX = 1.0;
+    // Chemins de prédiction compilés pour le modèle courant (null : Filter.useFilter / indisponible)
+    private static volatile PredicteurCompile predicteur;
+    private static volatile PredicteurCompile predicteurQos;
+    // Version du modèle courant (ModeleMOS.getVersion), reportée avec les prédictions en lot
+    private static volatile String versionModele;
+
+    // Chargement du modèle sauvegardé, lancé une fois au démarrage
+    private static CompletableFuture<Boolean> chargement;
 
     // Métriques de performance
     private static double lastRMSE = 0.0;
@@ -32,6 +54,8 @@ public class PredictionServiceMOS {
     private static double minMOS = 5.0;
     private static double maxMOS = 1.0;
     private static double stdMOS = 0.0;
+    // Taille du dataset d'un modèle relu, tant que le CSV n'est pas rechargé
+    private static int nbEchantillons = 0;
 
     // =========================
     // ✅ CHARGER CSV ORIGINAL
@@ -68,7 +92,7 @@ public class PredictionServiceMOS {
     // =========================
     // 1️⃣ ENTRAÎNEMENT
     // =========================
-    public static String trainModel() {
+    public static synchronized String trainModel() {
         StringBuilder report = new StringBuilder();
 
         try {
@@ -104,9 +128,13 @@ public class PredictionServiceMOS {
             // Calcul des statistiques MOS
             calculateMOSStatistics();
 
+            compilerPredicteur();
+            controlerPredicteurQos();
             modelTrained = true;
             modelReady = true;
 
+            sauvegarderModele(result);
+
             // Génération du rapport
             report.append("✅ ENTRAÎNEMENT MODÈLE MOS TERMINÉ\n\n");
             report.append("📊 Métriques de performance :\n");
@@ -146,6 +174,160 @@ public class PredictionServiceMOS {
         return report.toString();
     }
 
+    // =========================
+    // 💾 MODÈLE SAUVEGARDÉ (models/)
+    // =========================
+
+    // Un échec d'écriture n'invalide pas l'entraînement
+    private static void sauvegarderModele(MOSPredictionModels.EvaluationResult metriques) {
+        ModeleMOS m = new ModeleMOS(modelHandler.getModelType(), modelHandler.getModel(),
+                DataPreparationMOS.getNormalizeFilter(), trainingHeader, metriques,
+                originalDataset.numInstances(), avgMOS, minMOS, maxMOS, stdMOS);
+        versionModele = m.getVersion();
+        try {
+            System.out.println("💾 Modèle MOS sauvegardé : " + m.sauvegarder());
+        } catch (Exception e) {
+            System.out.println("⚠ Modèle MOS non sauvegardé : " + e.getMessage());
+        }
+    }
+
+    // Appelé après chaque entraînement ou chargement, avant de publier le modèle
+    private static void compilerPredicteur() {
+        try {
+            predicteur = PredicteurCompile.compiler(modelHandler.getModel(), trainingHeader,
+                    DataPreparationMOS.getNormalizeFilter(), ENTREES);
+        } catch (Exception e) {
+            predicteur = null;
+            System.out.println("⚠ Prédiction MOS non compilée, Filter.useFilter conservé : " + e.getMessage());
+        }
+        try {
+            predicteurQos = PredicteurCompile.compiler(modelHandler.getModel(), trainingHeader,
+                    DataPreparationMOS.getNormalizeFilter(), ENTREES_QOS);
+        } catch (Exception e) {
+            predicteurQos = null;
+            System.out.println("⚠ Prédiction MOS sur mesures réseau indisponible : " + e.getMessage());
+        }
+    }
+
+    /**
+     * Contrôle d'échelle sur des lignes connues : le MOS prédit des
+     * premières lignes du dataset doit rester proche du MOS mesuré. Un
+     * prédicteur hors échelle (classe restée normalisée…) est retiré
+     * plutôt que d'écrire des MOS faux en lot.
+     */
+    private static void controlerPredicteurQos() {
+        PredicteurCompile p = predicteurQos;
+        Instances data = originalDataset;
+        if (p == null || data == null || data.classIndex() < 0) return;
+
+        double ecart = 0;
+        int n = 0;
+        try {
+            for (int i = 0; i < Math.min(20, data.numInstances()); i++) {
+                Instance inst = data.instance(i);
+                if (inst.classIsMissing()) continue;
+                ecart += Math.abs(predireLigne(p, inst) - inst.classValue());
+                n++;
+            }
+        } catch (Exception e) {
+            predicteurQos = null;
+            System.out.println("❌ Contrôle du MOS prédit impossible : " + e.getMessage());
+            return;
+        }
+        if (n > 0 && ecart / n > ECART_CONTROLE_MAX) {
+            predicteurQos = null;
+            System.out.printf("❌ MOS prédit à %.2f du MOS mesuré en moyenne (%d lignes) : prédiction en lot désactivée%n",
+                    ecart / n, n);
+        }
+    }
+
+    /**
+     * Prédicteur sur les mesures réseau (latence, jitter, loss_rate,
+     * bande_passante, signal_score, dans cet ordre), ou null si aucun
+     * modèle n'est prêt.
+     */
+    public static PredicteurCompile getPredicteurQos() {
+        return modelTrained ? predicteurQos : null;
+    }
+
+    public static String getVersionModele() {
+        return versionModele;
+    }
+
+    // MOS prédit d'une ligne du dataset d'origine (feature absente : manquante)
+    private static double predireLigne(PredicteurCompile p, Instance inst) throws Exception {
+        double[] e = p.entrees();
+        for (int k = 0; k < ENTREES_QOS.length; k++) {
+            Attribute a = originalDataset.attribute(ENTREES_QOS[k]);
+            e[k] = a == null || inst.isMissing(a) ? Double.NaN : inst.value(a);
+        }
+        return p.classer();
+    }
+
+    /**
+     * Relit en tâche de fond le dernier modèle sauvegardé (un seul
+     * lancement, les appels suivants rendent la même tâche) : la
+     * prédiction est disponible dès sa lecture, puis le CSV d'origine est
+     * rechargé pour les graphiques. Vrai si un modèle est prêt.
+     */
+    public static synchronized CompletableFuture<Boolean> chargerModeleSauvegarde() {
+        if (chargement == null) {
+            chargement = CompletableFuture.supplyAsync(PredictionServiceMOS::chargerModele, r -> {
+                Thread t = new Thread(r, "chargement-modele-mos");
+                t.setDaemon(true);
+                t.start();
+            });
+        }
+        return chargement;
+    }
+
+    private static boolean chargerModele() {
+        long t0 = System.nanoTime();
+        synchronized (PredictionServiceMOS.class) {
+            // Un entraînement a déjà eu lieu : il prime sur le fichier
+            if (modelTrained) return true;
+
+            ModeleMOS m = ModeleMOS.chargerDernier();
+            if (m == null) {
+                System.out.println(">>> Aucun modèle MOS sauvegardé : entraînement nécessaire");
+                return false;
+            }
+
+            trainingHeader = m.trainingHeader;
+            DataPreparationMOS.setNormalizeFilter(m.normalizeFilter);
+            modelHandler.setModel(m.model, m.modelType);
+            lastRMSE = m.rmse;
+            lastMAE = m.mae;
+            lastR2 = m.r2;
+            lastMAPE = m.mape;
+            nbEchantillons = m.nbEchantillons;
+            avgMOS = m.avgMOS;
+            minMOS = m.minMOS;
+            maxMOS = m.maxMOS;
+            stdMOS = m.stdMOS;
+            versionModele = m.getVersion();
+
+            compilerPredicteur();
+            modelTrained = true;
+            modelReady = true;
+        }
+        System.out.printf(">>> Modèle MOS prêt (%.0f ms)%n", (System.nanoTime() - t0) / 1e6);
+
+        // Graphiques (tendance, distribution…) : lecture seule du CSV, sans entraînement
+        try {
+            Instances data = loadOriginalCSV("/CSV/prediction_dataset.csv");
+            synchronized (PredictionServiceMOS.class) {
+                if (originalDataset == null) {
+                    originalDataset = data;
+                    controlerPredicteurQos();
+                }
+            }
+        } catch (Exception e) {
+            System.out.println("⚠ Dataset MOS non rechargé : " + e.getMessage());
+        }
+        return true;
+    }
+
     // =========================
     // ✅ CALCUL STATISTIQUES MOS
     // =========================
@@ -197,7 +379,7 @@ public class PredictionServiceMOS {
      * Retourne le nombre total d'échantillons audio
      */
     public static int getTotalAudioSamples() {
-        if (originalDataset == null) return 0;
+        if (originalDataset == null) return nbEchantillons;
         return originalDataset.numInstances();
     }
 
@@ -240,14 +422,20 @@ public class PredictionServiceMOS {
         Attribute mosAttr = originalDataset.classAttribute();
         if (mosAttr == null) return trend;
 
-        // Simuler des prédictions pour la démonstration
+        // Prédictions du modèle ; sans chemin compilé, simulées avec un peu de bruit
+        PredicteurCompile p = getPredicteurQos();
         Random rand = new Random(42);
         for (int i = 0; i < Math.min(100, originalDataset.numInstances()); i++) {
             Instance inst = originalDataset.instance(i);
             if (!inst.isMissing(mosAttr)) {
                 double actualMOS = inst.value(mosAttr);
-                // Simulation de prédiction avec un peu de bruit
-                double predictedMOS = actualMOS + (rand.nextDouble() - 0.5) * lastRMSE * 2;
+                double predictedMOS;
+                try {
+                    predictedMOS = p != null ? predireLigne(p, inst)
+                            : actualMOS + (rand.nextDouble() - 0.5) * lastRMSE * 2;
+                } catch (Exception e) {
+                    continue;
+                }
                 predictedMOS = Math.max(1.0, Math.min(5.0, predictedMOS)); // Limiter entre 1 et 5
 
                 trend.add(new MOSTrendData(i, actualMOS, predictedMOS));
@@ -342,15 +530,21 @@ public class PredictionServiceMOS {
         Attribute mosAttr = originalDataset.classAttribute();
         if (mosAttr == null) return results;
 
+        PredicteurCompile p = getPredicteurQos();
         // Pour les 50 premiers échantillons
         for (int i = 0; i < Math.min(50, originalDataset.numInstances()); i++) {
             Instance inst = originalDataset.instance(i);
             if (!inst.isMissing(mosAttr)) {
                 double actualMOS = inst.value(mosAttr);
 
-                // Simuler une prédiction
-                Random rand = new Random(i);
-                double predictedMOS = actualMOS + (rand.nextDouble() - 0.5) * lastRMSE;
+                // Prédiction du modèle, simulée sans chemin compilé
+                double predictedMOS;
+                try {
+                    predictedMOS = p != null ? predireLigne(p, inst)
+                            : actualMOS + (new Random(i).nextDouble() - 0.5) * lastRMSE;
+                } catch (Exception e) {
+                    continue;
+                }
                 predictedMOS = Math.max(1.0, Math.min(5.0, predictedMOS));
                 double error = Math.abs(actualMOS - predictedMOS);
 
@@ -379,50 +573,27 @@ public class PredictionServiceMOS {
         }
 
         try {
-            // ==================================================
-            // 1️⃣ Création de l'instance avec les features audio
-            // ==================================================
-            DenseInstance instance = new DenseInstance(trainingHeader.numAttributes());
-            instance.setDataset(trainingHeader);
-
-            // Attribution des valeurs (vérifier les noms d'attributs)
-            setAttributeValue(instance, "spectral_centroid", spectralCentroid);
-            setAttributeValue(instance, "spectral_bandwidth", spectralBandwidth);
-            setAttributeValue(instance, "rms", rms);
-            setAttributeValue(instance, "zcr", zcr);
-            setAttributeValue(instance, "snr", snr);
-            setAttributeValue(instance, "distortion", distortion);
-            setAttributeValue(instance, "noise_level", noiseLevel);
-
-            // Features optionnelles (si présentes dans le header)
-            setAttributeValue(instance, "harmonicity", 0.8);
-            setAttributeValue(instance, "roughness", 0.2);
-            setAttributeValue(instance, "loudness", 0.5);
-
-            instance.setClassMissing();
-
-            // ==================================================
-            // 2️⃣ Normalisation avec le filtre du TRAIN
-            // ==================================================
-            Normalize normalize = DataPreparationMOS.getNormalizeFilter();
-            if (normalize == null) {
-                throw new IllegalStateException("Filtre de normalisation non initialisé");
+            double predictedMOS;
+            PredicteurCompile p = predicteur;
+            if (p != null) {
+                double[] e = p.entrees();
+                e[0] = spectralCentroid;
+                e[1] = spectralBandwidth;
+                e[2] = rms;
+                e[3] = zcr;
+                e[4] = snr;
+                e[5] = distortion;
+                e[6] = noiseLevel;
+                // Features optionnelles (ignorées si absentes du header)
+                e[7] = 0.8;
+                e[8] = 0.2;
+                e[9] = 0.5;
+                predictedMOS = p.classer();
+            } else {
+                predictedMOS = predireParFiltre(spectralCentroid, spectralBandwidth, rms, zcr, snr,
+                        distortion, noiseLevel);
             }
 
-            Instances temp = new Instances(trainingHeader, 0);
-            temp.add(instance);
-            temp.setClassIndex(trainingHeader.classIndex());
-
-            Instances normalizedTemp = Filter.useFilter(temp, normalize);
-            normalizedTemp.setClassIndex(trainingHeader.classIndex());
-
-            Instance normalizedInstance = normalizedTemp.firstInstance();
-
-            // ==================================================
-            // 3️⃣ Prédiction
-            // ==================================================
-            double predictedMOS = modelHandler.getModel().classifyInstance(normalizedInstance);
-
             // Limiter entre 1.0 et 5.0
             predictedMOS = Math.max(1.0, Math.min(5.0, predictedMOS));
 
@@ -450,9 +621,49 @@ public class PredictionServiceMOS {
         }
     }
 
+    // Chemin d'origine (instance + Filter.useFilter), si la compilation a échoué
+    private static double predireParFiltre(
+            double spectralCentroid, double spectralBandwidth,
+            double rms, double zcr, double snr,
+            double distortion, double noiseLevel) throws Exception {
+
+        DenseInstance instance = new DenseInstance(trainingHeader.numAttributes());
+        instance.setDataset(trainingHeader);
+
+        setAttributeValue(instance, "spectral_centroid", spectralCentroid);
+        setAttributeValue(instance, "spectral_bandwidth", spectralBandwidth);
+        setAttributeValue(instance, "rms", rms);
+        setAttributeValue(instance, "zcr", zcr);
+        setAttributeValue(instance, "snr", snr);
+        setAttributeValue(instance, "distortion", distortion);
+        setAttributeValue(instance, "noise_level", noiseLevel);
+        setAttributeValue(instance, "harmonicity", 0.8);
+        setAttributeValue(instance, "roughness", 0.2);
+        setAttributeValue(instance, "loudness", 0.5);
+
+        instance.setClassMissing();
+
+        // Normalisation avec le filtre du TRAIN
+        Normalize normalize = DataPreparationMOS.getNormalizeFilter();
+        if (normalize == null) {
+            throw new IllegalStateException("Filtre de normalisation non initialisé");
+        }
+
+        Instances temp = new Instances(trainingHeader, 0);
+        temp.add(instance);
+        temp.setClassIndex(trainingHeader.classIndex());
+
+        Instances normalizedTemp = Filter.useFilter(temp, normalize);
+        normalizedTemp.setClassIndex(trainingHeader.classIndex());
+
+        double v = modelHandler.getModel().classifyInstance(normalizedTemp.firstInstance());
+        return PredicteurCompile.classeBrute(normalize, trainingHeader, v);
+    }
+
+    // Une DenseInstance neuve est entièrement manquante : la valeur est posée si la feature existe
     private static void setAttributeValue(DenseInstance instance, String attrName, double value) {
         Attribute attr = trainingHeader.attribute(attrName);
-        if (attr != null && !instance.isMissing(attr)) {
+        if (attr != null) {
             instance.setValue(attr, value);
         }
     }
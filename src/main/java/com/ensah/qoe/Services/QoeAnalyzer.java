@@ -2,398 +2,545 @@ package com.ensah.qoe.Services;
 
 import com.ensah.qoe.Models.DBConnection;
 import com.ensah.qoe.Models.QoE;
+import com.ensah.qoe.Utils.SourceCsv;
 
 import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
 import java.io.PrintWriter;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
 import java.sql.*;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 public class QoeAnalyzer {
 
-    private static final Map<Integer, QoE> subjectifParClient = new HashMap<>();
-    private static boolean csvCharge = false;
+    // Session affichée par l'interface ; reset() en ouvre une nouvelle
+    private static volatile Session courante = new Session();
 
-    private static Double feedbackTemp = null;
-
-    // =========================================================================
-    // 1) IMPORT CSV + INSERTION AUTOMATIQUE
-    // =========================================================================
-    public static boolean analyserFichierCsv(String csvPath) {
-        if (csvCharge) {
-            System.out.println("✔ CSV déjà chargé en mémoire — aucune réimportation");
-            return true;
-        }
-        String nomFichier = new java.io.File(csvPath).getName().trim();
-        System.out.println("=== [QoeAnalyzer] Fichier détecté : " + nomFichier + " ===");
-        // -------------------------------------------------------
-        //  Vérifier si le fichier a déjà été importé
-        // -------------------------------------------------------
-        if (FichierService.fichierExiste(nomFichier)) {
-            System.out.println("⚠ Le fichier est déjà importé. Chargement depuis la base...");
-
-            csvCharge = true; // empêche l'analyse par CSV
-            chargerDepuisBase(nomFichier);
-            return true;
-        }
-        System.out.println("=== [QoeAnalyzer] Import CSV + Subjectif ===");
+    /**
+     * Analyse QoE d'un CSV churn : scores subjectifs des clients du fichier
+     * et analyses qui en dépendent. Chaque session a son propre état ;
+     * plusieurs sessions (fichiers) peuvent être analysées en même temps.
+     * Les scores sont remplacés d'un bloc une fois chargés : les analyses
+     * lancées pendant un chargement voient l'état précédent.
+     */
+    public static class Session {
+
+        private volatile Map<Integer, QoE> subjectifParClient = Map.of();
+        private volatile boolean csvCharge = false;
+        // Fichier des scores chargés (cellules du cube QoE de la session)
+        private volatile String nomFichier;
+
+        // =====================================================================
+        // 1) IMPORT CSV + INSERTION AUTOMATIQUE
+        // =====================================================================
+        public synchronized boolean analyserFichierCsv(String csvPath) {
+            if (csvCharge) {
+                System.out.println("✔ CSV déjà chargé en mémoire — aucune réimportation");
+                return true;
+            }
+            // .gz ou .zip : lu décompressé à la volée, un seul CSV par import churn
+            SourceCsv source;
+            try {
+                List<SourceCsv> sources = SourceCsv.lister(Path.of(csvPath));
+                if (sources.isEmpty()) {
+                    System.out.println("⚠ Aucun CSV dans " + csvPath);
+                    return false;
+                }
+                if (sources.size() > 1) {
+                    System.out.println("⚠ " + sources.size() + " CSV dans l'archive : seul " + sources.get(0) + " est importé");
+                }
+                source = sources.get(0);
+            } catch (IOException e) {
+                System.out.println("⚠ Fichier illisible : " + e.getMessage());
+                return false;
+            }
 
-        subjectifParClient.clear();
+            String nomFichier = source.getNom().trim();
+            System.out.println("=== [QoeAnalyzer] Fichier détecté : " + nomFichier + " ===");
+            // -------------------------------------------------------
+            //  Vérifier si le fichier a déjà été importé
+            // -------------------------------------------------------
+            if (FichierService.fichierExiste(nomFichier)) {
+                System.out.println("⚠ Le fichier est déjà importé. Chargement depuis la base...");
 
-        try (BufferedReader br = new BufferedReader(new FileReader(csvPath))) {
+                csvCharge = true; // empêche l'analyse par CSV
+                chargerDepuisBase(nomFichier);
+                return true;
+            }
 
-            String header = br.readLine();
-            if (header == null) return false;
+            FichierService.Empreinte empreinte = null;
+            try {
+                empreinte = FichierService.calculerEmpreinte(source);
+            } catch (Exception e) {
+                System.out.println("⚠ Empreinte impossible : " + e.getMessage());
+            }
 
-            String line;
-            int id = 1;
+            FichierService.ImportInfo existant = FichierService.trouverParContenu(empreinte);
+            if (existant != null && existant.estTermine()) {
+                System.out.println("⚠ Contenu déjà importé sous le nom " + existant.getNomFichier()
+                        + ". Chargement depuis la base...");
 
-            while ((line = br.readLine()) != null) {
+                csvCharge = true;
+                chargerDepuisBase(existant.getNomFichier());
+                return true;
+            }
 
-                if (line.trim().isEmpty()) continue;
+            int reprise = 0;
+            if (existant != null) {
+                // Import interrompu du même contenu : reprise après le dernier client validé
+                nomFichier = existant.getNomFichier();
+                reprise = (int) existant.getDerniereLigne();
+                System.out.println("⚠ Reprise de l'import de " + nomFichier + " après le client " + reprise);
+            }
 
-                String[] c = line.split(",", -1);
-                if (c.length < 20) continue;
+            FichierService.demarrerImport(nomFichier, empreinte);
+            System.out.println("=== [QoeAnalyzer] Import CSV + Subjectif ===");
 
-                QoE q = new QoE();
-                q.setNomFichier(nomFichier);
-                q.setSatisfactionQoe(computeSatisfaction(c[19], parseDoubleSafe(c[17]), c[11], c[14]));
-                q.setServiceQoe(computeVideoQuality(c[7], c[12], c[13]));
-                q.setPrixQoe(computeAudioQuality(c[11], c[10], c[8]));
-                q.setContratQoe(computeInteractivity(c[5], c[6], c[2], parseIntSafe(c[4])));
-                q.setLifetimeQoe(computeReliability(c[9], c[10], c[14], parseIntSafe(c[1])));
-
-                subjectifParClient.put(id, q);
-                id++;
-            }
+            try (BufferedReader br = new BufferedReader(
+                    new InputStreamReader(source.ouvrir(), Charset.defaultCharset()), 1 << 16)) {
 
-            csvCharge = true;
+                String header = br.readLine();
+                if (header == null) {
+                    // Enregistré par demarrerImport : ne pas le laisser EN_COURS
+                    System.out.println("⚠ Fichier vide : " + nomFichier);
+                    FichierService.majEtape(nomFichier, FichierService.ETAPE_ANALYSE, FichierService.STATUT_ECHEC);
+                    return false;
+                }
 
-            System.out.println("[CSV] Nombre de clients subjectifs chargés = " + subjectifParClient.size());
+                // Clients numérotés 1..n dans l'ordre des lignes retenues, quel que soit nbThreads
+                int nbThreads = Math.max(1, DBConnection.getIntProperty("import.threads",
+                        Runtime.getRuntime().availableProcessors()));
+                long t0 = System.nanoTime();
+                List<QoE> scores = QoeSubjectif.scorer(br, nomFichier, nbThreads);
+                Map<Integer, QoE> subjectif = new HashMap<>(scores.size() * 2);
+                for (int i = 0; i < scores.size(); i++) subjectif.put(i + 1, scores.get(i));
+                subjectifParClient = subjectif;
+                this.nomFichier = nomFichier;
+                System.out.printf("[CSV] Scores subjectifs : %d threads (%.0f ms)%n",
+                        nbThreads, (System.nanoTime() - t0) / 1e6);
+
+                csvCharge = true;
+
+                System.out.println("[CSV] Nombre de clients subjectifs chargés = " + subjectif.size());
+                FichierService.majEtape(nomFichier, FichierService.ETAPE_ANALYSE, FichierService.STATUT_OK);
+
+                // INSERTION AUTOMATIQUE (marque aussi le fichier comme importé)
+                insererToutesLesQoe(subjectif, nomFichier, reprise);
+                QoeCube.actualiser(nomFichier);
+                return true;
 
-            // INSERTION AUTOMATIQUE
-            insererToutesLesQoe();
-            FichierService.enregistrerFichier(nomFichier);
-            return true;
+            } catch (Exception e) {
+                e.printStackTrace();
+                FichierService.majEtape(nomFichier, FichierService.ETAPE_INSERTION, FichierService.STATUT_ECHEC);
+            }
 
-        } catch (Exception e) {
-            e.printStackTrace();
+            return false;
         }
 
-        return false;
-    }
+        private void chargerDepuisBase(String nomFichier) {
 
-    private static void chargerDepuisBase(String nomFichier) {
+            Map<Integer, QoE> subjectif = new HashMap<>();
 
-        subjectifParClient.clear();
+            String sql =
+                    "SELECT ID_CLIENT, GENRE, LATENCE_MOY, JITTER_MOY, PERTE_MOY, " +
+                            "BANDE_PASSANTE_MOY, SIGNAL_SCORE_MOY, MOS_MOY, " +
+                            "SATISFACTION_QOE, SERVICE_QOE, PRIX_QOE, CONTRAT_QOE, " +
+                            "LIFETIME_QOE, FEEDBACK_SCORE, QOE_GLOBAL " +
+                            "FROM QOE WHERE NOM_FICHIER = ? ORDER BY ID_CLIENT";
 
-        String sql =
-                "SELECT ID_CLIENT, GENRE, LATENCE_MOY, JITTER_MOY, PERTE_MOY, " +
-                        "BANDE_PASSANTE_MOY, SIGNAL_SCORE_MOY, MOS_MOY, " +
-                        "SATISFACTION_QOE, SERVICE_QOE, PRIX_QOE, CONTRAT_QOE, " +
-                        "LIFETIME_QOE, FEEDBACK_SCORE, QOE_GLOBAL " +
-                        "FROM QOE WHERE NOM_FICHIER = ? ORDER BY ID_CLIENT";
+            try (Connection conn = DBConnection.getConnection();
+                 PreparedStatement ps = conn.prepareStatement(sql)) {
 
-        try (Connection conn = DBConnection.getConnection();
-             PreparedStatement ps = conn.prepareStatement(sql)) {
+                ps.setString(1, nomFichier);
+                ResultSet rs = ps.executeQuery();
 
-            ps.setString(1, nomFichier);
-            ResultSet rs = ps.executeQuery();
+                while (rs.next()) {
 
-            while (rs.next()) {
+                    QoE q = new QoE();
 
-                QoE q = new QoE();
+                    int id = rs.getInt("ID_CLIENT");
 
-                int id = rs.getInt("ID_CLIENT");
+                    // === SUBJECTIF ===
+                    q.setSatisfactionQoe(rs.getDouble("SATISFACTION_QOE"));
+                    q.setServiceQoe(rs.getDouble("SERVICE_QOE"));
+                    q.setPrixQoe(rs.getDouble("PRIX_QOE"));
+                    q.setContratQoe(rs.getDouble("CONTRAT_QOE"));
+                    q.setLifetimeQoe(rs.getDouble("LIFETIME_QOE"));
+                    q.setFeedbackScore(rs.getDouble("FEEDBACK_SCORE"));
 
-                // === SUBJECTIF ===
-                q.setSatisfactionQoe(rs.getDouble("SATISFACTION_QOE"));
-                q.setServiceQoe(rs.getDouble("SERVICE_QOE"));
-                q.setPrixQoe(rs.getDouble("PRIX_QOE"));
-                q.setContratQoe(rs.getDouble("CONTRAT_QOE"));
-                q.setLifetimeQoe(rs.getDouble("LIFETIME_QOE"));
-                q.setFeedbackScore(rs.getDouble("FEEDBACK_SCORE"));
+                    // === OBJECTIF ===
+                    q.setLatenceMoy(rs.getDouble("LATENCE_MOY"));
+                    q.setJitterMoy(rs.getDouble("JITTER_MOY"));
+                    q.setPerteMoy(rs.getDouble("PERTE_MOY"));
+                    q.setBandePassanteMoy(rs.getDouble("BANDE_PASSANTE_MOY"));
+                    q.setSignalScoreMoy(rs.getDouble("SIGNAL_SCORE_MOY"));
+                    q.setMosMoy(rs.getDouble("MOS_MOY"));
 
-                // === OBJECTIF ===
-                q.setLatenceMoy(rs.getDouble("LATENCE_MOY"));
-                q.setJitterMoy(rs.getDouble("JITTER_MOY"));
-                q.setPerteMoy(rs.getDouble("PERTE_MOY"));
-                q.setBandePassanteMoy(rs.getDouble("BANDE_PASSANTE_MOY"));
-                q.setSignalScoreMoy(rs.getDouble("SIGNAL_SCORE_MOY"));
-                q.setMosMoy(rs.getDouble("MOS_MOY"));
+                    // === Infos générales ===
+                    q.setGenre(rs.getString("GENRE"));
+                    q.setQoeGlobal(rs.getDouble("QOE_GLOBAL"));
+                    q.setNomFichier(nomFichier);
 
-                // === Infos générales ===
-                q.setGenre(rs.getString("GENRE"));
-                q.setQoeGlobal(rs.getDouble("QOE_GLOBAL"));
-                q.setNomFichier(nomFichier);
+                    subjectif.put(id, q);
+                }
+                subjectifParClient = subjectif;
+                this.nomFichier = nomFichier;
+
+                System.out.println("✔ QOE chargées intégralement depuis la base : "
+                        + subjectif.size());
 
-                subjectifParClient.put(id, q);
+            } catch (Exception e) {
+                e.printStackTrace();
             }
+        }
 
-            System.out.println("✔ QOE chargées intégralement depuis la base : "
-                    + subjectifParClient.size());
+        // =====================================================================
+        // 4) ANALYSE UTILISÉE PAR LE CONTROLLER (séparée)
+        // =====================================================================
+        public QoE analyserParClient(int idClient) {
 
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-    }
+            QoE q = null;
 
-    // =========================================================================
-    // 2) INSERTION AUTOMATIQUE AVEC UNE SEULE CONNEXION
-    // =========================================================================
-    private static void insererToutesLesQoe() throws SQLException {
+            try (Connection conn = DBConnection.getConnection()) {
 
-        System.out.println("=== [AUTO INSERT] Calcul + insertion ===");
+                // 1) Vérifier si subjectif existe
+                QoE src = subjectifParClient.get(idClient);
+                if (src == null) {
+                    System.out.println("⚠ Subjectif introuvable pour id=" + idClient +
+                            " → chargement depuis la BDD");
 
-        Connection conn = DBConnection.getConnection();
+                    return chargerQoeDepuisBase(idClient, conn);
+                }
 
-        String sql =
-                "INSERT INTO QOE (" +
-                        "ID_CLIENT, GENRE, LATENCE_MOY, JITTER_MOY, PERTE_MOY," +
-                        "BANDE_PASSANTE_MOY, SIGNAL_SCORE_MOY, MOS_MOY," +
-                        "SATISFACTION_QOE, SERVICE_QOE, PRIX_QOE, CONTRAT_QOE," +
-                        "LIFETIME_QOE, FEEDBACK_SCORE, QOE_GLOBAL, NOM_FICHIER" +
-                        ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+                // 2) Feedback le plus récent, passé au calcul
+                q = analyserParClientSansConnexion(src, idClient, conn, getFeedbackScore(idClient, conn));
+
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
 
-        PreparedStatement ps = conn.prepareStatement(sql);
+            return q;
+        }
 
-        for (int id = 1; id <= subjectifParClient.size(); id++) {
+        /**
+         * Moyennes des clients du fichier de la session ayant ce genre
+         * (cube QoE) ; null si aucun.
+         */
+        public QoE analyserParGenre(String genre) {
+            String fichier = nomFichier;
+            if (fichier == null) return null;
 
-            QoE q = analyserParClientSansConnexion(id, conn);
+            QoeCube.Agregat a = QoeCube.get().agreger(genre, null, fichier);
+            if (a.getNbClients() == 0) return null;
 
-            if (q == null) continue;
+            QoE q = versQoe(a);
+            q.setGenre(genre);
+            return q;
+        }
 
-            ps.setInt(1, id);
-            ps.setString(2, q.getGenre());
-            ps.setDouble(3, q.getLatenceMoy());
-            ps.setDouble(4, q.getJitterMoy());
-            ps.setDouble(5, q.getPerteMoy());
-            ps.setDouble(6, q.getBandePassanteMoy());
-            ps.setDouble(7, q.getSignalScoreMoy()); // IMPORTANT
-            ps.setDouble(8, q.getMosMoy());
-            ps.setDouble(9, q.getSatisfactionQoe());
-            ps.setDouble(10, q.getServiceQoe());
-            ps.setDouble(11, q.getPrixQoe());
-            ps.setDouble(12, q.getContratQoe());
-            ps.setDouble(13, q.getLifetimeQoe());
-            if (q.getFeedbackScore() == null) {
-                ps.setNull(14, java.sql.Types.DOUBLE);
-            } else {
-                ps.setDouble(14, q.getFeedbackScore());
-            }
-            ps.setDouble(15, q.getQoeGlobal());
-            ps.setString(16, q.getNomFichier());
+        /**
+         * Subjectif moyen de tout le fichier de la session (cube QoE),
+         * objectif moyen des mesures de la zone (QosColonnes) ; null si
+         * aucun fichier n'est chargé.
+         */
+        public QoE analyserParZone(String zone) {
+            String fichier = nomFichier;
+            if (fichier == null) return null;
+
+            QoeCube.Agregat a = QoeCube.get().agreger(null, null, fichier);
+            if (a.getNbClients() == 0) return null;
+
+            QoE q = new QoE();
+            remplirSubjectif(q, a);
+
+            QosColonnes mesures = QosColonnes.get();
+            int z = mesures.code(zone);
+            q.setLatenceMoy(mesures.moyenne(QosColonnes.Mesure.LATENCE, z));
+            q.setJitterMoy(mesures.moyenne(QosColonnes.Mesure.JITTER, z));
+            q.setPerteMoy(mesures.moyenne(QosColonnes.Mesure.PERTE, z));
+            q.setBandePassanteMoy(mesures.moyenne(QosColonnes.Mesure.BANDE_PASSANTE, z));
+            q.setMosMoy(mesures.moyenne(QosColonnes.Mesure.MOS, z));
+
+            // Feedbacks du fichier compris : un feedback enregistré change aussi cette vue
+            q.setQoeGlobal(computeGlobalQoe(q, a));
+            return q;
+        }
 
-            ps.executeUpdate();
+        /** Fichier des scores chargés, ou null. */
+        public String getNomFichier() {
+            return nomFichier;
         }
 
-        ps.close();
-        conn.close();
+        public boolean isCsvCharge() {
+            return csvCharge;
+        }
 
-        System.out.println("=== ✔ FIN : Insertion automatique de tous les QoE ===");
+        /** Clients dont le score subjectif est chargé. */
+        public int getNbClients() {
+            return subjectifParClient.size();
+        }
     }
 
     // =========================================================================
-    // 3) ANALYSE CLIENT SANS FERMER LA CONNEXION
+    // SESSION COURANTE (interface)
     // =========================================================================
-    private static QoE analyserParClientSansConnexion(int id, Connection conn) {
+    public static Session getSession() {
+        return courante;
+    }
 
-        QoE q = copierSubjectif(subjectifParClient.get(id));
-        if (q == null) return null;
+    /** Fait de session la session courante (par exemple une fois son CSV chargé). */
+    public static void utiliser(Session session) {
+        courante = session;
+    }
 
-        String zone = null, genre = null;
+    public static boolean analyserFichierCsv(String csvPath) {
+        return courante.analyserFichierCsv(csvPath);
+    }
 
-        try (PreparedStatement ps = conn.prepareStatement(
-                "SELECT LOCALISATION_ZONE, GENRE FROM CLIENT WHERE ID_CLIENT = ?"
-        )) {
-            ps.setInt(1, id);
-            ResultSet rs = ps.executeQuery();
+    public static QoE analyserParClient(int idClient) {
+        return courante.analyserParClient(idClient);
+    }
 
-            if (rs.next()) {
-                zone = rs.getString(1);
-                genre = rs.getString(2);
-            }
+    public static QoE analyserParGenre(String genre) {
+        return courante.analyserParGenre(genre);
+    }
 
-        } catch (Exception ignore) {}
+    public static QoE analyserParZone(String zone) {
+        return courante.analyserParZone(zone);
+    }
 
-        q.setGenre(genre);
+    /** Nouvelle session courante vide ; les autres sessions ne sont pas touchées. */
+    public static void reset() {
+        courante = new Session();
 
-        if (zone != null)
-            remplirQosPourZoneSansConnexion(q, zone, conn);
-        if (q.getFeedbackScore() != null) {
-            System.out.println("✔ Feedback détecté : " + q.getFeedbackScore());
-        }
-        // Calcul final
-        q.setQoeGlobal(computeGlobalQoe(
-                q.getSatisfactionQoe(), q.getServiceQoe(),
-                q.getPrixQoe(), q.getContratQoe(), q.getLifetimeQoe(),
-                q.getMosMoy(), q.getPerteMoy()
-        ));
+        System.out.println("🔄 QoeAnalyzer réinitialisé — prêt pour un nouveau CSV");
+    }
 
-        return q;
+    public static boolean isCsvCharge() {
+        return courante.isCsvCharge();
     }
 
     // =========================================================================
-    // 4) ANALYSE UTILISÉE PAR LE CONTROLLER (séparée)
+    // 2) INSERTION AUTOMATIQUE AVEC UNE SEULE CONNEXION
+    //    Trois requêtes en tout (clients, moyennes QoS par zone, dernier
+    //    feedback de chaque client), calcul en mémoire, puis insertion
+    //    par lots de import.chunkSize clients : un commit par lot, avec
+    //    la progression dans FICHIERS_IMPORTES ; reprise après le client
+    //    "reprise".
     // =========================================================================
-    public static QoE analyserParClient(int idClient) {
+    private static void insererToutesLesQoe(Map<Integer, QoE> subjectif, String nomFichier, int reprise)
+            throws SQLException {
 
-        QoE q = null;
-
-        try (Connection conn = DBConnection.getConnection()) {
-
-            // Récupérer feedback APRES calcul subjectif
-            feedbackTemp = getFeedbackScore(idClient, conn);
+        System.out.println("=== [AUTO INSERT] Calcul + insertion ===");
 
-            // 2) Vérifier si subjectif existe
-            if (!subjectifParClient.containsKey(idClient)) {
-                System.out.println("⚠ Subjectif introuvable pour id=" + idClient +
-                        " → chargement depuis la BDD");
+        int chunkSize = Math.max(1, DBConnection.getIntProperty("import.chunkSize", 5000));
+        int premier = reprise + 1;
+        int dernier = subjectif.size();
 
-                return chargerQoeDepuisBase(idClient, conn);
-            }
-            q = analyserParClientSansConnexion(idClient, conn);
-
-            feedbackTemp = null; // reset
+        String sql =
+                "INSERT INTO QOE (" +
+                        "ID_CLIENT, GENRE, LATENCE_MOY, JITTER_MOY, PERTE_MOY," +
+                        "BANDE_PASSANTE_MOY, SIGNAL_SCORE_MOY, MOS_MOY," +
+                        "SATISFACTION_QOE, SERVICE_QOE, PRIX_QOE, CONTRAT_QOE," +
+                        "LIFETIME_QOE, FEEDBACK_SCORE, QOE_GLOBAL, NOM_FICHIER" +
+                        ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
 
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
+        try (Connection conn = DBConnection.getConnection()) {
 
-        return q;
-    }
+            conn.setAutoCommit(false);
 
-    public static QoE analyserParGenre(String genre) {
-        QoE q = new QoE();
-        q.setGenre(genre);
+            long t0 = System.nanoTime();
+            Map<Integer, String[]> clients = chargerClients(conn, premier, dernier);
+            Map<String, double[]> qosParZone = chargerQosParZone(conn);
+            Map<Integer, Double> feedbacks = chargerDerniersFeedbacks(conn, premier, dernier);
+            System.out.printf("[AUTO INSERT] %d clients, %d zones, %d feedbacks lus (%.0f ms)%n",
+                    clients.size(), qosParZone.size(), feedbacks.size(), (System.nanoTime() - t0) / 1e6);
 
-        // ==========================
-        // 1) SUBJECTIF filtré par genre
-        // ==========================
-        double s1=0, s2=0, s3=0, s4=0, s5=0;
-        int count = 0;
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
 
-        try (Connection conn = DBConnection.getConnection();
-             PreparedStatement ps = conn.prepareStatement(
-                     "SELECT ID_CLIENT FROM CLIENT WHERE GENRE = ? ORDER BY ID_CLIENT"
-             )) {
+                if (reprise == 0) {
+                    // Reste d'un import sans progression enregistrée
+                    try (PreparedStatement del = conn.prepareStatement("DELETE FROM QOE WHERE NOM_FICHIER = ?")) {
+                        del.setString(1, nomFichier);
+                        del.executeUpdate();
+                    }
+                }
 
-            ps.setString(1, genre);
-            ResultSet rs = ps.executeQuery();
+                int inseres = 0;
+
+                for (int id = premier; id <= dernier; id++) {
+
+                    QoE q = scorer(subjectif.get(id), clients.get(id), qosParZone, feedbacks.get(id));
+
+                    if (q == null) continue;
+
+                    ps.setInt(1, id);
+                    ps.setString(2, q.getGenre());
+                    ps.setDouble(3, q.getLatenceMoy());
+                    ps.setDouble(4, q.getJitterMoy());
+                    ps.setDouble(5, q.getPerteMoy());
+                    ps.setDouble(6, q.getBandePassanteMoy());
+                    ps.setDouble(7, q.getSignalScoreMoy()); // IMPORTANT
+                    ps.setDouble(8, q.getMosMoy());
+                    ps.setDouble(9, q.getSatisfactionQoe());
+                    ps.setDouble(10, q.getServiceQoe());
+                    ps.setDouble(11, q.getPrixQoe());
+                    ps.setDouble(12, q.getContratQoe());
+                    ps.setDouble(13, q.getLifetimeQoe());
+                    if (q.getFeedbackScore() == null) {
+                        ps.setNull(14, java.sql.Types.DOUBLE);
+                    } else {
+                        ps.setDouble(14, q.getFeedbackScore());
+                    }
+                    ps.setDouble(15, q.getQoeGlobal());
+                    ps.setString(16, q.getNomFichier());
 
-            while (rs.next()) {
-                int id = rs.getInt(1);
+                    ps.addBatch();
+                    inseres++;
 
-                if (!subjectifParClient.containsKey(id)) continue;
+                    if (inseres % chunkSize == 0) {
+                        ps.executeBatch();
+                        FichierService.enregistrerProgression(conn, nomFichier, id, reprise + inseres);
+                        conn.commit();
+                    }
+                }
 
-                QoE c = subjectifParClient.get(id);
+                ps.executeBatch();
+                FichierService.enregistrerFichier(conn, nomFichier);
+                conn.commit();
 
-                s1 += c.getSatisfactionQoe();
-                s2 += c.getServiceQoe();
-                s3 += c.getPrixQoe();
-                s4 += c.getContratQoe();
-                s5 += c.getLifetimeQoe();
-                count++;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
             }
+        }
 
-        } catch (Exception e) { e.printStackTrace(); }
+        System.out.println("=== ✔ FIN : Insertion automatique de tous les QoE ===");
+    }
 
-        if (count == 0) return null;
+    /** Zone et genre ({LOCALISATION_ZONE, GENRE}) des clients premier..dernier. */
+    private static Map<Integer, String[]> chargerClients(Connection conn, int premier, int dernier) throws SQLException {
+        Map<Integer, String[]> clients = new HashMap<>();
+        try (PreparedStatement ps = conn.prepareStatement(
+                "SELECT ID_CLIENT, LOCALISATION_ZONE, GENRE FROM CLIENT WHERE ID_CLIENT BETWEEN ? AND ?")) {
+            ps.setInt(1, premier);
+            ps.setInt(2, dernier);
+            ps.setFetchSize(5000);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) clients.put(rs.getInt(1), new String[]{rs.getString(2), rs.getString(3)});
+            }
+        }
+        return clients;
+    }
 
-        // === Moyenne subjectif genre ===
-        q.setSatisfactionQoe(s1 / count);
-        q.setServiceQoe(s2 / count);
-        q.setPrixQoe(s3 / count);
-        q.setContratQoe(s4 / count);
-        q.setLifetimeQoe(s5 / count);
+    /** Moyennes {latence, jitter, perte, bande passante, MOS} de chaque zone de MESURES_QOS. */
+    private static Map<String, double[]> chargerQosParZone(Connection conn) throws SQLException {
+        Map<String, double[]> zones = new HashMap<>();
+        try (PreparedStatement ps = conn.prepareStatement(
+                "SELECT ZONE, AVG(LATENCE), AVG(JITTER), AVG(PERTE), AVG(BANDE_PASSANTE), AVG(MOS) " +
+                        "FROM MESURES_QOS WHERE ZONE IS NOT NULL GROUP BY ZONE");
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                zones.put(rs.getString(1), new double[]{
+                        rs.getDouble(2), rs.getDouble(3), rs.getDouble(4), rs.getDouble(5), rs.getDouble(6)});
+            }
+        }
+        return zones;
+    }
 
-        // ==========================
-        // 2) OBJECTIF filtré par genre
-        // ==========================
+    /** Score du feedback le plus récent de chaque client premier..dernier qui en a un. */
+    private static Map<Integer, Double> chargerDerniersFeedbacks(Connection conn, int premier, int dernier) {
+        Map<Integer, Double> feedbacks = new HashMap<>();
         String sql =
-                "SELECT AVG(m.LATENCE), AVG(m.JITTER), AVG(m.PERTE), " +
-                        "AVG(m.BANDE_PASSANTE), AVG(m.MOS) " +
-                        "FROM CLIENT c " +
-                        "JOIN MESURES_QOS m ON m.ZONE = c.LOCALISATION_ZONE " +
-                        "WHERE c.GENRE = ?";
-
-        try (Connection conn = DBConnection.getConnection();
-             PreparedStatement ps = conn.prepareStatement(sql)) {
+                "SELECT ID_CLIENT, SCORE FROM (" +
+                        "SELECT c.ID_CLIENT, f.SCORE, ROW_NUMBER() OVER (" +
+                        "PARTITION BY c.ID_CLIENT ORDER BY f.FEEDBACK_DATE DESC) RN " +
+                        "FROM CLIENT c JOIN FEEDBACKS f ON f.CLIENT_NAME = c.NOM " +
+                        "WHERE c.ID_CLIENT BETWEEN ? AND ?" +
+                        ") WHERE RN = 1";
 
-            ps.setString(1, genre);
-            ResultSet rs = ps.executeQuery();
-
-            if (rs.next()) {
-                q.setLatenceMoy(rs.getDouble(1));
-                q.setJitterMoy(rs.getDouble(2));
-                q.setPerteMoy(rs.getDouble(3));
-                q.setBandePassanteMoy(rs.getDouble(4));
-                q.setMosMoy(rs.getDouble(5));
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setInt(1, premier);
+            ps.setInt(2, dernier);
+            ps.setFetchSize(5000);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    double score = rs.getDouble(2);
+                    if (!rs.wasNull()) feedbacks.put(rs.getInt(1), score);
+                }
             }
+        } catch (SQLException e) {
+            // Comme getFeedbackScore() : sans feedback lisible, QoE sans bonus
+            System.out.println("⚠ Feedbacks illisibles : " + e.getMessage());
+        }
+        return feedbacks;
+    }
 
-        } catch (Exception e) { e.printStackTrace(); }
-
-        // ==========================
-        // 3) CALCUL QoE GLOBAL du genre
-        // ==========================
-        q.setQoeGlobal(computeGlobalQoe(
-                q.getSatisfactionQoe(), q.getServiceQoe(),
-                q.getPrixQoe(), q.getContratQoe(), q.getLifetimeQoe(),
-                q.getMosMoy(), q.getPerteMoy()
-        ));
+    /**
+     * QoE d'un client du CSV : subjectif du CSV, QoS moyenne de sa zone
+     * (0 si inconnue), feedback éventuel.
+     * client : {zone, genre}, ou null si le client est absent de CLIENT.
+     */
+    private static QoE scorer(QoE src, String[] client, Map<String, double[]> qosParZone, Double feedback) {
+
+        if (src == null) return null;
+        QoE q = copierSubjectif(src);
+
+        if (client != null) {
+            q.setGenre(client[1]);
+            double[] qos = client[0] == null ? null : qosParZone.get(client[0]);
+            if (qos != null) {
+                q.setLatenceMoy(qos[0]);
+                q.setJitterMoy(qos[1]);
+                q.setPerteMoy(qos[2]);
+                q.setBandePassanteMoy(qos[3]);
+                q.setMosMoy(qos[4]);
+            }
+        }
+        q.setFeedbackScore(feedback);
 
+        q.setQoeGlobal(computeGlobalQoe(q, feedback));
         return q;
     }
 
-    public static QoE analyserParZone(String zone) {
-
-        QoE q = new QoE();
-
-        // SUBJECTIF = MOYENNE du CSV (global)
-        double s1=0,s2=0,s3=0,s4=0,s5=0;
-        int count = subjectifParClient.size();
-
-        for (QoE c : subjectifParClient.values()) {
-            s1 += c.getSatisfactionQoe();
-            s2 += c.getServiceQoe();
-            s3 += c.getPrixQoe();
-            s4 += c.getContratQoe();
-            s5 += c.getLifetimeQoe();
-        }
+    // =========================================================================
+    // 3) ANALYSE CLIENT SANS FERMER LA CONNEXION
+    // =========================================================================
+    private static QoE analyserParClientSansConnexion(QoE src, int id, Connection conn, Double feedback) {
 
-        q.setSatisfactionQoe(s1/count);
-        q.setServiceQoe(s2/count);
-        q.setPrixQoe(s3/count);
-        q.setContratQoe(s4/count);
-        q.setLifetimeQoe(s5/count);
+        QoE q = copierSubjectif(src);
 
-        // REMPLIR QOS pour la zone
-        try (Connection conn = DBConnection.getConnection();
-             PreparedStatement ps = conn.prepareStatement(
-                     "SELECT AVG(LATENCE), AVG(JITTER), AVG(PERTE), AVG(BANDE_PASSANTE), AVG(MOS) " +
-                             "FROM MESURES_QOS WHERE ZONE = ?"
-             )) {
+        String zone = null, genre = null;
 
-            ps.setString(1, zone);
+        try (PreparedStatement ps = conn.prepareStatement(
+                "SELECT LOCALISATION_ZONE, GENRE FROM CLIENT WHERE ID_CLIENT = ?"
+        )) {
+            ps.setInt(1, id);
             ResultSet rs = ps.executeQuery();
 
             if (rs.next()) {
-                q.setLatenceMoy(rs.getDouble(1));
-                q.setJitterMoy(rs.getDouble(2));
-                q.setPerteMoy(rs.getDouble(3));
-                q.setBandePassanteMoy(rs.getDouble(4));
-                q.setMosMoy(rs.getDouble(5));
+                zone = rs.getString(1);
+                genre = rs.getString(2);
             }
 
-        } catch (Exception e) { e.printStackTrace(); }
+        } catch (Exception ignore) {}
 
-        q.setQoeGlobal(computeGlobalQoe(
-                q.getSatisfactionQoe(), q.getServiceQoe(),
-                q.getPrixQoe(), q.getContratQoe(), q.getLifetimeQoe(),
-                q.getMosMoy(), q.getPerteMoy()
-        ));
+        q.setGenre(genre);
+        q.setFeedbackScore(feedback);
+
+        if (zone != null)
+            remplirQosPourZoneSansConnexion(q, zone, conn);
+        if (q.getFeedbackScore() != null) {
+            System.out.println("✔ Feedback détecté : " + q.getFeedbackScore());
+        }
+        // Calcul final
+        q.setQoeGlobal(computeGlobalQoe(q, feedback));
 
         return q;
     }
@@ -403,49 +550,18 @@ public class QoeAnalyzer {
     // =========================================================================
 
     /**
-     * Calcule le QoE global pour toutes les données
+     * Calcule le QoE global pour toutes les données (cube QoE) ; null si
+     * la table QOE est vide.
      */
     public static QoE analyserQoEGlobal() {
-        try (Connection conn = DBConnection.getConnection()) {
-            String sql = """
-                SELECT 
-                    AVG(q.SATISFACTION_QOE) as satisfaction,
-                    AVG(q.SERVICE_QOE) as service,
-                    AVG(q.PRIX_QOE) as prix,
-                    AVG(q.CONTRAT_QOE) as contrat,
-                    AVG(q.LIFETIME_QOE) as lifetime,
-                    AVG(q.QOE_GLOBAL) as qoe_global,
-                    AVG(q.LATENCE_MOY) as latence,
-                    AVG(q.JITTER_MOY) as jitter,
-                    AVG(q.PERTE_MOY) as perte,
-                    AVG(q.BANDE_PASSANTE_MOY) as bande_passante
-                FROM QOE q
-                WHERE q.QOE_GLOBAL IS NOT NULL
-                """;
-
-            try (PreparedStatement ps = conn.prepareStatement(sql);
-                 ResultSet rs = ps.executeQuery()) {
-
-                if (rs.next()) {
-                    QoE qoe = new QoE();
-                    qoe.setSatisfactionQoe(rs.getDouble("satisfaction"));
-                    qoe.setServiceQoe(rs.getDouble("service"));
-                    qoe.setPrixQoe(rs.getDouble("prix"));
-                    qoe.setContratQoe(rs.getDouble("contrat"));
-                    qoe.setLifetimeQoe(rs.getDouble("lifetime"));
-                    qoe.setQoeGlobal(rs.getDouble("qoe_global"));
-                    qoe.setLatenceMoy(rs.getDouble("latence"));
-                    qoe.setJitterMoy(rs.getDouble("jitter"));
-                    qoe.setPerteMoy(rs.getDouble("perte"));
-                    qoe.setBandePassanteMoy(rs.getDouble("bande_passante"));
-
-                    return qoe;
-                }
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-        return null;
+        QoeCube.Agregat a = QoeCube.get().agreger(null, null, null);
+        if (a.getNbClients() == 0) return null;
+
+        QoE qoe = new QoE();
+        remplirSubjectif(qoe, a);
+        remplirObjectif(qoe, a);
+        qoe.setQoeGlobal(a.moyenne(QoeCube.Composante.GLOBAL));
+        return qoe;
     }
 
     /**
@@ -642,122 +758,191 @@ public class QoeAnalyzer {
     // =========================================================================
     // 6) FORMULE GLOBALE
     // =========================================================================
-    private static double computeGlobalQoe(
-            double s1, double s2, double s3, double s4, double s5,
-            double mos, double perte ) {
-        double feedback;
-        double subjectif = (s1 + s2 + s3 + s4 + s5) / 5.0;
-        // Petit bonus = 10% si feedback existe
-        if (feedbackTemp != null) {
-            subjectif = (subjectif * 0.9) + (feedbackTemp * 0.1);
+    // Formule qoe.formule.global (QoeFormule.GLOBALE_DEFAUT par défaut)
+    private static double computeGlobalQoe(QoE q, Double feedback) {
+        double[] v = variablesGlobales(q);
+        if (feedback != null) {
+            v[QoeFormule.FEEDBACK] = feedback;
+            v[QoeFormule.A_FEEDBACK] = 1;
         }
-        double mosNorm = mos / 5.0;
-        double perteNorm = (100 - perte) / 100.0;
-
-        double qos = (0.7 * mosNorm + 0.3 * perteNorm) * 5.0;
-
-        return Math.max(1, Math.min(5, 0.6 * subjectif + 0.4 * qos));
-    }
-
-    // =========================================================================
-    // HELPERS
-    // =========================================================================
-    private static QoE copierSubjectif(QoE src) {
-        QoE q = new QoE();
-        q.setSatisfactionQoe(src.getSatisfactionQoe());
-        q.setServiceQoe(src.getServiceQoe());
-        q.setPrixQoe(src.getPrixQoe());
-        q.setContratQoe(src.getContratQoe());
-        q.setLifetimeQoe(src.getLifetimeQoe());
-        q.setNomFichier(src.getNomFichier());
-        return q;
+        return QoeFormule.globale().valeur(v);
     }
 
-    private static int parseIntSafe(String s) {
-        try { return Integer.parseInt(s); }
-        catch (Exception e) { return 0; }
+    /**
+     * QoE global des moyennes de q, avec les feedbacks de l'agrégat a :
+     * feedback moyen sur tous ses clients (0 sans feedback, comme dans
+     * la formule) et a_feedback = part des clients qui en ont donné un.
+     * Exact pour une formule linéaire en feedback et a_feedback, comme
+     * celle par défaut (hors produit a_feedback × subjectif et clamp).
+     */
+    private static double computeGlobalQoe(QoE q, QoeCube.Agregat a) {
+        double[] v = variablesGlobales(q);
+        long n = a.getNbClients();
+        long avecFeedback = a.effectif(QoeCube.Composante.FEEDBACK);
+        if (n > 0 && avecFeedback > 0) {
+            v[QoeFormule.FEEDBACK] = a.somme(QoeCube.Composante.FEEDBACK) / n;
+            v[QoeFormule.A_FEEDBACK] = (double) avecFeedback / n;
+        }
+        return QoeFormule.globale().valeur(v);
     }
 
-    private static double parseDoubleSafe(String s) {
-        try { return Double.parseDouble(s); }
-        catch (Exception e) { return 0.0; }
+    // Variables de la formule globale, sans feedback
+    private static double[] variablesGlobales(QoE q) {
+        double[] v = new double[QoeFormule.VARIABLES_GLOBALES.size()];
+        v[QoeFormule.SATISFACTION] = q.getSatisfactionQoe();
+        v[QoeFormule.SERVICE] = q.getServiceQoe();
+        v[QoeFormule.PRIX] = q.getPrixQoe();
+        v[QoeFormule.CONTRAT] = q.getContratQoe();
+        v[QoeFormule.LIFETIME] = q.getLifetimeQoe();
+        v[QoeFormule.LATENCE] = q.getLatenceMoy();
+        v[QoeFormule.JITTER] = q.getJitterMoy();
+        v[QoeFormule.PERTE] = q.getPerteMoy();
+        v[QoeFormule.BANDE_PASSANTE] = q.getBandePassanteMoy();
+        v[QoeFormule.SIGNAL] = q.getSignalScoreMoy();
+        v[QoeFormule.MOS] = q.getMosMoy();
+        return v;
     }
 
     // =========================================================================
-    // FORMULES SUBJECTIVES
+    // 7) FEEDBACK CLIENT : MISE À JOUR INCRÉMENTALE
     // =========================================================================
-    private static double clamp(double v, double min, double max) {
-        return Math.max(min, Math.min(max, v));
-    }
 
-    private static double computeSatisfaction(String churn, double monthlyCharges,
-                                              String techSupport, String contract) {
+    /**
+     * Enregistre le feedback d'un client (FEEDBACKS) et recalcule le QoE
+     * global de ses lignes QOE avec ce score, en une transaction ; l'écart
+     * est ensuite reporté sur le cube QoE (genre, zone et fichier du
+     * client), sans réanalyse.
+     */
+    public static void enregistrerFeedback(int idClient, String service, int score, String commentaire)
+            throws SQLException {
+
+        String lecture =
+                "SELECT q.ID_QOE, q.NOM_FICHIER, c.GENRE, c.LOCALISATION_ZONE, " +
+                        "q.SATISFACTION_QOE, q.SERVICE_QOE, q.PRIX_QOE, q.CONTRAT_QOE, q.LIFETIME_QOE, " +
+                        "q.MOS_MOY, q.PERTE_MOY, q.FEEDBACK_SCORE, q.QOE_GLOBAL, " +
+                        "q.LATENCE_MOY, q.JITTER_MOY, q.BANDE_PASSANTE_MOY, q.SIGNAL_SCORE_MOY " +
+                        "FROM QOE q LEFT JOIN CLIENT c ON c.ID_CLIENT = q.ID_CLIENT " +
+                        "WHERE q.ID_CLIENT = ? FOR UPDATE OF q.QOE_GLOBAL";
+
+        String insertion = """
+                INSERT INTO FEEDBACKS (ID, CLIENT_NAME, SERVICE, SCORE, COMMENTAIRE, FEEDBACK_DATE)
+                SELECT FEEDBACKS_SEQ.NEXTVAL, NOM, ?, ?, ?, SYSDATE
+                FROM CLIENT WHERE ID_CLIENT = ?
+                """;
 
-        double score = 5.0;
+        long t0 = System.nanoTime();
+        List<QoeCube.Modification> modifications = new ArrayList<>();
+        // Cube d'avant la transaction : une relecture plus récente contient déjà ce feedback
+        long versionCube = QoeCube.versionChargee();
 
-        if ("Yes".equalsIgnoreCase(churn)) score -= 3;
-        if (monthlyCharges > 80) score -= 1;
-        if ("No".equalsIgnoreCase(techSupport)) score -= 1;
-        if ("Month-to-month".equalsIgnoreCase(contract)) score -= 0.5;
+        try (Connection conn = DBConnection.getConnection()) {
 
-        return clamp(score, 1, 5);
-    }
+            conn.setAutoCommit(false);
+
+            try (PreparedStatement ps = conn.prepareStatement(lecture);
+                 PreparedStatement maj = conn.prepareStatement(
+                         "UPDATE QOE SET FEEDBACK_SCORE = ?, QOE_GLOBAL = ? WHERE ID_QOE = ?");
+                 PreparedStatement fb = conn.prepareStatement(insertion)) {
+
+                ps.setInt(1, idClient);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        QoE q = new QoE();
+                        q.setSatisfactionQoe(rs.getDouble(5));
+                        q.setServiceQoe(rs.getDouble(6));
+                        q.setPrixQoe(rs.getDouble(7));
+                        q.setContratQoe(rs.getDouble(8));
+                        q.setLifetimeQoe(rs.getDouble(9));
+                        q.setMosMoy(rs.getDouble(10));
+                        q.setPerteMoy(rs.getDouble(11));
+                        q.setLatenceMoy(rs.getDouble(14));
+                        q.setJitterMoy(rs.getDouble(15));
+                        q.setBandePassanteMoy(rs.getDouble(16));
+                        q.setSignalScoreMoy(rs.getDouble(17));
+                        double global = computeGlobalQoe(q, (double) score);
+
+                        maj.setInt(1, score);
+                        maj.setDouble(2, global);
+                        maj.setLong(3, rs.getLong(1));
+                        maj.addBatch();
+
+                        modifications.add(new QoeCube.Modification(rs.getString(2), rs.getString(3), rs.getString(4))
+                                .changer(QoeCube.Composante.FEEDBACK, valeur(rs, 12), (double) score)
+                                .changer(QoeCube.Composante.GLOBAL, valeur(rs, 13), global));
+                    }
+                }
+                if (!modifications.isEmpty()) maj.executeBatch();
 
-    private static double computeVideoQuality(String internetService,
-                                              String streamingTV,
-                                              String streamingMovies) {
+                fb.setString(1, service);
+                fb.setInt(2, score);
+                fb.setString(3, commentaire);
+                fb.setInt(4, idClient);
+                fb.executeUpdate();
 
-        double score = 1;
+                conn.commit();
 
-        if ("Fiber optic".equalsIgnoreCase(internetService)) score += 3;
-        if ("Yes".equalsIgnoreCase(streamingTV)) score += 0.5;
-        if ("Yes".equalsIgnoreCase(streamingMovies)) score += 0.5;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        }
 
-        return clamp(score, 1, 5);
+        // Après le commit : le cube ne montre que des valeurs enregistrées
+        if (!modifications.isEmpty()) QoeCube.appliquer(modifications, versionCube);
+        System.out.printf("✔ Feedback client %d : %d ligne(s) QOE recalculée(s) (%.0f ms)%n",
+                idClient, modifications.size(), (System.nanoTime() - t0) / 1e6);
     }
 
-    private static double computeAudioQuality(String techSupport,
-                                              String deviceProtection,
-                                              String onlineSecurity) {
-
-        double score = 1;
-
-        if ("Yes".equalsIgnoreCase(techSupport)) score += 2;
-        if ("Yes".equalsIgnoreCase(deviceProtection)) score += 1;
-        if ("Yes".equalsIgnoreCase(onlineSecurity)) score += 1;
-
-        return clamp(score, 1, 5);
+    // null si la colonne est NULL
+    private static Double valeur(ResultSet rs, int colonne) throws SQLException {
+        double v = rs.getDouble(colonne);
+        return rs.wasNull() ? null : v;
     }
 
-    private static double computeInteractivity(String phoneService,
-                                               String multipleLines,
-                                               String partner,
-                                               int tenure) {
-
-        double score = 1;
-
-        if ("Yes".equalsIgnoreCase(phoneService)) score += 1;
-        if ("Yes".equalsIgnoreCase(multipleLines)) score += 1;
-        if ("Yes".equalsIgnoreCase(partner)) score += 0.5;
-        if (tenure > 12) score += 1;
+    // =========================================================================
+    // HELPERS
+    // =========================================================================
 
-        return clamp(score, 1, 5);
+    // Moyennes d'un agrégat du cube ; QoE global = moyenne des QOE_GLOBAL,
+    // que enregistrerFeedback met à jour dans le cube
+    private static QoE versQoe(QoeCube.Agregat a) {
+        QoE q = new QoE();
+        remplirSubjectif(q, a);
+        remplirObjectif(q, a);
+        if (a.effectif(QoeCube.Composante.FEEDBACK) > 0) {
+            q.setFeedbackScore(a.moyenne(QoeCube.Composante.FEEDBACK));
+        }
+        q.setQoeGlobal(a.effectif(QoeCube.Composante.GLOBAL) > 0
+                ? a.moyenne(QoeCube.Composante.GLOBAL)
+                : computeGlobalQoe(q, a));
+        return q;
     }
 
-    private static double computeReliability(String onlineBackup,
-                                             String deviceProtection,
-                                             String contract,
-                                             int senior) {
-
-        double score = 1;
-
-        if ("Yes".equalsIgnoreCase(onlineBackup)) score += 1;
-        if ("Yes".equalsIgnoreCase(deviceProtection)) score += 1;
-        if ("One year".equalsIgnoreCase(contract) || "Two year".equalsIgnoreCase(contract))
-            score += 1;
-        if (senior == 0) score += 1;
+    private static void remplirSubjectif(QoE q, QoeCube.Agregat a) {
+        q.setSatisfactionQoe(a.moyenne(QoeCube.Composante.SATISFACTION));
+        q.setServiceQoe(a.moyenne(QoeCube.Composante.SERVICE));
+        q.setPrixQoe(a.moyenne(QoeCube.Composante.PRIX));
+        q.setContratQoe(a.moyenne(QoeCube.Composante.CONTRAT));
+        q.setLifetimeQoe(a.moyenne(QoeCube.Composante.LIFETIME));
+    }
 
-        return clamp(score, 1, 5);
+    private static void remplirObjectif(QoE q, QoeCube.Agregat a) {
+        q.setLatenceMoy(a.moyenne(QoeCube.Composante.LATENCE));
+        q.setJitterMoy(a.moyenne(QoeCube.Composante.JITTER));
+        q.setPerteMoy(a.moyenne(QoeCube.Composante.PERTE));
+        q.setBandePassanteMoy(a.moyenne(QoeCube.Composante.BANDE_PASSANTE));
+        q.setSignalScoreMoy(a.moyenne(QoeCube.Composante.SIGNAL));
+        q.setMosMoy(a.moyenne(QoeCube.Composante.MOS));
+    }
+    private static QoE copierSubjectif(QoE src) {
+        QoE q = new QoE();
+        q.setSatisfactionQoe(src.getSatisfactionQoe());
+        q.setServiceQoe(src.getServiceQoe());
+        q.setPrixQoe(src.getPrixQoe());
+        q.setContratQoe(src.getContratQoe());
+        q.setLifetimeQoe(src.getLifetimeQoe());
+        q.setNomFichier(src.getNomFichier());
+        return q;
     }
 
     private static Double getFeedbackScore(int idClient, Connection conn) {
@@ -808,15 +993,5 @@ public class QoeAnalyzer {
         }
         return null;
     }
-    public static void reset() {
-        csvCharge = false;
-        subjectifParClient.clear();
-        feedbackTemp = null;
-
-        System.out.println("🔄 QoeAnalyzer réinitialisé — prêt pour un nouveau CSV");
-    }
-    public static boolean isCsvCharge() {
-        return csvCharge;
-    }
 
-}
\ No newline at end of file
+}
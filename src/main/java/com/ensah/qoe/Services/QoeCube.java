@@ -0,0 +1,386 @@
+package com.ensah.qoe.Services;
+
+import com.ensah.qoe.Models.DBConnection;
+
+import java.sql.*;
+import java.util.*;
+
+/**
+ * Agrégats de la table QOE en mémoire : pour chaque combinaison (genre,
+ * zone, fichier) présente, nombre de clients et, par composante, somme et
+ * nombre de valeurs renseignées (comme AVG). Genre et zone sont ceux du
+ * client (CLIENT). Les vues (genre, zone, genre × fichier…) sont des
+ * boucles sur quelques centaines de cellules.
+ *
+ * Une seule copie, partagée par les écrans (get()) : construite par un
+ * GROUP BY au premier appel, puis remplacée fichier par fichier après
+ * chaque import (actualiser), ou cellule par cellule après un feedback
+ * (appliquer). Non modifiable une fois construite.
+ *
+ * Chaque remplacement augmente la version du cube et note ce qui a
+ * changé : un écran ouvert compare la version qu'il affiche à celle du
+ * cube et ne recalcule que les vues concernées (changementsDepuis).
+ *
+ * Le cube retient aussi la version de la dernière lecture en base de
+ * chaque fichier : un écart de feedback n'est reporté que sur des
+ * cellules lues avant sa transaction, sinon elles le contiennent déjà.
+ */
+public class QoeCube {
+
+    public enum Composante {
+        SATISFACTION("SATISFACTION_QOE"), SERVICE("SERVICE_QOE"), PRIX("PRIX_QOE"),
+        CONTRAT("CONTRAT_QOE"), LIFETIME("LIFETIME_QOE"),
+        LATENCE("LATENCE_MOY"), JITTER("JITTER_MOY"), PERTE("PERTE_MOY"),
+        BANDE_PASSANTE("BANDE_PASSANTE_MOY"), SIGNAL("SIGNAL_SCORE_MOY"), MOS("MOS_MOY"),
+        FEEDBACK("FEEDBACK_SCORE"), GLOBAL("QOE_GLOBAL");
+
+        private final String colonne;
+
+        Composante(String colonne) { this.colonne = colonne; }
+    }
+
+    private static final Composante[] COMPOSANTES = Composante.values();
+
+    private static final String SELECT;
+    static {
+        StringBuilder sql = new StringBuilder(
+                "SELECT q.NOM_FICHIER, c.GENRE, c.LOCALISATION_ZONE, COUNT(*)");
+        for (Composante k : COMPOSANTES) {
+            sql.append(", SUM(q.").append(k.colonne).append("), COUNT(q.").append(k.colonne).append(')');
+        }
+        sql.append(" FROM QOE q LEFT JOIN CLIENT c ON c.ID_CLIENT = q.ID_CLIENT");
+        SELECT = sql.toString();
+    }
+    private static final String GROUP_BY = " GROUP BY q.NOM_FICHIER, c.GENRE, c.LOCALISATION_ZONE";
+
+    // Changements gardés pour changementsDepuis ; au-delà, tout est à revoir
+    private static final int MAX_CHANGEMENTS = 256;
+
+    private static volatile QoeCube courant;
+    // Protégés par changements (et non QoeCube.class, tenu pendant les lectures en base)
+    private static long derniereVersion = 0;
+    private static final ArrayDeque<Changement> changements = new ArrayDeque<>();
+
+    private final Cellule[] cellules;
+    private final long version;
+    // Version de la dernière lecture de toute la table, et de chaque fichier relu depuis
+    private final long lectureComplete;
+    private final Map<String, Long> lecturesFichiers;
+
+    private QoeCube(Cellule[] cellules, long version, long lectureComplete, Map<String, Long> lecturesFichiers) {
+        this.cellules = cellules;
+        this.version = version;
+        this.lectureComplete = lectureComplete;
+        this.lecturesFichiers = lecturesFichiers;
+    }
+
+    /** Cube partagé, lu en base au premier appel. */
+    public static QoeCube get() {
+        QoeCube c = courant;
+        return c != null ? c : recharger();
+    }
+
+    /** Version du cube déjà chargé, -1 s'il ne l'est pas encore (ne le charge pas). */
+    public static long versionChargee() {
+        QoeCube c = courant;
+        return c != null ? c.version : -1;
+    }
+
+    /** Relit toute la table QOE ; base indisponible : cube inchangé (vide au premier appel). */
+    public static QoeCube recharger() {
+        synchronized (QoeCube.class) {
+            long t0 = System.nanoTime();
+            try {
+                Cellule[] cellules = lire(null).toArray(new Cellule[0]);
+                // Version prise après la lecture : postérieure à tout ce qu'elle a pu voir
+                long version = noter(null, null, null);
+                courant = new QoeCube(cellules, version, version, Map.of());
+                System.out.printf(">>> Cube QoE chargé : %d cellules (%.0f ms)%n",
+                        courant.cellules.length, (System.nanoTime() - t0) / 1e6);
+            } catch (SQLException e) {
+                System.out.println("⚠ Cube QoE non lu en base : " + e.getMessage());
+                if (courant == null) courant = new QoeCube(new Cellule[0], noter(null, null, null), -1, Map.of());
+            }
+            return courant;
+        }
+    }
+
+    /**
+     * Remplace les cellules d'un fichier par celles de la base (après son
+     * import). Cube pas encore construit : lu en entier.
+     */
+    public static QoeCube actualiser(String nomFichier) {
+        synchronized (QoeCube.class) {
+            if (courant == null) return recharger();
+            try {
+                List<Cellule> cellules = new ArrayList<>();
+                for (Cellule c : courant.cellules) {
+                    if (!Objects.equals(c.fichier, nomFichier)) cellules.add(c);
+                }
+                cellules.addAll(lire(nomFichier));
+                long version = noter(nomFichier, null, null);
+                Map<String, Long> lectures = new HashMap<>(courant.lecturesFichiers);
+                lectures.put(nomFichier, version);
+                courant = new QoeCube(cellules.toArray(new Cellule[0]), version, courant.lectureComplete, lectures);
+            } catch (SQLException e) {
+                System.out.println("⚠ Cube QoE non actualisé pour " + nomFichier + " : " + e.getMessage());
+            }
+            return courant;
+        }
+    }
+
+    /**
+     * Reporte des modifications de lignes QOE déjà enregistrées en base
+     * sur leurs cellules, sans relire la base. versionLue : versionChargee()
+     * avant la transaction qui les a faites. Une ligne dont la cellule est
+     * absente (cube construit avant elle) ou dont le fichier a été relu
+     * depuis versionLue (la lecture a pu voir la modification) fait relire
+     * son fichier.
+     */
+    public static QoeCube appliquer(List<Modification> modifications, long versionLue) {
+        synchronized (QoeCube.class) {
+            if (courant == null) return recharger();
+
+            Cellule[] cellules = courant.cellules.clone();
+            Set<String> aRelire = new LinkedHashSet<>();
+            long version = -1;
+
+            for (Modification m : modifications) {
+                int i = courant.luApres(m.fichier, versionLue) ? -1 : indice(cellules, m.fichier, m.genre, m.zone);
+                if (i < 0) {
+                    aRelire.add(m.fichier);
+                    continue;
+                }
+                cellules[i] = cellules[i].modifiee(m);
+                version = noter(m.fichier, m.genre, m.zone);
+            }
+
+            if (version >= 0) courant = new QoeCube(cellules, version, courant.lectureComplete, courant.lecturesFichiers);
+            for (String f : aRelire) actualiser(f);
+            return courant;
+        }
+    }
+
+    // Cellules du fichier lues en base après la version donnée
+    private boolean luApres(String fichier, long versionLue) {
+        return lectureComplete > versionLue || lecturesFichiers.getOrDefault(fichier, -1L) > versionLue;
+    }
+
+    private static int indice(Cellule[] cellules, String fichier, String genre, String zone) {
+        for (int i = 0; i < cellules.length; i++) {
+            Cellule c = cellules[i];
+            if (Objects.equals(c.fichier, fichier) && Objects.equals(c.genre, genre)
+                    && Objects.equals(c.zone, zone)) return i;
+        }
+        return -1;
+    }
+
+    // Nouvelle version, portant sur (fichier, genre, zone) ; null : toutes les valeurs
+    private static long noter(String fichier, String genre, String zone) {
+        synchronized (changements) {
+            long v = ++derniereVersion;
+            changements.addLast(new Changement(v, fichier, genre, zone));
+            if (changements.size() > MAX_CHANGEMENTS) changements.removeFirst();
+            return v;
+        }
+    }
+
+    /**
+     * Changements postérieurs à version, dans l'ordre ; null si certains
+     * ne sont plus connus (tout est alors à revoir).
+     */
+    public static List<Changement> changementsDepuis(long version) {
+        synchronized (changements) {
+            List<Changement> liste = new ArrayList<>();
+            if (version >= derniereVersion) return liste;
+            if (changements.isEmpty() || changements.peekFirst().version > version + 1) return null;
+            for (Changement c : changements) {
+                if (c.version > version) liste.add(c);
+            }
+            return liste;
+        }
+    }
+
+    // Cellules de tout QOE, ou d'un seul fichier
+    private static List<Cellule> lire(String nomFichier) throws SQLException {
+        List<Cellule> cellules = new ArrayList<>();
+        String sql = SELECT + (nomFichier != null ? " WHERE q.NOM_FICHIER = ?" : "") + GROUP_BY;
+
+        try (Connection conn = DBConnection.getConnection()) {
+            if (conn == null) throw new SQLException("Connexion indisponible");
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                if (nomFichier != null) ps.setString(1, nomFichier);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        double[] sommes = new double[COMPOSANTES.length];
+                        long[] effectifs = new long[COMPOSANTES.length];
+                        for (int k = 0; k < COMPOSANTES.length; k++) {
+                            sommes[k] = rs.getDouble(5 + 2 * k);
+                            effectifs[k] = rs.getLong(6 + 2 * k);
+                        }
+                        cellules.add(new Cellule(rs.getString(1), rs.getString(2), rs.getString(3),
+                                rs.getLong(4), sommes, effectifs));
+                    }
+                }
+            }
+        }
+        return cellules;
+    }
+
+    // =========================================================================
+    // REQUÊTES (null : pas de filtre sur la dimension)
+    // =========================================================================
+
+    public Agregat agreger(String genre, String zone, String fichier) {
+        Agregat a = new Agregat();
+        for (Cellule c : cellules) {
+            if (c.retenue(genre, zone, fichier)) a.ajouter(c);
+        }
+        return a;
+    }
+
+    /** Agrégats par genre (genres renseignés), en un passage. */
+    public Map<String, Agregat> parGenre(String zone, String fichier) {
+        Map<String, Agregat> genres = new TreeMap<>();
+        for (Cellule c : cellules) {
+            if (c.genre != null && c.retenue(null, zone, fichier)) {
+                genres.computeIfAbsent(c.genre, g -> new Agregat()).ajouter(c);
+            }
+        }
+        return genres;
+    }
+
+    /** Agrégats par zone (zones renseignées), en un passage. */
+    public Map<String, Agregat> parZone(String genre, String fichier) {
+        Map<String, Agregat> zones = new TreeMap<>();
+        for (Cellule c : cellules) {
+            if (c.zone != null && c.retenue(genre, null, fichier)) {
+                zones.computeIfAbsent(c.zone, z -> new Agregat()).ajouter(c);
+            }
+        }
+        return zones;
+    }
+
+    public int getNbCellules() { return cellules.length; }
+
+    /** Version du cube (augmente à chaque remplacement). */
+    public long getVersion() { return version; }
+
+    private static class Cellule {
+        final String fichier;
+        final String genre;
+        final String zone;
+        final long nbClients;
+        final double[] sommes;
+        final long[] effectifs;
+
+        Cellule(String fichier, String genre, String zone, long nbClients, double[] sommes, long[] effectifs) {
+            this.fichier = fichier;
+            this.genre = genre;
+            this.zone = zone;
+            this.nbClients = nbClients;
+            this.sommes = sommes;
+            this.effectifs = effectifs;
+        }
+
+        boolean retenue(String genre, String zone, String fichier) {
+            return (genre == null || genre.equals(this.genre))
+                    && (zone == null || zone.equals(this.zone))
+                    && (fichier == null || fichier.equals(this.fichier));
+        }
+
+        // Valeur absente (null) : ni dans la somme, ni dans l'effectif
+        Cellule modifiee(Modification m) {
+            double[] s = sommes.clone();
+            long[] n = effectifs.clone();
+            for (int k = 0; k < s.length; k++) {
+                if (!m.changees[k]) continue;
+                Double avant = m.avant[k], apres = m.apres[k];
+                if (avant != null) {
+                    s[k] -= avant;
+                    n[k]--;
+                }
+                if (apres != null) {
+                    s[k] += apres;
+                    n[k]++;
+                }
+            }
+            return new Cellule(fichier, genre, zone, nbClients, s, n);
+        }
+    }
+
+    /** Changement d'une ligne QOE (cellule fichier, genre, zone du client). */
+    public static class Modification {
+        private final String fichier;
+        private final String genre;
+        private final String zone;
+        private final boolean[] changees = new boolean[COMPOSANTES.length];
+        private final Double[] avant = new Double[COMPOSANTES.length];
+        private final Double[] apres = new Double[COMPOSANTES.length];
+
+        public Modification(String fichier, String genre, String zone) {
+            this.fichier = fichier;
+            this.genre = genre;
+            this.zone = zone;
+        }
+
+        /** avant, apres : valeurs de la ligne, null si non renseignée. */
+        public Modification changer(Composante k, Double avant, Double apres) {
+            changees[k.ordinal()] = true;
+            this.avant[k.ordinal()] = avant;
+            this.apres[k.ordinal()] = apres;
+            return this;
+        }
+    }
+
+    /** Cellules touchées par une version : null dans une dimension = toutes. */
+    public static class Changement {
+        private final long version;
+        private final String fichier;
+        private final String genre;
+        private final String zone;
+
+        private Changement(long version, String fichier, String genre, String zone) {
+            this.version = version;
+            this.fichier = fichier;
+            this.genre = genre;
+            this.zone = zone;
+        }
+
+        /** La vue (genre, zone, fichier), null = pas de filtre, est-elle touchée ? */
+        public boolean concerne(String genre, String zone, String fichier) {
+            return (this.genre == null || genre == null || this.genre.equals(genre))
+                    && (this.zone == null || zone == null || this.zone.equals(zone))
+                    && (this.fichier == null || fichier == null || this.fichier.equals(fichier));
+        }
+
+        public long getVersion() { return version; }
+    }
+
+    /** Somme de cellules. */
+    public static class Agregat {
+        private long nbClients = 0;
+        private final double[] sommes = new double[COMPOSANTES.length];
+        private final long[] effectifs = new long[COMPOSANTES.length];
+
+        private void ajouter(Cellule c) {
+            nbClients += c.nbClients;
+            for (int k = 0; k < sommes.length; k++) {
+                sommes[k] += c.sommes[k];
+                effectifs[k] += c.effectifs[k];
+            }
+        }
+
+        public long getNbClients() { return nbClients; }
+
+        public double somme(Composante k) { return sommes[k.ordinal()]; }
+
+        public long effectif(Composante k) { return effectifs[k.ordinal()]; }
+
+        /** Moyenne des valeurs renseignées, 0 s'il n'y en a aucune (comme AVG lu par getDouble). */
+        public double moyenne(Composante k) {
+            long n = effectifs[k.ordinal()];
+            return n == 0 ? 0 : sommes[k.ordinal()] / n;
+        }
+    }
+}
@@ -0,0 +1,467 @@
+package com.ensah.qoe.Services;
+
+import com.ensah.qoe.Models.DBConnection;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Formule de score lue en configuration (qoe.formule.*), compilée une
+ * fois en arbre d'opérations sur des variables numérotées.
+ *
+ * Syntaxe : nombres, variables, + - * /, comparaisons (&lt; &lt;= &gt;
+ * &gt;= == !=, valant 1 ou 0), parenthèses et fonctions min(a, b),
+ * max(a, b), clamp(x, bas, haut). Les opérations sont évaluées dans
+ * l'ordre écrit, comme le code Java équivalent : une formule recopiée
+ * avec les mêmes parenthèses donne les mêmes doubles.
+ *
+ * Deux évaluations : une ligne (valeur) ou des colonnes entières
+ * (colonne), chaque opération étant une boucle sur tous les clients.
+ *
+ * Division par une constante nulle : refusée à la compilation. Résultat
+ * non fini (division par une variable nulle…) : remplacé par celui de
+ * la formule par défaut pour une formule configurée, qui le signale,
+ * ArithmeticException sinon ; jamais de NaN dans les moyennes.
+ */
+public class QoeFormule {
+
+    /** Variables de la formule globale (valeurs d'une ligne QOE), dans cet ordre. */
+    public static final List<String> VARIABLES_GLOBALES = List.of(
+            "satisfaction", "service", "prix", "contrat", "lifetime",
+            "latence", "jitter", "perte", "bande_passante", "signal", "mos",
+            "feedback", "a_feedback");
+
+    public static final int SATISFACTION = 0, SERVICE = 1, PRIX = 2, CONTRAT = 3, LIFETIME = 4,
+            LATENCE = 5, JITTER = 6, PERTE = 7, BANDE_PASSANTE = 8, SIGNAL = 9, MOS = 10,
+            FEEDBACK = 11, A_FEEDBACK = 12;
+
+    /**
+     * 60 % subjectif (moyenne des cinq scores, 10 % de feedback s'il y en
+     * a un), 40 % QoS (70 % MOS, 30 % perte), borné à [1, 5].
+     */
+    public static final String GLOBALE_DEFAUT =
+            "clamp(0.6 * ((satisfaction + service + prix + contrat + lifetime) / 5 * (1 - 0.1 * a_feedback)"
+                    + " + 0.1 * feedback)"
+                    + " + 0.4 * ((0.7 * (mos / 5) + 0.3 * ((100 - perte) / 100)) * 5), 1, 5)";
+
+    private static volatile QoeFormule globale;
+
+    private final String texte;
+    private final Noeud racine;
+    // Indices des variables présentes dans la formule
+    private final BitSet utilisees;
+
+    // Formule par défaut d'une formule configurée (null sinon), et clé de configuration
+    private QoeFormule secours;
+    private String cle;
+    private final AtomicLong nonFinis = new AtomicLong();
+
+    private QoeFormule(String texte, Noeud racine, BitSet utilisees) {
+        this.texte = texte;
+        this.racine = racine;
+        this.utilisees = utilisees;
+    }
+
+    /**
+     * Compile texte ; variables : noms autorisés, dans l'ordre des
+     * valeurs passées à valeur() et colonne().
+     * @throws IllegalArgumentException formule invalide ou variable inconnue
+     */
+    public static QoeFormule compiler(String texte, List<String> variables) {
+        Analyse a = new Analyse(texte, variables);
+        Noeud n = a.somme();
+        a.espaces();
+        if (a.pos < texte.length()) throw a.erreur("caractère inattendu '" + texte.charAt(a.pos) + "'");
+        if (n instanceof Constante && !Double.isFinite(((Constante) n).v)) throw a.erreur("résultat non fini");
+        return new QoeFormule(texte, n, a.utilisees);
+    }
+
+    /**
+     * Formule de la clé cle (config.properties), ou defaut si la clé est
+     * absente ou la formule invalide.
+     */
+    public static QoeFormule configuree(String cle, String defaut, List<String> variables) {
+        String texte = DBConnection.getProperty(cle, defaut);
+        if (!texte.isBlank() && !texte.trim().equals(defaut)) {
+            try {
+                QoeFormule f = compiler(texte.trim(), variables);
+                f.secours = compiler(defaut, variables);
+                f.cle = cle;
+                System.out.println(">>> " + cle + " = " + f);
+                return f;
+            } catch (IllegalArgumentException e) {
+                System.out.println("❌ " + cle + " ignorée : " + e.getMessage());
+            }
+        }
+        return compiler(defaut, variables);
+    }
+
+    /** Formule du QoE global (qoe.formule.global), compilée au premier appel. */
+    public static QoeFormule globale() {
+        QoeFormule f = globale;
+        if (f == null) {
+            f = configuree("qoe.formule.global", GLOBALE_DEFAUT, VARIABLES_GLOBALES);
+            globale = f;
+        }
+        return f;
+    }
+
+    /**
+     * Score d'une ligne : v[i] est la valeur de la i-ème variable.
+     * @throws ArithmeticException résultat non fini, sans formule par défaut
+     */
+    public double valeur(double[] v) {
+        double r = racine.valeur(v);
+        if (Double.isFinite(r)) return r;
+        signalerNonFinis(1, r);
+        return secours.valeur(v);
+    }
+
+    /**
+     * Scores de n lignes : colonnes[i][ligne] est la valeur de la i-ème
+     * variable. Le tableau rendu peut être une des colonnes (formule
+     * réduite à une variable) : ne pas le modifier.
+     * @throws ArithmeticException résultat non fini, sans formule par défaut
+     */
+    public double[] colonne(double[][] colonnes, int n) {
+        if (racine instanceof Constante) {
+            double[] r = new double[n];
+            Arrays.fill(r, ((Constante) racine).v);
+            return r;
+        }
+        double[] r = racine.colonne(colonnes, n);
+
+        int nb = 0;
+        double exemple = 0;
+        for (int i = 0; i < n; i++) {
+            if (!Double.isFinite(r[i])) {
+                if (nb++ == 0) exemple = r[i];
+            }
+        }
+        if (nb == 0) return r;
+
+        signalerNonFinis(nb, exemple);
+        double[] s = secours.colonne(colonnes, n);
+        double[] c = Arrays.copyOf(r, n);
+        for (int i = 0; i < n; i++) {
+            if (!Double.isFinite(c[i])) c[i] = s[i];
+        }
+        return c;
+    }
+
+    private void signalerNonFinis(int nb, double exemple) {
+        if (secours == null) {
+            throw new ArithmeticException("Formule \"" + texte + "\" : " + nb
+                    + " résultat(s) non fini(s) (" + exemple + "), division par zéro ?");
+        }
+        long total = nonFinis.addAndGet(nb);
+        // Signalé au premier cas puis à chaque puissance de 2, pas à chaque ligne
+        if (Long.bitCount(total) == 1 || total == nb) {
+            System.out.println("⚠ " + cle + " : " + total + " résultat(s) non fini(s) (" + exemple
+                    + "), remplacés par la formule par défaut");
+        }
+    }
+
+    /** Vrai si la formule lit la variable i (indice dans la liste de compiler()). */
+    public boolean utilise(int i) {
+        return utilisees.get(i);
+    }
+
+    /** Résultats non finis remplacés depuis la compilation. */
+    public long getNbNonFinis() { return nonFinis.get(); }
+
+    public String getTexte() { return texte; }
+
+    @Override
+    public String toString() { return texte; }
+
+    // =========================================================================
+    // ARBRE
+    // =========================================================================
+
+    private interface Noeud {
+        double valeur(double[] v);
+
+        /** Colonne du résultat (nouvelle, sauf pour une variable). */
+        double[] colonne(double[][] c, int n);
+    }
+
+    private static class Constante implements Noeud {
+        final double v;
+
+        Constante(double v) { this.v = v; }
+
+        public double valeur(double[] vars) { return v; }
+
+        public double[] colonne(double[][] c, int n) {
+            double[] r = new double[n];
+            Arrays.fill(r, v);
+            return r;
+        }
+    }
+
+    private static class Variable implements Noeud {
+        final int i;
+
+        Variable(int i) { this.i = i; }
+
+        public double valeur(double[] v) { return v[i]; }
+
+        public double[] colonne(double[][] c, int n) { return c[i]; }
+    }
+
+    private enum Op { ADD, SUB, MUL, DIV, LT, LE, GT, GE, EQ, NE, MIN, MAX }
+
+    private static double appliquer(Op op, double a, double b) {
+        switch (op) {
+            case ADD: return a + b;
+            case SUB: return a - b;
+            case MUL: return a * b;
+            case DIV: return a / b;
+            case LT: return a < b ? 1 : 0;
+            case LE: return a <= b ? 1 : 0;
+            case GT: return a > b ? 1 : 0;
+            case GE: return a >= b ? 1 : 0;
+            case EQ: return a == b ? 1 : 0;
+            case NE: return a != b ? 1 : 0;
+            case MIN: return Math.min(a, b);
+            default: return Math.max(a, b);
+        }
+    }
+
+    /**
+     * Opération binaire. Un opérande constant reste un scalaire : une
+     * seule boucle sur l'autre colonne. Les cas courants (+ - * /) ont
+     * leur propre boucle, sans aiguillage par élément.
+     */
+    private static class Binaire implements Noeud {
+        final Op op;
+        final Noeud g;
+        final Noeud d;
+
+        Binaire(Op op, Noeud g, Noeud d) {
+            this.op = op;
+            this.g = g;
+            this.d = d;
+        }
+
+        public double valeur(double[] v) { return appliquer(op, g.valeur(v), d.valeur(v)); }
+
+        public double[] colonne(double[][] c, int n) {
+            double[] r = new double[n];
+            if (d instanceof Constante) {
+                double[] a = g.colonne(c, n);
+                double b = ((Constante) d).v;
+                switch (op) {
+                    case ADD: for (int i = 0; i < n; i++) r[i] = a[i] + b; break;
+                    case SUB: for (int i = 0; i < n; i++) r[i] = a[i] - b; break;
+                    case MUL: for (int i = 0; i < n; i++) r[i] = a[i] * b; break;
+                    case DIV: for (int i = 0; i < n; i++) r[i] = a[i] / b; break;
+                    default: for (int i = 0; i < n; i++) r[i] = appliquer(op, a[i], b);
+                }
+            } else if (g instanceof Constante) {
+                double a = ((Constante) g).v;
+                double[] b = d.colonne(c, n);
+                switch (op) {
+                    case ADD: for (int i = 0; i < n; i++) r[i] = a + b[i]; break;
+                    case SUB: for (int i = 0; i < n; i++) r[i] = a - b[i]; break;
+                    case MUL: for (int i = 0; i < n; i++) r[i] = a * b[i]; break;
+                    case DIV: for (int i = 0; i < n; i++) r[i] = a / b[i]; break;
+                    default: for (int i = 0; i < n; i++) r[i] = appliquer(op, a, b[i]);
+                }
+            } else {
+                double[] a = g.colonne(c, n);
+                double[] b = d.colonne(c, n);
+                switch (op) {
+                    case ADD: for (int i = 0; i < n; i++) r[i] = a[i] + b[i]; break;
+                    case SUB: for (int i = 0; i < n; i++) r[i] = a[i] - b[i]; break;
+                    case MUL: for (int i = 0; i < n; i++) r[i] = a[i] * b[i]; break;
+                    case DIV: for (int i = 0; i < n; i++) r[i] = a[i] / b[i]; break;
+                    default: for (int i = 0; i < n; i++) r[i] = appliquer(op, a[i], b[i]);
+                }
+            }
+            return r;
+        }
+    }
+
+    private static class Oppose implements Noeud {
+        final Noeud x;
+
+        Oppose(Noeud x) { this.x = x; }
+
+        public double valeur(double[] v) { return -x.valeur(v); }
+
+        public double[] colonne(double[][] c, int n) {
+            double[] a = x.colonne(c, n);
+            double[] r = new double[n];
+            for (int i = 0; i < n; i++) r[i] = -a[i];
+            return r;
+        }
+    }
+
+    // Opérandes constants regroupés à la compilation
+    private static Noeud binaire(Op op, Noeud g, Noeud d) {
+        if (g instanceof Constante && d instanceof Constante) {
+            return new Constante(appliquer(op, ((Constante) g).v, ((Constante) d).v));
+        }
+        return new Binaire(op, g, d);
+    }
+
+    // =========================================================================
+    // ANALYSE (descente récursive)
+    // =========================================================================
+
+    private static class Analyse {
+        final String texte;
+        final List<String> variables;
+        final BitSet utilisees = new BitSet();
+        int pos = 0;
+
+        Analyse(String texte, List<String> variables) {
+            this.texte = texte;
+            this.variables = variables;
+        }
+
+        // comparaison := somme [op somme]
+        Noeud somme() {
+            Noeud g = additive();
+            espaces();
+            Op op = null;
+            if (suivi("<=")) op = Op.LE;
+            else if (suivi(">=")) op = Op.GE;
+            else if (suivi("==")) op = Op.EQ;
+            else if (suivi("!=")) op = Op.NE;
+            else if (suivi("<")) op = Op.LT;
+            else if (suivi(">")) op = Op.GT;
+            return op == null ? g : binaire(op, g, additive());
+        }
+
+        Noeud additive() {
+            Noeud n = produit();
+            while (true) {
+                espaces();
+                if (suivi("+")) n = binaire(Op.ADD, n, produit());
+                else if (suivi("-")) n = binaire(Op.SUB, n, produit());
+                else return n;
+            }
+        }
+
+        Noeud produit() {
+            Noeud n = unaire();
+            while (true) {
+                espaces();
+                if (suivi("*")) n = binaire(Op.MUL, n, unaire());
+                else if (suivi("/")) {
+                    Noeud d = unaire();
+                    if (d instanceof Constante && ((Constante) d).v == 0) throw erreur("division par zéro");
+                    n = binaire(Op.DIV, n, d);
+                }
+                else return n;
+            }
+        }
+
+        Noeud unaire() {
+            espaces();
+            if (suivi("-")) {
+                Noeud x = unaire();
+                return x instanceof Constante ? new Constante(-((Constante) x).v) : new Oppose(x);
+            }
+            if (suivi("+")) return unaire();
+            return primaire();
+        }
+
+        Noeud primaire() {
+            espaces();
+            if (pos >= texte.length()) throw erreur("formule incomplète");
+            char c = texte.charAt(pos);
+
+            if (suivi("(")) {
+                Noeud n = somme();
+                attendre(")");
+                return n;
+            }
+            if (Character.isDigit(c) || c == '.') {
+                int debut = pos;
+                while (pos < texte.length() && (Character.isDigit(texte.charAt(pos)) || texte.charAt(pos) == '.')) pos++;
+                if (pos < texte.length() && (texte.charAt(pos) == 'e' || texte.charAt(pos) == 'E')) {
+                    pos++;
+                    if (pos < texte.length() && (texte.charAt(pos) == '+' || texte.charAt(pos) == '-')) pos++;
+                    while (pos < texte.length() && Character.isDigit(texte.charAt(pos))) pos++;
+                }
+                try {
+                    return new Constante(Double.parseDouble(texte.substring(debut, pos)));
+                } catch (NumberFormatException e) {
+                    throw erreur("nombre invalide");
+                }
+            }
+            if (Character.isLetter(c) || c == '_') {
+                int debut = pos;
+                while (pos < texte.length()
+                        && (Character.isLetterOrDigit(texte.charAt(pos)) || texte.charAt(pos) == '_')) pos++;
+                String nom = texte.substring(debut, pos).toLowerCase(Locale.ROOT);
+                espaces();
+                if (suivi("(")) return fonction(nom);
+                int i = variables.indexOf(nom);
+                if (i < 0) throw erreur("variable inconnue '" + nom + "' (connues : " + variables + ")");
+                utilisees.set(i);
+                return new Variable(i);
+            }
+            throw erreur("caractère inattendu '" + c + "'");
+        }
+
+        Noeud fonction(String nom) {
+            List<Noeud> args = new ArrayList<>();
+            espaces();
+            if (!suivi(")")) {
+                do {
+                    args.add(somme());
+                    espaces();
+                } while (suivi(","));
+                attendre(")");
+            }
+            switch (nom) {
+                case "min":
+                    verifier(nom, args, 2);
+                    return binaire(Op.MIN, args.get(0), args.get(1));
+                case "max":
+                    verifier(nom, args, 2);
+                    return binaire(Op.MAX, args.get(0), args.get(1));
+                case "clamp":
+                    // Math.max(bas, Math.min(haut, x)), comme clamp() du code
+                    verifier(nom, args, 3);
+                    return binaire(Op.MAX, args.get(1), binaire(Op.MIN, args.get(2), args.get(0)));
+                default:
+                    throw erreur("fonction inconnue '" + nom + "'");
+            }
+        }
+
+        void verifier(String nom, List<Noeud> args, int attendus) {
+            if (args.size() != attendus) throw erreur(nom + "() attend " + attendus + " arguments");
+        }
+
+        void attendre(String s) {
+            espaces();
+            if (!suivi(s)) throw erreur("'" + s + "' attendu");
+        }
+
+        boolean suivi(String s) {
+            if (texte.startsWith(s, pos)) {
+                pos += s.length();
+                return true;
+            }
+            return false;
+        }
+
+        void espaces() {
+            while (pos < texte.length() && Character.isWhitespace(texte.charAt(pos))) pos++;
+        }
+
+        IllegalArgumentException erreur(String message) {
+            return new IllegalArgumentException("Formule \"" + texte + "\", position " + pos + " : " + message);
+        }
+    }
+}
@@ -0,0 +1,318 @@
+package com.ensah.qoe.Services;
+
+import com.ensah.qoe.Models.DBConnection;
+
+import java.sql.*;
+import java.util.*;
+
+/**
+ * Simulations « et si » sur le QoE global : toutes les lignes QOE sont
+ * gardées en colonnes (une par variable de la formule globale), puis
+ * chaque scénario recalcule le score de tous les clients d'un coup
+ * (QoeFormule.colonne), sans toucher à la base.
+ *
+ * Un scénario multiplie des variables (latence × 0,8…), pour tous les
+ * clients ou ceux d'une zone, et peut remplacer la formule globale
+ * (autres pondérations). Le résultat compare avant / après : moyennes,
+ * histogrammes et moyennes par zone.
+ *
+ * La formule par défaut ne lit pas la latence, le jitter ni la perte
+ * directement mais le MOS qui en découle : modifier l'un d'eux décale
+ * le MOS de chaque client de l'écart du modèle E (QosAnalyzer.mos).
+ * Un levier que la formule ignore (bande passante, signal…) est refusé
+ * plutôt que de rendre une simulation sans effet.
+ *
+ * Les colonnes sont partagées comme le cube QoE (get()) et relues quand
+ * sa version change (import, feedback).
+ */
+public class QoeSimulation {
+
+    // Histogramme : classes de 0,5 de 1 à 5
+    public static final int NB_CLASSES = 8;
+
+    /** Variables modifiables par un scénario (a_feedback n'est qu'un indicateur). */
+    public static final List<String> LEVIERS = QoeFormule.VARIABLES_GLOBALES.subList(0, QoeFormule.A_FEEDBACK);
+
+    private static final String SELECT =
+            "SELECT q.SATISFACTION_QOE, q.SERVICE_QOE, q.PRIX_QOE, q.CONTRAT_QOE, q.LIFETIME_QOE, " +
+                    "q.LATENCE_MOY, q.JITTER_MOY, q.PERTE_MOY, q.BANDE_PASSANTE_MOY, q.SIGNAL_SCORE_MOY, " +
+                    "q.MOS_MOY, q.FEEDBACK_SCORE, c.LOCALISATION_ZONE " +
+                    "FROM QOE q LEFT JOIN CLIENT c ON c.ID_CLIENT = q.ID_CLIENT";
+
+    private static volatile QoeSimulation courante;
+
+    private final long versionCube;
+    private final int taille;
+    // colonnes[variable][ligne], dans l'ordre de QoeFormule.VARIABLES_GLOBALES
+    private final double[][] colonnes;
+    private final int[] zones;
+    private final String[] nomsZones;
+
+    private QoeSimulation(long versionCube, int taille, double[][] colonnes, int[] zones, String[] nomsZones) {
+        this.versionCube = versionCube;
+        this.taille = taille;
+        this.colonnes = colonnes;
+        this.zones = zones;
+        this.nomsZones = nomsZones;
+    }
+
+    /** Colonnes partagées, relues si le cube QoE a changé depuis leur lecture. */
+    public static QoeSimulation get() {
+        long version = QoeCube.get().getVersion();
+        QoeSimulation s = courante;
+        if (s != null && s.versionCube == version) return s;
+
+        synchronized (QoeSimulation.class) {
+            s = courante;
+            if (s != null && s.versionCube == version) return s;
+            long t0 = System.nanoTime();
+            try {
+                courante = lire(version);
+                System.out.printf(">>> Simulation QoE : %d lignes chargées (%.0f ms)%n",
+                        courante.taille, (System.nanoTime() - t0) / 1e6);
+            } catch (SQLException e) {
+                System.out.println("⚠ Lignes QoE non lues en base : " + e.getMessage());
+                if (courante == null) {
+                    courante = new QoeSimulation(version, 0,
+                            new double[QoeFormule.VARIABLES_GLOBALES.size()][0], new int[0], new String[0]);
+                }
+            }
+            return courante;
+        }
+    }
+
+    private static QoeSimulation lire(long version) throws SQLException {
+        int nbVariables = QoeFormule.VARIABLES_GLOBALES.size();
+        double[][] colonnes = new double[nbVariables][1024];
+        int[] zones = new int[1024];
+        Map<String, Integer> codes = new HashMap<>();
+        List<String> noms = new ArrayList<>();
+        int n = 0;
+
+        try (Connection conn = DBConnection.getConnection();
+             Statement st = conn.createStatement()) {
+            st.setFetchSize(5000);
+            try (ResultSet rs = st.executeQuery(SELECT)) {
+                while (rs.next()) {
+                    if (n == zones.length) {
+                        for (int k = 0; k < nbVariables; k++) colonnes[k] = Arrays.copyOf(colonnes[k], 2 * n);
+                        zones = Arrays.copyOf(zones, 2 * n);
+                    }
+                    for (int k = QoeFormule.SATISFACTION; k <= QoeFormule.MOS; k++) {
+                        colonnes[k][n] = rs.getDouble(k + 1);
+                    }
+                    double feedback = rs.getDouble(12);
+                    if (!rs.wasNull()) {
+                        colonnes[QoeFormule.FEEDBACK][n] = feedback;
+                        colonnes[QoeFormule.A_FEEDBACK][n] = 1;
+                    }
+
+                    String zone = rs.getString(13);
+                    if (zone == null) {
+                        zones[n] = -1;
+                    } else {
+                        Integer code = codes.get(zone);
+                        if (code == null) {
+                            code = noms.size();
+                            codes.put(zone, code);
+                            noms.add(zone);
+                        }
+                        zones[n] = code;
+                    }
+                    n++;
+                }
+            }
+        }
+        return new QoeSimulation(version, n, colonnes, zones, noms.toArray(new String[0]));
+    }
+
+    /**
+     * Scores avant (formule configurée, valeurs en base) et après le
+     * scénario, pour tous les clients.
+     * @throws IllegalArgumentException variable inconnue, sans effet sur la
+     *         formule, formule invalide ou donnant un résultat non fini
+     */
+    public static Resultat simuler(Scenario scenario) {
+        return get().executer(scenario);
+    }
+
+    private Resultat executer(Scenario scenario) {
+        long t0 = System.nanoTime();
+
+        QoeFormule avant = QoeFormule.globale();
+        QoeFormule apres = scenario.formule == null ? avant
+                : QoeFormule.compiler(scenario.formule, QoeFormule.VARIABLES_GLOBALES);
+
+        boolean tous = scenario.zone == null;
+        int zone = tous ? -1 : Arrays.asList(nomsZones).indexOf(scenario.zone);
+        // Zone absente : aucun client modifié (-1 est le code des clients sans zone)
+        if (!tous && zone < 0) zone = -2;
+
+        boolean reseau = false;
+        for (String variable : scenario.facteurs.keySet()) {
+            int k = LEVIERS.indexOf(variable);
+            if (k < 0) throw new IllegalArgumentException("Variable inconnue : " + variable
+                    + " (modifiables : " + LEVIERS + ")");
+            boolean viaMos = k == QoeFormule.LATENCE || k == QoeFormule.JITTER || k == QoeFormule.PERTE;
+            if (!apres.utilise(k) && !(viaMos && apres.utilise(QoeFormule.MOS))) {
+                throw new IllegalArgumentException("Levier " + variable + " sans effet sur la formule "
+                        + apres.getTexte());
+            }
+            reseau |= viaMos;
+        }
+
+        // Colonnes modifiées copiées, les autres partagées ; le MOS après le réseau
+        double[][] modifiees = colonnes.clone();
+        for (Map.Entry<String, Double> e : scenario.facteurs.entrySet()) {
+            int k = LEVIERS.indexOf(e.getKey());
+            if (k != QoeFormule.MOS) modifiees[k] = multiplier(modifiees[k], e.getValue(), tous, zone);
+        }
+        if (reseau) modifiees[QoeFormule.MOS] = deriverMos(modifiees, tous, zone);
+        Double facteurMos = scenario.facteurs.get(QoeFormule.VARIABLES_GLOBALES.get(QoeFormule.MOS));
+        if (facteurMos != null) {
+            modifiees[QoeFormule.MOS] = multiplier(modifiees[QoeFormule.MOS], facteurMos, tous, zone);
+        }
+
+        double[] scoresAvant;
+        double[] scoresApres;
+        try {
+            scoresAvant = avant.colonne(colonnes, taille);
+            scoresApres = apres.colonne(modifiees, taille);
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException(e.getMessage(), e);
+        }
+
+        Resultat r = new Resultat(taille);
+        double[][] parZone = new double[nomsZones.length][3];
+        for (int i = 0; i < taille; i++) {
+            r.sommeAvant += scoresAvant[i];
+            r.sommeApres += scoresApres[i];
+            r.sommeMosAvant += colonnes[QoeFormule.MOS][i];
+            r.sommeMosApres += modifiees[QoeFormule.MOS][i];
+            r.histogrammeAvant[classe(scoresAvant[i])]++;
+            r.histogrammeApres[classe(scoresApres[i])]++;
+            if (zones[i] >= 0) {
+                double[] z = parZone[zones[i]];
+                z[0] += scoresAvant[i];
+                z[1] += scoresApres[i];
+                z[2]++;
+            }
+        }
+        for (int z = 0; z < nomsZones.length; z++) {
+            double nb = parZone[z][2];
+            if (nb > 0) r.parZone.put(nomsZones[z], new double[]{parZone[z][0] / nb, parZone[z][1] / nb});
+        }
+
+        r.dureeMs = (System.nanoTime() - t0) / 1e6;
+        System.out.printf(">>> Simulation %s : %d clients, QoE %.3f → %.3f (%.0f ms)%n",
+                scenario, taille, r.getMoyenneAvant(), r.getMoyenneApres(), r.dureeMs);
+        return r;
+    }
+
+    /** Copie de source, multipliée par f pour les clients visés. */
+    private double[] multiplier(double[] source, double f, boolean tous, int zone) {
+        double[] c = Arrays.copyOf(source, taille);
+        if (tous) {
+            for (int i = 0; i < taille; i++) c[i] = source[i] * f;
+        } else {
+            for (int i = 0; i < taille; i++) if (zones[i] == zone) c[i] = source[i] * f;
+        }
+        return c;
+    }
+
+    /**
+     * MOS des clients visés décalé de l'écart du modèle E entre leurs
+     * mesures réseau modifiées et d'origine : le MOS en base reste la
+     * référence, seule la variation vient du modèle.
+     */
+    private double[] deriverMos(double[][] modifiees, boolean tous, int zone) {
+        double[] lat = colonnes[QoeFormule.LATENCE], jit = colonnes[QoeFormule.JITTER], perte = colonnes[QoeFormule.PERTE];
+        double[] lat2 = modifiees[QoeFormule.LATENCE], jit2 = modifiees[QoeFormule.JITTER], perte2 = modifiees[QoeFormule.PERTE];
+        double[] mos = colonnes[QoeFormule.MOS];
+        double[] c = Arrays.copyOf(mos, taille);
+        for (int i = 0; i < taille; i++) {
+            if (!tous && zones[i] != zone) continue;
+            double ecart = QosAnalyzer.mos(lat2[i], jit2[i], perte2[i]) - QosAnalyzer.mos(lat[i], jit[i], perte[i]);
+            c[i] = Math.max(1, Math.min(5, mos[i] + ecart));
+        }
+        return c;
+    }
+
+    private static int classe(double score) {
+        int c = (int) ((score - 1) / 0.5);
+        return Math.max(0, Math.min(NB_CLASSES - 1, c));
+    }
+
+    public int getTaille() { return taille; }
+
+    // =========================================================================
+    // SCÉNARIO / RÉSULTAT
+    // =========================================================================
+
+    /** Modifications à simuler : new Scenario().multiplier("latence", 0.8).zone("Nord"). */
+    public static class Scenario {
+        private final Map<String, Double> facteurs = new LinkedHashMap<>();
+        private String zone;
+        private String formule;
+
+        /** Variable de la formule globale (LEVIERS) multipliée par facteur. */
+        public Scenario multiplier(String variable, double facteur) {
+            facteurs.put(variable.toLowerCase(Locale.ROOT), facteur);
+            return this;
+        }
+
+        /** Multiplications limitées aux clients de cette zone (null : tous). */
+        public Scenario zone(String zone) {
+            this.zone = zone;
+            return this;
+        }
+
+        /** Formule globale à utiliser après (null : celle de la configuration). */
+        public Scenario formule(String formule) {
+            this.formule = formule;
+            return this;
+        }
+
+        @Override
+        public String toString() {
+            return facteurs + (zone != null ? " zone " + zone : "") + (formule != null ? " formule " + formule : "");
+        }
+    }
+
+    public static class Resultat {
+        private final int nbClients;
+        private double sommeAvant;
+        private double sommeApres;
+        private double sommeMosAvant;
+        private double sommeMosApres;
+        private final int[] histogrammeAvant = new int[NB_CLASSES];
+        private final int[] histogrammeApres = new int[NB_CLASSES];
+        private final Map<String, double[]> parZone = new TreeMap<>();
+        private double dureeMs;
+
+        Resultat(int nbClients) {
+            this.nbClients = nbClients;
+        }
+
+        public int getNbClients() { return nbClients; }
+
+        public double getMoyenneAvant() { return nbClients == 0 ? 0 : sommeAvant / nbClients; }
+
+        public double getMoyenneApres() { return nbClients == 0 ? 0 : sommeApres / nbClients; }
+
+        /** MOS moyen avant / après (change avec la latence, le jitter et la perte). */
+        public double getMosMoyenAvant() { return nbClients == 0 ? 0 : sommeMosAvant / nbClients; }
+
+        public double getMosMoyenApres() { return nbClients == 0 ? 0 : sommeMosApres / nbClients; }
+
+        /** Nombre de clients par classe de 0,5 ([1 ; 1,5[, …, [4,5 ; 5]). */
+        public int[] getHistogrammeAvant() { return histogrammeAvant.clone(); }
+
+        public int[] getHistogrammeApres() { return histogrammeApres.clone(); }
+
+        /** Zone → {moyenne avant, moyenne après}. */
+        public Map<String, double[]> getMoyennesParZone() { return Collections.unmodifiableMap(parZone); }
+
+        public double getDureeMs() { return dureeMs; }
+    }
+}
@@ -0,0 +1,306 @@
+package com.ensah.qoe.Services;
+
+import com.ensah.qoe.Models.QoE;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Scores subjectifs d'un CSV churn. Les lignes sont lues par le thread
+ * appelant et notées par blocs de LIGNES_PAR_BLOC sur nbThreads threads,
+ * au plus 2 × nbThreads blocs d'avance. Les résultats sont rendus dans
+ * l'ordre du fichier : le client n est la n-ième ligne retenue, comme en
+ * lecture séquentielle.
+ * Chaque valeur catégorielle distincte ("Yes", "Fiber optic"…) n'est
+ * comparée aux libellés qu'une fois par bloc (Codage) ; les colonnes ne
+ * sont pas découpées en chaînes.
+ * Les cinq scores sont des formules configurables (qoe.formule.*, voir
+ * VARIABLES), évaluées colonne par colonne sur tout le bloc.
+ */
+public class QoeSubjectif {
+
+    private static final int LIGNES_PAR_BLOC = 16_384;
+
+    // Colonnes lues (0 à 19 ; les lignes de moins de 20 colonnes sont ignorées)
+    private static final int NB_COLONNES = 20;
+
+    // Drapeaux d'une valeur catégorielle
+    private static final int OUI = 1;
+    private static final int NON = 2;
+    private static final int FIBRE = 4;
+    private static final int MENSUEL = 8;
+    private static final int ANNUEL = 16;
+
+    /** Variables des formules subjectives : indicateurs 0/1, charges, ancienneté (mois), senior (0/1). */
+    public static final List<String> VARIABLES = List.of(
+            "churn_oui", "charges", "support_oui", "support_non", "contrat_mensuel", "contrat_annuel",
+            "internet_fibre", "tv_oui", "films_oui", "protection_oui", "securite_oui", "sauvegarde_oui",
+            "telephone_oui", "lignes_oui", "partenaire_oui", "anciennete", "senior");
+
+    private static final int CHURN_OUI = 0, CHARGES = 1, SUPPORT_OUI = 2, SUPPORT_NON = 3,
+            CONTRAT_MENSUEL = 4, CONTRAT_ANNUEL = 5, INTERNET_FIBRE = 6, TV_OUI = 7, FILMS_OUI = 8,
+            PROTECTION_OUI = 9, SECURITE_OUI = 10, SAUVEGARDE_OUI = 11, TELEPHONE_OUI = 12,
+            LIGNES_OUI = 13, PARTENAIRE_OUI = 14, ANCIENNETE = 15, SENIOR = 16;
+
+    // Clés qoe.formule.<nom> et formules par défaut (les règles historiques)
+    private static final String[][] FORMULES = {
+            {"satisfaction", "clamp(5 - 3 * churn_oui - (charges > 80) - support_non - 0.5 * contrat_mensuel, 1, 5)"},
+            {"service", "clamp(1 + 3 * internet_fibre + 0.5 * tv_oui + 0.5 * films_oui, 1, 5)"},
+            {"prix", "clamp(1 + 2 * support_oui + protection_oui + securite_oui, 1, 5)"},
+            {"contrat", "clamp(1 + telephone_oui + lignes_oui + 0.5 * partenaire_oui + (anciennete > 12), 1, 5)"},
+            {"lifetime", "clamp(1 + sauvegarde_oui + protection_oui + contrat_annuel + (senior == 0), 1, 5)"},
+    };
+
+    private static volatile QoeFormule[] formules;
+
+    /**
+     * Scores des lignes restant à lire dans br (en-tête déjà lu), dans
+     * l'ordre du fichier. nbThreads ≤ 1 : dans le thread appelant.
+     */
+    public static List<QoE> scorer(BufferedReader br, String nomFichier, int nbThreads) throws IOException {
+
+        List<QoE> resultats = new ArrayList<>();
+
+        if (nbThreads <= 1) {
+            for (String[] bloc = bloc(br); bloc != null; bloc = bloc(br)) {
+                resultats.addAll(scorerBloc(bloc, nomFichier));
+            }
+            return resultats;
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(nbThreads);
+        try {
+            ArrayDeque<Future<List<QoE>>> enCours = new ArrayDeque<>();
+            for (String[] bloc = bloc(br); bloc != null; bloc = bloc(br)) {
+                String[] b = bloc;
+                enCours.add(pool.submit(() -> scorerBloc(b, nomFichier)));
+                if (enCours.size() >= 2 * nbThreads) resultats.addAll(enCours.poll().get());
+            }
+            while (!enCours.isEmpty()) resultats.addAll(enCours.poll().get());
+            return resultats;
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Analyse interrompue");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new IOException(cause);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    // Lignes suivantes (LIGNES_PAR_BLOC au plus, dernières à null), null en fin de fichier
+    private static String[] bloc(BufferedReader br) throws IOException {
+        String[] lignes = new String[LIGNES_PAR_BLOC];
+        int n = 0;
+        String line;
+        while (n < LIGNES_PAR_BLOC && (line = br.readLine()) != null) lignes[n++] = line;
+        return n == 0 ? null : lignes;
+    }
+
+    /** Formules qoe.formule.satisfaction, service, prix, contrat, lifetime (compilées au premier appel). */
+    public static QoeFormule[] formules() {
+        QoeFormule[] f = formules;
+        if (f == null) {
+            f = new QoeFormule[FORMULES.length];
+            for (int k = 0; k < f.length; k++) {
+                f[k] = QoeFormule.configuree("qoe.formule." + FORMULES[k][0], FORMULES[k][1], VARIABLES);
+            }
+            formules = f;
+        }
+        return f;
+    }
+
+    private static List<QoE> scorerBloc(String[] lignes, String nomFichier) {
+
+        Codage codage = new Codage();
+        int[] debuts = new int[NB_COLONNES];
+        int[] fins = new int[NB_COLONNES];
+        double[][] v = new double[VARIABLES.size()][lignes.length];
+        int n = 0;
+
+        // 1) Variables, une colonne par variable
+        for (String line : lignes) {
+            if (line == null) break;
+            if (estVide(line) || !decouper(line, debuts, fins)) continue;
+
+            int contract = codage.drapeaux(line, debuts[14], fins[14]);
+            int techSupport = codage.drapeaux(line, debuts[11], fins[11]);
+            int deviceProtection = codage.drapeaux(line, debuts[10], fins[10]);
+
+            v[SENIOR][n] = entier(line, debuts[1], fins[1]);
+            v[PARTENAIRE_OUI][n] = oui(codage.drapeaux(line, debuts[2], fins[2]));
+            v[ANCIENNETE][n] = entier(line, debuts[4], fins[4]);
+            v[TELEPHONE_OUI][n] = oui(codage.drapeaux(line, debuts[5], fins[5]));
+            v[LIGNES_OUI][n] = oui(codage.drapeaux(line, debuts[6], fins[6]));
+            v[INTERNET_FIBRE][n] = (codage.drapeaux(line, debuts[7], fins[7]) & FIBRE) != 0 ? 1 : 0;
+            v[SECURITE_OUI][n] = oui(codage.drapeaux(line, debuts[8], fins[8]));
+            v[SAUVEGARDE_OUI][n] = oui(codage.drapeaux(line, debuts[9], fins[9]));
+            v[PROTECTION_OUI][n] = oui(deviceProtection);
+            v[SUPPORT_OUI][n] = oui(techSupport);
+            v[SUPPORT_NON][n] = (techSupport & NON) != 0 ? 1 : 0;
+            v[TV_OUI][n] = oui(codage.drapeaux(line, debuts[12], fins[12]));
+            v[FILMS_OUI][n] = oui(codage.drapeaux(line, debuts[13], fins[13]));
+            v[CONTRAT_MENSUEL][n] = (contract & MENSUEL) != 0 ? 1 : 0;
+            v[CONTRAT_ANNUEL][n] = (contract & ANNUEL) != 0 ? 1 : 0;
+            v[CHARGES][n] = reel(line, debuts[17], fins[17]);
+            v[CHURN_OUI][n] = oui(codage.drapeaux(line, debuts[19], fins[19]));
+            n++;
+        }
+
+        // 2) Scores : chaque formule d'un coup sur les n lignes
+        QoeFormule[] f = formules();
+        double[] satisfaction = f[0].colonne(v, n);
+        double[] service = f[1].colonne(v, n);
+        double[] prix = f[2].colonne(v, n);
+        double[] contrat = f[3].colonne(v, n);
+        double[] lifetime = f[4].colonne(v, n);
+
+        List<QoE> scores = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            QoE q = new QoE();
+            q.setNomFichier(nomFichier);
+            q.setSatisfactionQoe(satisfaction[i]);
+            q.setServiceQoe(service[i]);
+            q.setPrixQoe(prix[i]);
+            q.setContratQoe(contrat[i]);
+            q.setLifetimeQoe(lifetime[i]);
+            scores.add(q);
+        }
+        return scores;
+    }
+
+    private static double oui(int drapeaux) {
+        return (drapeaux & OUI) != 0 ? 1 : 0;
+    }
+
+    // Comme line.trim().isEmpty()
+    private static boolean estVide(String line) {
+        for (int i = 0; i < line.length(); i++) {
+            if (line.charAt(i) > ' ') return false;
+        }
+        return true;
+    }
+
+    // Bornes des colonnes 0 à 19 ; false si la ligne en a moins de 20
+    private static boolean decouper(String line, int[] debuts, int[] fins) {
+        int d = 0;
+        for (int k = 0; k < NB_COLONNES; k++) {
+            int f = line.indexOf(',', d);
+            if (f < 0) {
+                if (k < NB_COLONNES - 1) return false;
+                f = line.length();
+            }
+            debuts[k] = d;
+            fins[k] = f;
+            d = f + 1;
+        }
+        return true;
+    }
+
+    // Integer.parseInt, 0 si invalide ; sans chaîne intermédiaire pour les cas courants
+    private static int entier(String line, int debut, int fin) {
+        int i = debut;
+        boolean negatif = false;
+        if (i < fin && (line.charAt(i) == '-' || line.charAt(i) == '+')) {
+            negatif = line.charAt(i) == '-';
+            i++;
+        }
+        if (i == fin || fin - i > 9) return entierLent(line, debut, fin);
+        int v = 0;
+        for (; i < fin; i++) {
+            char ch = line.charAt(i);
+            if (ch < '0' || ch > '9') return entierLent(line, debut, fin);
+            v = v * 10 + (ch - '0');
+        }
+        return negatif ? -v : v;
+    }
+
+    private static int entierLent(String line, int debut, int fin) {
+        try { return Integer.parseInt(line.substring(debut, fin)); }
+        catch (Exception e) { return 0; }
+    }
+
+    // Double.parseDouble, 0 si invalide
+    private static double reel(String line, int debut, int fin) {
+        try { return Double.parseDouble(line.substring(debut, fin)); }
+        catch (Exception e) { return 0.0; }
+    }
+
+    /**
+     * Drapeaux des valeurs catégorielles rencontrées dans un bloc : table
+     * à adressage ouvert indexée sur les caractères de la colonne, sans
+     * extraire de chaîne une fois la valeur connue.
+     */
+    private static class Codage {
+
+        private String[] valeurs = new String[64];
+        private int[] drapeaux = new int[64];
+        private int nb = 0;
+
+        int drapeaux(String line, int debut, int fin) {
+            int h = hash(line, debut, fin);
+            int masque = valeurs.length - 1;
+            int longueur = fin - debut;
+            for (int i = h & masque; ; i = (i + 1) & masque) {
+                String v = valeurs[i];
+                if (v == null) break;
+                if (v.length() == longueur && line.regionMatches(debut, v, 0, longueur)) return drapeaux[i];
+            }
+
+            String v = line.substring(debut, fin);
+            int d = libelles(v);
+            if (2 * (nb + 1) > valeurs.length) agrandir();
+            ranger(v, h, d);
+            return d;
+        }
+
+        private void ranger(String v, int h, int d) {
+            int masque = valeurs.length - 1;
+            int i = h & masque;
+            while (valeurs[i] != null) i = (i + 1) & masque;
+            valeurs[i] = v;
+            drapeaux[i] = d;
+            nb++;
+        }
+
+        private void agrandir() {
+            String[] anciennes = valeurs;
+            int[] anciensDrapeaux = drapeaux;
+            valeurs = new String[anciennes.length * 2];
+            drapeaux = new int[anciennes.length * 2];
+            nb = 0;
+            for (int i = 0; i < anciennes.length; i++) {
+                if (anciennes[i] != null) ranger(anciennes[i], hash(anciennes[i], 0, anciennes[i].length()), anciensDrapeaux[i]);
+            }
+        }
+
+        private static int hash(String s, int debut, int fin) {
+            int h = 0;
+            for (int i = debut; i < fin; i++) h = 31 * h + s.charAt(i);
+            return h ^ (h >>> 16);
+        }
+
+        // Une seule fois par valeur distincte
+        private static int libelles(String v) {
+            int d = 0;
+            if ("Yes".equalsIgnoreCase(v)) d |= OUI;
+            if ("No".equalsIgnoreCase(v)) d |= NON;
+            if ("Fiber optic".equalsIgnoreCase(v)) d |= FIBRE;
+            if ("Month-to-month".equalsIgnoreCase(v)) d |= MENSUEL;
+            if ("One year".equalsIgnoreCase(v) || "Two year".equalsIgnoreCase(v)) d |= ANNUEL;
+            return d;
+        }
+    }
+}
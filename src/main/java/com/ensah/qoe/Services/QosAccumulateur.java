@@ -0,0 +1,196 @@
+package com.ensah.qoe.Services;
+
+import com.ensah.qoe.Models.Qos;
+import com.ensah.qoe.Utils.Resolution;
+
+import java.time.ZoneOffset;
+
+/**
+ * Agrégat courant d'un groupe (ZONE + TRANCHE d'une résolution) : mémoire constante
+ * quel que soit le nombre de mesures.
+ * Les moyennes reprennent la sommation compensée de
+ * DoubleStream.average() : en lecture séquentielle le résultat est
+ * identique au calcul sur la liste complète des mesures.
+ */
+public class QosAccumulateur {
+
+    public static final int LATENCE = 0;
+    public static final int PERTE = 1;
+    public static final int SIGNAL = 2;
+    public static final int BANDE_PASSANTE = 3;
+    private static final int NB_METRIQUES = 4;
+
+    private final String zone;
+    private final Resolution resolution;
+    private final long indice;
+    private String tranche;
+
+    private long nb = 0;
+
+    // Par métrique : somme haute, compensation, somme simple
+    private final double[] somme = new double[NB_METRIQUES];
+    private final double[] compensation = new double[NB_METRIQUES];
+    private final double[] sommeSimple = new double[NB_METRIQUES];
+    private final double[] min = new double[NB_METRIQUES];
+    private final double[] max = new double[NB_METRIQUES];
+
+    // Jitter : somme des |Δ latence| entre mesures consécutives
+    private double totalJitter = 0;
+    private double premiereLatence;
+    private double derniereLatence;
+
+    private long premierEpochMillis;
+
+    public QosAccumulateur(String zone, Resolution resolution, long indice) {
+        this.zone = zone;
+        this.resolution = resolution;
+        this.indice = indice;
+    }
+
+    /**
+     * Agrégat équivalent à une ligne de MESURES_QOS (nombre de mesures,
+     * moyennes, jitter, latences extrêmes), pour y fusionner des mesures
+     * ajoutées au fichier. Min et max ne sont pas stockés : ramenés à
+     * la moyenne.
+     */
+    public static QosAccumulateur depuis(Qos q) {
+        long premier = q.getDateReelle().toInstant(ZoneOffset.UTC).toEpochMilli();
+        QosAccumulateur a = new QosAccumulateur(q.getZone(), q.getResolution(),
+                q.getResolution().indice(premier));
+        a.tranche = q.getTranche();
+        if (q.getNbMesures() <= 0) return a;
+
+        a.nb = q.getNbMesures();
+        a.premiereLatence = q.getPremiereLatence();
+        a.derniereLatence = q.getDerniereLatence();
+        a.totalJitter = q.getJitter() * (a.nb - 1);
+        a.premierEpochMillis = premier;
+
+        double[] moyennes = {q.getLatence(), q.getPerte(), q.getSignalScore(), q.getBandePassante()};
+        for (int m = 0; m < NB_METRIQUES; m++) {
+            a.somme[m] = moyennes[m] * a.nb;
+            a.sommeSimple[m] = a.somme[m];
+            a.min[m] = moyennes[m];
+            a.max[m] = moyennes[m];
+        }
+        return a;
+    }
+
+    public void ajouter(double latence, double perte, double signal,
+                        double bandePassante, long epochMillis) {
+
+        if (nb == 0) {
+            premiereLatence = latence;
+            premierEpochMillis = epochMillis;
+            for (int m = 0; m < NB_METRIQUES; m++) {
+                min[m] = Double.POSITIVE_INFINITY;
+                max[m] = Double.NEGATIVE_INFINITY;
+            }
+        } else {
+            totalJitter += Math.abs(latence - derniereLatence);
+        }
+        derniereLatence = latence;
+        nb++;
+
+        ajouterValeur(LATENCE, latence);
+        ajouterValeur(PERTE, perte);
+        ajouterValeur(SIGNAL, signal);
+        ajouterValeur(BANDE_PASSANTE, bandePassante);
+    }
+
+    private void ajouterValeur(int m, double v) {
+        double tmp = v - compensation[m];
+        double s = somme[m];
+        double velvel = s + tmp;
+        compensation[m] = (velvel - s) - tmp;
+        somme[m] = velvel;
+        sommeSimple[m] += v;
+
+        if (v < min[m]) min[m] = v;
+        if (v > max[m]) max[m] = v;
+    }
+
+    /**
+     * Ajoute les mesures d'un autre agrégat du même groupe,
+     * situées après celles-ci dans le fichier.
+     */
+    public void fusionner(QosAccumulateur suivant) {
+        if (suivant.nb == 0) return;
+        if (nb == 0) {
+            copier(suivant);
+            return;
+        }
+
+        totalJitter += Math.abs(suivant.premiereLatence - derniereLatence) + suivant.totalJitter;
+        derniereLatence = suivant.derniereLatence;
+
+        for (int m = 0; m < NB_METRIQUES; m++) {
+            // même combinaison que DoubleStream.average() en parallèle
+            double[] ll = {somme[m], compensation[m]};
+            kahan(ll, suivant.somme[m]);
+            kahan(ll, -suivant.compensation[m]);
+            somme[m] = ll[0];
+            compensation[m] = ll[1];
+            sommeSimple[m] += suivant.sommeSimple[m];
+            min[m] = Math.min(min[m], suivant.min[m]);
+            max[m] = Math.max(max[m], suivant.max[m]);
+        }
+        nb += suivant.nb;
+    }
+
+    private void copier(QosAccumulateur a) {
+        nb = a.nb;
+        totalJitter = a.totalJitter;
+        premiereLatence = a.premiereLatence;
+        derniereLatence = a.derniereLatence;
+        premierEpochMillis = a.premierEpochMillis;
+        for (int m = 0; m < NB_METRIQUES; m++) {
+            somme[m] = a.somme[m];
+            compensation[m] = a.compensation[m];
+            sommeSimple[m] = a.sommeSimple[m];
+            min[m] = a.min[m];
+            max[m] = a.max[m];
+        }
+    }
+
+    private static void kahan(double[] ll, double v) {
+        double tmp = v - ll[1];
+        double s = ll[0];
+        double velvel = s + tmp;
+        ll[1] = (velvel - s) - tmp;
+        ll[0] = velvel;
+    }
+
+    // =========================================================================
+    // RÉSULTATS
+    // =========================================================================
+    public double moyenne(int m) {
+        if (nb == 0) return 0;
+        double tmp = somme[m] - compensation[m];
+        double total = (Double.isNaN(tmp) && Double.isInfinite(sommeSimple[m])) ? sommeSimple[m] : tmp;
+        return total / nb;
+    }
+
+    /** Jitter = moyenne des variations de latence entre mesures consécutives. */
+    public double jitter() {
+        return nb <= 1 ? 0 : totalJitter / (nb - 1);
+    }
+
+    public double min(int m) { return nb == 0 ? 0 : min[m]; }
+    public double max(int m) { return nb == 0 ? 0 : max[m]; }
+
+    public long getNb() { return nb; }
+    public String getZone() { return zone; }
+    public Resolution getResolution() { return resolution; }
+    public long getIndice() { return indice; }
+    /** Fin (exclue, epoch ms) de la tranche du groupe. */
+    public long getFinEpochMillis() { return resolution.debut(indice + 1); }
+
+    public String getTranche() {
+        if (tranche == null) tranche = resolution.libelle(indice);
+        return tranche;
+    }
+    public long getPremierEpochMillis() { return premierEpochMillis; }
+    public double getPremiereLatence() { return premiereLatence; }
+    public double getDerniereLatence() { return derniereLatence; }
+}
@@ -1,151 +1,363 @@
 package com.ensah.qoe.Services;
 
+import com.ensah.qoe.Models.DBConnection;
 import com.ensah.qoe.Models.Qos;
 import com.ensah.qoe.Utils.DateUtils;
-
-import java.io.BufferedReader;
-import java.io.FileReader;
-import java.time.LocalDateTime;
+import com.ensah.qoe.Utils.DictionnaireZones;
+import com.ensah.qoe.Utils.GeoCoder;
+import com.ensah.qoe.Utils.Resolution;
+import com.ensah.qoe.Utils.SourceCsv;
+import com.ensah.qoe.Utils.TableLong;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
 
 public class QosAnalyzer {
 
+    private static final Comparator<QosAccumulateur> ORDRE_EMISSION =
+            Comparator.comparingLong(QosAccumulateur::getFinEpochMillis)
+                    .thenComparing(QosAccumulateur::getResolution)
+                    .thenComparing(QosAccumulateur::getZone);
+
+    /**
+     * Reçoit les groupes complets de chaque résolution (Qos.getResolution()),
+     * dans l'ordre (fin de tranche, résolution, zone).
+     */
+    public interface Sortie {
+        void groupe(Qos q) throws Exception;
+    }
+
+    /** Compteurs d'une analyse (et de l'insertion, via QosImportPipeline). */
+    public static class Bilan {
+        long nbLignes;
+        long nbRejets;
+        long[] rejetsParRaison = new long[QosCsvParser.Rejet.values().length];
+        long nbGroupes;
+        long nbAgregats;
+        long nbInseres;
+        long position;
+        boolean ajout;
+
+        public long getNbLignes() { return nbLignes; }
+        public long getNbRejets() { return nbRejets; }
+        public long getNbRejets(QosCsvParser.Rejet raison) { return rejetsParRaison[raison.ordinal()]; }
+        /** Groupes 12 h (MESURES_QOS). */
+        public long getNbGroupes() { return nbGroupes; }
+        /** Groupes des autres résolutions (tables d'agrégats). */
+        public long getNbAgregats() { return nbAgregats; }
+        public long getNbInseres() { return nbInseres; }
+        /** Fin des lignes analysées (octets) : reprise du prochain ajout. */
+        public long getPosition() { return position; }
+        /** Lignes ajoutées à un fichier déjà importé, fusionnées dans ses groupes. */
+        public boolean estAjout() { return ajout; }
+
+        /** Ajoute les compteurs d'un autre import (entrées d'une archive). */
+        void cumuler(Bilan b) {
+            nbLignes += b.nbLignes;
+            nbRejets += b.nbRejets;
+            for (int i = 0; i < rejetsParRaison.length; i++) rejetsParRaison[i] += b.rejetsParRaison[i];
+            nbGroupes += b.nbGroupes;
+            nbAgregats += b.nbAgregats;
+            nbInseres += b.nbInseres;
+        }
+    }
+
     /**
      * Analyse un fichier CSV QoS et retourne la liste des mesures
-     * regroupées par : (ZONE + TRANCHE 12H)
+     * regroupées par : (ZONE + TRANCHE 12H).
+     * Pour un fichier déjà importé, les lignes ajoutées depuis sont
+     * fusionnées en base et les groupes de ce fichier relus.
      */
     public static List<Qos> analyserQoSFichier(String csvPath, String nomFichier) {
 
         System.out.println(">>> QosAnalyzer lancé pour : " + nomFichier);
 
         if (FichierService.fichierExiste(nomFichier)) {
-            System.out.println(">>> Fichier déjà importé → retour DB");
-            return QosZoneService.getAllFromDatabase();
+            System.out.println(">>> Fichier déjà importé → ajouts éventuels, puis retour DB");
+            try {
+                QosImportPipeline.importer(csvPath, nomFichier, null);
+            } catch (Exception e) {
+                System.out.println(">>> ERREUR ajout au fichier " + nomFichier + " : " + e.getMessage());
+            }
+            return QosZoneService.getByFichier(nomFichier);
         }
 
-        Map<String, List<Qos>> regroupement = new HashMap<>();
+        String nom = preparerImport(csvPath, nomFichier);
+        if (nom == null) return new ArrayList<>();
 
-        try (BufferedReader br = new BufferedReader(new FileReader(csvPath))) {
+        List<Qos> resultat = new ArrayList<>();
+        try {
+            analyser(csvPath, nom, q -> {
+                if (q.getResolution() == Resolution.DOUZE_HEURES) resultat.add(q);
+            }, new QosImportPipeline.Progression(null));
+        } catch (Exception e) {
+            System.out.println(">>> ERREUR QosAnalyzer principale:");
+            e.printStackTrace();
+            return new ArrayList<>();
+        }
+        return resultat;
+    }
 
-            System.out.println(">>> Lecture header...");
-            String headerLine = br.readLine();
-            if (headerLine == null) {
-                System.out.println(">>> ERREUR : header vide");
-                return new ArrayList<>();
-            }
+    /**
+     * Vérifie l'empreinte du contenu et ouvre l'import dans
+     * FICHIERS_IMPORTES.
+     *
+     * @return le nom sous lequel importer (celui d'un import interrompu
+     *         du même contenu), ou null si ce contenu est déjà importé
+     */
+    public static String preparerImport(String csvPath, String nomFichier) {
 
-            String[] headers = headerLine.split(",");
-            System.out.println(">>> Colonnes trouvées: " + Arrays.toString(headers));
+        FichierService.Empreinte empreinte = null;
+        try {
+            empreinte = FichierService.calculerEmpreinte(csvPath);
+        } catch (Exception e) {
+            System.out.println(">>> Empreinte impossible : " + e.getMessage());
+        }
+        return preparerImport(empreinte, nomFichier);
+    }
 
-            int idxTimestamp   = find(headers, "timestamp");
-            int idxLat         = find(headers, "latitude");
-            int idxLon         = find(headers, "longitude");
-            int idxDelay       = find(headers, "delay");
-            int idxRsrq        = find(headers, "rsrq");
-            int idxSinr        = find(headers, "sinr");
-            int idxDown        = find(headers, "throughput_downlink");
-            int idxUp          = find(headers, "throughput_uplink");
-            int idxStatus      = find(headers, "service_status");
-            int idxCity        = find(headers, "city");
-            int idxCountry     = find(headers, "country");
+    /** Comme preparerImport(), pour un CSV ou une archive (empreinte du contenu décompressé). */
+    public static String preparerImport(SourceCsv source, String nomFichier) {
 
-            System.out.println(">>> Index OK !");
+        FichierService.Empreinte empreinte = null;
+        try {
+            empreinte = FichierService.calculerEmpreinte(source);
+        } catch (Exception e) {
+            System.out.println(">>> Empreinte impossible : " + e.getMessage());
+        }
+        return preparerImport(empreinte, nomFichier);
+    }
 
-            String line;
-            int cpt = 0;
+    private static String preparerImport(FichierService.Empreinte empreinte, String nomFichier) {
 
-            while ((line = br.readLine()) != null) {
+        FichierService.ImportInfo existant = FichierService.trouverParContenu(empreinte);
+        if (existant != null && existant.estTermine()) {
+            System.out.println(">>> Contenu déjà importé sous le nom : " + existant.getNomFichier());
+            return null;
+        }
+        if (existant != null) {
+            // Import interrompu du même contenu : on reprend sous le nom d'origine
+            System.out.println(">>> Reprise de l'import de : " + existant.getNomFichier());
+            nomFichier = existant.getNomFichier();
+        }
 
-                String[] p = line.split(",");
+        FichierService.demarrerImport(nomFichier, empreinte);
+        return nomFichier;
+    }
 
-                try {
-                    cpt++;
-                    if (cpt % 1000 == 0) System.out.println(">>> Ligne: " + cpt);
+    /**
+     * Analyse le fichier et passe chaque groupe (ZONE + TRANCHE, pour
+     * chaque résolution de Resolution.configurees()) à sortie dès qu'il
+     * est complet : un groupe est complet quand aucun bloc restant ne
+     * contient de date avant la fin de sa tranche. Pour un export trié
+     * par date, les groupes partent donc pendant l'analyse ; dans le
+     * pire cas, tous partent à la fin. L'ordre (fin de tranche,
+     * résolution, zone) ne dépend pas du découpage en blocs, ce qui
+     * permet la reprise.
+     */
+    public static Bilan analyser(String csvPath, String nomFichier, Sortie sortie,
+                                 QosImportPipeline.Progression prog) throws Exception {
+        return analyser(csvPath, nomFichier, 0, sortie, prog);
+    }
 
-                    double timestamp = Double.parseDouble(p[idxTimestamp]);
-                    double lat = Double.parseDouble(p[idxLat]);
-                    double lon = Double.parseDouble(p[idxLon]);
+    /**
+     * Comme analyser(), pour les seules lignes situées après l'octet
+     * debut (ajout à un fichier déjà importé si debut > 0). La position
+     * atteinte est alors enregistrée par la fusion (QosInsertService),
+     * dans la même transaction que les groupes.
+     */
+    public static Bilan analyser(String csvPath, String nomFichier, long debut, Sortie sortie,
+                                 QosImportPipeline.Progression prog) throws Exception {
+        return analyser(SourceCsv.fichier(Path.of(csvPath)), nomFichier, debut, sortie, prog);
+    }
 
-                    String city = safe(p, idxCity);
-                    String country = safe(p, idxCountry);
+    /**
+     * Comme analyser(), pour un CSV ou une archive décompressée à la
+     * volée (lue en entier : ni reprise ni ajout).
+     */
+    public static Bilan analyser(SourceCsv source, String nomFichier, long debut, Sortie sortie,
+                                 QosImportPipeline.Progression prog) throws Exception {
+
+        boolean ajout = debut > 0;
+        try {
+            int nbThreads = Math.max(1, DBConnection.getIntProperty("import.threads",
+                    Runtime.getRuntime().availableProcessors()));
+
+            // 1) Lecture : positions connues (géocodage) et dates de chaque bloc
+            if (source.getTaille() >= 0) prog.lecture.ajouterTotal(Math.max(0, source.getTaille() - debut));
+            QosCsvParser.Plan plan = QosCsvParser.planifier(source, debut, nbThreads, GeoCoder.positionsApprises(),
+                    n -> prog.lecture.avancer(n, n));
+            prog.lecture.terminer();
+
+            // Date la plus ancienne des blocs suivants
+            int nbBlocs = plan.getNbBlocs();
+            long[] epochMinRestant = new long[nbBlocs + 1];
+            epochMinRestant[nbBlocs] = Long.MAX_VALUE;
+            for (int i = nbBlocs - 1; i >= 0; i--) {
+                epochMinRestant[i] = Math.min(plan.getMinEpochMillis(i), epochMinRestant[i + 1]);
+            }
 
-                    LocalDateTime dateReelle = DateUtils.convertirTimestamp(timestamp, "UTC");
-                    String tranche12h = DateUtils.convertirEnTranche12h(dateReelle);
+            // 2) Analyse + géocodage en parallèle, 3) agrégation dans l'ordre du fichier
+            Resolution[] resolutions = Resolution.configurees().toArray(new Resolution[0]);
+            prog.analyse.ajouterTotal(plan.getOctets());
+            prog.agregation.ajouterTotal(nbBlocs);
+            Agregation agregation = new Agregation(nomFichier, sortie, prog, new QosRejets(nomFichier, debut));
+
+            DictionnaireZones zones = plan.getZones();
+            try {
+                QosCsvParser.parserFichier(plan, nbThreads, () -> new Regroupement(resolutions, zones), (i, bloc) -> {
+                    prog.analyse.avancer(bloc.getOctets(), bloc.getNbLignes());
+                    agregation.fusionner(bloc, epochMinRestant[i + 1]);
+                });
+            } finally {
+                agregation.rejets.fermer();
+            }
+            prog.agregation.avancer(0, agregation.emettre(Long.MAX_VALUE));
 
-                    double delay = Double.parseDouble(p[idxDelay]);
-                    double rsrq = Double.parseDouble(p[idxRsrq]);
-                    double sinr = Double.parseDouble(p[idxSinr]);
-                    double thDown = Double.parseDouble(p[idxDown]);
-                    double thUp = Double.parseDouble(p[idxUp]);
-                    boolean status = safe(p, idxStatus).equals("1");
+            prog.analyse.terminer();
+            prog.agregation.terminer();
 
-                    Qos q = new Qos();
-                    q.setLatence(delay);
-                    q.setJitter(0);
-                    q.setPerte(status ? 0 : 100);
-                    q.setSignalScore((rsrq + sinr) / 2);
-                    q.setBandePassante((thDown + thUp) / 2);
+            Bilan bilan = agregation.bilan;
+            bilan.nbRejets = agregation.rejets.getTotal();
+            for (QosCsvParser.Rejet r : QosCsvParser.Rejet.values()) {
+                bilan.rejetsParRaison[r.ordinal()] = agregation.rejets.getNb(r);
+            }
+            bilan.position = plan.getFin();
+            bilan.ajout = ajout;
+            System.out.println(">>> Analyse lignes terminée : " + bilan.nbLignes + " lignes"
+                    + (ajout ? " ajoutées" : "") + " (" + bilan.nbRejets + " en erreur, " + nbBlocs + " blocs)");
+
+            GeoCoder.apprendre(plan.getGeo());
+            GeoCoder.cache().ecrire();
+            System.out.println(">>> " + GeoCoder.cache());
+
+            if (!ajout) {
+                // Archive : pas d'ajout possible, donc pas de position de reprise
+                if (!source.estCompresse()) {
+                    FichierService.enregistrerPosition(nomFichier, source.getChemin().toString(), bilan.position);
+                }
+                FichierService.majEtape(nomFichier, FichierService.ETAPE_ANALYSE, FichierService.STATUT_OK);
+            }
+            System.out.println(">>> Nb groupes générés: " + bilan.nbGroupes
+                    + " (+ " + bilan.nbAgregats + " agrégats " + Arrays.toString(resolutions) + ")");
+            return bilan;
 
-                    q.setZone(city + ", " + country);
-                    q.setDateReelle(dateReelle);
-                    q.setTranche12h(tranche12h);
-                    q.setNomFichier(nomFichier);
+        } catch (Exception e) {
+            // Ajout : rien n'est validé, le fichier reste importé jusqu'à l'ancienne position
+            if (!ajout) FichierService.majEtape(nomFichier, FichierService.ETAPE_ANALYSE, FichierService.STATUT_ECHEC);
+            throw e;
+        }
+    }
 
-                    String key = q.getZone() + "#" + tranche12h;
-                    regroupement.computeIfAbsent(key, k -> new ArrayList<>()).add(q);
+    /**
+     * Fusionne les blocs dans l'ordre du fichier (jitter entre blocs
+     * compris) et émet les groupes complets.
+     * Un agrégat par groupe : la mémoire dépend du nombre de groupes, pas de lignes.
+     */
+    private static class Agregation {
+        private final String nomFichier;
+        private final Sortie sortie;
+        private final QosImportPipeline.Progression prog;
+        private final QosRejets rejets;
+        private final Bilan bilan = new Bilan();
+
+        // Groupes en attente : ceux du premier bloc, où les suivants sont
+        // fusionnés (en lecture séquentielle, le consommateur unique)
+        private Regroupement regroupement = null;
+
+        Agregation(String nomFichier, Sortie sortie, QosImportPipeline.Progression prog, QosRejets rejets) {
+            this.nomFichier = nomFichier;
+            this.sortie = sortie;
+            this.prog = prog;
+            this.rejets = rejets;
+        }
 
-                } catch (Exception e) {
-                    System.out.println(">>> ERREUR ligne " + cpt + ": " + e.getMessage());
+        void fusionner(QosCsvParser.Bloc<Regroupement> bloc, long epochMinRestant) throws IOException {
+            Regroupement r = bloc.getConsommateur();
+
+            if (regroupement == null) {
+                regroupement = r;
+            } else if (r != regroupement) {
+                for (int n = 0; n < r.niveaux.length; n++) {
+                    TableLong<QosAccumulateur> groupes = regroupement.niveaux[n].groupes;
+                    r.niveaux[n].groupes.pourChaque((cle, g) -> {
+                        QosAccumulateur groupe = groupes.get(cle);
+                        if (groupe == null) groupes.put(cle, g);
+                        else groupe.fusionner(g);
+                    });
                 }
             }
 
-            System.out.println(">>> Analyse lignes terminée : " + cpt + " lignes");
-
-        } catch (Exception e) {
-            System.out.println(">>> ERREUR QosAnalyzer principale:");
-            e.printStackTrace();
-        }
+            QosCsvParser.Rejet[] raisons = QosCsvParser.Rejet.values();
+            for (int i = 0; i < r.nbRejets; i++) {
+                long rejet = r.rejets[i];
+                rejets.ajouter(bloc.getPremiereLigne() + (rejet >>> Regroupement.BITS_RAISON) - 1,
+                        raisons[(int) (rejet & Regroupement.MASQUE_RAISON)]);
+            }
+            rejets.resumer();
+            bilan.nbLignes += bloc.getNbLignes();
+            r.nbRejets = 0;
 
-        List<Qos> resultat = new ArrayList<>();
-        for (List<Qos> groupe : regroupement.values()) {
-            resultat.add(calculerMoyenne(groupe));
+            prog.agregation.avancer(1, emettre(epochMinRestant));
         }
 
-        System.out.println(">>> Nb groupes générés: " + resultat.size());
+        /** Émet les groupes dont la tranche finit au plus tard à epochMin ; rend leur nombre. */
+        int emettre(long epochMin) throws IOException {
+            if (regroupement == null) return 0;
 
-        return resultat;
-    }
+            List<QosAccumulateur> complets = new ArrayList<>();
+            for (Regroupement.Niveau n : regroupement.niveaux) {
+                complets.addAll(n.groupes.retirerSi(g -> g.getFinEpochMillis() <= epochMin));
+            }
 
+            complets.sort(ORDRE_EMISSION);
 
-    // cherche l'index d'une colonne dans le header
-    private static int find(String[] headers, String name) {
-        for (int i = 0; i < headers.length; i++) {
-            if (headers[i].trim().equalsIgnoreCase(name.trim())) {
-                return i;
+            prog.persistance.ajouterTotal(complets.size());
+            try {
+                for (QosAccumulateur groupe : complets) {
+                    sortie.groupe(calculerMoyenne(groupe, nomFichier));
+                    if (groupe.getResolution() == Resolution.DOUZE_HEURES) bilan.nbGroupes++;
+                    else bilan.nbAgregats++;
+                }
+            } catch (IOException | RuntimeException e) {
+                throw e;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Analyse interrompue");
+            } catch (Exception e) {
+                throw new IOException(e);
             }
+
+            return complets.size();
         }
-        throw new RuntimeException("Colonne manquante : " + name);
     }
 
-    private static String safe(String[] arr, int index) {
-        if (index < 0 || index >= arr.length) return "Unknown";
-        return arr[index].trim();
+
+    /**
+     * Groupe stocké complété par les mesures d'un ajout au fichier
+     * (même zone et même tranche, situées après dans le fichier).
+     */
+    static Qos fusionner(Qos existant, Qos ajout) {
+        QosAccumulateur groupe = QosAccumulateur.depuis(existant);
+        groupe.fusionner(QosAccumulateur.depuis(ajout));
+        return calculerMoyenne(groupe, existant.getNomFichier());
     }
 
     /**
      * Calcule les moyennes d’un groupe regroupé par zone + tranche12h
      */
-    private static Qos calculerMoyenne(List<Qos> liste) {
+    private static Qos calculerMoyenne(QosAccumulateur groupe, String nomFichier) {
 
-        double lat = liste.stream().mapToDouble(Qos::getLatence).average().orElse(0);
-        double jitter = calculerJitter(liste);
-        double perte = liste.stream().mapToDouble(Qos::getPerte).average().orElse(0);
-        double signal = liste.stream().mapToDouble(Qos::getSignalScore).average().orElse(0);
-        double bp = liste.stream().mapToDouble(Qos::getBandePassante).average().orElse(0);
+        double lat = groupe.moyenne(QosAccumulateur.LATENCE);
+        double jitter = groupe.jitter();
+        double perte = groupe.moyenne(QosAccumulateur.PERTE);
+        double signal = groupe.moyenne(QosAccumulateur.SIGNAL);
+        double bp = groupe.moyenne(QosAccumulateur.BANDE_PASSANTE);
 
-        double R = 94.2 - (lat / 40.0) - (1.2 * jitter) - (2 * perte);
-        double mos = 1 + 0.035 * R + 7e-6 * R * (R - 60) * (100 - R);
-        mos = Math.max(1, Math.min(5, mos));
+        double mos = mos(lat, jitter, perte);
 
         Qos q = new Qos();
         q.setLatence(lat);
@@ -155,26 +367,100 @@ public class QosAnalyzer {
         q.setSignalScore(signal);
         q.setMos(mos);
 
-        q.setZone(liste.get(0).getZone());
-        q.setDateReelle(liste.get(0).getDateReelle());
-        q.setTranche12h(liste.get(0).getTranche12h());
-        q.setNomFichier(liste.get(0).getNomFichier());
+        q.setZone(groupe.getZone());
+        q.setDateReelle(DateUtils.convertirEpochMillis(groupe.getPremierEpochMillis(), "UTC"));
+        q.setTranche(groupe.getResolution(), groupe.getTranche());
+        q.setNomFichier(nomFichier);
+
+        q.setNbMesures(groupe.getNb());
+        q.setPremiereLatence(groupe.getPremiereLatence());
+        q.setDerniereLatence(groupe.getDerniereLatence());
 
         return q;
     }
 
     /**
-     * Calcule le jitter à partir de la variation de latence
+     * MOS estimé (modèle E simplifié, borné à [1 ; 5]) à partir de la
+     * latence, du jitter et de la perte moyens ; repris par la
+     * simulation QoE quand ces variables changent.
+     */
+    static double mos(double lat, double jitter, double perte) {
+        double R = 94.2 - (lat / 40.0) - (1.2 * jitter) - (2 * perte);
+        double mos = 1 + 0.035 * R + 7e-6 * R * (R - 60) * (100 - R);
+        return Math.max(1, Math.min(5, mos));
+    }
+
+    /**
+     * Regroupe les lignes d'un bloc par (ZONE + TRANCHE), pour chaque
+     * résolution en un seul passage. Clé d'un groupe : numéro de zone
+     * (24 bits) et indice de tranche (40 bits) dans un long, sans objet
+     * alloué par ligne. Les lignes consécutives d'un même groupe
+     * réutilisent le groupe courant. Un groupe émis n'est plus retrouvé :
+     * les lignes suivantes sont toutes postérieures à sa tranche.
      */
-    private static double calculerJitter(List<Qos> liste) {
+    private static class Regroupement implements QosCsvParser.Consommateur {
+        private static final long MASQUE_INDICE = (1L << 40) - 1;
+        static final int BITS_RAISON = 5;
+        static final long MASQUE_RAISON = (1L << BITS_RAISON) - 1;
+
+        final Niveau[] niveaux;
+        // Rejets du bloc : numéro de ligne et motif dans un long, lus par l'agrégation
+        long[] rejets = new long[16];
+        int nbRejets = 0;
+
+        private final DictionnaireZones zones;
+
+        Regroupement(Resolution[] resolutions, DictionnaireZones zones) {
+            this.zones = zones;
+            niveaux = new Niveau[resolutions.length];
+            for (int i = 0; i < resolutions.length; i++) niveaux[i] = new Niveau(resolutions[i]);
+        }
 
-        if (liste.size() <= 1) return 0;
+        @Override
+        public void ligne(int zone, double latitude, double longitude, long epochMillis,
+                          double latence, double perte, double signal, double bandePassante) {
+            for (Niveau n : niveaux) {
+                n.groupe(zone, epochMillis).ajouter(latence, perte, signal, bandePassante, epochMillis);
+            }
+        }
 
-        double total = 0;
-        for (int i = 1; i < liste.size(); i++) {
-            total += Math.abs(liste.get(i).getLatence() - liste.get(i - 1).getLatence());
+        @Override
+        public void rejet(long ligne, QosCsvParser.Rejet raison) {
+            if (nbRejets == rejets.length) rejets = Arrays.copyOf(rejets, nbRejets * 2);
+            rejets[nbRejets++] = ligne << BITS_RAISON | raison.ordinal();
         }
 
-        return total / (liste.size() - 1);
+        // Indice sur 40 bits : |epoch| < QosCsvParser.EPOCH_LIMITE_MS
+        static long cle(int zone, long indice) {
+            return (long) zone << 40 | indice & MASQUE_INDICE;
+        }
+
+        /** Groupes d'une résolution et groupe courant. */
+        private class Niveau {
+            final Resolution resolution;
+            final TableLong<QosAccumulateur> groupes = new TableLong<>();
+            private int zoneCourante = -1;
+            private long indiceCourant = Long.MIN_VALUE;
+            private QosAccumulateur groupeCourant = null;
+
+            Niveau(Resolution resolution) {
+                this.resolution = resolution;
+            }
+
+            QosAccumulateur groupe(int zone, long epochMillis) {
+                long indice = resolution.indice(epochMillis);
+                if (indice != indiceCourant || zone != zoneCourante || groupeCourant == null) {
+                    indiceCourant = indice;
+                    zoneCourante = zone;
+                    long cle = cle(zone, indice);
+                    groupeCourant = groupes.get(cle);
+                    if (groupeCourant == null) {
+                        groupeCourant = new QosAccumulateur(zones.zone(zone), resolution, indice);
+                        groupes.put(cle, groupeCourant);
+                    }
+                }
+                return groupeCourant;
+            }
+        }
     }
 }
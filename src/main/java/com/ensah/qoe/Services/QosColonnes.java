@@ -0,0 +1,492 @@
+package com.ensah.qoe.Services;
+
+import com.ensah.qoe.Models.DBConnection;
+import com.ensah.qoe.Models.Qos;
+import com.ensah.qoe.Utils.Resolution;
+
+import java.nio.file.Path;
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Groupes 12 h (MESURES_QOS) en mémoire, par colonnes : un double[] par
+ * mesure, zone, tranche et fichier codés en int (dictionnaires). Les
+ * lignes sont triées par zone puis tranche : une zone est une plage
+ * contiguë, et les statistiques sont des boucles sur des tableaux.
+ *
+ * Une seule copie, partagée par les écrans (get()). Au démarrage, elle
+ * vient de l'instantané disque (QosInstantane) : seuls les fichiers
+ * importés ou modifiés depuis (DATE_MAJ de FICHIERS_IMPORTES) sont relus
+ * en base. Non modifiable une fois construite.
+ */
+public class QosColonnes {
+
+    /** Filtre de zone : toutes les lignes. */
+    public static final int TOUTES = -1;
+    /** Filtre de zone : aucune ligne (zone absente des données). */
+    public static final int AUCUNE = -2;
+
+    /** Version des lignes dont le fichier n'est pas dans FICHIERS_IMPORTES. */
+    static final long SANS_SUIVI = Long.MIN_VALUE;
+
+    public enum Mesure { LATENCE, JITTER, PERTE, BANDE_PASSANTE, SIGNAL, MOS }
+
+    private static final String SELECT = "SELECT ZONE, TRANCHE_12H, NOM_FICHIER, " +
+            "LATENCE, JITTER, PERTE, BANDE_PASSANTE, SIGNAL_SCORE, MOS FROM MESURES_QOS WHERE ZONE IS NOT NULL";
+
+    private static volatile QosColonnes courant;
+
+    // Actualisations demandées après les imports, une à la fois
+    private static final ExecutorService actualisation = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "actualisation-qos");
+        t.setDaemon(true);
+        return t;
+    });
+    private static final AtomicBoolean actualisationEnAttente = new AtomicBoolean();
+
+    final double[][] mesures;
+    final int[] zones;
+    final int[] tranches;
+    final int[] fichiers;
+    final String[] nomsZones;
+    final String[] libellesTranches;
+    final String[] nomsFichiers;
+    // DATE_MAJ (µs) de chaque fichier au moment où ses lignes ont été lues
+    final long[] versions;
+    final int taille;
+
+    // Lignes de la zone z : [debutsZones[z], debutsZones[z + 1])
+    private final int[] debutsZones;
+    private final Map<String, Integer> codesZones;
+
+    /** Colonnes déjà triées par (zone, tranche), codes dans l'ordre des noms. */
+    QosColonnes(double[][] mesures, int[] zones, int[] tranches, int[] fichiers,
+                String[] nomsZones, String[] libellesTranches, String[] nomsFichiers,
+                long[] versions, int taille) {
+        this.mesures = mesures;
+        this.zones = zones;
+        this.tranches = tranches;
+        this.fichiers = fichiers;
+        this.nomsZones = nomsZones;
+        this.libellesTranches = libellesTranches;
+        this.nomsFichiers = nomsFichiers;
+        this.versions = versions;
+        this.taille = taille;
+
+        this.debutsZones = new int[nomsZones.length + 1];
+        this.codesZones = new HashMap<>();
+        for (int z = 0; z < nomsZones.length; z++) codesZones.put(nomsZones[z], z);
+        int z = 0;
+        for (int i = 0; i < taille; i++) {
+            while (z <= zones[i]) debutsZones[z++] = i;
+        }
+        while (z <= nomsZones.length) debutsZones[z++] = taille;
+    }
+
+    /** Données partagées : instantané disque mis à jour au premier appel. */
+    public static QosColonnes get() {
+        QosColonnes c = courant;
+        return c != null ? c : actualiser();
+    }
+
+    /**
+     * Relit en base les fichiers importés, modifiés ou supprimés depuis
+     * les données partagées (ou l'instantané), puis réécrit l'instantané.
+     * Base indisponible : données inchangées.
+     */
+    public static QosColonnes actualiser() {
+        synchronized (QosColonnes.class) {
+            Path chemin = QosInstantane.chemin();
+            boolean depuisDisque = courant == null;
+            QosColonnes base = depuisDisque ? QosInstantane.lire(chemin) : courant;
+
+            QosColonnes c = base;
+            try {
+                // Versions lues avant les lignes : une modification qui suit sera revue
+                Map<String, Long> versions = versionsEnBase();
+                c = synchroniser(base, versions);
+            } catch (Exception e) {
+                System.out.println("⚠ Mesures QoS non relues en base : " + e.getMessage());
+            }
+            if (c == null) c = new Lignes(Map.of()).construire();
+
+            if (c != base || (depuisDisque && base == null)) QosInstantane.ecrire(c, chemin);
+            courant = c;
+            return c;
+        }
+    }
+
+    /**
+     * actualiser() sur un thread à part, après le commit d'un import :
+     * l'import n'attend ni la relecture ni l'écriture de l'instantané, et
+     * leur échec ne le remet pas en cause. Une demande faite pendant
+     * qu'une autre attend encore est confondue avec elle.
+     */
+    public static void actualiserEnArrierePlan() {
+        if (!actualisationEnAttente.compareAndSet(false, true)) return;
+        actualisation.execute(() -> {
+            actualisationEnAttente.set(false);
+            try {
+                actualiser();
+            } catch (RuntimeException e) {
+                System.out.println("⚠ Mesures QoS partagées non actualisées : " + e.getMessage());
+            }
+        });
+    }
+
+    // =========================================================================
+    // CHARGEMENT
+    // =========================================================================
+
+    /** DATE_MAJ (µs) de chaque fichier importé. */
+    private static Map<String, Long> versionsEnBase() throws SQLException {
+        Map<String, Long> versions = new HashMap<>();
+        try (Connection conn = DBConnection.getConnection()) {
+            if (conn == null) throw new SQLException("Connexion indisponible");
+            try (PreparedStatement ps = conn.prepareStatement("SELECT NOM_FICHIER, DATE_MAJ FROM FICHIERS_IMPORTES");
+                 ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    Timestamp t = rs.getTimestamp(2);
+                    versions.put(rs.getString(1), t == null ? 0 : t.getTime() * 1000 + t.getNanos() / 1000 % 1000);
+                }
+            }
+        }
+        return versions;
+    }
+
+    /**
+     * base complétée des fichiers dont la version a changé (relus) et
+     * privée des fichiers supprimés ; base elle-même si rien n'a changé,
+     * tout est relu si base est null.
+     */
+    private static QosColonnes synchroniser(QosColonnes base, Map<String, Long> versions) throws SQLException {
+        Set<String> perimes = new HashSet<>();
+
+        if (base != null) {
+            Map<String, Long> connues = new HashMap<>();
+            for (int f = 0; f < base.nomsFichiers.length; f++) {
+                connues.put(base.nomsFichiers[f], base.versions[f]);
+                // Import supprimé depuis
+                if (base.versions[f] != SANS_SUIVI && !versions.containsKey(base.nomsFichiers[f])) {
+                    perimes.add(base.nomsFichiers[f]);
+                }
+            }
+            for (Map.Entry<String, Long> e : versions.entrySet()) {
+                if (!e.getValue().equals(connues.get(e.getKey()))) perimes.add(e.getKey());
+            }
+            if (perimes.isEmpty()) return base;
+        }
+
+        Lignes lignes = new Lignes(versions);
+        try (Connection conn = DBConnection.getConnection()) {
+            if (conn == null) throw new SQLException("Connexion indisponible");
+
+            if (base == null) {
+                try (PreparedStatement ps = conn.prepareStatement(SELECT)) {
+                    ps.setFetchSize(5000);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        lignes.lire(rs);
+                    }
+                }
+            } else {
+                lignes.copier(base, perimes);
+                try (PreparedStatement ps = conn.prepareStatement(SELECT + " AND NOM_FICHIER = ?")) {
+                    ps.setFetchSize(5000);
+                    for (String nom : perimes) {
+                        if (!versions.containsKey(nom)) continue;
+                        ps.setString(1, nom);
+                        try (ResultSet rs = ps.executeQuery()) {
+                            lignes.lire(rs);
+                        }
+                    }
+                }
+            }
+        }
+
+        QosColonnes c = lignes.construire();
+        System.out.println(">>> Mesures QoS : " + c.taille + " groupes"
+                + (base == null ? " lus en base" : " (" + perimes.size() + " fichier(s) relu(s))"));
+        return c;
+    }
+
+    // =========================================================================
+    // ACCÈS
+    // =========================================================================
+
+    public int taille() { return taille; }
+    public boolean estVide() { return taille == 0; }
+
+    /** Zones, dans l'ordre de leurs codes (ordre des noms). */
+    public List<String> getZones() {
+        return Collections.unmodifiableList(Arrays.asList(nomsZones));
+    }
+
+    /** Code d'une zone : TOUTES si zone est null, AUCUNE si elle est inconnue. */
+    public int code(String zone) {
+        if (zone == null) return TOUTES;
+        Integer z = codesZones.get(zone);
+        return z == null ? AUCUNE : z;
+    }
+
+    /** Première ligne de la zone (ou de toutes). */
+    public int debut(int zone) { return zone < 0 ? 0 : debutsZones[zone]; }
+    /** Fin (exclue) des lignes de la zone (ou de toutes). */
+    public int fin(int zone) {
+        if (zone < 0) return zone == TOUTES ? taille : 0;
+        return debutsZones[zone + 1];
+    }
+    public int taille(int zone) { return fin(zone) - debut(zone); }
+
+    public double get(Mesure m, int ligne) { return mesures[m.ordinal()][ligne]; }
+    public String getZone(int ligne) { return nomsZones[zones[ligne]]; }
+    public String getTranche(int ligne) { return libellesTranches[tranches[ligne]]; }
+
+    /** Ligne sous forme de Qos (affichage d'un groupe). */
+    public Qos qos(int ligne) {
+        Qos q = new Qos(get(Mesure.LATENCE, ligne), get(Mesure.JITTER, ligne), get(Mesure.PERTE, ligne),
+                get(Mesure.BANDE_PASSANTE, ligne), get(Mesure.SIGNAL, ligne), get(Mesure.MOS, ligne));
+        q.setZone(getZone(ligne));
+        q.setTranche(Resolution.DOUZE_HEURES, getTranche(ligne));
+        return q;
+    }
+
+    // =========================================================================
+    // STATISTIQUES (zone : code, TOUTES ou AUCUNE)
+    // Quatre sommes partielles : pas de dépendance d'un tour de boucle au
+    // suivant, le JIT peut les mener de front.
+    // =========================================================================
+
+    public double somme(Mesure m, int zone) {
+        double[] a = mesures[m.ordinal()];
+        int i = debut(zone), fin = fin(zone);
+        double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        for (; i + 3 < fin; i += 4) {
+            s0 += a[i];
+            s1 += a[i + 1];
+            s2 += a[i + 2];
+            s3 += a[i + 3];
+        }
+        for (; i < fin; i++) s0 += a[i];
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    /** 0 si aucune ligne. */
+    public double moyenne(Mesure m, int zone) {
+        int n = taille(zone);
+        return n == 0 ? 0 : somme(m, zone) / n;
+    }
+
+    /** NaN si aucune ligne. */
+    public double min(Mesure m, int zone) {
+        double[] a = mesures[m.ordinal()];
+        int debut = debut(zone), fin = fin(zone);
+        if (debut == fin) return Double.NaN;
+        double min = a[debut];
+        for (int i = debut + 1; i < fin; i++) {
+            if (a[i] < min) min = a[i];
+        }
+        return min;
+    }
+
+    /** NaN si aucune ligne. */
+    public double max(Mesure m, int zone) {
+        double[] a = mesures[m.ordinal()];
+        int debut = debut(zone), fin = fin(zone);
+        if (debut == fin) return Double.NaN;
+        double max = a[debut];
+        for (int i = debut + 1; i < fin; i++) {
+            if (a[i] > max) max = a[i];
+        }
+        return max;
+    }
+
+    /**
+     * Percentile p (0..100), interpolé entre les deux valeurs encadrantes ;
+     * NaN si aucune ligne.
+     */
+    public double percentile(Mesure m, int zone, double p) {
+        int debut = debut(zone), n = taille(zone);
+        if (n == 0) return Double.NaN;
+        double[] v = Arrays.copyOfRange(mesures[m.ordinal()], debut, debut + n);
+        Arrays.sort(v);
+        double rang = Math.max(0, Math.min(100, p)) / 100 * (n - 1);
+        int bas = (int) rang;
+        if (bas + 1 >= n) return v[n - 1];
+        return v[bas] + (rang - bas) * (v[bas + 1] - v[bas]);
+    }
+
+    /** Moyenne de la mesure pour chaque zone (indice = code), en un passage. */
+    public double[] moyennesParZone(Mesure m) {
+        double[] moyennes = new double[nomsZones.length];
+        for (int z = 0; z < moyennes.length; z++) moyennes[z] = moyenne(m, z);
+        return moyennes;
+    }
+
+    /**
+     * Lignes par classe de MOS : [0] ≥ 4 (excellent), [1] 3-4 (bon),
+     * [2] 2-3 (moyen), [3] < 2 (mauvais).
+     */
+    public int[] repartitionMos(int zone) {
+        double[] mos = mesures[Mesure.MOS.ordinal()];
+        int excellent = 0, bon = 0, moyen = 0;
+        int debut = debut(zone), fin = fin(zone);
+        for (int i = debut; i < fin; i++) {
+            double v = mos[i];
+            if (v >= 4.0) excellent++;
+            else if (v >= 3.0) bon++;
+            else if (v >= 2.0) moyen++;
+        }
+        return new int[]{excellent, bon, moyen, fin - debut - excellent - bon - moyen};
+    }
+
+    // =========================================================================
+    // CONSTRUCTION
+    // =========================================================================
+
+    /** Lignes lues en vrac, triées par (zone, tranche) par construire(). */
+    static class Lignes {
+        private final Map<String, Long> versions;
+
+        private double[][] mesures = new double[Mesure.values().length][1024];
+        private int[] zones = new int[1024];
+        private int[] tranches = new int[1024];
+        private int[] fichiers = new int[1024];
+        private int taille = 0;
+
+        private final Dictionnaire nomsZones = new Dictionnaire();
+        private final Dictionnaire libellesTranches = new Dictionnaire();
+        private final Dictionnaire nomsFichiers = new Dictionnaire();
+
+        /** versions : DATE_MAJ des fichiers (absent : SANS_SUIVI). */
+        Lignes(Map<String, Long> versions) {
+            this.versions = versions;
+        }
+
+        /** Colonnes de SELECT. */
+        void lire(ResultSet rs) throws SQLException {
+            while (rs.next()) {
+                int i = reserver();
+                zones[i] = nomsZones.code(rs.getString(1));
+                tranches[i] = libellesTranches.code(Objects.requireNonNullElse(rs.getString(2), ""));
+                fichiers[i] = nomsFichiers.code(Objects.requireNonNullElse(rs.getString(3), ""));
+                for (int m = 0; m < mesures.length; m++) mesures[m][i] = rs.getDouble(4 + m);
+            }
+        }
+
+        /** Lignes de c, sauf celles des fichiers exclus. */
+        void copier(QosColonnes c, Set<String> exclus) {
+            // Codes attribués à la première ligne gardée : une zone dont
+            // toutes les lignes sont exclues disparaît
+            int[] zone = new int[c.nomsZones.length];
+            int[] tranche = new int[c.libellesTranches.length];
+            int[] fichier = new int[c.nomsFichiers.length];
+            Arrays.fill(zone, -1);
+            Arrays.fill(tranche, -1);
+            for (int f = 0; f < fichier.length; f++) fichier[f] = exclus.contains(c.nomsFichiers[f]) ? -2 : -1;
+
+            for (int j = 0; j < c.taille; j++) {
+                int zj = c.zones[j], tj = c.tranches[j], fj = c.fichiers[j];
+                if (fichier[fj] == -2) continue;
+                if (zone[zj] < 0) zone[zj] = nomsZones.code(c.nomsZones[zj]);
+                if (tranche[tj] < 0) tranche[tj] = libellesTranches.code(c.libellesTranches[tj]);
+                if (fichier[fj] < 0) fichier[fj] = nomsFichiers.code(c.nomsFichiers[fj]);
+                int i = reserver();
+                zones[i] = zone[zj];
+                tranches[i] = tranche[tj];
+                fichiers[i] = fichier[fj];
+                for (int m = 0; m < mesures.length; m++) mesures[m][i] = c.mesures[m][j];
+            }
+        }
+
+        QosColonnes construire() {
+            // Codes renumérotés dans l'ordre des noms (les libellés de tranche
+            // se trient dans l'ordre chronologique)
+            int[] rangZone = nomsZones.rangs();
+            int[] rangTranche = libellesTranches.rangs();
+
+            int[] cleZone = new int[taille];
+            int[] cleTranche = new int[taille];
+            for (int i = 0; i < taille; i++) {
+                cleZone[i] = rangZone[zones[i]];
+                cleTranche[i] = rangTranche[tranches[i]];
+            }
+
+            // Tri par dénombrement stable, par tranche puis par zone
+            int[] ordre = new int[taille];
+            for (int i = 0; i < taille; i++) ordre[i] = i;
+            ordre = trier(ordre, cleTranche, rangTranche.length);
+            ordre = trier(ordre, cleZone, rangZone.length);
+
+            double[][] m = new double[mesures.length][taille];
+            int[] z = new int[taille], t = new int[taille], f = new int[taille];
+            for (int k = 0; k < taille; k++) {
+                int i = ordre[k];
+                z[k] = cleZone[i];
+                t[k] = cleTranche[i];
+                f[k] = fichiers[i];
+                for (int c = 0; c < m.length; c++) m[c][k] = mesures[c][i];
+            }
+
+            String[] fichiersTries = nomsFichiers.noms.toArray(new String[0]);
+            long[] v = new long[fichiersTries.length];
+            for (int c = 0; c < v.length; c++) v[c] = versions.getOrDefault(fichiersTries[c], SANS_SUIVI);
+
+            return new QosColonnes(m, z, t, f, nomsZones.tries(rangZone), libellesTranches.tries(rangTranche),
+                    fichiersTries, v, taille);
+        }
+
+        private int reserver() {
+            if (taille == zones.length) {
+                int n = zones.length * 2;
+                for (int m = 0; m < mesures.length; m++) mesures[m] = Arrays.copyOf(mesures[m], n);
+                zones = Arrays.copyOf(zones, n);
+                tranches = Arrays.copyOf(tranches, n);
+                fichiers = Arrays.copyOf(fichiers, n);
+            }
+            return taille++;
+        }
+
+        private static int[] trier(int[] ordre, int[] cles, int nbCles) {
+            int[] debut = new int[nbCles + 1];
+            for (int i : ordre) debut[cles[i] + 1]++;
+            for (int c = 0; c < nbCles; c++) debut[c + 1] += debut[c];
+            int[] trie = new int[ordre.length];
+            for (int i : ordre) trie[debut[cles[i]]++] = i;
+            return trie;
+        }
+    }
+
+    private static class Dictionnaire {
+        final List<String> noms = new ArrayList<>();
+        private final Map<String, Integer> codes = new HashMap<>();
+
+        int code(String nom) {
+            Integer c = codes.get(nom);
+            if (c == null) {
+                c = noms.size();
+                codes.put(nom, c);
+                noms.add(nom);
+            }
+            return c;
+        }
+
+        /** Rang de chaque code dans l'ordre des noms. */
+        int[] rangs() {
+            Integer[] ordre = new Integer[noms.size()];
+            for (int c = 0; c < ordre.length; c++) ordre[c] = c;
+            Arrays.sort(ordre, Comparator.comparing(noms::get));
+            int[] rang = new int[ordre.length];
+            for (int r = 0; r < ordre.length; r++) rang[ordre[r]] = r;
+            return rang;
+        }
+
+        String[] tries(int[] rang) {
+            String[] t = new String[noms.size()];
+            for (int c = 0; c < t.length; c++) t[rang[c]] = noms.get(c);
+            return t;
+        }
+    }
+}
@@ -0,0 +1,1101 @@
+package com.ensah.qoe.Services;
+
+import com.ensah.qoe.Utils.DictionnaireZones;
+import com.ensah.qoe.Utils.GeoCoder;
+import com.ensah.qoe.Utils.GeoIndex;
+import com.ensah.qoe.Utils.SourceCsv;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.LongConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Lecture parallèle d'un CSV QoS (export drive-test).
+ * Le fichier est projeté en mémoire puis découpé en blocs alignés sur
+ * les fins de ligne ; chaque bloc est analysé sur son propre thread,
+ * directement dans les octets (pas de split ni de String par champ).
+ * Une archive (.gz, entrée de .zip) est décompressée à la volée par un
+ * seul thread, coupée en blocs de TAILLE_BLOC_FLUX, et ses blocs
+ * analysés en parallèle de la même façon.
+ * Deux temps : planifier() relit rapidement le fichier (positions
+ * connues, dates de chaque bloc), puis parserFichier() rend les blocs
+ * analysés dans l'ordre du fichier, au fil de l'eau.
+ * Les lignes sans ville/pays sont localisées au passage : zone connue
+ * la plus proche à moins de GeoCoder.RAYON_KM (gazetteer par le cache de
+ * géocodage, positions apprises et positions du fichier).
+ * Les zones sont rendues par leur numéro dans le dictionnaire du plan.
+ */
+public class QosCsvParser {
+
+    /** Zone des lignes sans ville/pays et sans point connu à proximité. */
+    public static final String ZONE_INCONNUE = "Unknown, Unknown";
+
+    /**
+     * Dates acceptées : moins de 2^39 minutes (environ un million
+     * d'années) autour de 1970, pour que l'indice d'une tranche tienne
+     * sur 40 bits.
+     */
+    public static final long EPOCH_LIMITE_MS = (1L << 39) * 60_000;
+
+    // Taille maximale d'un bloc projeté en mémoire
+    private static final long TAILLE_BLOC_MAX = 8L << 20;
+    // En dessous, un seul bloc suffit
+    private static final long TAILLE_MIN_PARALLELE = 1L << 20;
+    // Bloc d'une archive, gardé en mémoire jusqu'à son analyse
+    private static final int TAILLE_BLOC_FLUX = 4 << 20;
+
+    private static final double[] POW10 = new double[23];
+    static {
+        POW10[0] = 1;
+        for (int i = 1; i < POW10.length; i++) POW10[i] = POW10[i - 1] * 10;
+    }
+
+    /** Motif de rejet d'une ligne ; code : colonne du fichier de rejets. */
+    public enum Rejet {
+        LIGNE_VIDE("VIDE", "ligne vide"),
+        TIMESTAMP("TS", "timestamp invalide"),
+        TIMESTAMP_HORS_LIMITES("TS_LIM", "timestamp hors limites"),
+        LATITUDE("LAT", "latitude invalide"),
+        LONGITUDE("LON", "longitude invalide"),
+        DELAY("DELAY", "delay invalide"),
+        RSRQ("RSRQ", "rsrq invalide"),
+        SINR("SINR", "sinr invalide"),
+        DEBIT_DESCENDANT("DL", "throughput_downlink invalide"),
+        DEBIT_MONTANT("UL", "throughput_uplink invalide");
+
+        private final String code;
+        private final String libelle;
+
+        Rejet(String code, String libelle) {
+            this.code = code;
+            this.libelle = libelle;
+        }
+
+        public String getCode() { return code; }
+
+        @Override
+        public String toString() { return libelle; }
+    }
+
+    /**
+     * Reçoit les lignes valides d'un bloc, dans l'ordre du fichier.
+     * zone : numéro dans Plan.getZones() (DictionnaireZones.INCONNUE
+     * pour une ligne non localisée).
+     */
+    public interface Consommateur {
+        void ligne(int zone, double latitude, double longitude, long epochMillis,
+                   double latence, double perte, double signal, double bandePassante);
+
+        /** ligne : numéro de la ligne dans le bloc (à partir de 1). */
+        void rejet(long ligne, Rejet raison);
+    }
+
+    /** Reçoit les blocs analysés, dans l'ordre du fichier. */
+    public interface SortieBloc<C extends Consommateur> {
+        void bloc(int indice, Bloc<C> bloc) throws IOException;
+    }
+
+    /**
+     * Résultat d'un bloc : son consommateur et la position de sa
+     * première ligne de données dans le fichier (à partir de 1).
+     * En lecture séquentielle, le même consommateur reçoit tous les
+     * blocs et numérote les lignes depuis le début du fichier.
+     */
+    public static class Bloc<C extends Consommateur> {
+        private final C consommateur;
+        private final long nbLignes;
+        private final long octets;
+        private long premiereLigne;
+
+        Bloc(C consommateur, long nbLignes, long octets) {
+            this.consommateur = consommateur;
+            this.nbLignes = nbLignes;
+            this.octets = octets;
+        }
+
+        public C getConsommateur() { return consommateur; }
+        public long getNbLignes() { return nbLignes; }
+        public long getOctets() { return octets; }
+        public long getPremiereLigne() { return premiereLigne; }
+    }
+
+    /**
+     * Découpage d'un fichier, index des positions connues et dates
+     * extrêmes (epoch ms) des lignes de chaque bloc.
+     * Positions en octets, dans le contenu décompressé pour une archive.
+     */
+    public static class Plan {
+        private final SourceCsv source;
+        private final Charset charset;
+        private final Colonnes colonnes;
+        private final long[] bornes;
+        private final GeoIndex geo;
+        private final DictionnaireZones zones;
+        private final long[] minEpoch;
+        private final long[] maxEpoch;
+
+        Plan(SourceCsv source, Charset charset, Colonnes colonnes, long[] bornes,
+             GeoIndex geo, DictionnaireZones zones, long[] minEpoch, long[] maxEpoch) {
+            this.source = source;
+            this.charset = charset;
+            this.colonnes = colonnes;
+            this.bornes = bornes;
+            this.geo = geo;
+            this.zones = zones;
+            this.minEpoch = minEpoch;
+            this.maxEpoch = maxEpoch;
+        }
+
+        public int getNbBlocs() { return bornes.length - 1; }
+        public long getOctets() { return bornes[bornes.length - 1] - bornes[0]; }
+        /** Position juste après la dernière ligne du plan. */
+        public long getFin() { return bornes[bornes.length - 1]; }
+        public long getOctets(int bloc) { return bornes[bloc + 1] - bornes[bloc]; }
+        public GeoIndex getGeo() { return geo; }
+        /** Zones rencontrées ; complété pendant parserFichier(). */
+        public DictionnaireZones getZones() { return zones; }
+        /** Long.MAX_VALUE si le bloc n'a aucune date valide. */
+        public long getMinEpochMillis(int bloc) { return minEpoch[bloc]; }
+        /** Long.MIN_VALUE si le bloc n'a aucune date valide. */
+        public long getMaxEpochMillis(int bloc) { return maxEpoch[bloc]; }
+    }
+
+    // =========================================================================
+    // ORCHESTRATION
+    // =========================================================================
+
+    /**
+     * Lecture rapide du fichier (timestamp, latitude, longitude, city,
+     * country) : index des positions déjà localisées, ajoutées à une
+     * copie de base, et dates extrêmes de chaque bloc.
+     *
+     * @param octetsLus avancement de la lecture (peut être null)
+     */
+    public static Plan planifier(String csvPath, int nbThreads, GeoIndex base,
+                                 LongConsumer octetsLus) throws IOException {
+        return planifier(csvPath, 0, nbThreads, base, octetsLus);
+    }
+
+    /**
+     * Comme planifier(), pour les lignes ajoutées à partir de l'octet
+     * debut (0 : tout le fichier). Au-delà de debut, le fichier peut
+     * être en cours d'écriture : seules les lignes terminées par '\n'
+     * sont retenues, Plan.getFin() indique où reprendre.
+     */
+    public static Plan planifier(String csvPath, long debut, int nbThreads, GeoIndex base,
+                                 LongConsumer octetsLus) throws IOException {
+        return planifier(SourceCsv.fichier(Path.of(csvPath)), debut, nbThreads, base, octetsLus);
+    }
+
+    /**
+     * Comme planifier(), pour un CSV ou une archive. Une archive est
+     * lue en entier (debut doit valoir 0) ; les positions du plan sont
+     * celles du contenu décompressé.
+     */
+    public static Plan planifier(SourceCsv source, long debut, int nbThreads, GeoIndex base,
+                                 LongConsumer octetsLus) throws IOException {
+
+        Charset charset = Charset.defaultCharset();
+        GeoIndex index = base == null ? new GeoIndex() : base.copie();
+        DictionnaireZones zones = new DictionnaireZones(ZONE_INCONNUE);
+
+        Colonnes colonnes;
+        long[] bornes;
+        List<Repere> reperes;
+
+        if (source.estCompresse()) {
+            if (debut > 0) throw new IllegalArgumentException("Reprise impossible dans une archive : " + source);
+            try (InputStream in = source.ouvrir()) {
+                byte[] entete = lireEntete(in);
+                colonnes = colonnes(new String(entete, charset));
+                DecoupeFlux d = new DecoupeFlux(in, entete.length);
+                reperes = executer(d, nbThreads, reperage(colonnes, charset, zones, octetsLus));
+                bornes = d.bornes();
+            }
+        } else {
+            try (FileChannel ch = FileChannel.open(source.getChemin(), StandardOpenOption.READ)) {
+                Decoupage d = decouper(ch, debut, nbThreads, charset);
+                colonnes = d.colonnes;
+                bornes = d.bornes;
+                reperes = executer(new LectureBlocs(bornes, ch, null), nbThreads,
+                        reperage(colonnes, charset, zones, octetsLus));
+            }
+        }
+
+        int nbBlocs = reperes.size();
+        long[] minEpoch = new long[nbBlocs];
+        long[] maxEpoch = new long[nbBlocs];
+        for (int i = 0; i < nbBlocs; i++) {
+            Repere r = reperes.get(i);
+            // Dans l'ordre du fichier : le premier point d'un carré gagne
+            if (r.geo != null) index.ajouterTout(r.geo);
+            minEpoch[i] = r.minEpoch;
+            maxEpoch[i] = r.maxEpoch;
+        }
+
+        System.out.println(">>> Index géographique : " + index.taille() + " positions connues");
+        return new Plan(source, charset, colonnes, bornes, index, zones, minEpoch, maxEpoch);
+    }
+
+    private static TacheBloc<Repere> reperage(Colonnes colonnes, Charset charset, DictionnaireZones zones,
+                                              LongConsumer octetsLus) {
+        boolean localise = colonnes.city >= 0 && colonnes.country >= 0;
+        return buf -> {
+            Repere r = new Repere(localise);
+            new Lecteur(colonnes, charset, zones, null).reperer(buf, r);
+            if (octetsLus != null) octetsLus.accept(buf.limit());
+            return r;
+        };
+    }
+
+    /**
+     * Analyse les blocs du plan et les rend à enOrdre dans l'ordre du
+     * fichier, dès qu'ils sont prêts : au plus 2 × nbThreads blocs
+     * analysés attendent enOrdre (les threads d'analyse patientent
+     * au-delà). Les lignes sans ville/pays sont localisées avec
+     * plan.getGeo().
+     */
+    public static <C extends Consommateur> void parserFichier(
+            Plan plan, int nbThreads, Supplier<C> fabrique, SortieBloc<C> enOrdre) throws IOException {
+
+        int nbBlocs = plan.getNbBlocs();
+
+        try (LectureBlocs blocs = LectureBlocs.ouvrir(plan)) {
+
+            if (nbThreads <= 1) {
+                // Séquentiel : un seul consommateur voit toutes les lignes dans l'ordre
+                C c = fabrique.get();
+                Lecteur lecteur = new Lecteur(plan.colonnes, plan.charset, plan.zones, plan.geo);
+                long n = 0;
+                for (int i = 0; i < nbBlocs; i++) {
+                    ByteBuffer buf = blocs.suivant();
+                    long avant = n;
+                    n = lecteur.parser(buf, c, n);
+                    Bloc<C> bloc = new Bloc<>(c, n - avant, plan.getOctets(i));
+                    bloc.premiereLigne = 1;
+                    enOrdre.bloc(i, bloc);
+                }
+                return;
+            }
+
+            ExecutorService pool = Executors.newFixedThreadPool(Math.min(nbThreads, nbBlocs));
+            try {
+                ArrayDeque<Future<Bloc<C>>> enCours = new ArrayDeque<>();
+                int fenetre = 2 * nbThreads;
+                int soumis = 0;
+                long ligne = 1;
+
+                for (int i = 0; i < nbBlocs; i++) {
+                    while (soumis < nbBlocs && soumis - i < fenetre) {
+                        // Lu ici, dans l'ordre (archive : décompression séquentielle)
+                        ByteBuffer buf = blocs.suivant();
+                        long octets = plan.getOctets(soumis);
+                        enCours.add(pool.submit(() -> {
+                            C c = fabrique.get();
+                            long n = new Lecteur(plan.colonnes, plan.charset, plan.zones, plan.geo).parser(buf, c, 0);
+                            return new Bloc<>(c, n, octets);
+                        }));
+                        soumis++;
+                    }
+
+                    Bloc<C> b = enCours.poll().get();
+                    b.premiereLigne = ligne;
+                    ligne += b.nbLignes;
+                    enOrdre.bloc(i, b);
+                }
+
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Analyse interrompue");
+            } catch (ExecutionException e) {
+                throw cause(e);
+            } finally {
+                pool.shutdownNow();
+            }
+        }
+    }
+
+    // Résultat de la lecture rapide d'un bloc
+    private static class Repere {
+        final GeoIndex geo;
+        long minEpoch = Long.MAX_VALUE;
+        long maxEpoch = Long.MIN_VALUE;
+
+        Repere(boolean localise) {
+            this.geo = localise ? new GeoIndex() : null;
+        }
+    }
+
+    private static class Decoupage {
+        final Colonnes colonnes;
+        final long[] bornes;
+
+        Decoupage(Colonnes colonnes, long[] bornes) {
+            this.colonnes = colonnes;
+            this.bornes = bornes;
+        }
+    }
+
+    /**
+     * Lit l'en-tête puis coupe les données (à partir de debut si
+     * debut > 0) en blocs alignés sur les fins de ligne.
+     */
+    private static Decoupage decouper(FileChannel ch, long debut, int nbThreads,
+                                      Charset charset) throws IOException {
+
+        long taille = ch.size();
+        long finEntete = chercherFinDeLigne(ch, 0, taille);
+        if (finEntete == 0) throw new IOException("header vide");
+
+        ByteBuffer h = ByteBuffer.allocate((int) finEntete);
+        ch.read(h, 0);
+        Colonnes colonnes = colonnes(new String(h.array(), 0, (int) finEntete, charset));
+
+        long premier = finEntete;
+        if (debut > 0) {
+            premier = Math.max(finEntete, Math.min(debut, taille));
+            // Ligne en cours d'écriture : lue à la prochaine reprise
+            taille = chercherDerniereFinDeLigne(ch, premier, taille);
+        }
+
+        long donnees = taille - premier;
+        int nbBlocs = 1;
+        if (donnees >= TAILLE_MIN_PARALLELE) {
+            nbBlocs = (int) Math.max(nbThreads, (donnees + TAILLE_BLOC_MAX - 1) / TAILLE_BLOC_MAX);
+        }
+
+        long[] bornes = new long[nbBlocs + 1];
+        bornes[0] = premier;
+        bornes[nbBlocs] = taille;
+        for (int i = 1; i < nbBlocs; i++) {
+            long cible = premier + donnees * i / nbBlocs;
+            bornes[i] = Math.max(bornes[i - 1], chercherFinDeLigne(ch, cible, taille));
+        }
+        return new Decoupage(colonnes, bornes);
+    }
+
+    private static Colonnes colonnes(String ligneEntete) {
+        String[] headers = ligneEntete.strip().split(",");
+        System.out.println(">>> Colonnes trouvées: " + Arrays.toString(headers));
+        return new Colonnes(headers);
+    }
+
+    private interface TacheBloc<T> {
+        /** buf : le bloc (vide possible). */
+        T executer(ByteBuffer buf) throws IOException;
+    }
+
+    /** Blocs lus dans l'ordre du fichier. */
+    private interface Blocs {
+        /** Bloc suivant (vide possible), null après le dernier. */
+        ByteBuffer suivant() throws IOException;
+    }
+
+    /**
+     * Exécute la tâche sur chaque bloc et rend les résultats dans l'ordre
+     * du fichier. nbThreads ≤ 1 : dans le thread appelant. Les blocs sont
+     * lus par le thread appelant, au plus 2 × nbThreads d'avance.
+     */
+    private static <T> List<T> executer(Blocs blocs, int nbThreads, TacheBloc<T> tache) throws IOException {
+
+        List<T> resultats = new ArrayList<>();
+
+        if (nbThreads <= 1) {
+            for (ByteBuffer buf = blocs.suivant(); buf != null; buf = blocs.suivant()) {
+                resultats.add(tache.executer(buf));
+            }
+            return resultats;
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(nbThreads);
+        try {
+            ArrayDeque<Future<T>> enCours = new ArrayDeque<>();
+            for (ByteBuffer buf = blocs.suivant(); buf != null; buf = blocs.suivant()) {
+                ByteBuffer b = buf;
+                enCours.add(pool.submit(() -> tache.executer(b)));
+                if (enCours.size() >= 2 * nbThreads) resultats.add(enCours.poll().get());
+            }
+            while (!enCours.isEmpty()) resultats.add(enCours.poll().get());
+            return resultats;
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Analyse interrompue");
+        } catch (ExecutionException e) {
+            throw cause(e);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Blocs d'un découpage connu : projetés (CSV) ou lus à la suite dans
+     * le flux décompressé (archive, relue depuis le début).
+     */
+    private static class LectureBlocs implements Blocs, Closeable {
+        private final long[] bornes;
+        private final FileChannel ch;
+        private final InputStream in;
+        private int suivant = 0;
+
+        LectureBlocs(long[] bornes, FileChannel ch, InputStream in) {
+            this.bornes = bornes;
+            this.ch = ch;
+            this.in = in;
+        }
+
+        static LectureBlocs ouvrir(Plan plan) throws IOException {
+            if (!plan.source.estCompresse()) {
+                return new LectureBlocs(plan.bornes, FileChannel.open(plan.source.getChemin(), StandardOpenOption.READ), null);
+            }
+            InputStream in = plan.source.ouvrir();
+            try {
+                in.skipNBytes(plan.bornes[0]);
+            } catch (IOException e) {
+                in.close();
+                throw e;
+            }
+            return new LectureBlocs(plan.bornes, null, in);
+        }
+
+        @Override
+        public ByteBuffer suivant() throws IOException {
+            if (suivant >= bornes.length - 1) return null;
+            long debut = bornes[suivant];
+            long fin = bornes[++suivant];
+            if (ch != null) return projeter(ch, debut, fin);
+
+            byte[] octets = new byte[(int) (fin - debut)];
+            if (in.readNBytes(octets, 0, octets.length) != octets.length) {
+                throw new IOException("Archive modifiée pendant l'import");
+            }
+            return ByteBuffer.wrap(octets);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (ch != null) ch.close();
+            if (in != null) in.close();
+        }
+    }
+
+    /**
+     * Archive : blocs d'environ TAILLE_BLOC_FLUX coupés après leur
+     * dernier '\n', au fil de la décompression ; leurs bornes sont
+     * notées pour la relecture (LectureBlocs).
+     */
+    private static class DecoupeFlux implements Blocs {
+        private final InputStream in;
+        private final List<Long> bornes = new ArrayList<>();
+        private byte[] reste = new byte[0];
+
+        DecoupeFlux(InputStream in, long debut) {
+            this.in = in;
+            bornes.add(debut);
+        }
+
+        @Override
+        public ByteBuffer suivant() throws IOException {
+            byte[] b = Arrays.copyOf(reste, Math.max(TAILLE_BLOC_FLUX, reste.length * 2));
+            int n = reste.length;
+            int coupe;
+            while (true) {
+                n += in.readNBytes(b, n, b.length - n);
+                if (n < b.length) {
+                    // Fin du flux : dernière ligne comprise, même sans '\n'
+                    coupe = n;
+                    break;
+                }
+                coupe = n;
+                while (coupe > 0 && b[coupe - 1] != '\n') coupe--;
+                if (coupe > 0) break;
+                b = Arrays.copyOf(b, b.length * 2);   // ligne plus longue qu'un bloc
+            }
+            if (n == 0) return null;
+
+            reste = Arrays.copyOfRange(b, coupe, n);
+            bornes.add(bornes.get(bornes.size() - 1) + coupe);
+            return ByteBuffer.wrap(b, 0, coupe);
+        }
+
+        long[] bornes() {
+            long[] t = new long[bornes.size()];
+            for (int i = 0; i < t.length; i++) t[i] = bornes.get(i);
+            return t;
+        }
+    }
+
+    /** En-tête d'un flux, '\n' compris. */
+    private static byte[] lireEntete(InputStream in) throws IOException {
+        ByteArrayOutputStream entete = new ByteArrayOutputStream();
+        int c;
+        while ((c = in.read()) >= 0) {
+            entete.write(c);
+            if (c == '\n') break;
+        }
+        if (entete.size() == 0) throw new IOException("header vide");
+        return entete.toByteArray();
+    }
+
+    private static IOException cause(ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof IOException) return (IOException) cause;
+        if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+        if (cause instanceof Error) throw (Error) cause;
+        return new IOException(cause);
+    }
+
+    private static ByteBuffer projeter(FileChannel ch, long debut, long fin) throws IOException {
+        if (fin <= debut) return ByteBuffer.allocate(0);
+        return ch.map(FileChannel.MapMode.READ_ONLY, debut, fin - debut);
+    }
+
+    /**
+     * Position juste après le premier '\n' situé à partir de pos
+     * (ou la fin du fichier).
+     */
+    private static long chercherFinDeLigne(FileChannel ch, long pos, long taille) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(8192);
+        while (pos < taille) {
+            buf.clear();
+            int n = ch.read(buf, pos);
+            if (n <= 0) break;
+            for (int i = 0; i < n; i++) {
+                if (buf.get(i) == '\n') return pos + i + 1;
+            }
+            pos += n;
+        }
+        return taille;
+    }
+
+    /**
+     * Position juste après le dernier '\n' situé dans [debut, taille),
+     * ou debut s'il n'y en a pas.
+     */
+    private static long chercherDerniereFinDeLigne(FileChannel ch, long debut, long taille) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(8192);
+        long fin = taille;
+        while (fin > debut) {
+            int n = (int) Math.min(buf.capacity(), fin - debut);
+            buf.clear().limit(n);
+            long pos = fin - n;
+            int lus = 0;
+            while (lus < n) {
+                int r = ch.read(buf, pos + lus);
+                if (r <= 0) break;
+                lus += r;
+            }
+            for (int i = lus - 1; i >= 0; i--) {
+                if (buf.get(i) == '\n') return pos + i + 1;
+            }
+            fin = pos;
+        }
+        return debut;
+    }
+
+    // =========================================================================
+    // COLONNES
+    // =========================================================================
+    static class Colonnes {
+        final int timestamp, lat, lon, delay, rsrq, sinr, down, up, status, city, country;
+        final int max;
+
+        Colonnes(String[] headers) {
+            timestamp = find(headers, "timestamp");
+            lat       = find(headers, "latitude");
+            lon       = find(headers, "longitude");
+            delay     = find(headers, "delay");
+            rsrq      = find(headers, "rsrq");
+            sinr      = find(headers, "sinr");
+            down      = find(headers, "throughput_downlink");
+            up        = find(headers, "throughput_uplink");
+            status    = find(headers, "service_status");
+            // Facultatives : sans elles, toutes les lignes sont à localiser
+            city      = chercher(headers, "city");
+            country   = chercher(headers, "country");
+
+            int m = 0;
+            for (int i : new int[]{timestamp, lat, lon, delay, rsrq, sinr, down, up, status, city, country}) {
+                m = Math.max(m, i);
+            }
+            max = m;
+        }
+
+        // cherche l'index d'une colonne dans le header
+        private static int find(String[] headers, String name) {
+            int i = chercher(headers, name);
+            if (i < 0) throw new RuntimeException("Colonne manquante : " + name);
+            return i;
+        }
+
+        private static int chercher(String[] headers, String name) {
+            for (int i = 0; i < headers.length; i++) {
+                if (headers[i].trim().equalsIgnoreCase(name.trim())) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+    // =========================================================================
+    // LECTURE D'UN BLOC (un thread)
+    // =========================================================================
+    private static class Lecteur {
+        private final Colonnes col;
+        private final Charset charset;
+        private final int[] debutChamp;
+        private final int[] finChamp;
+        private final ZoneCache zones;
+        private final DictionnaireZones dictionnaire;
+        private final GeoIndex geo;
+        // Dernière position localisée (positions répétées d'une ligne à l'autre)
+        private double derniereLat = Double.NaN;
+        private double derniereLon = Double.NaN;
+        private int derniereZone;
+
+        private ByteBuffer b;
+        private boolean ok;
+
+        Lecteur(Colonnes col, Charset charset, DictionnaireZones dictionnaire, GeoIndex geo) {
+            this.col = col;
+            this.charset = charset;
+            this.debutChamp = new int[col.max + 1];
+            this.finChamp = new int[col.max + 1];
+            this.zones = new ZoneCache(charset, dictionnaire);
+            this.dictionnaire = dictionnaire;
+            this.geo = geo;
+        }
+
+        /** Analyse un bloc ; numero = lignes déjà lues avant lui. */
+        long parser(ByteBuffer buf, Consommateur c, long numero) {
+            this.b = buf;
+            int limite = buf.limit();
+            int debut = 0;
+
+            while (debut < limite) {
+                int fin = debut;
+                while (fin < limite && b.get(fin) != '\n') fin++;
+                int suivante = fin + 1;
+                if (fin > debut && b.get(fin - 1) == '\r') fin--;
+
+                numero++;
+                analyserLigne(debut, fin, numero, c);
+                debut = suivante;
+            }
+            return numero;
+        }
+
+        /**
+         * Dates extrêmes du bloc et, si r.geo, positions dont la ville
+         * et le pays sont connus.
+         */
+        void reperer(ByteBuffer buf, Repere r) {
+            this.b = buf;
+            int limite = buf.limit();
+            int debut = 0;
+
+            while (debut < limite) {
+                int fin = debut;
+                while (fin < limite && b.get(fin) != '\n') fin++;
+                int suivante = fin + 1;
+                if (fin > debut && b.get(fin - 1) == '\r') fin--;
+
+                if (fin > debut) {
+                    int nbChamps = decouperChamps(debut, fin);
+
+                    double timestamp = nombre(col.timestamp, nbChamps);
+                    if (ok && Math.abs(timestamp * 1000) < EPOCH_LIMITE_MS) {
+                        long millis = (long) (timestamp * 1000);
+                        if (millis < r.minEpoch) r.minEpoch = millis;
+                        if (millis > r.maxEpoch) r.maxEpoch = millis;
+                    }
+
+                    if (r.geo != null) {
+                        double lat = nombre(col.lat, nbChamps);
+                        boolean latOk = ok;
+                        double lon = nombre(col.lon, nbChamps);
+
+                        if (latOk && ok && zone(nbChamps) != DictionnaireZones.INCONNUE) {
+                            r.geo.ajouter(lat, lon, zones.derniereVille(), zones.dernierPays());
+                        }
+                    }
+                }
+                debut = suivante;
+            }
+        }
+
+        private void analyserLigne(int debut, int fin, long numero, Consommateur c) {
+            if (debut == fin) {
+                c.rejet(numero, Rejet.LIGNE_VIDE);
+                return;
+            }
+
+            int nbChamps = decouperChamps(debut, fin);
+
+            double timestamp = nombre(col.timestamp, nbChamps);
+            if (!ok) { c.rejet(numero, Rejet.TIMESTAMP); return; }
+            if (!(Math.abs(timestamp * 1000) < EPOCH_LIMITE_MS)) { c.rejet(numero, Rejet.TIMESTAMP_HORS_LIMITES); return; }
+            double lat = nombre(col.lat, nbChamps);
+            if (!ok) { c.rejet(numero, Rejet.LATITUDE); return; }
+            double lon = nombre(col.lon, nbChamps);
+            if (!ok) { c.rejet(numero, Rejet.LONGITUDE); return; }
+            double delay = nombre(col.delay, nbChamps);
+            if (!ok) { c.rejet(numero, Rejet.DELAY); return; }
+            double rsrq = nombre(col.rsrq, nbChamps);
+            if (!ok) { c.rejet(numero, Rejet.RSRQ); return; }
+            double sinr = nombre(col.sinr, nbChamps);
+            if (!ok) { c.rejet(numero, Rejet.SINR); return; }
+            double thDown = nombre(col.down, nbChamps);
+            if (!ok) { c.rejet(numero, Rejet.DEBIT_DESCENDANT); return; }
+            double thUp = nombre(col.up, nbChamps);
+            if (!ok) { c.rejet(numero, Rejet.DEBIT_MONTANT); return; }
+
+            boolean status = estUn(col.status, nbChamps);
+            int zone = zone(nbChamps);
+            if (zone == DictionnaireZones.INCONNUE && geo != null) zone = localiser(lat, lon);
+
+            long millis = (long) (timestamp * 1000);
+
+            c.ligne(zone, lat, lon, millis, delay, status ? 0 : 100, (rsrq + sinr) / 2, (thDown + thUp) / 2);
+        }
+
+        private int zone(int nbChamps) {
+            boolean v = col.city >= 0 && col.city < nbChamps;
+            boolean p = col.country >= 0 && col.country < nbChamps;
+            return zones.zone(b,
+                    v ? debutChamp[col.city] : -1, v ? finChamp[col.city] : -1,
+                    p ? debutChamp[col.country] : -1, p ? finChamp[col.country] : -1);
+        }
+
+        // Position exacte : la zone ne dépend pas des lignes lues avant dans le bloc
+        private int localiser(double lat, double lon) {
+            if (Double.compare(lat, derniereLat) != 0 || Double.compare(lon, derniereLon) != 0) {
+                GeoCoder.GeoResult r = GeoCoder.localiser(lat, lon, geo);
+                derniereZone = r == null ? DictionnaireZones.INCONNUE : dictionnaire.id(r.city + ", " + r.country);
+                derniereLat = lat;
+                derniereLon = lon;
+            }
+            return derniereZone;
+        }
+
+        /** Positions des champs jusqu'à la dernière colonne utile ; rend leur nombre. */
+        private int decouperChamps(int debut, int fin) {
+            int nbChamps = 0;
+            int s = debut;
+            for (int i = debut; i <= fin && nbChamps <= col.max; i++) {
+                if (i == fin || b.get(i) == ',') {
+                    debutChamp[nbChamps] = s;
+                    finChamp[nbChamps] = i;
+                    nbChamps++;
+                    s = i + 1;
+                }
+            }
+            // Comme String.split(",") : les champs vides en fin de ligne n'existent pas
+            if (finChamp[nbChamps - 1] == fin) {
+                while (nbChamps > 0 && debutChamp[nbChamps - 1] == finChamp[nbChamps - 1]) nbChamps--;
+            }
+            return nbChamps;
+        }
+
+        private boolean estUn(int idx, int nbChamps) {
+            if (idx >= nbChamps) return false;
+            int s = debutChamp[idx], e = finChamp[idx];
+            while (s < e && estBlanc(b.get(s))) s++;
+            while (e > s && estBlanc(b.get(e - 1))) e--;
+            return e - s == 1 && b.get(s) == '1';
+        }
+
+        /**
+         * Lit un double directement dans les octets. Le chemin rapide
+         * (au plus 18 chiffres significatifs, puissance de 10 ≤ 22) donne
+         * exactement le même résultat que Double.parseDouble ; les autres
+         * formes passent par Double.parseDouble. Un champ invalide
+         * (ok = false) ne lève pas d'exception.
+         */
+        private double nombre(int idx, int nbChamps) {
+            ok = false;
+            if (idx >= nbChamps) return 0;
+
+            int s = debutChamp[idx], e = finChamp[idx];
+            while (s < e && estBlanc(b.get(s))) s++;
+            while (e > s && estBlanc(b.get(e - 1))) e--;
+            if (s == e) return 0;
+
+            int i = s;
+            boolean negatif = false;
+            byte c = b.get(i);
+            if (c == '+' || c == '-') {
+                negatif = c == '-';
+                i++;
+            }
+
+            long mantisse = 0;
+            int chiffres = 0;
+            int echelle = 0;
+            boolean point = false;
+            boolean unChiffre = false;
+
+            for (; i < e; i++) {
+                c = b.get(i);
+                if (c >= '0' && c <= '9') {
+                    unChiffre = true;
+                    if (mantisse == 0 && c == '0') {
+                        if (point) echelle++;
+                        continue;
+                    }
+                    if (chiffres >= 18) return lent(s, e);
+                    mantisse = mantisse * 10 + (c - '0');
+                    chiffres++;
+                    if (point) echelle++;
+                } else if (c == '.' && !point) {
+                    point = true;
+                } else {
+                    break;
+                }
+            }
+            if (!unChiffre) return lent(s, e);
+
+            int exposant = 0;
+            if (i < e && (b.get(i) == 'e' || b.get(i) == 'E')) {
+                i++;
+                boolean expNegatif = false;
+                if (i < e && (b.get(i) == '+' || b.get(i) == '-')) {
+                    expNegatif = b.get(i) == '-';
+                    i++;
+                }
+                int debutExp = i;
+                for (; i < e && b.get(i) >= '0' && b.get(i) <= '9'; i++) {
+                    if (i - debutExp >= 4) return lent(s, e);
+                    exposant = exposant * 10 + (b.get(i) - '0');
+                }
+                if (i == debutExp) return lent(s, e);
+                if (expNegatif) exposant = -exposant;
+            }
+            if (i != e) return lent(s, e);
+
+            double v;
+            int p = exposant - echelle;
+            if (mantisse == 0) {
+                v = 0;
+            } else if (mantisse > (1L << 53)) {
+                return lent(s, e);
+            } else if (p == 0) {
+                v = mantisse;
+            } else if (p > 0 && p <= 22) {
+                v = mantisse * POW10[p];
+            } else if (p < 0 && p >= -22) {
+                v = mantisse / POW10[-p];
+            } else {
+                return lent(s, e);
+            }
+
+            ok = true;
+            return negatif ? -v : v;
+        }
+
+        // Formes rares (NaN, Infinity, suffixes, très longues mantisses)
+        private double lent(int s, int e) {
+            // Texte quelconque (N/A, -, ...) : écarté sans construire d'exception
+            if (!syntaxeDouble(s, e)) {
+                ok = false;
+                return 0;
+            }
+            byte[] octets = new byte[e - s];
+            for (int i = s; i < e; i++) octets[i - s] = b.get(i);
+            try {
+                double v = Double.parseDouble(new String(octets, StandardCharsets.ISO_8859_1));
+                ok = true;
+                return v;
+            } catch (NumberFormatException ex) {
+                ok = false;
+                return 0;
+            }
+        }
+
+        /**
+         * Forme acceptée par Double.parseDouble (décimale, NaN, Infinity,
+         * suffixe f/d) ; les formes hexadécimales sont laissées à
+         * Double.parseDouble.
+         */
+        private boolean syntaxeDouble(int s, int e) {
+            int i = s;
+            if (i < e && (b.get(i) == '+' || b.get(i) == '-')) i++;
+            if (mot(i, e, "NaN") || mot(i, e, "Infinity")) return true;
+            if (e - i > 2 && b.get(i) == '0' && (b.get(i + 1) == 'x' || b.get(i + 1) == 'X')) return true;
+
+            int chiffres = 0;
+            for (; i < e && b.get(i) >= '0' && b.get(i) <= '9'; i++) chiffres++;
+            if (i < e && b.get(i) == '.') {
+                for (i++; i < e && b.get(i) >= '0' && b.get(i) <= '9'; i++) chiffres++;
+            }
+            if (chiffres == 0) return false;
+
+            if (i < e && (b.get(i) == 'e' || b.get(i) == 'E')) {
+                i++;
+                if (i < e && (b.get(i) == '+' || b.get(i) == '-')) i++;
+                int debutExp = i;
+                for (; i < e && b.get(i) >= '0' && b.get(i) <= '9'; i++) ;
+                if (i == debutExp) return false;
+            }
+            if (i < e && "fFdD".indexOf(b.get(i)) >= 0) i++;
+            return i == e;
+        }
+
+        private boolean mot(int i, int e, String mot) {
+            if (e - i != mot.length()) return false;
+            for (int k = 0; k < mot.length(); k++) {
+                if (b.get(i + k) != mot.charAt(k)) return false;
+            }
+            return true;
+        }
+
+        private static boolean estBlanc(byte c) {
+            return c >= 0 && c <= ' ';
+        }
+    }
+
+    // =========================================================================
+    // ZONES D'UN BLOC
+    // Octets ville/pays → numéro de zone, sans String après la première
+    // occurrence dans le bloc.
+    // Ville ou pays absent, vide ou "Unknown" → DictionnaireZones.INCONNUE.
+    // =========================================================================
+    private static class ZoneCache {
+        private final Charset charset;
+        private final DictionnaireZones dictionnaire;
+        private byte[][] villes = new byte[64][];
+        private byte[][] pays = new byte[64][];
+        private int[] zones = new int[64];
+        private String[] nomsVilles = new String[64];   // null = libre
+        private String[] nomsPays = new String[64];
+        private int taille = 0;
+        private int dernier = -1;
+
+        ZoneCache(Charset charset, DictionnaireZones dictionnaire) {
+            this.charset = charset;
+            this.dictionnaire = dictionnaire;
+        }
+
+        int zone(ByteBuffer b, int sv, int ev, int sp, int ep) {
+            // trim() comme l'ancien parseur ; colonne absente → "Unknown"
+            if (sv >= 0) {
+                while (sv < ev && QosCsvParser.Lecteur.estBlanc(b.get(sv))) sv++;
+                while (ev > sv && QosCsvParser.Lecteur.estBlanc(b.get(ev - 1))) ev--;
+            }
+            if (sp >= 0) {
+                while (sp < ep && QosCsvParser.Lecteur.estBlanc(b.get(sp))) sp++;
+                while (ep > sp && QosCsvParser.Lecteur.estBlanc(b.get(ep - 1))) ep--;
+            }
+
+            int h = hash(b, sv, ev) * 31 + hash(b, sp, ep);
+            int masque = zones.length - 1;
+            int i = h & masque;
+
+            while (nomsVilles[i] != null) {
+                if (egal(villes[i], b, sv, ev) && egal(pays[i], b, sp, ep)) {
+                    dernier = i;
+                    return zones[i];
+                }
+                i = (i + 1) & masque;
+            }
+
+            byte[] v = copie(b, sv, ev);
+            byte[] p = copie(b, sp, ep);
+            String ville = v == null || v.length == 0 ? "Unknown" : new String(v, charset);
+            String pa = p == null || p.length == 0 ? "Unknown" : new String(p, charset);
+
+            villes[i] = v;
+            pays[i] = p;
+            nomsVilles[i] = ville;
+            nomsPays[i] = pa;
+            zones[i] = ville.equals("Unknown") || pa.equals("Unknown")
+                    ? DictionnaireZones.INCONNUE : dictionnaire.id(ville + ", " + pa);
+            int z = zones[i];
+
+            dernier = ++taille * 2 > zones.length ? agrandir(i) : i;
+            return z;
+        }
+
+        // Ville et pays de la dernière zone rendue
+        String derniereVille() { return nomsVilles[dernier]; }
+        String dernierPays() { return nomsPays[dernier]; }
+
+        /** Double la table ; rend la nouvelle position de l'entrée suivie. */
+        private int agrandir(int suivie) {
+            int nouvelle = -1;
+            byte[][] anciennesVilles = villes, anciensPays = pays;
+            int[] anciennesZones = zones;
+            String[] anciensNomsVilles = nomsVilles, anciensNomsPays = nomsPays;
+            int n = zones.length * 2;
+            villes = new byte[n][];
+            pays = new byte[n][];
+            zones = new int[n];
+            nomsVilles = new String[n];
+            nomsPays = new String[n];
+
+            for (int j = 0; j < anciennesZones.length; j++) {
+                if (anciensNomsVilles[j] == null) continue;
+                int h = hash(anciennesVilles[j]) * 31 + hash(anciensPays[j]);
+                int i = h & (n - 1);
+                while (nomsVilles[i] != null) i = (i + 1) & (n - 1);
+                villes[i] = anciennesVilles[j];
+                pays[i] = anciensPays[j];
+                zones[i] = anciennesZones[j];
+                nomsVilles[i] = anciensNomsVilles[j];
+                nomsPays[i] = anciensNomsPays[j];
+                if (j == suivie) nouvelle = i;
+            }
+            return nouvelle;
+        }
+
+        // null représente une colonne absente (≠ champ vide)
+        private static int hash(ByteBuffer b, int s, int e) {
+            if (s < 0) return -1;
+            int h = 1;
+            for (int i = s; i < e; i++) h = 31 * h + b.get(i);
+            return h;
+        }
+
+        private static int hash(byte[] a) {
+            if (a == null) return -1;
+            int h = 1;
+            for (byte x : a) h = 31 * h + x;
+            return h;
+        }
+
+        private static boolean egal(byte[] a, ByteBuffer b, int s, int e) {
+            if (a == null || s < 0) return a == null && s < 0;
+            if (a.length != e - s) return false;
+            for (int i = 0; i < a.length; i++) {
+                if (a[i] != b.get(s + i)) return false;
+            }
+            return true;
+        }
+
+        private static byte[] copie(ByteBuffer b, int s, int e) {
+            if (s < 0) return null;
+            byte[] a = new byte[e - s];
+            for (int i = s; i < e; i++) a[i - s] = b.get(i);
+            return a;
+        }
+    }
+}
@@ -0,0 +1,343 @@
+package com.ensah.qoe.Services;
+
+import com.ensah.qoe.Models.DBConnection;
+import com.ensah.qoe.Models.Qos;
+import com.ensah.qoe.Utils.SourceCsv;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Import d'un fichier QoS par étapes qui se chevauchent :
+ *
+ *   lecture     : relecture rapide (positions connues, dates des blocs)
+ *   analyse     : blocs analysés et géocodés en parallèle (QosCsvParser)
+ *   agrégation  : fusion des blocs dans l'ordre, groupes complets émis
+ *   persistance : insertion par paquets sur son propre thread
+ *
+ * Analyse → agrégation et agrégation → persistance passent par des files
+ * bornées : si la base ralentit, l'analyse attend au lieu d'accumuler.
+ *
+ * Pour un fichier déjà importé qui a grandi depuis (collecteur qui
+ * ajoute au même CSV), seules les lignes ajoutées sont lues et leurs
+ * groupes fusionnés dans ceux déjà en base.
+ *
+ * Une archive (.gz, .zip) est lue décompressée à la volée ; chaque CSV
+ * d'un .zip est un import à part, import.archiveEntries à la fois.
+ */
+public class QosImportPipeline {
+
+    // Fin du flux de groupes
+    private static final Qos FIN = new Qos();
+
+    /** Reçoit l'avancement global (0..1) et l'état de chaque étape. */
+    public interface Suivi {
+        void publier(double progression, String message);
+    }
+
+    /**
+     * Importe csvPath sous nomFichier, ou seulement ses lignes ajoutées
+     * s'il est déjà importé.
+     *
+     * @return le bilan, ou null si le fichier (ou son contenu) est déjà
+     *         importé sans rien de nouveau
+     */
+    public static QosAnalyzer.Bilan importer(String csvPath, String nomFichier, Suivi suivi) throws Exception {
+
+        if (SourceCsv.estArchive(csvPath)) return importerArchive(Path.of(csvPath), suivi);
+        SourceCsv source = SourceCsv.fichier(Path.of(csvPath));
+
+        if (FichierService.fichierExiste(nomFichier)) {
+            long debut = FichierService.positionAjout(nomFichier, csvPath);
+            if (debut <= 0) return null;
+            System.out.println(">>> Ajout à " + nomFichier + " à partir de l'octet " + debut);
+            return executer(source, nomFichier, debut, suivi);
+        }
+
+        String nom = QosAnalyzer.preparerImport(csvPath, nomFichier);
+        if (nom == null) return null;
+
+        return executer(source, nom, 0, suivi);
+    }
+
+    /**
+     * Importe chaque CSV de l'archive sous son nom (SourceCsv.getNom()),
+     * sans ajout possible : une entrée déjà importée est ignorée. Une
+     * entrée en échec n'arrête pas les autres ; la première erreur est
+     * relancée à la fin.
+     *
+     * @return les bilans cumulés, ou null si rien de nouveau
+     */
+    private static QosAnalyzer.Bilan importerArchive(Path archive, Suivi suivi) throws Exception {
+
+        List<SourceCsv> sources = SourceCsv.lister(archive);
+        if (sources.isEmpty()) {
+            System.out.println("⚠ Aucun CSV dans " + archive.getFileName());
+            return null;
+        }
+        int nbParalleles = Math.min(sources.size(), Math.max(1, DBConnection.getIntProperty("import.archiveEntries", 2)));
+        System.out.println(">>> Archive " + archive.getFileName() + " : " + sources.size()
+                + " CSV, " + nbParalleles + " à la fois");
+
+        SuiviArchive suiviArchive = new SuiviArchive(suivi, sources.size());
+        ExecutorService pool = Executors.newFixedThreadPool(nbParalleles);
+        try {
+            List<Future<QosAnalyzer.Bilan>> imports = new ArrayList<>();
+            for (int i = 0; i < sources.size(); i++) {
+                SourceCsv source = sources.get(i);
+                Suivi suiviEntree = suiviArchive.entree(i);
+                imports.add(pool.submit(() -> importer(source, suiviEntree)));
+            }
+
+            QosAnalyzer.Bilan total = null;
+            Exception erreur = null;
+            for (int i = 0; i < imports.size(); i++) {
+                try {
+                    QosAnalyzer.Bilan bilan = imports.get(i).get();
+                    if (bilan == null) continue;
+                    if (total == null) total = new QosAnalyzer.Bilan();
+                    total.cumuler(bilan);
+                } catch (ExecutionException e) {
+                    System.out.println("❌ Import de " + sources.get(i) + " en échec : " + e.getCause().getMessage());
+                    if (erreur == null) erreur = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                }
+            }
+            if (erreur != null) throw erreur;
+            return total;
+
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static QosAnalyzer.Bilan importer(SourceCsv source, Suivi suivi) throws Exception {
+        if (FichierService.fichierExiste(source.getNom())) {
+            System.out.println(">>> " + source + " déjà importé");
+            return null;
+        }
+        String nom = QosAnalyzer.preparerImport(source, source.getNom());
+        if (nom == null) return null;
+
+        return executer(source, nom, 0, suivi);
+    }
+
+    private static QosAnalyzer.Bilan executer(SourceCsv source, String nom, long debut,
+                                              Suivi suivi) throws Exception {
+
+        Progression prog = new Progression(suivi);
+        int capacite = 2 * Math.max(1, DBConnection.getIntProperty("import.chunkSize", 5000));
+        BlockingQueue<Qos> file = new ArrayBlockingQueue<>(capacite);
+        // Connue à la fin de l'analyse, avant FIN
+        AtomicLong position = new AtomicLong(-1);
+
+        ExecutorService persistance = Executors.newSingleThreadExecutor();
+        try {
+            Future<Integer> insertion = persistance.submit(debut > 0
+                    ? () -> QosInsertService.fusionner(nom, source.getChemin().toString(), new Source(file),
+                            prog.persistance, position::get)
+                    : () -> QosInsertService.inserer(nom, new Source(file), prog.persistance));
+
+            QosAnalyzer.Bilan bilan;
+            try {
+                bilan = QosAnalyzer.analyser(source, nom, debut, q -> envoyer(file, q, insertion), prog);
+                position.set(bilan.getPosition());
+                envoyer(file, FIN, insertion);
+            } catch (Exception e) {
+                // Le paquet en cours est annulé ; les paquets validés serviront à la reprise
+                insertion.cancel(true);
+                throw e;
+            }
+
+            try {
+                bilan.nbInseres = insertion.get();
+            } catch (ExecutionException e) {
+                // Ajout : la fusion est annulée en bloc, l'import d'origine reste valide
+                if (debut == 0) {
+                    FichierService.majEtape(nom, FichierService.ETAPE_INSERTION, FichierService.STATUT_ECHEC);
+                }
+                Throwable cause = e.getCause();
+                throw cause instanceof Exception ? (Exception) cause : e;
+            }
+
+            prog.persistance.terminer();
+            prog.publier(true);
+            System.out.println(">>> Import terminé : " + prog);
+            return bilan;
+
+        } finally {
+            persistance.shutdownNow();
+        }
+    }
+
+    private static void envoyer(BlockingQueue<Qos> file, Qos q, Future<Integer> insertion) throws Exception {
+        while (!file.offer(q, 200, TimeUnit.MILLISECONDS)) {
+            if (insertion.isDone()) {
+                insertion.get();
+                throw new IllegalStateException("Persistance arrêtée");
+            }
+        }
+    }
+
+    /** Itérateur bloquant sur la file de groupes, jusqu'à FIN. */
+    private static class Source implements Iterator<Qos> {
+        private final BlockingQueue<Qos> file;
+        private Qos suivant;
+
+        Source(BlockingQueue<Qos> file) {
+            this.file = file;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (suivant == null) {
+                try {
+                    suivant = file.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Import interrompu");
+                }
+            }
+            return suivant != FIN;
+        }
+
+        @Override
+        public Qos next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            Qos q = suivant;
+            suivant = null;
+            return q;
+        }
+    }
+
+    // =========================================================================
+    // AVANCEMENT
+    // =========================================================================
+
+    /** Avancement d'une archive : moyenne de celui de ses entrées. */
+    private static class SuiviArchive {
+        private final Suivi suivi;
+        private final double[] progressions;
+
+        SuiviArchive(Suivi suivi, int nbEntrees) {
+            this.suivi = suivi;
+            this.progressions = new double[nbEntrees];
+        }
+
+        Suivi entree(int i) {
+            if (suivi == null) return null;
+            return (progression, message) -> {
+                double total;
+                synchronized (this) {
+                    progressions[i] = progression;
+                    total = 0;
+                    for (double p : progressions) total += p;
+                }
+                suivi.publier(total / progressions.length,
+                        "[" + (i + 1) + "/" + progressions.length + "] " + message);
+            };
+        }
+    }
+
+    /** Compteurs d'une étape : avancement (fait / total) et débit. */
+    public static class Etape {
+        private final Progression parent;
+        private final String nom;
+        private final String unite;
+        private final double echelle;
+
+        private final AtomicLong total = new AtomicLong();
+        private final AtomicLong fait = new AtomicLong();
+        private final AtomicLong elements = new AtomicLong();
+        private volatile long debutNanos = 0;
+        private volatile long finNanos = 0;
+
+        Etape(Progression parent, String nom, String unite, double echelle) {
+            this.parent = parent;
+            this.nom = nom;
+            this.unite = unite;
+            this.echelle = echelle;
+        }
+
+        public void ajouterTotal(long n) {
+            total.addAndGet(n);
+        }
+
+        public void avancer(long n, long nbElements) {
+            if (debutNanos == 0) debutNanos = System.nanoTime();
+            fait.addAndGet(n);
+            elements.addAndGet(nbElements);
+            if (parent != null) parent.publier(false);
+        }
+
+        public void terminer() {
+            if (debutNanos == 0) debutNanos = System.nanoTime();
+            finNanos = System.nanoTime();
+        }
+
+        public double getProgression() {
+            long t = total.get();
+            if (t <= 0) return finNanos != 0 ? 1 : 0;
+            return Math.min(1, (double) fait.get() / t);
+        }
+
+        /** Éléments traités par seconde, dans l'unité de l'étape. */
+        public double getDebit() {
+            if (debutNanos == 0) return 0;
+            long f = finNanos != 0 ? finNanos : System.nanoTime();
+            return elements.get() / echelle / Math.max(1e-9, (f - debutNanos) / 1e9);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s %.0f %% (%,.0f %s/s)", nom, 100 * getProgression(), getDebit(), unite);
+        }
+    }
+
+    /** Les quatre étapes d'un import et leur publication vers le Suivi. */
+    public static class Progression {
+        private static final long INTERVALLE_NANOS = 150_000_000L;
+
+        public final Etape lecture = new Etape(this, "Lecture", "Mo", 1 << 20);
+        public final Etape analyse = new Etape(this, "Analyse", "lignes", 1);
+        public final Etape agregation = new Etape(this, "Agrégation", "groupes", 1);
+        public final Etape persistance = new Etape(this, "Persistance", "lignes", 1);
+
+        private final Suivi suivi;
+        private final AtomicLong dernierePublication = new AtomicLong();
+
+        public Progression(Suivi suivi) {
+            this.suivi = suivi;
+        }
+
+        public double getProgression() {
+            return 0.25 * lecture.getProgression() + 0.5 * analyse.getProgression()
+                    + 0.25 * persistance.getProgression();
+        }
+
+        /** Publie au plus toutes les 150 ms, sauf si force. */
+        void publier(boolean force) {
+            if (suivi == null) return;
+            long maintenant = System.nanoTime();
+            long derniere = dernierePublication.get();
+            if (!force && maintenant - derniere < INTERVALLE_NANOS) return;
+            if (!dernierePublication.compareAndSet(derniere, maintenant) && !force) return;
+            suivi.publier(getProgression(), toString());
+        }
+
+        @Override
+        public String toString() {
+            return lecture + " · " + analyse + " · " + agregation + " · " + persistance;
+        }
+    }
+}
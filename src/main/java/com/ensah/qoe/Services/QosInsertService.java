@@ -2,44 +2,468 @@ package com.ensah.qoe.Services;
 
 import com.ensah.qoe.Models.DBConnection;
 import com.ensah.qoe.Models.Qos;
+import com.ensah.qoe.Utils.Resolution;
 import java.sql.Timestamp;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
 
 public class QosInsertService {
 
-    public static void insertListe(List<Qos> liste) {
+    // %s : colonne de la tranche (QosZoneService.colonneTranche)
+    private static final String COLONNES =
+            "LATENCE, JITTER, PERTE, BANDE_PASSANTE, SIGNAL_SCORE, MOS, DATE_REELLE, %s, ZONE, " +
+            "NOM_FICHIER, NB_MESURES, PREMIERE_LATENCE, DERNIERE_LATENCE";
 
-        String sql = "INSERT INTO MESURES_QOS " +
-                "(LATENCE, JITTER, PERTE, BANDE_PASSANTE, SIGNAL_SCORE, MOS,DATE_REELLE, TRANCHE_12H, ZONE, NOM_FICHIER) " +
-                "VALUES (?, ?, ?, ?,?, ?, ?, ?, ?, ?)";
+    // APPEND_VALUES verrouille chaque table en exclusif jusqu'au commit et interdit
+    // de la relire ou modifier dans la transaction (ORA-12838) : un seul import
+    // direct-path à la fois dans le processus, les autres insèrent normalement
+    private static final ReentrantLock ECRITURE_DIRECTE = new ReentrantLock();
 
-        try (Connection conn = DBConnection.getConnection();
-             PreparedStatement ps = conn.prepareStatement(sql)) {
+    private static volatile boolean schemaVerifie = false;
 
-            for (Qos q : liste) {
-                ps.setDouble(1, q.getLatence());
-                ps.setDouble(2, q.getJitter());
-                ps.setDouble(3, q.getPerte());
-                ps.setDouble(4, q.getBandePassante());
-                ps.setDouble(5, q.getSignalScore());
-                ps.setDouble(6, q.getMos());
-                ps.setTimestamp(7, Timestamp.valueOf(q.getDateReelle()));
-                ps.setString(8, q.getTranche12h());
-                ps.setString(9, q.getZone());
-                ps.setString(10, q.getNomFichier());
+    /**
+     * Insère les mesures agrégées par paquets (import.chunkSize lignes,
+     * chacune dans la table de sa résolution,
+     * un commit par paquet). La progression est enregistrée dans
+     * FICHIERS_IMPORTES avec chaque paquet, et le fichier n'est marqué
+     * importé que dans le commit du dernier paquet. Un import interrompu
+     * est repris par clé (résolution, tranche, zone), sans se fier au
+     * nombre de lignes validées : l'ordre et les zones des groupes
+     * peuvent changer d'un essai à l'autre (index du géocodage enrichi
+     * entre-temps). Un groupe déjà en base est mis à jour, un nouveau
+     * inséré, et ceux que cet essai n'a pas produits sont supprimés avec
+     * le dernier paquet.
+     *
+     * @return le nombre de lignes insérées par cet appel
+     */
+    public static int insertListe(List<Qos> liste) throws SQLException {
+        if (liste.isEmpty()) return 0;
 
-                ps.addBatch();
+        return inserer(liste.get(0).getNomFichier(), liste.iterator(), null);
+    }
+
+    /**
+     * Comme insertListe, pour des mesures qui arrivent au fil de l'eau
+     * (QosImportPipeline) : source peut bloquer en attendant la suite.
+     *
+     * @param etape avancement de la persistance (peut être null)
+     */
+    public static int inserer(String nomFichier, Iterator<Qos> source,
+                              QosImportPipeline.Etape etape) throws SQLException {
+
+        if (!source.hasNext()) return 0;
+
+        int chunkSize = Math.max(1, DBConnection.getIntProperty("import.chunkSize", 5000));
+        boolean directPath = Boolean.parseBoolean(DBConnection.getProperty("import.directPath", "false"));
+
+        long t0 = System.nanoTime();
+        int total = 0;
+
+        try (Connection conn = DBConnection.getConnection()) {
+
+            if (conn == null) throw new SQLException("Connexion indisponible");
+
+            FichierService.ImportInfo info = FichierService.trouverParNom(conn, nomFichier);
+            boolean reprise = info != null && !info.estTermine() && info.getNbLignes() > 0;
+
+            // Direct-path seulement pour un import neuf, un seul à la fois (voir ECRITURE_DIRECTE)
+            boolean direct = directPath && !reprise && ECRITURE_DIRECTE.tryLock();
+            if (directPath && !direct) {
+                System.out.println(">>> Insertion conventionnelle : " + (reprise
+                        ? "reprise avec mises à jour" : "un autre import direct-path est en cours"));
+            }
+
+            conn.setAutoCommit(false);
+
+            try {
+                // Clés des groupes validés par l'essai précédent, retirées à mesure qu'elles reviennent
+                Set<String> restantes = null;
+                if (reprise) {
+                    restantes = clesExistantes(conn, nomFichier);
+                    System.out.println(">>> Reprise de l'import : " + restantes.size() + " groupes déjà validés");
+                } else {
+                    // Reste d'un import sans progression enregistrée
+                    purgerFichier(conn, nomFichier);
+                    conn.commit();
+                }
+
+                try (Requetes req = new Requetes(conn, direct)) {
+
+                    int position = 0;
+                    int dansPaquet = 0;
+
+                    while (source.hasNext()) {
+                        Qos q = source.next();
+                        if (restantes != null && restantes.remove(cle(q.getResolution(), q.getTranche(), q.getZone()))) {
+                            PreparedStatement ps = req.update(q.getResolution());
+                            lierMaj(ps, q, q);
+                            ps.addBatch();
+                        } else {
+                            PreparedStatement ps = req.insert(q.getResolution());
+                            lier(ps, q);
+                            ps.addBatch();
+                        }
+                        dansPaquet++;
+                        position++;
+                        total++;
+
+                        if (dansPaquet == chunkSize && source.hasNext()) {
+                            req.executerBatchs();
+                            FichierService.enregistrerProgression(conn, nomFichier, position, position);
+                            conn.commit();
+                            if (etape != null) etape.avancer(dansPaquet, dansPaquet);
+                            dansPaquet = 0;
+                            afficherDebit(total, t0);
+                        }
+                    }
+
+                    if (restantes != null && !restantes.isEmpty()) {
+                        supprimerGroupes(req, nomFichier, restantes);
+                        System.out.println(">>> " + restantes.size() + " groupes de l'essai précédent supprimés");
+                    }
+                    req.executerBatchs();
+
+                    // Ajouter le nom du fichier dans TABLE FICHIERS_IMPORTES (même transaction)
+                    FichierService.enregistrerFichier(conn, nomFichier);
+                    conn.commit();
+                    if (etape != null) etape.avancer(dansPaquet, dansPaquet);
+                }
+
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                if (direct) ECRITURE_DIRECTE.unlock();
+            }
+        }
+
+        // Hors transaction : l'import est validé quoi qu'il arrive à l'actualisation
+        QosColonnes.actualiserEnArrierePlan();
+        afficherDebit(total, t0);
+        return total;
+    }
+
+    /**
+     * Fusionne les groupes d'un ajout au fichier (QosAnalyzer.analyser
+     * avec debut > 0) dans ses groupes déjà en base, à chaque résolution :
+     * même zone et même tranche → moyennes et jitter mis à jour sur
+     * place, sinon nouvelle ligne. Les autres groupes ne sont pas
+     * touchés. Une seule transaction, qui enregistre aussi la nouvelle
+     * position : un ajout interrompu est repris en entier.
+     *
+     * @param position fin des lignes analysées, lue une fois la source épuisée
+     * @return le nombre de groupes insérés ou mis à jour
+     */
+    public static int fusionner(String nomFichier, String csvPath, Iterator<Qos> source,
+                                QosImportPipeline.Etape etape, LongSupplier position) throws SQLException {
+
+        long t0 = System.nanoTime();
+        int inseres = 0, misAJour = 0;
+
+        try (Connection conn = DBConnection.getConnection()) {
+
+            if (conn == null) throw new SQLException("Connexion indisponible");
+            conn.setAutoCommit(false);
+
+            try (Requetes req = new Requetes(conn, false)) {
+
+                // Groupes existants des tranches touchées (verrouillés), par résolution#tranche#zone
+                Map<String, Qos> existants = new HashMap<>();
+                Set<String> tranchesLues = new HashSet<>();
+
+                while (source.hasNext()) {
+                    Qos q = source.next();
+                    Resolution r = q.getResolution();
+                    String tranche = r.ordinal() + "#" + q.getTranche();
+
+                    if (tranchesLues.add(tranche)) {
+                        PreparedStatement select = req.select(r);
+                        select.setString(1, nomFichier);
+                        select.setString(2, q.getTranche());
+                        try (ResultSet rs = select.executeQuery()) {
+                            while (rs.next()) {
+                                Qos e = lire(rs, r);
+                                existants.put(tranche + "#" + e.getZone(), e);
+                            }
+                        }
+                    }
+
+                    Qos existant = existants.get(tranche + "#" + q.getZone());
+                    if (existant == null) {
+                        PreparedStatement insert = req.insert(r);
+                        lier(insert, q);
+                        insert.addBatch();
+                        inseres++;
+                    } else {
+                        if (existant.getNbMesures() <= 0) {
+                            throw new SQLException("Groupe " + q.getZone() + " / " + q.getTranche()
+                                    + " importé sans NB_MESURES : fusion impossible");
+                        }
+                        Qos f = QosAnalyzer.fusionner(existant, q);
+                        PreparedStatement update = req.update(r);
+                        lierMaj(update, f, q);
+                        update.addBatch();
+                        misAJour++;
+                    }
+                    if (etape != null) etape.avancer(1, 1);
+                }
+
+                req.executerBatchs();
+
+                FichierService.enregistrerPosition(conn, nomFichier, csvPath, position.getAsLong());
+                conn.commit();
+
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            }
+        }
+
+        QosColonnes.actualiserEnArrierePlan();
+
+        double secondes = Math.max(1e-9, (System.nanoTime() - t0) / 1e9);
+        System.out.printf(">>> Ajout fusionné : %d groupes mis à jour, %d nouveaux (%.2f s)%n",
+                misAJour, inseres, secondes);
+        return inseres + misAJour;
+    }
+
+    /**
+     * Requêtes préparées à la demande, par table de résolution, sur une
+     * connexion ; les batchs de toutes les tables partent ensemble.
+     */
+    private static class Requetes implements AutoCloseable {
+        private final Connection conn;
+        private final boolean directPath;
+        private final Map<Resolution, PreparedStatement> inserts = new EnumMap<>(Resolution.class);
+        private final Map<Resolution, PreparedStatement> selects = new EnumMap<>(Resolution.class);
+        private final Map<Resolution, PreparedStatement> updates = new EnumMap<>(Resolution.class);
+        private final Map<Resolution, PreparedStatement> deletes = new EnumMap<>(Resolution.class);
+
+        Requetes(Connection conn, boolean directPath) {
+            this.conn = conn;
+            this.directPath = directPath;
+        }
+
+        PreparedStatement insert(Resolution r) throws SQLException {
+            PreparedStatement ps = inserts.get(r);
+            if (ps == null) {
+                // APPEND_VALUES : insertion direct-path des tableaux liés par le batch JDBC
+                ps = conn.prepareStatement("INSERT " + (directPath ? "/*+ APPEND_VALUES */ " : "") +
+                        "INTO " + QosZoneService.table(r) + " (" + colonnes(r) + ") " +
+                        "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
+                inserts.put(r, ps);
             }
+            return ps;
+        }
+
+        PreparedStatement select(Resolution r) throws SQLException {
+            PreparedStatement ps = selects.get(r);
+            if (ps == null) {
+                ps = conn.prepareStatement("SELECT " + colonnes(r) + " FROM " + QosZoneService.table(r) +
+                        " WHERE NOM_FICHIER = ? AND " + QosZoneService.colonneTranche(r) + " = ? FOR UPDATE");
+                selects.put(r, ps);
+            }
+            return ps;
+        }
+
+        PreparedStatement update(Resolution r) throws SQLException {
+            PreparedStatement ps = updates.get(r);
+            if (ps == null) {
+                ps = conn.prepareStatement("UPDATE " + QosZoneService.table(r) + " SET LATENCE = ?, JITTER = ?, " +
+                        "PERTE = ?, BANDE_PASSANTE = ?, SIGNAL_SCORE = ?, MOS = ?, DATE_REELLE = ?, " +
+                        "NB_MESURES = ?, PREMIERE_LATENCE = ?, DERNIERE_LATENCE = ? " +
+                        "WHERE NOM_FICHIER = ? AND " + QosZoneService.colonneTranche(r) + " = ? AND ZONE = ?");
+                updates.put(r, ps);
+            }
+            return ps;
+        }
+
+        PreparedStatement delete(Resolution r) throws SQLException {
+            PreparedStatement ps = deletes.get(r);
+            if (ps == null) {
+                ps = conn.prepareStatement("DELETE FROM " + QosZoneService.table(r) +
+                        " WHERE NOM_FICHIER = ? AND " + QosZoneService.colonneTranche(r) + " = ? AND ZONE = ?");
+                deletes.put(r, ps);
+            }
+            return ps;
+        }
+
+        void executerBatchs() throws SQLException {
+            for (PreparedStatement ps : inserts.values()) ps.executeBatch();
+            for (PreparedStatement ps : updates.values()) ps.executeBatch();
+            for (PreparedStatement ps : deletes.values()) ps.executeBatch();
+        }
+
+        @Override
+        public void close() throws SQLException {
+            for (Map<Resolution, PreparedStatement> m : List.of(inserts, selects, updates, deletes)) {
+                for (PreparedStatement ps : m.values()) ps.close();
+            }
+        }
+    }
+
+    private static String colonnes(Resolution r) {
+        return String.format(COLONNES, QosZoneService.colonneTranche(r));
+    }
+
+    private static void lier(PreparedStatement ps, Qos q) throws SQLException {
+        ps.setDouble(1, q.getLatence());
+        ps.setDouble(2, q.getJitter());
+        ps.setDouble(3, q.getPerte());
+        ps.setDouble(4, q.getBandePassante());
+        ps.setDouble(5, q.getSignalScore());
+        ps.setDouble(6, q.getMos());
+        ps.setTimestamp(7, Timestamp.valueOf(q.getDateReelle()));
+        ps.setString(8, q.getTranche());
+        ps.setString(9, q.getZone());
+        ps.setString(10, q.getNomFichier());
+        ps.setLong(11, q.getNbMesures());
+        ps.setDouble(12, q.getPremiereLatence());
+        ps.setDouble(13, q.getDerniereLatence());
+    }
+
+    // Valeurs de v, groupe (fichier, tranche, zone) de q
+    private static void lierMaj(PreparedStatement ps, Qos v, Qos q) throws SQLException {
+        ps.setDouble(1, v.getLatence());
+        ps.setDouble(2, v.getJitter());
+        ps.setDouble(3, v.getPerte());
+        ps.setDouble(4, v.getBandePassante());
+        ps.setDouble(5, v.getSignalScore());
+        ps.setDouble(6, v.getMos());
+        ps.setTimestamp(7, Timestamp.valueOf(v.getDateReelle()));
+        ps.setLong(8, v.getNbMesures());
+        ps.setDouble(9, v.getPremiereLatence());
+        ps.setDouble(10, v.getDerniereLatence());
+        ps.setString(11, q.getNomFichier());
+        ps.setString(12, q.getTranche());
+        ps.setString(13, q.getZone());
+    }
 
-            ps.executeBatch();
+    private static String cle(Resolution r, String tranche, String zone) {
+        return r.ordinal() + "#" + tranche + "#" + zone;
+    }
+
+    /** Clés (résolution, tranche, zone) des groupes du fichier déjà en base. */
+    private static Set<String> clesExistantes(Connection conn, String nomFichier) throws SQLException {
+        Set<String> cles = new HashSet<>();
+        for (Resolution r : Resolution.values()) {
+            try (PreparedStatement ps = conn.prepareStatement("SELECT " + QosZoneService.colonneTranche(r) +
+                    ", ZONE FROM " + QosZoneService.table(r) + " WHERE NOM_FICHIER = ?")) {
+                ps.setFetchSize(5000);
+                ps.setString(1, nomFichier);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) cles.add(cle(r, rs.getString(1), rs.getString(2)));
+                }
+            }
+        }
+        return cles;
+    }
+
+    private static void supprimerGroupes(Requetes req, String nomFichier, Set<String> cles) throws SQLException {
+        for (String c : cles) {
+            String[] parties = c.split("#", 3);
+            PreparedStatement ps = req.delete(Resolution.values()[Integer.parseInt(parties[0])]);
+            ps.setString(1, nomFichier);
+            ps.setString(2, parties[1]);
+            ps.setString(3, parties[2]);
+            ps.addBatch();
+        }
+        req.executerBatchs();
+    }
+
+    private static Qos lire(ResultSet rs, Resolution r) throws SQLException {
+        Qos q = new Qos();
+        q.setLatence(rs.getDouble("LATENCE"));
+        q.setJitter(rs.getDouble("JITTER"));
+        q.setPerte(rs.getDouble("PERTE"));
+        q.setBandePassante(rs.getDouble("BANDE_PASSANTE"));
+        q.setSignalScore(rs.getDouble("SIGNAL_SCORE"));
+        q.setMos(rs.getDouble("MOS"));
+        q.setDateReelle(rs.getTimestamp("DATE_REELLE").toLocalDateTime());
+        q.setTranche(r, rs.getString(QosZoneService.colonneTranche(r)));
+        q.setZone(rs.getString("ZONE"));
+        q.setNomFichier(rs.getString("NOM_FICHIER"));
+        q.setNbMesures(rs.getLong("NB_MESURES"));
+        q.setPremiereLatence(rs.getDouble("PREMIERE_LATENCE"));
+        q.setDerniereLatence(rs.getDouble("DERNIERE_LATENCE"));
+        return q;
+    }
+
+    /**
+     * Colonnes d'état des groupes (fusion des ajouts) si MESURES_QOS date
+     * d'avant leur introduction, et tables d'agrégats des autres
+     * résolutions. Appelé une fois au démarrage (Main), hors transaction.
+     */
+    public static void verifierSchema() {
+        if (schemaVerifie) return;
 
-        } catch (Exception e) {
-            e.printStackTrace();
+        synchronized (QosInsertService.class) {
+            if (schemaVerifie) return;
+
+            List<String> ddl = new ArrayList<>(List.of(
+                    "ALTER TABLE MESURES_QOS ADD (NB_MESURES NUMBER(19))",
+                    "ALTER TABLE MESURES_QOS ADD (PREMIERE_LATENCE NUMBER)",
+                    "ALTER TABLE MESURES_QOS ADD (DERNIERE_LATENCE NUMBER)",
+                    "CREATE INDEX IDX_MESURES_FICHIER ON MESURES_QOS (NOM_FICHIER, TRANCHE_12H)"
+            ));
+            for (Resolution r : Resolution.values()) {
+                if (r == Resolution.DOUZE_HEURES) continue;
+                String table = QosZoneService.table(r);
+                ddl.add("CREATE TABLE " + table + " (LATENCE NUMBER, JITTER NUMBER, PERTE NUMBER, " +
+                        "BANDE_PASSANTE NUMBER, SIGNAL_SCORE NUMBER, MOS NUMBER, DATE_REELLE TIMESTAMP, " +
+                        "TRANCHE VARCHAR2(20), ZONE VARCHAR2(255), NOM_FICHIER VARCHAR2(255), " +
+                        "NB_MESURES NUMBER(19), PREMIERE_LATENCE NUMBER, DERNIERE_LATENCE NUMBER)");
+                ddl.add("CREATE INDEX IDX_" + table + "_ZONE ON " + table + " (ZONE, TRANCHE)");
+                ddl.add("CREATE INDEX IDX_" + table + "_FICHIER ON " + table + " (NOM_FICHIER, TRANCHE)");
+            }
+
+            try (Connection conn = DBConnection.getConnection();
+                 Statement st = conn.createStatement()) {
+
+                for (String s : ddl) {
+                    try {
+                        st.execute(s);
+                    } catch (SQLException e) {
+                        // ORA-01430 : colonne déjà présente, ORA-00955 / ORA-01408 : table ou index déjà présent
+                        if (e.getErrorCode() != 1430 && e.getErrorCode() != 955
+                                && e.getErrorCode() != 1408) throw e;
+                    }
+                }
+                schemaVerifie = true;
+
+            } catch (Exception e) {
+                System.err.println("❌ Mise à jour du schéma MESURES_QOS impossible: " + e.getMessage());
+            }
         }
+    }
+
+    private static void purgerFichier(Connection conn, String nomFichier) throws SQLException {
+        int n = 0;
+        for (Resolution r : Resolution.values()) {
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "DELETE FROM " + QosZoneService.table(r) + " WHERE NOM_FICHIER = ?")) {
+                ps.setString(1, nomFichier);
+                n += ps.executeUpdate();
+            }
+        }
+        if (n > 0) System.out.println(">>> " + n + " lignes d'un import interrompu supprimées");
+    }
 
-        // Ajouter le nom du fichier dans TABLE FICHIERS_IMPORTES
-        FichierService.enregistrerFichier(liste.get(0).getNomFichier());
+    private static void afficherDebit(int lignes, long t0) {
+        double secondes = Math.max(1e-9, (System.nanoTime() - t0) / 1e9);
+        System.out.printf(">>> %d lignes insérées (%.0f lignes/s)%n", lignes, lignes / secondes);
     }
 }
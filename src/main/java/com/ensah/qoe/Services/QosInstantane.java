@@ -0,0 +1,234 @@
+package com.ensah.qoe.Services;
+
+import com.ensah.qoe.Models.DBConnection;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Instantané disque de QosColonnes (qos.snapshot.file) : démarrage sans
+ * relire MESURES_QOS. Chaque colonne est un bloc contigu, copié d'un
+ * coup dans son tableau ; le fichier est réécrit en entier (fichier
+ * temporaire puis renommage) après chaque mise à jour. Il est lu en une
+ * fois plutôt que projeté : sous Windows, une projection encore vivante
+ * empêcherait de le remplacer.
+ *
+ * Format (big-endian) : en-tête [magic][version][lignes][zones]
+ * [tranches][fichiers][crc de l'en-tête], puis un bloc par dictionnaire
+ * et par colonne : [type][longueur][données][crc des données].
+ * Chaînes : [int longueur][UTF-8]. La version de chaque fichier
+ * (DATE_MAJ) est stockée avec son nom.
+ */
+public class QosInstantane {
+
+    private static final int MAGIC = 0x51534e50;   // "QSNP"
+    private static final int VERSION = 1;
+    private static final int TAILLE_ENTETE = 28;
+
+    private static final int ZONES = 1;
+    private static final int TRANCHES = 2;
+    private static final int FICHIERS = 3;
+    private static final int COL_ZONE = 4;
+    private static final int COL_TRANCHE = 5;
+    private static final int COL_FICHIER = 6;
+    private static final int COL_MESURE = 10;   // + ordinal de la mesure
+
+    /** Fichier de l'instantané, ou null s'il est désactivé (qos.snapshot.file vide). */
+    public static Path chemin() {
+        String f = DBConnection.getProperty("qos.snapshot.file", "cache/mesures_qos.snap");
+        return f.isBlank() ? null : Path.of(f.trim());
+    }
+
+    // =========================================================================
+    // LECTURE
+    // =========================================================================
+
+    /** @return null si le fichier est absent, d'un autre format ou abîmé */
+    static QosColonnes lire(Path chemin) {
+        if (chemin == null || !Files.isRegularFile(chemin)) return null;
+        long t0 = System.nanoTime();
+
+        try (FileChannel ch = FileChannel.open(chemin, StandardOpenOption.READ)) {
+            if (ch.size() > Integer.MAX_VALUE) throw new IOException("fichier trop gros");
+            ByteBuffer buf = ByteBuffer.allocate((int) ch.size());
+            while (buf.hasRemaining()) {
+                if (ch.read(buf) < 0) throw new IOException("fichier tronqué");
+            }
+            buf.flip();
+
+            if (buf.remaining() < TAILLE_ENTETE || buf.getInt(0) != MAGIC || buf.getInt(4) != VERSION) {
+                throw new IOException("format inconnu");
+            }
+            if (crc(buf, 0, TAILLE_ENTETE - 4) != buf.getInt(TAILLE_ENTETE - 4)) {
+                throw new IOException("en-tête abîmé");
+            }
+            int lignes = buf.getInt(8);
+            int nbZones = buf.getInt(12);
+            int nbTranches = buf.getInt(16);
+            int nbFichiers = buf.getInt(20);
+            if (lignes < 0 || nbZones < 0 || nbTranches < 0 || nbFichiers < 0) throw new IOException("en-tête invalide");
+            buf.position(TAILLE_ENTETE);
+
+            String[] zones = chaines(bloc(buf, ZONES), nbZones, null);
+            String[] tranches = chaines(bloc(buf, TRANCHES), nbTranches, null);
+            long[] versions = new long[nbFichiers];
+            String[] fichiers = chaines(bloc(buf, FICHIERS), nbFichiers, versions);
+
+            int[] colZone = entiers(bloc(buf, COL_ZONE), lignes, nbZones, true);
+            int[] colTranche = entiers(bloc(buf, COL_TRANCHE), lignes, nbTranches, false);
+            int[] colFichier = entiers(bloc(buf, COL_FICHIER), lignes, nbFichiers, false);
+
+            QosColonnes.Mesure[] types = QosColonnes.Mesure.values();
+            double[][] mesures = new double[types.length][];
+            for (QosColonnes.Mesure m : types) {
+                ByteBuffer b = bloc(buf, COL_MESURE + m.ordinal());
+                if (b.remaining() != lignes * 8L) throw new IOException("colonne " + m + " tronquée");
+                mesures[m.ordinal()] = new double[lignes];
+                b.asDoubleBuffer().get(mesures[m.ordinal()]);
+            }
+
+            QosColonnes c = new QosColonnes(mesures, colZone, colTranche, colFichier,
+                    zones, tranches, fichiers, versions, lignes);
+            System.out.printf(">>> Instantané QoS chargé : %d groupes (%.0f ms)%n",
+                    lignes, (System.nanoTime() - t0) / 1e6);
+            return c;
+
+        } catch (IOException | RuntimeException e) {
+            System.out.println("⚠ Instantané QoS ignoré (" + chemin + ") : " + e.getMessage());
+            return null;
+        }
+    }
+
+    // Bloc suivant, de type attendu et de crc correct ; buf est placé après
+    private static ByteBuffer bloc(ByteBuffer buf, int type) throws IOException {
+        if (buf.remaining() < 12 || buf.getInt() != type) throw new IOException("bloc " + type + " manquant");
+        long longueur = buf.getLong();
+        if (longueur < 0 || longueur > buf.remaining() - 4) throw new IOException("bloc " + type + " tronqué");
+
+        int debut = buf.position();
+        int fin = debut + (int) longueur;
+        if (crc(buf, debut, fin) != buf.getInt(fin)) throw new IOException("bloc " + type + " abîmé");
+
+        ByteBuffer b = buf.duplicate().position(debut).limit(fin).slice();
+        buf.position(fin + 4);
+        return b;
+    }
+
+    private static String[] chaines(ByteBuffer b, int n, long[] versions) throws IOException {
+        String[] t = new String[n];
+        for (int i = 0; i < n; i++) {
+            int longueur = b.getInt();
+            if (longueur < 0 || longueur > b.remaining()) throw new IOException("chaîne invalide");
+            byte[] octets = new byte[longueur];
+            b.get(octets);
+            t[i] = new String(octets, StandardCharsets.UTF_8);
+            if (versions != null) versions[i] = b.getLong();
+        }
+        return t;
+    }
+
+    // Codes dans [0, max), croissants si trie (colonne des zones)
+    private static int[] entiers(ByteBuffer b, int n, int max, boolean trie) throws IOException {
+        if (b.remaining() != n * 4L) throw new IOException("colonne tronquée");
+        int[] t = new int[n];
+        b.asIntBuffer().get(t);
+        int precedent = 0;
+        for (int v : t) {
+            if (v < 0 || v >= max || (trie && v < precedent)) throw new IOException("code hors limites");
+            precedent = v;
+        }
+        return t;
+    }
+
+    // =========================================================================
+    // ÉCRITURE
+    // =========================================================================
+
+    static void ecrire(QosColonnes c, Path chemin) {
+        if (chemin == null) return;
+        long t0 = System.nanoTime();
+
+        try {
+            if (chemin.getParent() != null) Files.createDirectories(chemin.getParent());
+            Path tmp = chemin.resolveSibling(chemin.getFileName() + ".tmp");
+
+            try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+
+                ByteBuffer entete = ByteBuffer.allocate(TAILLE_ENTETE);
+                entete.putInt(MAGIC).putInt(VERSION).putInt(c.taille)
+                        .putInt(c.nomsZones.length).putInt(c.libellesTranches.length).putInt(c.nomsFichiers.length);
+                entete.putInt(crc(entete, 0, TAILLE_ENTETE - 4));
+                ecrireTout(ch, entete.flip());
+
+                ecrireBloc(ch, ZONES, chaines(c.nomsZones, null));
+                ecrireBloc(ch, TRANCHES, chaines(c.libellesTranches, null));
+                ecrireBloc(ch, FICHIERS, chaines(c.nomsFichiers, c.versions));
+
+                ecrireBloc(ch, COL_ZONE, entiers(c.zones, c.taille));
+                ecrireBloc(ch, COL_TRANCHE, entiers(c.tranches, c.taille));
+                ecrireBloc(ch, COL_FICHIER, entiers(c.fichiers, c.taille));
+
+                for (QosColonnes.Mesure m : QosColonnes.Mesure.values()) {
+                    ByteBuffer b = ByteBuffer.allocate(c.taille * 8);
+                    b.asDoubleBuffer().put(c.mesures[m.ordinal()], 0, c.taille);
+                    ecrireBloc(ch, COL_MESURE + m.ordinal(), b);
+                }
+                ch.force(true);
+            }
+
+            Files.move(tmp, chemin, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            System.out.printf(">>> Instantané QoS écrit : %d groupes (%.0f ms)%n",
+                    c.taille, (System.nanoTime() - t0) / 1e6);
+
+        } catch (IOException | RuntimeException e) {
+            System.out.println("⚠ Écriture de l'instantané QoS impossible : " + e.getMessage());
+        }
+    }
+
+    private static void ecrireBloc(FileChannel ch, int type, ByteBuffer donnees) throws IOException {
+        ByteBuffer entete = ByteBuffer.allocate(12).putInt(type).putLong(donnees.capacity());
+        ecrireTout(ch, entete.flip());
+        int crc = crc(donnees, 0, donnees.capacity());
+        ecrireTout(ch, donnees.clear());
+        ecrireTout(ch, ByteBuffer.allocate(4).putInt(crc).flip());
+    }
+
+    private static ByteBuffer chaines(String[] t, long[] versions) {
+        byte[][] octets = new byte[t.length][];
+        int taille = 0;
+        for (int i = 0; i < t.length; i++) {
+            octets[i] = t[i].getBytes(StandardCharsets.UTF_8);
+            taille += 4 + octets[i].length + (versions != null ? 8 : 0);
+        }
+        ByteBuffer b = ByteBuffer.allocate(taille);
+        for (int i = 0; i < t.length; i++) {
+            b.putInt(octets[i].length).put(octets[i]);
+            if (versions != null) b.putLong(versions[i]);
+        }
+        return b;
+    }
+
+    private static ByteBuffer entiers(int[] t, int n) {
+        ByteBuffer b = ByteBuffer.allocate(n * 4);
+        b.asIntBuffer().put(t, 0, n);
+        return b;
+    }
+
+    private static void ecrireTout(FileChannel ch, ByteBuffer b) throws IOException {
+        while (b.hasRemaining()) ch.write(b);
+    }
+
+    private static int crc(ByteBuffer b, int debut, int fin) {
+        CRC32 crc = new CRC32();
+        crc.update(b.duplicate().position(debut).limit(fin));
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,144 @@
+package com.ensah.qoe.Services;
+
+import com.ensah.qoe.Models.DBConnection;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.StringJoiner;
+
+/**
+ * Lignes rejetées d'un import QoS : compteurs par motif, fichier de
+ * rejets (import.rejets.dir, une ligne "ligne,code" par rejet) et
+ * journal limité. Les premiers rejets sont affichés en détail, puis un
+ * résumé au plus toutes les INTERVALLE_RESUME_MS.
+ * Les lignes sont numérotées comme dans le journal : lignes de données
+ * à partir de 1, depuis la position de reprise pour un ajout.
+ * Appelé dans l'ordre du fichier, par un seul thread.
+ */
+public class QosRejets {
+
+    private static final int MAX_DETAILS = 20;
+    private static final long INTERVALLE_RESUME_MS = 5_000;
+
+    private final String nomFichier;
+    private final long debut;
+    private final Path chemin;
+    private final long[] parRaison = new long[QosCsvParser.Rejet.values().length];
+    private long total = 0;
+
+    private BufferedWriter sortie;
+    private boolean sortieImpossible = false;
+    private long dernierResume = System.currentTimeMillis();
+    private long totalResume = 0;
+
+    /** debut : octet de reprise d'un ajout (0 : import complet, le fichier de rejets est remplacé). */
+    public QosRejets(String nomFichier, long debut) {
+        this.nomFichier = nomFichier;
+        this.debut = debut;
+        this.chemin = chemin(nomFichier);
+    }
+
+    /** Fichier de rejets d'un import, ou null si import.rejets.dir est vide. */
+    public static Path chemin(String nomFichier) {
+        String dossier = DBConnection.getProperty("import.rejets.dir", "rejets");
+        if (dossier.isBlank()) return null;
+        return Path.of(dossier.trim(), nomFichier.replaceAll("[\\\\/:*?\"<>|]", "_") + ".rejets.csv");
+    }
+
+    public void ajouter(long ligne, QosCsvParser.Rejet raison) {
+        if (total < MAX_DETAILS) {
+            System.out.println(">>> ERREUR ligne " + ligne + ": " + raison);
+        }
+        total++;
+        parRaison[raison.ordinal()]++;
+
+        BufferedWriter w = sortie();
+        if (w == null) return;
+        try {
+            w.write(Long.toString(ligne));
+            w.write(',');
+            w.write(raison.getCode());
+            w.newLine();
+        } catch (IOException e) {
+            abandonner(e);
+        }
+    }
+
+    /** Résumé si le dernier date de plus de INTERVALLE_RESUME_MS. */
+    public void resumer() {
+        if (total == totalResume) return;
+        long maintenant = System.currentTimeMillis();
+        if (maintenant - dernierResume < INTERVALLE_RESUME_MS) return;
+        dernierResume = maintenant;
+        totalResume = total;
+        System.out.println(">>> Rejets en cours : " + detail());
+    }
+
+    /** Ferme le fichier de rejets et affiche le bilan par motif. */
+    public void fermer() {
+        if (sortie != null) {
+            try {
+                sortie.close();
+            } catch (IOException e) {
+                System.out.println("⚠ Fichier de rejets incomplet : " + e.getMessage());
+            }
+            sortie = null;
+        }
+        if (total > 0) {
+            System.out.println(">>> Rejets " + nomFichier + " : " + detail()
+                    + (chemin != null && !sortieImpossible ? " → " + chemin : ""));
+        }
+    }
+
+    public long getTotal() { return total; }
+
+    public long getNb(QosCsvParser.Rejet raison) { return parRaison[raison.ordinal()]; }
+
+    private String detail() {
+        StringJoiner j = new StringJoiner(", ", total + " lignes (", ")");
+        for (QosCsvParser.Rejet r : QosCsvParser.Rejet.values()) {
+            if (parRaison[r.ordinal()] > 0) j.add(r + " : " + parRaison[r.ordinal()]);
+        }
+        return j.toString();
+    }
+
+    // Ouvert au premier rejet : pas de fichier pour un import propre
+    private BufferedWriter sortie() {
+        if (sortie != null || chemin == null || sortieImpossible) return sortie;
+        try {
+            if (chemin.getParent() != null) Files.createDirectories(chemin.getParent());
+            boolean ajout = debut > 0 && Files.isRegularFile(chemin) && Files.size(chemin) > 0;
+            sortie = Files.newBufferedWriter(chemin, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE,
+                    ajout ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING);
+            if (!ajout) {
+                sortie.write("ligne,code");
+                sortie.newLine();
+            }
+            if (debut > 0) {
+                sortie.write("# ajout à partir de l'octet " + debut);
+                sortie.newLine();
+            }
+        } catch (IOException e) {
+            abandonner(e);
+        }
+        return sortie;
+    }
+
+    // Le fichier de rejets n'empêche pas l'import
+    private void abandonner(IOException e) {
+        System.out.println("⚠ Fichier de rejets abandonné (" + chemin + ") : " + e.getMessage());
+        sortieImpossible = true;
+        if (sortie != null) {
+            try {
+                sortie.close();
+            } catch (IOException ignored) {
+            }
+            sortie = null;
+        }
+    }
+}
@@ -2,12 +2,27 @@ package com.ensah.qoe.Services;
 
 import com.ensah.qoe.Models.DBConnection;
 import com.ensah.qoe.Models.Qos;
+import com.ensah.qoe.Utils.Resolution;
 
 import java.sql.*;
+import java.time.ZoneOffset;
 import java.util.*;
 
 public class QosZoneService {
 
+    // Largeur d'écran par point d'une courbe, et nombre de points si la largeur est inconnue
+    private static final int PIXELS_PAR_POINT = 4;
+    private static final int POINTS_PAR_DEFAUT = 200;
+
+    /** Table des groupes d'une résolution : MESURES_QOS pour 12 h, sinon AGREGATS_QOS_<code>. */
+    public static String table(Resolution r) {
+        return r == Resolution.DOUZE_HEURES ? "MESURES_QOS" : "AGREGATS_QOS_" + r.getCode().toUpperCase();
+    }
+
+    public static String colonneTranche(Resolution r) {
+        return r == Resolution.DOUZE_HEURES ? "TRANCHE_12H" : "TRANCHE";
+    }
+
     public static List<String> getZones() {
         List<String> zones = new ArrayList<>();
         String sql = "SELECT DISTINCT ZONE FROM MESURES_QOS ORDER BY ZONE";
@@ -24,12 +39,18 @@ public class QosZoneService {
     }
 
     public static List<Qos> getQosByZone(String zone) {
+        return getQosByZone(zone, Resolution.DOUZE_HEURES);
+    }
+
+    /** Groupes d'une zone à la résolution r, dans l'ordre chronologique. */
+    public static List<Qos> getQosByZone(String zone, Resolution r) {
         List<Qos> liste = new ArrayList<>();
 
+        String tranche = colonneTranche(r);
         String sql = "SELECT LATENCE, JITTER, PERTE, BANDE_PASSANTE, " +
-                "SIGNAL_SCORE, MOS, TRANCHE_12H " +
-                "FROM MESURES_QOS WHERE ZONE = ? " +
-                "ORDER BY TRANCHE_12H";
+                "SIGNAL_SCORE, MOS, " + tranche + " " +
+                "FROM " + table(r) + " WHERE ZONE = ? " +
+                "ORDER BY " + tranche;
 
         try (Connection conn = DBConnection.getConnection();
              PreparedStatement ps = conn.prepareStatement(sql)) {
@@ -45,7 +66,7 @@ public class QosZoneService {
                 q.setBandePassante(rs.getDouble(4));
                 q.setSignalScore(rs.getDouble(5));
                 q.setMos(rs.getDouble(6));
-                q.setTranche12h(rs.getString(7));
+                q.setTranche(r, rs.getString(7));
                 q.setZone(zone);
                 liste.add(q);
             }
@@ -55,6 +76,67 @@ public class QosZoneService {
         return liste;
     }
 
+    /**
+     * Groupes d'une zone pour une courbe de largeurPixels (0 : inconnue),
+     * à la résolution la plus fine qui y tient (cf. Resolution.pourAffichage).
+     * Si la zone n'a pas d'agrégat à cette résolution (import antérieur),
+     * retour aux groupes 12 h.
+     */
+    public static List<Qos> getQosPourAffichage(String zone, double largeurPixels) {
+        Resolution r = resolutionPourAffichage("WHERE ZONE = ?", zone, largeurPixels);
+        List<Qos> liste = getQosByZone(zone, r);
+        return liste.isEmpty() && r != Resolution.DOUZE_HEURES ? getQosByZone(zone) : liste;
+    }
+
+    /**
+     * MOS moyen de toutes les zones par tranche, à la résolution la plus
+     * fine qui tient en largeurPixels.
+     */
+    public static Map<String, Double> getTendanceMos(double largeurPixels) {
+        Resolution r = resolutionPourAffichage("", null, largeurPixels);
+        Map<String, Double> tendance = tendanceMos(r);
+        return tendance.isEmpty() && r != Resolution.DOUZE_HEURES ? tendanceMos(Resolution.DOUZE_HEURES) : tendance;
+    }
+
+    private static Map<String, Double> tendanceMos(Resolution r) {
+        Map<String, Double> tendance = new LinkedHashMap<>();
+        String tranche = colonneTranche(r);
+        String sql = "SELECT " + tranche + ", AVG(MOS) FROM " + table(r) +
+                " GROUP BY " + tranche + " ORDER BY " + tranche;
+
+        try (Connection conn = DBConnection.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql);
+             ResultSet rs = ps.executeQuery()) {
+
+            while (rs.next()) tendance.put(rs.getString(1), rs.getDouble(2));
+
+        } catch (Exception ignored) {}
+
+        return tendance;
+    }
+
+    // Période couverte (MESURES_QOS, filtrée par where) → résolution affichable
+    private static Resolution resolutionPourAffichage(String where, String zone, double largeurPixels) {
+        int maxPoints = largeurPixels > 0 ? (int) (largeurPixels / PIXELS_PAR_POINT) : POINTS_PAR_DEFAUT;
+        String sql = "SELECT MIN(DATE_REELLE), MAX(DATE_REELLE) FROM MESURES_QOS " + where;
+
+        try (Connection conn = DBConnection.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+
+            if (zone != null) ps.setString(1, zone);
+            ResultSet rs = ps.executeQuery();
+            if (rs.next() && rs.getTimestamp(1) != null) {
+                // DATE_REELLE est en UTC (cf. QosAnalyzer)
+                long debut = rs.getTimestamp(1).toLocalDateTime().toInstant(ZoneOffset.UTC).toEpochMilli();
+                long fin = rs.getTimestamp(2).toLocalDateTime().toInstant(ZoneOffset.UTC).toEpochMilli();
+                return Resolution.pourAffichage(debut, fin, Math.max(1, maxPoints), Resolution.configurees());
+            }
+
+        } catch (Exception ignored) {}
+
+        return Resolution.DOUZE_HEURES;
+    }
+
     public static List<Qos> getAllFromDatabase() {
         List<Qos> liste = new ArrayList<>();
         String sql = "SELECT * FROM MESURES_QOS";
@@ -62,22 +144,41 @@ public class QosZoneService {
         try (Connection conn = DBConnection.getConnection();
              ResultSet rs = conn.prepareStatement(sql).executeQuery()) {
 
-            while (rs.next()) {
-                Qos q = new Qos();
-                q.setLatence(rs.getDouble("LATENCE"));
-                q.setJitter(rs.getDouble("JITTER"));
-                q.setPerte(rs.getDouble("PERTE"));
-                q.setBandePassante(rs.getDouble("BANDE_PASSANTE"));
-                q.setSignalScore(rs.getDouble("SIGNAL_SCORE"));
-                q.setMos(rs.getDouble("MOS"));
-                q.setTranche12h(rs.getString("TRANCHE_12H"));
-                q.setZone(rs.getString("ZONE"));
-                q.setNomFichier(rs.getString("NOM_FICHIER"));
-                liste.add(q);
-            }
+            while (rs.next()) liste.add(lire(rs));
 
         } catch (Exception ignored) {}
 
         return liste;
     }
+
+    /** Groupes d'un fichier importé, dans l'ordre (tranche, zone). */
+    public static List<Qos> getByFichier(String nomFichier) {
+        List<Qos> liste = new ArrayList<>();
+        String sql = "SELECT * FROM MESURES_QOS WHERE NOM_FICHIER = ? ORDER BY DATE_REELLE, ZONE";
+
+        try (Connection conn = DBConnection.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+
+            ps.setString(1, nomFichier);
+            ResultSet rs = ps.executeQuery();
+            while (rs.next()) liste.add(lire(rs));
+
+        } catch (Exception ignored) {}
+
+        return liste;
+    }
+
+    private static Qos lire(ResultSet rs) throws SQLException {
+        Qos q = new Qos();
+        q.setLatence(rs.getDouble("LATENCE"));
+        q.setJitter(rs.getDouble("JITTER"));
+        q.setPerte(rs.getDouble("PERTE"));
+        q.setBandePassante(rs.getDouble("BANDE_PASSANTE"));
+        q.setSignalScore(rs.getDouble("SIGNAL_SCORE"));
+        q.setMos(rs.getDouble("MOS"));
+        q.setTranche12h(rs.getString("TRANCHE_12H"));
+        q.setZone(rs.getString("ZONE"));
+        q.setNomFichier(rs.getString("NOM_FICHIER"));
+        return q;
+    }
 }
@@ -12,6 +12,11 @@ public class DateUtils {
 
         long millis = (long) (timestampUnix * 1000);
 
+        return convertirEpochMillis(millis, timezone);
+    }
+
+    public static LocalDateTime convertirEpochMillis(long millis, String timezone) {
+
         return Instant.ofEpochMilli(millis)
                 .atZone(ZoneId.of(timezone))
                 .toLocalDateTime();
@@ -23,11 +28,9 @@ public class DateUtils {
      */
     public static String convertirEnTranche12h(LocalDateTime date) {
 
-        int hour = date.getHour();
-        int start = (hour < 12) ? 0 : 12;
-        int end = start + 12;
-
-        String d = date.toLocalDate().toString();
-        return d + "_" + String.format("%02d", start) + "-" + String.format("%02d", end);
+        StringBuilder sb = new StringBuilder(16);
+        Resolution.date(sb, date);
+        Resolution.tranche12h(sb, date.getHour());
+        return sb.toString();
     }
 }
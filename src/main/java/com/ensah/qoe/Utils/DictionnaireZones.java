@@ -0,0 +1,56 @@
+package com.ensah.qoe.Utils;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Zones ("ville, pays") d'un import, numérotées à leur première
+ * occurrence : les lignes et les clés de groupe ne portent qu'un int.
+ * Partagé par les threads d'analyse ; les numéros ne sont pas stables
+ * d'un import à l'autre (jamais stockés).
+ */
+public class DictionnaireZones {
+
+    /** Numéro de la zone inconnue ("Unknown, Unknown"). */
+    public static final int INCONNUE = 0;
+
+    /** Les numéros tiennent sur 24 bits (clés de groupe, voir QosAnalyzer). */
+    public static final int TAILLE_MAX = 1 << 24;
+
+    private final ConcurrentHashMap<String, Integer> numeros = new ConcurrentHashMap<>();
+    private volatile String[] zones = new String[256];
+    private int taille = 0;
+
+    public DictionnaireZones(String zoneInconnue) {
+        zones[INCONNUE] = zoneInconnue;
+        numeros.put(zoneInconnue, INCONNUE);
+        taille = 1;
+    }
+
+    /** Numéro de la zone, attribué au premier appel. */
+    public int id(String zone) {
+        Integer n = numeros.get(zone);
+        if (n != null) return n;
+
+        synchronized (this) {
+            n = numeros.get(zone);
+            if (n != null) return n;
+            if (taille == TAILLE_MAX) throw new IllegalStateException("Plus de " + TAILLE_MAX + " zones");
+
+            String[] z = zones;
+            if (taille == z.length) zones = z = Arrays.copyOf(z, z.length * 2);
+            z[taille] = zone;
+            // Publié par la table : qui lit ce numéro voit la case remplie
+            numeros.put(zone, taille);
+            return taille++;
+        }
+    }
+
+    public String zone(int id) {
+        return zones[id];
+    }
+
+    public synchronized int taille() {
+        return taille;
+    }
+}
@@ -0,0 +1,443 @@
+package com.ensah.qoe.Utils;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Cache disque des géocodages, indexé par carré d'une grille de
+ * grilleMetres. Chaque carré garde la réponse de l'index de référence
+ * (gazetteer) pour son centre, trouvée ou non, et sa distance : elle ne
+ * dépend que du carré et de la référence, pas de l'import ni de l'ordre
+ * des threads. Une autre grille ou une autre référence (empreinte
+ * versionReference) vide le fichier.
+ *
+ * Le fichier est un journal : parcouru une fois à l'ouverture pour
+ * construire la table clé → position, et réécrit sans ses doublons s'il
+ * en contient. Les nouveaux carrés restent en mémoire jusqu'à ecrire(),
+ * appelé une fois par import, qui les ajoute en une écriture. Seuls les
+ * maxEntrees derniers carrés utilisés restent décodés (LRU par segment,
+ * un verrou court par segment : les threads d'analyse ne s'attendent
+ * pas entre eux).
+ *
+ * Format : en-tête (magic, version, grille, empreinte de la référence)
+ * puis enregistrements [int longueur][long clé][double distance km]
+ * [ville][pays][fuseau], chaînes en UTF-8 précédées de leur longueur
+ * (short) ; distance NaN et chaînes vides : aucun point à portée.
+ */
+public class GeoCache {
+
+    private static final int MAGIC = 0x47454f43;   // "GEOC"
+    private static final int VERSION = 3;
+    private static final int TAILLE_ENTETE = 4 + 4 + 8 + 8;
+    // clé, distance et longueurs des trois chaînes
+    private static final int TAILLE_FIXE = 8 + 8 + 6;
+    private static final double METRES_PAR_DEG = 111_320;
+    private static final int NB_SEGMENTS = 16;
+
+    /** Réponse de la référence pour le centre d'un carré. */
+    public static class Reponse {
+        public static final Reponse AUCUNE = new Reponse(null, Double.POSITIVE_INFINITY);
+
+        /** null : aucun point de la référence à portée. */
+        public final GeoCoder.GeoResult resultat;
+        public final double distanceKm;
+
+        public Reponse(GeoCoder.GeoResult resultat, double distanceKm) {
+            this.resultat = resultat;
+            this.distanceKm = distanceKm;
+        }
+    }
+
+    /** Réponse de la référence pour le centre d'un carré absent du cache. */
+    public interface Calcul {
+        Reponse calculer(double latCentre, double lonCentre);
+    }
+
+    private final Path fichier;
+    private final double grilleMetres;
+    private final double pasDeg;
+    private final long versionReference;
+
+    // Fichier, fin et table des positions : lus sous verrou partagé, modifiés sous verrou exclusif
+    private final ReentrantReadWriteLock verrou = new ReentrantReadWriteLock();
+    private FileChannel ch;          // null : cache en mémoire seulement
+    private long fin;                // fin du dernier enregistrement valide
+    private final TablePositions positions = new TablePositions();
+
+    // Carrés calculés depuis le dernier ecrire()
+    private final ConcurrentHashMap<Long, Reponse> nouvelles = new ConcurrentHashMap<>();
+    private final Segment[] segments = new Segment[NB_SEGMENTS];
+    // Une seule instance par nom de ville / pays / fuseau
+    private final Map<String, String> noms = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public GeoCache(Path fichier, double grilleMetres, int maxEntrees, long versionReference) {
+        this.fichier = fichier;
+        this.grilleMetres = grilleMetres;
+        this.pasDeg = grilleMetres / METRES_PAR_DEG;
+        this.versionReference = versionReference;
+
+        int capacite = Math.max(1, maxEntrees / NB_SEGMENTS);
+        for (int i = 0; i < NB_SEGMENTS; i++) segments[i] = new Segment(capacite);
+
+        try {
+            ouvrir();
+        } catch (IOException e) {
+            System.out.println(">>> Cache géocodage indisponible (" + fichier + ") : " + e.getMessage());
+            fermerFichier();
+        }
+    }
+
+    // =========================================================================
+    // LECTURE / ÉCRITURE
+    // =========================================================================
+
+    /**
+     * Réponse de la référence pour le carré de (lat, lon) ; absente,
+     * calculée pour le centre du carré et gardée jusqu'au prochain ecrire().
+     */
+    public Reponse obtenir(double lat, double lon, Calcul calcul) {
+        long i = Math.round(lat / pasDeg);
+        long j = Math.round(lon / pasDeg);
+        long cle = (i << 32) ^ (j & 0xffffffffL);
+
+        Segment s = segments[(int) ((cle * 0x9E3779B97F4A7C15L) >>> 60)];
+        Reponse r;
+        synchronized (s) {
+            r = s.get(cle);
+        }
+        if (r == null) r = nouvelles.get(cle);
+        if (r == null) r = lireCle(cle);
+
+        if (r != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+            r = calcul.calculer(i * pasDeg, j * pasDeg);
+            Reponse deja = nouvelles.putIfAbsent(cle, r);
+            if (deja != null) r = deja;
+        }
+        synchronized (s) {
+            s.put(cle, r);
+        }
+        return r;
+    }
+
+    /**
+     * Ajoute au fichier, en une écriture, les carrés calculés depuis le
+     * dernier appel (fin d'un import).
+     * @return le nombre de carrés écrits
+     */
+    public int ecrire() {
+        if (nouvelles.isEmpty()) return 0;
+
+        List<Map.Entry<Long, Reponse>> lot = new ArrayList<>(nouvelles.entrySet());
+        verrou.writeLock().lock();
+        try {
+            if (ch != null) {
+                List<byte[]> enregistrements = new ArrayList<>(lot.size());
+                int total = 0;
+                for (Map.Entry<Long, Reponse> e : lot) {
+                    byte[] b = encoder(e.getKey(), e.getValue());
+                    enregistrements.add(b);
+                    total += b.length;
+                }
+                ByteBuffer buf = ByteBuffer.allocate(total);
+                for (byte[] b : enregistrements) buf.put(b);
+                buf.flip();
+
+                try {
+                    // À la suite du fichier : un autre processus a pu y écrire (doublons retirés au chargement)
+                    long debut = Math.max(fin, ch.size());
+                    long pos = debut;
+                    while (buf.hasRemaining()) pos += ch.write(buf, pos);
+                    long p = debut;
+                    for (int k = 0; k < lot.size(); k++) {
+                        positions.put(lot.get(k).getKey(), p);
+                        p += enregistrements.get(k).length;
+                    }
+                    fin = pos;
+                } catch (IOException e) {
+                    System.out.println(">>> Écriture cache géocodage impossible : " + e.getMessage());
+                    fermerFichier();
+                    return 0;
+                }
+            }
+        } finally {
+            verrou.writeLock().unlock();
+        }
+        // Sans fichier, les carrés restent en mémoire jusqu'à la fin du processus
+        if (ch != null) {
+            for (Map.Entry<Long, Reponse> e : lot) nouvelles.remove(e.getKey(), e.getValue());
+        }
+        return lot.size();
+    }
+
+    public long getHits() { return hits.sum(); }
+    public long getMisses() { return misses.sum(); }
+
+    public int taille() {
+        verrou.readLock().lock();
+        try {
+            return positions.taille() + nouvelles.size();
+        } finally {
+            verrou.readLock().unlock();
+        }
+    }
+
+    /** Écrit les carrés en attente puis ferme le fichier. */
+    public void fermer() {
+        ecrire();
+        fermerFichier();
+    }
+
+    @Override
+    public String toString() {
+        long h = hits.sum(), m = misses.sum();
+        return String.format("GeoCache[%d carrés, %d hits, %d misses (%.1f%%)]",
+                taille(), h, m, h + m == 0 ? 0.0 : 100.0 * h / (h + m));
+    }
+
+    private void fermerFichier() {
+        verrou.writeLock().lock();
+        try {
+            if (ch == null) return;
+            try {
+                ch.close();
+            } catch (IOException ignored) {
+            }
+            ch = null;
+        } finally {
+            verrou.writeLock().unlock();
+        }
+    }
+
+    private Reponse lireCle(long cle) {
+        verrou.readLock().lock();
+        try {
+            long pos = positions.get(cle);
+            return pos >= 0 ? lire(pos) : null;
+        } finally {
+            verrou.readLock().unlock();
+        }
+    }
+
+    private byte[] encoder(long cle, Reponse r) {
+        GeoCoder.GeoResult g = r.resultat;
+        byte[] v = g == null ? new byte[0] : g.city.getBytes(StandardCharsets.UTF_8);
+        byte[] p = g == null ? new byte[0] : g.country.getBytes(StandardCharsets.UTF_8);
+        byte[] t = g == null ? new byte[0] : g.timezone.getBytes(StandardCharsets.UTF_8);
+
+        ByteBuffer buf = ByteBuffer.allocate(4 + TAILLE_FIXE + v.length + p.length + t.length);
+        buf.putInt(buf.capacity() - 4).putLong(cle).putDouble(g == null ? Double.NaN : r.distanceKm);
+        buf.putShort((short) v.length).put(v);
+        buf.putShort((short) p.length).put(p);
+        buf.putShort((short) t.length).put(t);
+        return buf.array();
+    }
+
+    // =========================================================================
+    // FICHIER
+    // =========================================================================
+    private void ouvrir() throws IOException {
+        if (fichier.getParent() != null) Files.createDirectories(fichier.getParent());
+        ch = FileChannel.open(fichier, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        long taille = ch.size();
+        if (taille < TAILLE_ENTETE || !enteteValide() || taille > Integer.MAX_VALUE) {
+            // Nouveau fichier, autre format, autre grille ou autre référence : on repart de zéro
+            ch.truncate(0);
+            ch.write(entete(), 0);
+            fin = TAILLE_ENTETE;
+            return;
+        }
+
+        // Parcours du journal : le dernier enregistrement d'une clé gagne
+        ByteBuffer b = ByteBuffer.allocate((int) taille);
+        while (b.hasRemaining() && ch.read(b, b.position()) > 0) { }
+        int pos = TAILLE_ENTETE;
+        int nbEnregistrements = 0;
+        while (pos + 4 <= b.position()) {
+            int longueur = b.getInt(pos);
+            if (longueur < TAILLE_FIXE || pos + 4L + longueur > b.position()) break;
+            positions.put(b.getLong(pos + 4), pos);
+            nbEnregistrements++;
+            pos += 4 + longueur;
+        }
+
+        // Enregistrement incomplet (arrêt pendant une écriture) : tronqué
+        fin = pos;
+        if (fin < taille) ch.truncate(fin);
+        if (nbEnregistrements > positions.taille()) compacter(b, nbEnregistrements);
+
+        System.out.println(">>> Cache géocodage chargé : " + positions.taille() + " carrés");
+    }
+
+    // Réécrit le journal sans les enregistrements remplacés, dans un fichier à part puis renommé
+    private void compacter(ByteBuffer journal, int nbEnregistrements) throws IOException {
+        Path tmp = fichier.resolveSibling(fichier.getFileName() + ".tmp");
+        TablePositions compactes = new TablePositions();
+        long nouvelleFin = TAILLE_ENTETE;
+
+        try (FileChannel sortie = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            sortie.write(entete(), 0);
+            int pos = TAILLE_ENTETE;
+            while (pos < fin) {
+                int longueur = journal.getInt(pos);
+                long cle = journal.getLong(pos + 4);
+                if (positions.get(cle) == pos) {
+                    ByteBuffer e = journal.duplicate();
+                    e.limit(pos + 4 + longueur).position(pos);
+                    compactes.put(cle, nouvelleFin);
+                    while (e.hasRemaining()) nouvelleFin += sortie.write(e, nouvelleFin);
+                }
+                pos += 4 + longueur;
+            }
+            sortie.force(true);
+        }
+
+        ch.close();
+        Files.move(tmp, fichier, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        ch = FileChannel.open(fichier, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        positions.remplacer(compactes);
+        fin = nouvelleFin;
+        System.out.println(">>> Cache géocodage compacté : " + (nbEnregistrements - positions.taille())
+                + " enregistrements remplacés retirés");
+    }
+
+    private ByteBuffer entete() {
+        ByteBuffer h = ByteBuffer.allocate(TAILLE_ENTETE);
+        h.putInt(MAGIC).putInt(VERSION).putDouble(grilleMetres).putLong(versionReference).flip();
+        return h;
+    }
+
+    private boolean enteteValide() throws IOException {
+        ByteBuffer h = ByteBuffer.allocate(TAILLE_ENTETE);
+        while (h.hasRemaining() && ch.read(h, h.position()) > 0) { }
+        h.flip();
+        return h.remaining() == TAILLE_ENTETE && h.getInt() == MAGIC && h.getInt() == VERSION
+                && h.getDouble() == grilleMetres && h.getLong() == versionReference;
+    }
+
+    private Reponse lire(long pos) {
+        if (ch == null) return null;
+        try {
+            ByteBuffer l = ByteBuffer.allocate(4);
+            while (l.hasRemaining() && ch.read(l, pos + l.position()) > 0) { }
+            ByteBuffer buf = ByteBuffer.allocate(l.getInt(0));
+            while (buf.hasRemaining() && ch.read(buf, pos + 4 + buf.position()) > 0) { }
+            buf.flip();
+
+            buf.getLong();
+            double distance = buf.getDouble();
+            String ville = chaine(buf), pays = chaine(buf), fuseau = chaine(buf);
+            if (Double.isNaN(distance)) return Reponse.AUCUNE;
+            return new Reponse(new GeoCoder.GeoResult(ville, pays, fuseau), distance);
+
+        } catch (IOException | BufferUnderflowException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private String chaine(ByteBuffer buf) {
+        byte[] a = new byte[buf.getShort() & 0xffff];
+        buf.get(a);
+        String s = new String(a, StandardCharsets.UTF_8);
+        return noms.computeIfAbsent(s, k -> k);
+    }
+
+    // LRU d'accès, borné ; protégé par son propre moniteur
+    private static class Segment extends LinkedHashMap<Long, Reponse> {
+        private static final long serialVersionUID = 1L;
+
+        private final int capacite;
+
+        Segment(int capacite) {
+            super(16, 0.75f, true);
+            this.capacite = capacite;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Reponse> e) {
+            return size() > capacite;
+        }
+    }
+
+    // =========================================================================
+    // TABLE clé → position (adressage ouvert, sans objet par entrée)
+    // =========================================================================
+    private static class TablePositions {
+        private long[] cles = new long[1024];
+        private long[] valeurs = new long[1024];   // position + 1 ; 0 = libre
+        private int taille = 0;
+
+        long get(long cle) {
+            int masque = cles.length - 1;
+            for (int i = indice(cle, masque); valeurs[i] != 0; i = (i + 1) & masque) {
+                if (cles[i] == cle) return valeurs[i] - 1;
+            }
+            return -1;
+        }
+
+        void put(long cle, long position) {
+            int masque = cles.length - 1;
+            int i = indice(cle, masque);
+            for (; valeurs[i] != 0; i = (i + 1) & masque) {
+                if (cles[i] == cle) {
+                    valeurs[i] = position + 1;
+                    return;
+                }
+            }
+            cles[i] = cle;
+            valeurs[i] = position + 1;
+            if (++taille * 2 > cles.length) agrandir();
+        }
+
+        int taille() {
+            return taille;
+        }
+
+        void remplacer(TablePositions autre) {
+            cles = autre.cles;
+            valeurs = autre.valeurs;
+            taille = autre.taille;
+        }
+
+        private void agrandir() {
+            long[] anciennesCles = cles, anciennesValeurs = valeurs;
+            cles = new long[anciennesCles.length * 2];
+            valeurs = new long[anciennesCles.length * 2];
+            int masque = cles.length - 1;
+            for (int j = 0; j < anciennesCles.length; j++) {
+                if (anciennesValeurs[j] == 0) continue;
+                int i = indice(anciennesCles[j], masque);
+                while (valeurs[i] != 0) i = (i + 1) & masque;
+                cles[i] = anciennesCles[j];
+                valeurs[i] = anciennesValeurs[j];
+            }
+        }
+
+        private static int indice(long cle, int masque) {
+            long h = cle * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32)) & masque;
+        }
+    }
+}
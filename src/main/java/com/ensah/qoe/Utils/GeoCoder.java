@@ -1,15 +1,31 @@
 package com.ensah.qoe.Utils;
 
-import org.json.JSONObject;
+import com.ensah.qoe.Models.DBConnection;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 
 public class GeoCoder {
 
+    /** Distance maximale au point connu le plus proche. */
+    public static final double RAYON_KM = 50;
+
+    private static final String GAZETTEER_CLASSPATH = "/geo/gazetteer.csv";
+
+    // Gazetteer, chargé une fois : référence du cache de géocodage
+    private static volatile GeoIndex reference;
+
+    // Positions apprises des imports ; remplacé en bloc (copie)
+    private static volatile GeoIndex appris = new GeoIndex();
+
+    private static volatile GeoCache cache;
+
     // -----------------------------------------------------
-    // Fonction principale avec CSV venant de FileChooser
+    // Fonction principale
     // -----------------------------------------------------
-    public static GeoResult getLocation(double lat, double lon, String csvPath,
+    public static GeoResult getLocation(double lat, double lon,
                                         String cityFromCsv, String countryFromCsv) {
 
         // 1) SI LE CSV A DÉJÀ LES VALEURS → ON NE GÉOCODE PAS
@@ -19,54 +35,119 @@ public class GeoCoder {
             return new GeoResult(cityFromCsv, countryFromCsv, "UTC");
         }
 
-        // 2) SINON → APPEL PYTHON
-        GeoResult py = callPython(lat, lon, csvPath);
-        if (py != null && !py.city.equals("Unknown"))
-            return py;
+        // 2) SINON → CACHE, PUIS POINT CONNU LE PLUS PROCHE
+        GeoResult r = localiser(lat, lon, positionsApprises());
+        if (r != null)
+            return r;
 
-        // 3) SI PYTHON NE DONNE RIEN → UNKNOWN
+        // 3) RIEN À MOINS DE RAYON_KM → UNKNOWN
         return new GeoResult("Unknown", "Unknown", "UTC");
     }
 
+    /**
+     * Localise une position : point le plus proche du gazetteer ou de
+     * index (positions apprises, positions du fichier en cours). La
+     * réponse du gazetteer vient du cache, par carré de grille ; index
+     * n'est interrogé que dans le rayon de cette réponse, il ne passe
+     * jamais par le cache. Le résultat ne dépend donc ni de l'ordre des
+     * threads ni de ce que le cache contient déjà.
+     *
+     * @return null si aucun point connu à moins de RAYON_KM
+     */
+    public static GeoResult localiser(double lat, double lon, GeoIndex index) {
+        GeoCache.Reponse ref = cache().obtenir(lat, lon, (latCentre, lonCentre) -> {
+            GeoIndex.Point p = reference().plusProche(latCentre, lonCentre, RAYON_KM);
+            if (p == null) return GeoCache.Reponse.AUCUNE;
+            return new GeoCache.Reponse(new GeoResult(p.city, p.country, "UTC"),
+                    GeoIndex.haversine(latCentre, lonCentre, p.lat, p.lon));
+        });
+
+        GeoIndex.Point p = index.plusProche(lat, lon, Math.min(RAYON_KM, ref.distanceKm));
+        if (p != null) return new GeoResult(p.city, p.country, "UTC");
+        return ref.resultat;
+    }
 
-    // -----------------------------------------------------
-    // APPEL DU SCRIPT PYTHON (CSV dynamique)
-    // -----------------------------------------------------
-    private static GeoResult callPython(double lat, double lon, String csvPath) {
-        try {
-            String script = "src/main/resources/python/geocode_dynamic.py";
-
-            ProcessBuilder pb = new ProcessBuilder(
-                    "python", script,
-                    String.valueOf(lat),
-                    String.valueOf(lon),
-                    csvPath
-            );
-
-            pb.redirectErrorStream(true);
-            Process p = pb.start();
-
-            BufferedReader reader = new BufferedReader(
-                    new InputStreamReader(p.getInputStream())
-            );
-
-            String json = reader.readLine();
-            p.waitFor();
+    /**
+     * Cache des géocodages (geo.cache.*), ouvert au premier appel. Vidé
+     * si la grille ou le gazetteer a changé ; écrit en fin d'import
+     * (GeoCache.ecrire) et à l'arrêt du processus.
+     */
+    public static GeoCache cache() {
+        GeoCache c = cache;
+        if (c == null) {
+            synchronized (GeoCoder.class) {
+                if (cache == null) {
+                    GeoCache nouveau = new GeoCache(
+                            Path.of(DBConnection.getProperty("geo.cache.file", "cache/geocode.cache")),
+                            Double.parseDouble(DBConnection.getProperty("geo.cache.gridMeters", "100")),
+                            DBConnection.getIntProperty("geo.cache.maxEntries", 100000),
+                            reference().empreinte());
+                    Runtime.getRuntime().addShutdownHook(new Thread(nouveau::fermer, "geocache-fermeture"));
+                    cache = nouveau;
+                }
+                c = cache;
+            }
+        }
+        return c;
+    }
 
-            if (json == null || json.isBlank())
-                return null;
+    /**
+     * Positions apprises des imports précédents (hors gazetteer, couvert
+     * par le cache). Ne pas modifier : en faire une copie.
+     */
+    public static GeoIndex positionsApprises() {
+        return appris;
+    }
 
-            JSONObject obj = new JSONObject(json);
+    /** Ajoute les positions d'un import aux positions apprises. */
+    public static synchronized void apprendre(GeoIndex positions) {
+        GeoIndex a = appris.copie();
+        a.ajouterTout(positions);
+        appris = a;
+    }
 
-            return new GeoResult(
-                    obj.getString("city"),
-                    obj.getString("country"),
-                    "UTC"
-            );
+    private static GeoIndex reference() {
+        GeoIndex r = reference;
+        if (r == null) {
+            synchronized (GeoCoder.class) {
+                if (reference == null) reference = chargerGazetteer();
+                r = reference;
+            }
+        }
+        return r;
+    }
 
-        } catch (Exception e) {
-            return null;
+    // -----------------------------------------------------
+    // GAZETTEER : city,country,latitude,longitude
+    // fichier geo.gazetteer, sinon ressource /geo/gazetteer.csv
+    // -----------------------------------------------------
+    private static GeoIndex chargerGazetteer() {
+        GeoIndex index = new GeoIndex();
+        String chemin = DBConnection.getProperty("geo.gazetteer", "");
+
+        try (InputStream in = chemin.isBlank()
+                ? GeoCoder.class.getResourceAsStream(GAZETTEER_CLASSPATH)
+                : Files.newInputStream(Path.of(chemin))) {
+
+            if (in == null) return index;
+
+            BufferedReader br = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+            String line = br.readLine();   // header
+            while ((line = br.readLine()) != null) {
+                String[] v = line.split(",");
+                if (v.length < 4) continue;
+                try {
+                    index.ajouter(Double.parseDouble(v[2].trim()), Double.parseDouble(v[3].trim()),
+                            v[0].trim(), v[1].trim());
+                } catch (NumberFormatException ignored) {
+                }
+            }
+            System.out.println(">>> Gazetteer chargé : " + index.taille() + " positions");
+
+        } catch (IOException e) {
+            System.out.println(">>> Gazetteer illisible : " + e.getMessage());
         }
+        return index;
     }
 
 
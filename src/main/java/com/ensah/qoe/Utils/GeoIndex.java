@@ -0,0 +1,202 @@
+package com.ensah.qoe.Utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Index spatial de points déjà localisés (ville, pays) : arbre k-d sur
+ * (latitude, longitude), construit à la première recherche qui suit un
+ * ajout. Les branches sont écartées avec une borne inférieure exacte de
+ * la distance sur la sphère, la distance elle-même restant Haversine.
+ * Rempli sur un seul thread, puis lu en parallèle sans verrou.
+ */
+public class GeoIndex {
+
+    private static final double RAYON_TERRE_KM = 6371;
+
+    private static final Comparator<Point> PAR_LAT = Comparator.comparingDouble(p -> p.lat);
+    private static final Comparator<Point> PAR_LON = Comparator.comparingDouble(p -> p.lon);
+
+    private final List<Point> points = new ArrayList<>();
+    // Un seul point par carré d'environ 100 m
+    private final Set<Long> vus = new HashSet<>();
+
+    private volatile Point[] arbre;
+    // Empreinte des points (dans l'ordre d'ajout) et nombre de points qu'elle couvre
+    private volatile long empreinte;
+    private volatile int empreinteTaille = -1;
+
+    public static class Point {
+        public final double lat;
+        public final double lon;
+        public final String city;
+        public final String country;
+        public final String zone;
+
+        Point(double lat, double lon, String city, String country) {
+            this.lat = lat;
+            this.lon = lon;
+            this.city = city;
+            this.country = country;
+            this.zone = city + ", " + country;
+        }
+    }
+
+    public void ajouter(double lat, double lon, String city, String country) {
+        if (Double.isNaN(lat) || Double.isNaN(lon)) return;
+
+        long fin = (Math.round(lat * 1000) << 32) ^ (Math.round(lon * 1000) & 0xffffffffL);
+        if (!vus.add(fin)) return;
+
+        points.add(new Point(lat, lon, city, country));
+    }
+
+    /** Ajoute les points d'un autre index (les points déjà présents gagnent). */
+    public void ajouterTout(GeoIndex autre) {
+        for (Point p : autre.points) ajouter(p.lat, p.lon, p.city, p.country);
+    }
+
+    public GeoIndex copie() {
+        GeoIndex c = new GeoIndex();
+        c.ajouterTout(this);
+        return c;
+    }
+
+    public int taille() {
+        return points.size();
+    }
+
+    /**
+     * Empreinte du contenu (positions et zones, dans l'ordre d'ajout) :
+     * deux index de même empreinte donnent les mêmes réponses.
+     */
+    public long empreinte() {
+        if (empreinteTaille == points.size()) return empreinte;
+        synchronized (this) {
+            if (empreinteTaille != points.size()) {
+                long h = 1125899906842597L;
+                for (Point p : points) {
+                    h = 31 * h + Double.doubleToLongBits(p.lat);
+                    h = 31 * h + Double.doubleToLongBits(p.lon);
+                    h = 31 * h + p.zone.hashCode();
+                }
+                empreinte = h;
+                empreinteTaille = points.size();
+            }
+            return empreinte;
+        }
+    }
+
+    // =========================================================================
+    // RECHERCHE
+    // =========================================================================
+
+    /**
+     * Point connu le plus proche à strictement moins de rayonKm,
+     * ou null.
+     */
+    public Point plusProche(double lat, double lon, double rayonKm) {
+        if (points.isEmpty() || Double.isNaN(lat) || Double.isNaN(lon)) return null;
+
+        Recherche r = new Recherche(arbre(), lat, rayonKm);
+        r.chercher(lon, 0, r.arbre.length, 0);
+
+        // Près de l'antiméridien, les voisins sont de l'autre côté de ±180°
+        double rayonDeg = Math.toDegrees(rayonKm / RAYON_TERRE_KM) / Math.max(1e-9, r.cosLatMax);
+        if (lon + rayonDeg > 180) r.chercher(lon - 360, 0, r.arbre.length, 0);
+        if (lon - rayonDeg < -180) r.chercher(lon + 360, 0, r.arbre.length, 0);
+
+        return r.meilleur;
+    }
+
+    private Point[] arbre() {
+        Point[] a = arbre;
+        if (a == null || a.length != points.size()) {
+            synchronized (this) {
+                if (arbre == null || arbre.length != points.size()) {
+                    Point[] t = points.toArray(new Point[0]);
+                    construire(t, 0, t.length, 0);
+                    arbre = t;
+                }
+                a = arbre;
+            }
+        }
+        return a;
+    }
+
+    // Médiane au milieu de [debut, fin), axe alterné latitude / longitude
+    private static void construire(Point[] t, int debut, int fin, int profondeur) {
+        if (fin - debut <= 1) return;
+        Arrays.sort(t, debut, fin, (profondeur & 1) == 0 ? PAR_LAT : PAR_LON);
+        int milieu = (debut + fin) >>> 1;
+        construire(t, debut, milieu, profondeur + 1);
+        construire(t, milieu + 1, fin, profondeur + 1);
+    }
+
+    private static class Recherche {
+        final Point[] arbre;
+        final double lat;
+        // cos de la latitude extrême atteignable dans le rayon
+        final double cosLatMax;
+
+        Point meilleur = null;
+        double meilleureDistance;
+
+        Recherche(Point[] arbre, double lat, double rayonKm) {
+            this.arbre = arbre;
+            this.lat = lat;
+            double latMax = Math.min(90, Math.abs(lat) + Math.toDegrees(rayonKm / RAYON_TERRE_KM));
+            this.cosLatMax = Math.cos(Math.toRadians(latMax));
+            this.meilleureDistance = rayonKm;
+        }
+
+        void chercher(double lon, int debut, int fin, int profondeur) {
+            if (debut >= fin) return;
+
+            int milieu = (debut + fin) >>> 1;
+            Point p = arbre[milieu];
+
+            double d = haversine(lat, lon, p.lat, p.lon);
+            if (d < meilleureDistance) {
+                meilleureDistance = d;
+                meilleur = p;
+            }
+
+            boolean parLat = (profondeur & 1) == 0;
+            double ecart = parLat ? lat - p.lat : lon - p.lon;
+
+            if (ecart < 0) {
+                chercher(lon, debut, milieu, profondeur + 1);
+                if (borne(parLat, ecart) < meilleureDistance) chercher(lon, milieu + 1, fin, profondeur + 1);
+            } else {
+                chercher(lon, milieu + 1, fin, profondeur + 1);
+                if (borne(parLat, ecart) < meilleureDistance) chercher(lon, debut, milieu, profondeur + 1);
+            }
+        }
+
+        /**
+         * Distance minimale à un point situé de l'autre côté du plan de
+         * coupe : R·|Δφ| en latitude ; en longitude, avec |φ| ≤ latMax,
+         * sin(d / 2R) ≥ cos(latMax) · sin(|Δλ| / 2).
+         */
+        private double borne(boolean parLat, double ecartDeg) {
+            double e = Math.toRadians(Math.abs(ecartDeg));
+            if (parLat) return RAYON_TERRE_KM * e;
+            if (e >= Math.PI) return 0;
+            return 2 * RAYON_TERRE_KM * Math.asin(Math.min(1, cosLatMax * Math.sin(e / 2)));
+        }
+    }
+
+    public static double haversine(double lat1, double lon1, double lat2, double lon2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLon = Math.toRadians(lon2 - lon1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2))
+                * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return 2 * RAYON_TERRE_KM * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+    }
+}
@@ -0,0 +1,138 @@
+package com.ensah.qoe.Utils;
+
+import com.ensah.qoe.Models.DBConnection;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Résolutions des tranches de temps (UTC) des mesures QoS.
+ * Une tranche est repérée par son indice : epoch ms / durée, arrondi
+ * vers le bas ; le libellé n'est construit qu'une fois par groupe.
+ */
+public enum Resolution {
+
+    UNE_MINUTE("1min", 60_000L),
+    CINQ_MINUTES("5min", 5 * 60_000L),
+    UNE_HEURE("1h", 3_600_000L),
+    DOUZE_HEURES("12h", 12 * 3_600_000L),
+    UN_JOUR("1j", 24 * 3_600_000L);
+
+    private final String code;
+    private final long dureeMs;
+
+    Resolution(String code, long dureeMs) {
+        this.code = code;
+        this.dureeMs = dureeMs;
+    }
+
+    public String getCode() { return code; }
+    public long getDureeMs() { return dureeMs; }
+
+    public long indice(long epochMillis) {
+        return Math.floorDiv(epochMillis, dureeMs);
+    }
+
+    /** Début (epoch ms) de la tranche d'indice donné. */
+    public long debut(long indice) {
+        return indice * dureeMs;
+    }
+
+    /**
+     * Libellé de la tranche, triable dans l'ordre chronologique :
+     * 2024-03-13 14:05 (minutes), 2024-03-13 14h, 2024-03-13_12-24
+     * (12 h, format historique de TRANCHE_12H), 2024-03-13 (jour).
+     */
+    public String libelle(long indice) {
+        LocalDateTime d = LocalDateTime.ofEpochSecond(Math.floorDiv(debut(indice), 1000), 0, ZoneOffset.UTC);
+        StringBuilder sb = new StringBuilder(16);
+        date(sb, d);
+
+        switch (this) {
+            case UNE_MINUTE, CINQ_MINUTES -> {
+                sb.append(' ');
+                deuxChiffres(sb, d.getHour());
+                sb.append(':');
+                deuxChiffres(sb, d.getMinute());
+            }
+            case UNE_HEURE -> {
+                sb.append(' ');
+                deuxChiffres(sb, d.getHour());
+                sb.append('h');
+            }
+            case DOUZE_HEURES -> tranche12h(sb, d.getHour());
+            case UN_JOUR -> { }
+        }
+        return sb.toString();
+    }
+
+    static void date(StringBuilder sb, LocalDateTime d) {
+        int annee = d.getYear();
+        if (annee < 0 || annee > 9999) {
+            sb.append(d.toLocalDate());
+            return;
+        }
+        sb.append((char) ('0' + annee / 1000)).append((char) ('0' + annee / 100 % 10));
+        deuxChiffres(sb, annee % 100);
+        sb.append('-');
+        deuxChiffres(sb, d.getMonthValue());
+        sb.append('-');
+        deuxChiffres(sb, d.getDayOfMonth());
+    }
+
+    static void tranche12h(StringBuilder sb, int heure) {
+        sb.append(heure < 12 ? "_00-12" : "_12-24");
+    }
+
+    private static void deuxChiffres(StringBuilder sb, int v) {
+        sb.append((char) ('0' + v / 10)).append((char) ('0' + v % 10));
+    }
+
+    // =========================================================================
+    // CHOIX
+    // =========================================================================
+
+    public static Resolution depuisCode(String code) {
+        for (Resolution r : values()) {
+            if (r.code.equalsIgnoreCase(code.trim())) return r;
+        }
+        throw new IllegalArgumentException("Résolution inconnue : " + code);
+    }
+
+    /**
+     * Résolutions calculées à l'import (import.resolutions) ; 12 h
+     * (MESURES_QOS) l'est toujours.
+     */
+    public static Set<Resolution> configurees() {
+        Set<Resolution> set = EnumSet.of(DOUZE_HEURES);
+        String liste = DBConnection.getProperty("import.resolutions", "1min,5min,1h,12h,1j");
+        for (String code : liste.split(",")) {
+            if (code.isBlank()) continue;
+            try {
+                set.add(depuisCode(code));
+            } catch (IllegalArgumentException e) {
+                System.out.println("⚠ " + e.getMessage());
+            }
+        }
+        return set;
+    }
+
+    /**
+     * Résolution la plus fine parmi disponibles dont la période
+     * [debutMs, finMs] tient en maxPoints tranches, sinon la plus
+     * grossière.
+     */
+    public static Resolution pourAffichage(long debutMs, long finMs, int maxPoints,
+                                           Collection<Resolution> disponibles) {
+        Resolution choix = null;
+        for (Resolution r : values()) {
+            if (!disponibles.contains(r)) continue;
+            choix = r;
+            if (r.indice(finMs) - r.indice(debutMs) + 1 <= maxPoints) return r;
+        }
+        return choix != null ? choix : DOUZE_HEURES;
+    }
+}
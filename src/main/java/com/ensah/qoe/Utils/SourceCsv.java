@@ -0,0 +1,134 @@
+package com.ensah.qoe.Utils;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * CSV à importer : fichier sur disque, fichier .gz ou entrée .csv d'une
+ * archive .zip. Les archives sont décompressées à la volée, sans copie
+ * sur disque ; seul un CSV non compressé peut être projeté en mémoire.
+ */
+public class SourceCsv {
+
+    // Lectures dans l'archive par blocs de 1 Mo
+    private static final int TAILLE_TAMPON = 1 << 20;
+
+    private final Path chemin;
+    private final String entree;
+    private final boolean gzip;
+    private final String nom;
+    private final long taille;
+
+    private SourceCsv(Path chemin, String entree, boolean gzip, String nom, long taille) {
+        this.chemin = chemin;
+        this.entree = entree;
+        this.gzip = gzip;
+        this.nom = nom;
+        this.taille = taille;
+    }
+
+    /** .gz ou .zip, d'après le nom. */
+    public static boolean estArchive(String nomFichier) {
+        String n = nomFichier.toLowerCase(Locale.ROOT);
+        return n.endsWith(".gz") || n.endsWith(".zip");
+    }
+
+    /** Fichier CSV non compressé, importé sous son nom. */
+    public static SourceCsv fichier(Path chemin) throws IOException {
+        return new SourceCsv(chemin, null, false, chemin.getFileName().toString(), Files.size(chemin));
+    }
+
+    /**
+     * CSV contenus dans chemin : le fichier lui-même (CSV ou .gz), ou les
+     * entrées .csv d'un .zip dans l'ordre de l'archive, nommées
+     * "archive.zip/entrée.csv".
+     */
+    public static List<SourceCsv> lister(Path chemin) throws IOException {
+        String nomArchive = chemin.getFileName().toString();
+        String n = nomArchive.toLowerCase(Locale.ROOT);
+
+        List<SourceCsv> sources = new ArrayList<>();
+        if (n.endsWith(".zip")) {
+            try (ZipFile zip = new ZipFile(chemin.toFile())) {
+                Enumeration<? extends ZipEntry> entrees = zip.entries();
+                while (entrees.hasMoreElements()) {
+                    ZipEntry e = entrees.nextElement();
+                    if (e.isDirectory() || !e.getName().toLowerCase(Locale.ROOT).endsWith(".csv")) continue;
+                    sources.add(new SourceCsv(chemin, e.getName(), false, nomArchive + "/" + e.getName(), e.getSize()));
+                }
+            }
+        } else if (n.endsWith(".gz")) {
+            // Taille décompressée inconnue (le .gz ne la donne que modulo 4 Go)
+            sources.add(new SourceCsv(chemin, null, true, nomArchive, -1));
+        } else {
+            sources.add(fichier(chemin));
+        }
+        return sources;
+    }
+
+    /** Contenu décompressé (le CSV lui-même pour un fichier non compressé). */
+    public InputStream ouvrir() throws IOException {
+        if (gzip) {
+            InputStream brut = Files.newInputStream(chemin);
+            try {
+                return new GZIPInputStream(brut, TAILLE_TAMPON);
+            } catch (IOException e) {
+                brut.close();
+                throw e;
+            }
+        }
+        if (entree == null) return Files.newInputStream(chemin);
+
+        ZipFile zip = new ZipFile(chemin.toFile());
+        try {
+            ZipEntry e = zip.getEntry(entree);
+            if (e == null) throw new IOException("Entrée absente : " + entree);
+            // L'archive reste ouverte jusqu'à la fermeture du flux
+            return new FilterInputStream(zip.getInputStream(e)) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        zip.close();
+                    }
+                }
+            };
+        } catch (IOException | RuntimeException e) {
+            zip.close();
+            throw e;
+        }
+    }
+
+    /** Lu par ouvrir() (archive) plutôt que projeté. */
+    public boolean estCompresse() {
+        return gzip || entree != null;
+    }
+
+    /** Fichier sur disque (l'archive pour une entrée de .zip). */
+    public Path getChemin() { return chemin; }
+
+    /** Entrée du .zip, ou null. */
+    public String getEntree() { return entree; }
+
+    /** Nom d'import (FICHIERS_IMPORTES). */
+    public String getNom() { return nom; }
+
+    /** Taille décompressée en octets, -1 si inconnue avant lecture. */
+    public long getTaille() { return taille; }
+
+    @Override
+    public String toString() {
+        return nom;
+    }
+}
@@ -0,0 +1,124 @@
+package com.ensah.qoe.Utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Table clé long → valeur à adressage ouvert (sondage linéaire) :
+ * ni boxing de la clé ni entrée allouée par ajout. Un thread à la fois.
+ */
+public class TableLong<V> {
+
+    /** Reçoit les entrées de la table, dans l'ordre des cases. */
+    public interface Visiteur<V> {
+        void entree(long cle, V valeur);
+    }
+
+    private long[] cles;
+    private Object[] valeurs;   // null = libre
+    private int taille = 0;
+
+    public TableLong() {
+        this(64);
+    }
+
+    /** capacite : nombre d'entrées attendu. */
+    public TableLong(int capacite) {
+        int n = 16;
+        while (n < capacite * 2) n <<= 1;
+        cles = new long[n];
+        valeurs = new Object[n];
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(long cle) {
+        int masque = cles.length - 1;
+        for (int i = indice(cle, masque); valeurs[i] != null; i = (i + 1) & masque) {
+            if (cles[i] == cle) return (V) valeurs[i];
+        }
+        return null;
+    }
+
+    /** Ajoute ou remplace ; rend l'ancienne valeur ou null. */
+    @SuppressWarnings("unchecked")
+    public V put(long cle, V valeur) {
+        if (valeur == null) throw new IllegalArgumentException("valeur null");
+        int masque = cles.length - 1;
+        int i = indice(cle, masque);
+        for (; valeurs[i] != null; i = (i + 1) & masque) {
+            if (cles[i] == cle) {
+                V ancienne = (V) valeurs[i];
+                valeurs[i] = valeur;
+                return ancienne;
+            }
+        }
+        cles[i] = cle;
+        valeurs[i] = valeur;
+        if (++taille * 2 > cles.length) agrandir(cles.length * 2);
+        return null;
+    }
+
+    public int taille() {
+        return taille;
+    }
+
+    @SuppressWarnings("unchecked")
+    public void pourChaque(Visiteur<? super V> v) {
+        for (int i = 0; i < cles.length; i++) {
+            if (valeurs[i] != null) v.entree(cles[i], (V) valeurs[i]);
+        }
+    }
+
+    /**
+     * Retire les valeurs qui vérifient condition et les rend (dans
+     * l'ordre des cases). Les entrées restantes sont replacées : un
+     * passage sur toute la table.
+     */
+    @SuppressWarnings("unchecked")
+    public List<V> retirerSi(Predicate<? super V> condition) {
+        List<V> retirees = new ArrayList<>();
+        for (Object v : valeurs) {
+            if (v != null && condition.test((V) v)) retirees.add((V) v);
+        }
+        if (!retirees.isEmpty()) {
+            long[] anciennesCles = cles;
+            Object[] anciennesValeurs = valeurs;
+            int n = cles.length;
+            cles = new long[n];
+            valeurs = new Object[n];
+            taille = 0;
+            for (int j = 0; j < n; j++) {
+                Object v = anciennesValeurs[j];
+                if (v != null && !condition.test((V) v)) placer(anciennesCles[j], v);
+            }
+        }
+        return retirees;
+    }
+
+    private void agrandir(int n) {
+        long[] anciennesCles = cles;
+        Object[] anciennesValeurs = valeurs;
+        cles = new long[n];
+        valeurs = new Object[n];
+        taille = 0;
+        for (int j = 0; j < anciennesCles.length; j++) {
+            if (anciennesValeurs[j] != null) placer(anciennesCles[j], anciennesValeurs[j]);
+        }
+    }
+
+    // Clé absente de la table
+    private void placer(long cle, Object valeur) {
+        int masque = cles.length - 1;
+        int i = indice(cle, masque);
+        while (valeurs[i] != null) i = (i + 1) & masque;
+        cles[i] = cle;
+        valeurs[i] = valeur;
+        taille++;
+    }
+
+    private static int indice(long cle, int masque) {
+        long h = cle * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & masque;
+    }
+}